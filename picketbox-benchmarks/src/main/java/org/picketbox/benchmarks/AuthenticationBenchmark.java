@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.io.File;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.picketbox.core.Credential;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.DigestHolder;
+import org.picketbox.core.authentication.credential.CertificateCredential;
+import org.picketbox.core.authentication.credential.DigestCredential;
+import org.picketbox.core.authentication.credential.OTPCredential;
+import org.picketbox.core.authentication.credential.TrustedUsernameCredential;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.authentication.impl.OTPAuthenticationMechanism;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.exceptions.AuthenticationException;
+import org.picketbox.core.util.HTTPDigestUtil;
+import org.picketbox.core.util.TimeBasedOTP;
+
+/**
+ * <p>
+ * Measures {@link PicketBoxManager#authenticate(UserContext)} for each of the built-in authentication mechanisms. Every
+ * invocation authenticates a fresh {@link UserContext} with valid credentials.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AuthenticationBenchmark {
+
+    public enum CredentialType {
+        USERNAME_PASSWORD, DIGEST, OTP, CERTIFICATE, TRUSTED_USERNAME
+    }
+
+    @Param
+    public CredentialType credentialType;
+
+    private File workingDir;
+    private PicketBoxManager picketBoxManager;
+    private Credential credential;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workingDir = BenchmarkIdentities.createWorkingDir();
+
+        ConfigurationBuilder builder = BenchmarkIdentities.configure(new ConfigurationBuilder(), this.workingDir);
+
+        builder.authentication().mechanism(new OTPAuthenticationMechanism());
+
+        this.picketBoxManager = new DefaultPicketBoxManager(builder.build());
+        this.picketBoxManager.start();
+
+        BenchmarkIdentities.populate(this.picketBoxManager.getIdentityManager());
+    }
+
+    /**
+     * <p>
+     * Creates the credential once per iteration, since time based passwords are only valid for a short period.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Setup(Level.Iteration)
+    public void createCredential() throws Exception {
+        this.credential = createCredential(this.credentialType);
+
+        if (!authenticate().isAuthenticated()) {
+            throw new IllegalStateException("Credential " + this.credentialType + " was not accepted.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.picketBoxManager.stop();
+        BenchmarkIdentities.delete(this.workingDir);
+    }
+
+    @Benchmark
+    public UserContext authenticate() throws AuthenticationException {
+        UserContext userContext = new UserContext();
+
+        userContext.setCredential(this.credential);
+
+        return this.picketBoxManager.authenticate(userContext);
+    }
+
+    private static Credential createCredential(CredentialType type) throws Exception {
+        switch (type) {
+            case USERNAME_PASSWORD:
+                return new UsernamePasswordCredential(BenchmarkIdentities.USER_NAME, BenchmarkIdentities.PASSWORD);
+            case DIGEST:
+                return new DigestCredential(createDigest(BenchmarkIdentities.USER_NAME, BenchmarkIdentities.PASSWORD));
+            case OTP:
+                return new OTPCredential(BenchmarkIdentities.USER_NAME, BenchmarkIdentities.PASSWORD,
+                        TimeBasedOTP.generateTOTP(BenchmarkIdentities.OTP_SEED, 6));
+            case CERTIFICATE:
+                CertificateCredential certificateCredential = new CertificateCredential(
+                        new X509Certificate[] { BenchmarkIdentities.getCertificate() });
+
+                // usually extracted from the certificate subject by the caller
+                certificateCredential.setUserName(BenchmarkIdentities.USER_NAME);
+
+                return certificateCredential;
+            case TRUSTED_USERNAME:
+                return new TrustedUsernameCredential(BenchmarkIdentities.USER_NAME);
+            default:
+                throw new IllegalArgumentException("Unsupported credential type: " + type);
+        }
+    }
+
+    /**
+     * <p>
+     * Creates a digest as sent by a client for the given user name and password.
+     * </p>
+     *
+     * @param userName
+     * @param password
+     * @return
+     * @throws Exception
+     */
+    static DigestHolder createDigest(String userName, String password) throws Exception {
+        DigestHolder digest = new DigestHolder();
+
+        digest.setUsername(userName).setRealm("PicketBox Realm").setNonce("dcd98b7102dd2f0e8b11d0f600bfb0c093")
+                .setUri("/dir/index.html").setQop("auth").setNc("00000001").setCnonce("0a4f113b").setRequestMethod("GET");
+
+        digest.setClientResponse(HTTPDigestUtil.clientResponseValue(digest, password.toCharArray()));
+
+        return digest;
+    }
+}
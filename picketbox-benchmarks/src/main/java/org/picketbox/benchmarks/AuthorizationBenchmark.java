@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.impl.RoleIndexAuthorizationManager;
+import org.picketbox.core.authorization.impl.SimpleAuthorizationManager;
+import org.picketbox.core.authorization.resource.AbstractPicketBoxResource;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.SimpleRole;
+
+/**
+ * <p>
+ * Measures {@link SimpleAuthorizationManager#authorize(Resource, UserContext)} and its {@link RoleIndexAuthorizationManager}
+ * variant. The only role shared by the user and the manager is the last one of both lists, which is the worst case for
+ * granted requests. The batch benchmarks authorize {@value #BATCH_SIZE} resources with one call.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AuthorizationBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+
+    public enum Engine {
+        SIMPLE, ROLE_INDEX
+    }
+
+    @Param
+    public Engine engine;
+
+    @Param({ "1", "16" })
+    public int userRoles;
+
+    @Param({ "1", "16" })
+    public int requiredRoles;
+
+    private SimpleAuthorizationManager authorizationManager;
+    private UserContext grantedUser;
+    private UserContext deniedUser;
+    private Resource resource;
+    private List<Resource> resources;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> roleNames = new ArrayList<String>();
+
+        for (int i = 1; i < this.requiredRoles; i++) {
+            roleNames.add("required" + i);
+        }
+
+        roleNames.add(BenchmarkIdentities.ROLE_NAME);
+
+        this.authorizationManager = this.engine == Engine.ROLE_INDEX ? new RoleIndexAuthorizationManager()
+                : new SimpleAuthorizationManager();
+        this.authorizationManager.setRoleNames(roleNames);
+        this.authorizationManager.start();
+
+        this.grantedUser = createUser(BenchmarkIdentities.ROLE_NAME);
+        this.deniedUser = createUser("guest");
+
+        this.resource = new AbstractPicketBoxResource() {
+            private static final long serialVersionUID = 1L;
+        };
+        this.resources = Collections.nCopies(BATCH_SIZE, this.resource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.authorizationManager.stop();
+    }
+
+    @Benchmark
+    public boolean authorizeGranted() {
+        return this.authorizationManager.authorize(this.resource, this.grantedUser);
+    }
+
+    @Benchmark
+    public boolean authorizeDenied() {
+        return this.authorizationManager.authorize(this.resource, this.deniedUser);
+    }
+
+    @Benchmark
+    public BitSet authorizeAllGranted() {
+        return this.authorizationManager.authorizeAll(this.resources, this.grantedUser);
+    }
+
+    @Benchmark
+    public BitSet authorizeAllDenied() {
+        return this.authorizationManager.authorizeAll(this.resources, this.deniedUser);
+    }
+
+    private UserContext createUser(String lastRole) {
+        UserContext userContext = SessionBenchmark.createUserContext(BenchmarkIdentities.USER_NAME);
+        List<Role> roles = new ArrayList<Role>();
+
+        for (int i = 1; i < this.userRoles; i++) {
+            roles.add(new SimpleRole("role" + i));
+        }
+
+        roles.add(new SimpleRole(lastRole));
+
+        userContext.setRoles(roles);
+
+        return userContext;
+    }
+}
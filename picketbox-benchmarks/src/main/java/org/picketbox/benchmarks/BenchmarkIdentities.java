@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.util.StreamUtil;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.model.Group;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * In-process identity data used by the benchmarks. Users are kept by a file based identity store created in a temporary
+ * directory, so the benchmarks do not depend on LDAP servers or databases.
+ * </p>
+ */
+public final class BenchmarkIdentities {
+
+    public static final String USER_NAME = "admin";
+    public static final String PASSWORD = "admin";
+    public static final String OTP_SEED = "3132333435363738393031323334353637383930";
+    public static final String ROLE_NAME = "developer";
+
+    private static final String CERTIFICATE_RESOURCE = "admin.crt";
+
+    private BenchmarkIdentities() {
+    }
+
+    /**
+     * <p>
+     * Creates a temporary working directory for the identity store.
+     * </p>
+     *
+     * @return
+     * @throws IOException
+     */
+    public static File createWorkingDir() throws IOException {
+        File workingDir = File.createTempFile("pbox-benchmark", "");
+
+        if (!workingDir.delete() || !workingDir.mkdir()) {
+            throw new IOException("Could not create directory " + workingDir);
+        }
+
+        return workingDir;
+    }
+
+    /**
+     * <p>
+     * Configures the given builder to use a file based identity store in the given directory.
+     * </p>
+     *
+     * @param builder
+     * @param workingDir
+     * @return
+     */
+    public static ConfigurationBuilder configure(ConfigurationBuilder builder, File workingDir) {
+        builder.identityManager().fileStore().workingDir(workingDir.getPath());
+        return builder;
+    }
+
+    /**
+     * <p>
+     * Creates the default user, with its password, OTP seed, certificate and roles.
+     * </p>
+     *
+     * @param identityManager
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    public static void populate(IdentityManager identityManager) throws GeneralSecurityException, IOException {
+        User user = identityManager.createUser(USER_NAME);
+
+        identityManager.updatePassword(user, PASSWORD);
+        identityManager.updateCertificate(user, getCertificate());
+
+        user.setAttribute("serial", OTP_SEED);
+
+        Role role = identityManager.createRole(ROLE_NAME);
+        Group group = identityManager.createGroup("PicketBox Group");
+
+        identityManager.grantRole(role, user, group);
+    }
+
+    /**
+     * @return the certificate of the default user.
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    public static X509Certificate getCertificate() throws GeneralSecurityException, IOException {
+        InputStream stream = BenchmarkIdentities.class.getClassLoader().getResourceAsStream(CERTIFICATE_RESOURCE);
+
+        if (stream == null) {
+            throw new IOException("Resource not found: " + CERTIFICATE_RESOURCE);
+        }
+
+        try {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(stream);
+        } finally {
+            StreamUtil.safeClose(stream);
+        }
+    }
+
+    /**
+     * <p>
+     * Deletes the given directory and its contents.
+     * </p>
+     *
+     * @param file
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.picketbox.core.event.DefaultEventManager;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+
+/**
+ * <p>
+ * Measures {@link DefaultEventManager#raiseEvent(PicketBoxEvent)} for a varying number of handlers, half of them registered
+ * for a superclass of the raised event.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventManagerBenchmark {
+
+    @Param({ "0", "1", "4" })
+    public int handlers;
+
+    private DefaultEventManager eventManager;
+    private BenchmarkEvent event;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.eventManager = new DefaultEventManager(new ArrayList<PicketBoxEventHandler>());
+
+        for (int i = 0; i < this.handlers; i++) {
+            this.eventManager.addHandler(new BenchmarkEventHandler(i % 2 == 0 ? BenchmarkEvent.class : BaseEvent.class));
+        }
+
+        this.event = new BenchmarkEvent();
+    }
+
+    @Benchmark
+    public void raiseEvent(Blackhole blackhole) {
+        this.event.blackhole = blackhole;
+        this.eventManager.raiseEvent(this.event);
+    }
+
+    @Benchmark
+    public boolean hasHandlers() {
+        return this.eventManager.hasHandlers(BenchmarkEvent.class);
+    }
+
+    public abstract static class BaseEvent implements PicketBoxEvent<BenchmarkEventHandler> {
+
+        Blackhole blackhole;
+
+        @Override
+        public void dispatch(BenchmarkEventHandler handler) {
+            handler.onEvent(this);
+        }
+    }
+
+    public static class BenchmarkEvent extends BaseEvent {
+    }
+
+    public static class BenchmarkEventHandler implements PicketBoxEventHandler {
+
+        private final Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> eventType;
+
+        BenchmarkEventHandler(Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> eventType) {
+            this.eventType = eventType;
+        }
+
+        @Override
+        public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+            return this.eventType;
+        }
+
+        void onEvent(BaseEvent event) {
+            event.blackhole.consume(event);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.picketbox.core.authentication.DigestHolder;
+import org.picketbox.core.util.HTTPDigestUtil;
+
+/**
+ * <p>
+ * Measures the {@link HTTPDigestUtil} primitives used by the digest authentication: parsing the authorization header and
+ * computing the expected client response.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HTTPDigestUtilBenchmark {
+
+    private char[] password;
+    private DigestHolder digest;
+    private String authorizationHeader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.password = BenchmarkIdentities.PASSWORD.toCharArray();
+        this.digest = AuthenticationBenchmark.createDigest(BenchmarkIdentities.USER_NAME, BenchmarkIdentities.PASSWORD);
+        this.authorizationHeader = "Digest username=\"" + this.digest.getUsername() + "\", realm=\"" + this.digest.getRealm()
+                + "\", nonce=\"" + this.digest.getNonce() + "\", uri=\"" + this.digest.getUri() + "\", qop="
+                + this.digest.getQop() + ", nc=" + this.digest.getNc() + ", cnonce=\"" + this.digest.getCnonce()
+                + "\", response=\"" + this.digest.getClientResponse() + "\", opaque=\"5ccc069c403ebaf9f0171e9517f40e41\"";
+    }
+
+    @Benchmark
+    public DigestHolder parse() {
+        return HTTPDigestUtil.digest(HTTPDigestUtil.quoteTokenize(this.authorizationHeader));
+    }
+
+    @Benchmark
+    public String clientResponseValue() throws Exception {
+        return HTTPDigestUtil.clientResponseValue(this.digest, this.password);
+    }
+
+    @Benchmark
+    public boolean matchCredential() throws Exception {
+        return HTTPDigestUtil.matchCredential(this.digest, this.password);
+    }
+}
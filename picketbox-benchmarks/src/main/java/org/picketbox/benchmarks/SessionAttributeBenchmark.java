@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.exceptions.PicketBoxSessionException;
+import org.picketbox.core.session.PicketBoxSession;
+
+/**
+ * <p>
+ * Measures the throughput of {@link PicketBoxSession#getAttribute(String)} for a session without event handlers, a managed
+ * session and a managed session refreshing its attributes from the store. Run it with the GC profiler, the default of
+ * {@link PicketBoxBenchmarks}, to get the allocation rate.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionAttributeBenchmark {
+
+    public enum SessionType {
+        UNMANAGED, MANAGED, MANAGED_REFRESH
+    }
+
+    @Param
+    public SessionType sessionType;
+
+    private PicketBoxManager picketBoxManager;
+    private PicketBoxSession session;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (this.sessionType == SessionType.UNMANAGED) {
+            this.session = new PicketBoxSession();
+        } else {
+            ConfigurationBuilder builder = new ConfigurationBuilder();
+
+            builder.sessionManager().inMemorySessionStore();
+
+            if (this.sessionType == SessionType.MANAGED_REFRESH) {
+                builder.sessionManager().refreshAttributesFromStore();
+            }
+
+            this.picketBoxManager = new DefaultPicketBoxManager(builder.build());
+            this.picketBoxManager.start();
+
+            this.session = this.picketBoxManager.getSessionManager().create(
+                    SessionBenchmark.createUserContext(BenchmarkIdentities.USER_NAME));
+        }
+
+        this.session.setAttribute("user", "user1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (this.picketBoxManager != null) {
+            this.picketBoxManager.stop();
+        }
+    }
+
+    @Benchmark
+    public Object getAttribute() throws PicketBoxSessionException {
+        return this.session.getAttribute("user");
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.PicketBoxPrincipal;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationResult;
+import org.picketbox.core.authentication.AuthenticationStatus;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.exceptions.PicketBoxSessionException;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionId;
+import org.picketbox.core.session.SessionManager;
+
+/**
+ * <p>
+ * Measures the creation, retrieval and expiration of sessions by the {@link SessionManager} on each session store.
+ * </p>
+ * <p>
+ * The sessions created by {@link #create(CreatedSession)} are expired, and the sessions expired by
+ * {@link #expire(ExpirableSession)} are created, by invocation level fixtures, so the number of stored sessions does not grow
+ * during the run. Those fixtures add a small constant overhead to each invocation.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionBenchmark {
+
+    private static final int STORED_SESSIONS = 1024;
+
+    public enum StoreType {
+        IN_MEMORY, FILE
+    }
+
+    @Param
+    public StoreType storeType;
+
+    private File workingDir;
+    private PicketBoxManager picketBoxManager;
+    private SessionManager sessionManager;
+    private SessionId<?>[] storedSessionIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workingDir = BenchmarkIdentities.createWorkingDir();
+
+        ConfigurationBuilder builder = BenchmarkIdentities.configure(new ConfigurationBuilder(), this.workingDir);
+
+        switch (this.storeType) {
+            case IN_MEMORY:
+                builder.sessionManager().inMemorySessionStore();
+                break;
+            case FILE:
+                builder.sessionManager().fileSessionStore(new File(this.workingDir, "sessions.dat").getPath());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported store type: " + this.storeType);
+        }
+
+        this.picketBoxManager = new DefaultPicketBoxManager(builder.build());
+        this.picketBoxManager.start();
+        this.sessionManager = this.picketBoxManager.getSessionManager();
+
+        this.storedSessionIds = new SessionId<?>[STORED_SESSIONS];
+
+        for (int i = 0; i < STORED_SESSIONS; i++) {
+            this.storedSessionIds[i] = this.sessionManager.create(createUserContext("user" + i)).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.picketBoxManager.stop();
+        BenchmarkIdentities.delete(this.workingDir);
+    }
+
+    @Benchmark
+    public PicketBoxSession create(CreatedSession state) {
+        state.session = this.sessionManager.create(state.userContext);
+        return state.session;
+    }
+
+    @Benchmark
+    public PicketBoxSession retrieve(StoredSessions state) {
+        return this.sessionManager.retrieve(state.next());
+    }
+
+    @Benchmark
+    public void expire(ExpirableSession state) throws PicketBoxSessionException {
+        state.session.expire();
+    }
+
+    static UserContext createUserContext(String userName) {
+        return new AuthenticatedUserContext(userName);
+    }
+
+    /**
+     * <p>
+     * A {@link UserContext} successfully authenticated for the given user, so benchmarks do not go through the authentication
+     * mechanisms.
+     * </p>
+     */
+    private static class AuthenticatedUserContext extends UserContext {
+
+        private static final long serialVersionUID = 1L;
+
+        AuthenticatedUserContext(String userName) {
+            AuthenticationResult result = new AuthenticationResult(AuthenticationStatus.SUCCESS);
+
+            result.setPrincipal(new PicketBoxPrincipal(userName));
+
+            setAuthenticationResult(result);
+        }
+    }
+
+    /**
+     * <p>
+     * Cycles through the sessions created during the setup.
+     * </p>
+     */
+    @State(Scope.Thread)
+    public static class StoredSessions {
+
+        private SessionId<?>[] ids;
+        private int index;
+
+        @Setup(Level.Trial)
+        public void setUp(SessionBenchmark benchmark) {
+            this.ids = benchmark.storedSessionIds;
+        }
+
+        SessionId<? extends Serializable> next() {
+            return this.ids[this.index++ & (STORED_SESSIONS - 1)];
+        }
+    }
+
+    /**
+     * <p>
+     * Holds the session created by an invocation, which is expired after it.
+     * </p>
+     */
+    @State(Scope.Thread)
+    public static class CreatedSession {
+
+        private final UserContext userContext = createUserContext(BenchmarkIdentities.USER_NAME);
+        private PicketBoxSession session;
+
+        @TearDown(Level.Invocation)
+        public void expireSession() throws PicketBoxSessionException {
+            this.session.expire();
+        }
+    }
+
+    /**
+     * <p>
+     * Holds the session expired by an invocation, which is created before it.
+     * </p>
+     */
+    @State(Scope.Thread)
+    public static class ExpirableSession {
+
+        private final UserContext userContext = createUserContext(BenchmarkIdentities.USER_NAME);
+        private PicketBoxSession session;
+
+        @Setup(Level.Invocation)
+        public void createSession(SessionBenchmark benchmark) {
+            this.session = benchmark.sessionManager.create(this.userContext);
+        }
+    }
+}
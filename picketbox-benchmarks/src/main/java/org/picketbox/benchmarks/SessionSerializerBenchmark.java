@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.session.CompactSessionSerializer;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.JavaSessionSerializer;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionSerializer;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.SimpleRole;
+
+/**
+ * <p>
+ * Compares the serialization throughput of the {@link CompactSessionSerializer} and the {@link JavaSessionSerializer}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionSerializerBenchmark {
+
+    public enum SerializerType {
+        JAVA, COMPACT
+    }
+
+    @Param
+    public SerializerType serializerType;
+
+    private SessionSerializer serializer;
+    private PicketBoxSession session;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.serializer = this.serializerType == SerializerType.JAVA ? new JavaSessionSerializer()
+                : new CompactSessionSerializer();
+
+        UserContext userContext = SessionBenchmark.createUserContext(BenchmarkIdentities.USER_NAME);
+        List<Role> roles = new ArrayList<Role>();
+
+        roles.add(new SimpleRole("manager"));
+        roles.add(new SimpleRole("developer"));
+
+        userContext.setRoles(roles);
+
+        this.session = new PicketBoxSession(userContext, new DefaultSessionId());
+
+        userContext.setSession(this.session);
+
+        this.session.setAttribute("user", "user1");
+        this.session.setAttribute("lastPage", "/app/page/1");
+        this.session.setAttribute("counter", 10);
+
+        this.data = this.serializer.serialize(this.session);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return this.serializer.serialize(this.session);
+    }
+
+    @Benchmark
+    public PicketBoxSession deserialize() throws Exception {
+        return this.serializer.deserialize(this.data);
+    }
+}
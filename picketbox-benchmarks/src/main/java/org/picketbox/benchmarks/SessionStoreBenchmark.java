@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.MappedSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionId;
+import org.picketbox.core.session.SessionStore;
+
+/**
+ * <p>
+ * Compares the load latency and the heap footprint of the {@link MappedSessionStore} and the {@link InMemorySessionStore}.
+ * </p>
+ * <p>
+ * The latency is sampled, so the percentiles are reported. The heap retained by the stored sessions is measured once per
+ * trial and reported by the {@link HeapFootprint} counter. Run it with a fixed heap to get comparable numbers, for example:
+ * <code>java -jar target/benchmarks.jar SessionStoreBenchmark -f 1 -jvmArgs "-Xms2g -Xmx2g"</code>
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionStoreBenchmark {
+
+    private static final int SLOT_SIZE = 512;
+
+    public enum StoreType {
+        IN_MEMORY, MAPPED
+    }
+
+    @Param
+    public StoreType storeType;
+
+    @Param({ "100000" })
+    public int sessionCount;
+
+    private File workingDir;
+    private SessionStore store;
+    private SessionId<?>[] sessionIds;
+    private long retainedHeap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workingDir = BenchmarkIdentities.createWorkingDir();
+
+        long heapBefore = usedHeap();
+
+        switch (this.storeType) {
+            case IN_MEMORY:
+                this.store = new InMemorySessionStore();
+                break;
+            case MAPPED:
+                this.store = new MappedSessionStore(new File(this.workingDir, "sessions.dat").getPath(), this.sessionCount,
+                        SLOT_SIZE);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported store type: " + this.storeType);
+        }
+
+        this.store.start();
+
+        this.sessionIds = new SessionId<?>[this.sessionCount];
+
+        for (int i = 0; i < this.sessionCount; i++) {
+            PicketBoxSession session = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+
+            session.setAttribute("user", "user" + i);
+            session.setAttribute("lastPage", "/app/page/" + (i % 100));
+            session.setAttribute("counter", i);
+
+            this.store.store(session);
+
+            this.sessionIds[i] = session.getId();
+        }
+
+        // includes the ids held by the benchmark, which are the same for every store
+        this.retainedHeap = usedHeap() - heapBefore;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.store.stop();
+        BenchmarkIdentities.delete(this.workingDir);
+    }
+
+    @Benchmark
+    public PicketBoxSession load(RandomSessions state, HeapFootprint footprint) {
+        return this.store.load(state.next());
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * <p>
+     * Picks the sessions created during the setup at random.
+     * </p>
+     */
+    @State(Scope.Thread)
+    public static class RandomSessions {
+
+        private final Random random = new Random(42);
+        private SessionId<?>[] ids;
+
+        @Setup(Level.Trial)
+        public void setUp(SessionStoreBenchmark benchmark) {
+            this.ids = benchmark.sessionIds;
+        }
+
+        SessionId<? extends Serializable> next() {
+            return this.ids[this.random.nextInt(this.ids.length)];
+        }
+    }
+
+    /**
+     * <p>
+     * Reports the heap retained by the stored sessions, in bytes, next to the latency.
+     * </p>
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapFootprint {
+
+        public long retainedBytes;
+
+        @Setup(Level.Iteration)
+        public void setUp(SessionStoreBenchmark benchmark) {
+            this.retainedBytes = benchmark.retainedHeap;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.picketbox.core.util.TimeBasedOTP;
+import org.picketbox.core.util.TimeBasedOTPUtil;
+
+/**
+ * <p>
+ * Measures the generation and the validation of time based one time passwords for each supported algorithm.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeBasedOTPBenchmark {
+
+    private static final int NUMBER_OF_DIGITS = 6;
+
+    @Param({ TimeBasedOTP.HMAC_SHA1, TimeBasedOTP.HMAC_SHA256, TimeBasedOTP.HMAC_SHA512 })
+    public String algorithm;
+
+    private byte[] seed;
+    private String otp;
+
+    /**
+     * <p>
+     * Generates the password once per iteration, since it is only valid for a short period.
+     * </p>
+     *
+     * @throws GeneralSecurityException
+     */
+    @Setup(Level.Iteration)
+    public void setUp() throws GeneralSecurityException {
+        this.seed = BenchmarkIdentities.OTP_SEED.getBytes();
+        this.otp = generate();
+    }
+
+    @Benchmark
+    public String generate() throws GeneralSecurityException {
+        if (TimeBasedOTP.HMAC_SHA256.equals(this.algorithm)) {
+            return TimeBasedOTP.generateTOTP256(BenchmarkIdentities.OTP_SEED, NUMBER_OF_DIGITS);
+        } else if (TimeBasedOTP.HMAC_SHA512.equals(this.algorithm)) {
+            return TimeBasedOTP.generateTOTP512(BenchmarkIdentities.OTP_SEED, NUMBER_OF_DIGITS);
+        }
+
+        return TimeBasedOTP.generateTOTP(BenchmarkIdentities.OTP_SEED, NUMBER_OF_DIGITS);
+    }
+
+    @Benchmark
+    public boolean validate() throws GeneralSecurityException {
+        if (TimeBasedOTP.HMAC_SHA256.equals(this.algorithm)) {
+            return TimeBasedOTPUtil.validate256(this.otp, this.seed, NUMBER_OF_DIGITS);
+        } else if (TimeBasedOTP.HMAC_SHA512.equals(this.algorithm)) {
+            return TimeBasedOTPUtil.validate512(this.otp, this.seed, NUMBER_OF_DIGITS);
+        }
+
+        return TimeBasedOTPUtil.validate(this.otp, this.seed, NUMBER_OF_DIGITS);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.resource.AbstractPicketBoxResource;
+import org.picketbox.core.authorization.xacml.PolicyTarget;
+import org.picketbox.core.authorization.xacml.XACMLAuthorizationManager;
+import org.picketbox.core.authorization.xacml.XACMLResource;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.SimpleRole;
+
+/**
+ * <p>
+ * Measures {@link XACMLAuthorizationManager#authorize(Resource, UserContext)} against a directory of generated policy files.
+ * Each policy targets its own resource and permits a single role, so the cost of a request should not grow with the number
+ * of policies. The batch benchmark authorizes {@value #BATCH_SIZE} resources with one call, only one of them is granted.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class XACMLAuthorizationBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+
+    @Param({ "100", "3000" })
+    public int policies;
+
+    private File policyDirectory;
+    private XACMLAuthorizationManager authorizationManager;
+    private UserContext grantedUser;
+    private UserContext deniedUser;
+    private Resource resource;
+    private List<Resource> resources;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.policyDirectory = File.createTempFile("picketbox-xacml", "");
+        this.policyDirectory.delete();
+        this.policyDirectory.mkdirs();
+
+        for (int i = 0; i < this.policies; i++) {
+            writePolicy(i);
+        }
+
+        this.authorizationManager = new XACMLAuthorizationManager(this.policyDirectory);
+        this.authorizationManager.start();
+
+        int target = this.policies / 2;
+
+        this.grantedUser = createUser("role" + target);
+        this.deniedUser = createUser("guest");
+        this.resource = new PolicyResource("/resource/" + target, "read");
+        this.resources = new ArrayList<Resource>();
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            this.resources.add(new PolicyResource("/resource/" + (target + i) % this.policies, "read"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.authorizationManager.stop();
+
+        for (File file : this.policyDirectory.listFiles()) {
+            file.delete();
+        }
+
+        this.policyDirectory.delete();
+    }
+
+    @Benchmark
+    public boolean authorizeGranted() {
+        return this.authorizationManager.authorize(this.resource, this.grantedUser);
+    }
+
+    @Benchmark
+    public boolean authorizeDenied() {
+        return this.authorizationManager.authorize(this.resource, this.deniedUser);
+    }
+
+    @Benchmark
+    public BitSet authorizeAllGranted() {
+        return this.authorizationManager.authorizeAll(this.resources, this.grantedUser);
+    }
+
+    private void writePolicy(int index) throws IOException {
+        String string = "http://www.w3.org/2001/XMLSchema#string";
+        String stringEqual = "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+        String policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"policy" + index + "\" "
+                + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">"
+                + "<Target><Resources><Resource><ResourceMatch MatchId=\"" + stringEqual + "\">"
+                + "<AttributeValue DataType=\"" + string + "\">/resource/" + index + "</AttributeValue>"
+                + "<ResourceAttributeDesignator AttributeId=\"" + PolicyTarget.RESOURCE_ID + "\" DataType=\"" + string
+                + "\"/></ResourceMatch></Resource></Resources>"
+                + "<Actions><Action><ActionMatch MatchId=\"" + stringEqual + "\">"
+                + "<AttributeValue DataType=\"" + string + "\">read</AttributeValue>"
+                + "<ActionAttributeDesignator AttributeId=\"" + PolicyTarget.ACTION_ID + "\" DataType=\"" + string
+                + "\"/></ActionMatch></Action></Actions></Target>"
+                + "<Rule RuleId=\"permit\" Effect=\"Permit\"><Condition>"
+                + "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">"
+                + "<AttributeValue DataType=\"" + string + "\">role" + index + "</AttributeValue>"
+                + "<SubjectAttributeDesignator AttributeId=\"" + XACMLAuthorizationManager.ROLE + "\" DataType=\"" + string
+                + "\"/></Apply></Condition></Rule>"
+                + "<Rule RuleId=\"deny\" Effect=\"Deny\"/></Policy>";
+        OutputStream output = new FileOutputStream(new File(this.policyDirectory, "policy" + index + ".xml"));
+
+        try {
+            output.write(policy.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    private UserContext createUser(String roleName) {
+        UserContext userContext = SessionBenchmark.createUserContext(BenchmarkIdentities.USER_NAME);
+        List<Role> roles = new ArrayList<Role>();
+
+        roles.add(new SimpleRole(roleName));
+
+        userContext.setRoles(roles);
+
+        return userContext;
+    }
+
+    private static class PolicyResource extends AbstractPicketBoxResource implements XACMLResource {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String resourceId;
+        private final String action;
+
+        PolicyResource(String resourceId, String action) {
+            this.resourceId = resourceId;
+            this.action = action;
+        }
+
+        @Override
+        public String getResourceId() {
+            return this.resourceId;
+        }
+
+        @Override
+        public String getAction() {
+            return this.action;
+        }
+    }
+}
@@ -23,7 +23,11 @@
 package org.picketbox.core;
 
 import java.security.Principal;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
+import org.picketbox.core.authentication.AuthenticationCache;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.authentication.AuthenticationProvider;
 import org.picketbox.core.authentication.AuthenticationResult;
@@ -31,12 +35,18 @@ import org.picketbox.core.authentication.credential.TrustedUsernameCredential;
 import org.picketbox.core.authentication.event.UserAuthenticatedEvent;
 import org.picketbox.core.authentication.impl.PicketBoxAuthenticationProvider;
 import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.BatchAuthorizationManager;
+import org.picketbox.core.authorization.BatchEntitlementsManager;
 import org.picketbox.core.authorization.EntitlementsManager;
+import org.picketbox.core.authorization.EntitlementsManager.Entitlement;
 import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.config.GlobalIdentityManagerConfiguration;
 import org.picketbox.core.config.PicketBoxConfiguration;
 import org.picketbox.core.event.PicketBoxEventManager;
 import org.picketbox.core.exceptions.AuthenticationException;
+import org.picketbox.core.exceptions.PicketBoxSessionException;
 import org.picketbox.core.identity.UserContextPopulator;
+import org.picketbox.core.identity.impl.CachingUserContextPopulator;
 import org.picketbox.core.identity.impl.DefaultUserContextPopulator;
 import org.picketbox.core.logout.UserLoggedOutEvent;
 import org.picketbox.core.session.DefaultSessionManager;
@@ -56,6 +66,14 @@ import org.picketlink.idm.internal.DefaultIdentityManager;
  */
 public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycle implements PicketBoxManager {
 
+    /**
+     * <p>
+     * The session attribute holding the last time, in milliseconds, its user was authenticated. Removing it forces the user to
+     * be authenticated again on the next request.
+     * </p>
+     */
+    public static final String VALIDATION_TIME_ATTRIBUTE = "org.picketbox.core.validationTime";
+
     private AuthenticationProvider authenticationProvider;
     private AuthorizationManager authorizationManager;
     private SessionManager sessionManager;
@@ -63,9 +81,6 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
     private IdentityManager identityManager;
     private PicketBoxConfiguration configuration;
     private PicketBoxEventManager eventManager;
-
-    @SuppressWarnings("unused")
-    //TODO: handle entitlements
     private EntitlementsManager entitlementsManager;
 
     public AbstractPicketBoxManager(PicketBoxConfiguration configuration) {
@@ -83,7 +98,15 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
 
         // if there is a valid session associate it with the subject and performs a silent authentication, trusting the provided principal.
         if (userSession != null) {
-            UserContext restoredUserContext = userSession.getUserContext();
+            UserContext restoredUserContext = restoreUserContext(userSession);
+
+            // users validated recently are restored from the session, skipping the mechanisms and the identity store
+            if (restoredUserContext != null) {
+                getEventManager().raiseEvent(new UserAuthenticatedEvent(restoredUserContext));
+                return restoredUserContext;
+            }
+
+            restoredUserContext = userSession.getUserContext();
             Principal restoredPrincipal = restoredUserContext.getPrincipal(false);
 
             TrustedUsernameCredential credential = new TrustedUsernameCredential(restoredPrincipal.getName());
@@ -116,8 +139,10 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
         checkIfStarted();
 
         if (authenticatedUser.isAuthenticated()) {
+            Principal principal = authenticatedUser.getPrincipal();
+
             authenticatedUser.invalidate();
-            getEventManager().raiseEvent(new UserLoggedOutEvent());
+            getEventManager().raiseEvent(new UserLoggedOutEvent(principal));
         } else {
             throw PicketBoxMessages.MESSAGES.invalidUserSession();
         }
@@ -142,6 +167,92 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxManager#authorizeAll(org.picketbox.core.UserContext, java.util.Collection)
+     */
+    @Override
+    public BitSet authorizeAll(UserContext subject, Collection<? extends Resource> resources) {
+        checkIfStarted();
+        try {
+            BitSet decisions = new BitSet(resources.size());
+
+            if (this.authorizationManager == null || (subject == null || !subject.isAuthenticated())) {
+                decisions.set(0, resources.size());
+                return decisions;
+            }
+
+            if (this.authorizationManager instanceof BatchAuthorizationManager) {
+                return ((BatchAuthorizationManager) this.authorizationManager).authorizeAll(resources, subject);
+            }
+
+            int index = 0;
+
+            for (Resource resource : resources) {
+                if (this.authorizationManager.authorize(resource, subject)) {
+                    decisions.set(index);
+                }
+
+                index++;
+            }
+
+            return decisions;
+        } catch (Exception e) {
+            throw PicketBoxMessages.MESSAGES.authorizationFailed(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxManager#entitlements(org.picketbox.core.UserContext,
+     * org.picketbox.core.authorization.Resource)
+     */
+    @Override
+    public Entitlement[] entitlements(UserContext subject, Resource resource) {
+        checkIfStarted();
+        try {
+            if (this.entitlementsManager == null || subject == null || !subject.isAuthenticated()) {
+                return new Entitlement[0];
+            }
+
+            return this.entitlementsManager.entitlements(resource, subject);
+        } catch (Exception e) {
+            throw PicketBoxMessages.MESSAGES.authorizationFailed(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxManager#entitlements(org.picketbox.core.UserContext, java.util.Collection)
+     */
+    @Override
+    public Entitlement[][] entitlements(UserContext subject, Collection<? extends Resource> resources) {
+        checkIfStarted();
+        try {
+            if (this.entitlementsManager == null || subject == null || !subject.isAuthenticated()) {
+                return new Entitlement[resources.size()][0];
+            }
+
+            if (this.entitlementsManager instanceof BatchEntitlementsManager) {
+                return ((BatchEntitlementsManager) this.entitlementsManager).entitlements(resources, subject);
+            }
+
+            Entitlement[][] entitlements = new Entitlement[resources.size()][];
+            int index = 0;
+
+            for (Resource resource : resources) {
+                entitlements[index++] = this.entitlementsManager.entitlements(resource, subject);
+            }
+
+            return entitlements;
+        } catch (Exception e) {
+            throw PicketBoxMessages.MESSAGES.authorizationFailed(e);
+        }
+    }
+
     /**
      * @param securityContext
      * @param authenticationCallbackHandler
@@ -152,7 +263,8 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
     }
 
     /**
-     * <p>Performs the authentication using the provided {@link Credential}.</p>
+     * <p>Performs the authentication using the provided {@link Credential}. The credential is authenticated by the first
+     * configured mechanism supporting it.</p>
      *
      * @param subject
      * @return
@@ -168,17 +280,14 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
         AuthenticationResult result = null;
 
         if (doPreAuthentication(subject)) {
-            String[] mechanisms = this.authenticationProvider.getSupportedMechanisms();
-
-            for (String mechanismName : mechanisms) {
-                AuthenticationMechanism mechanism = this.authenticationProvider.getMechanism(mechanismName);
-
-                if (mechanism.supports(credential)) {
-                    try {
-                        result = mechanism.authenticate(credential);
-                    } catch (AuthenticationException e) {
-                        throw PicketBoxMessages.MESSAGES.authenticationFailed(e);
-                    }
+            // only the first mechanism supporting the credential is used
+            AuthenticationMechanism mechanism = this.authenticationProvider.getMechanism(credential);
+
+            if (mechanism != null) {
+                try {
+                    result = mechanism.authenticate(credential);
+                } catch (AuthenticationException e) {
+                    throw PicketBoxMessages.MESSAGES.authenticationFailed(e);
                 }
             }
         }
@@ -206,6 +315,10 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
 
         UserContext populatedUserContext = this.subjectPopulator.getIdentity(subject);
 
+        if (session != null && getRevalidationInterval() > 0) {
+            recordValidation(subject, session);
+        }
+
         getEventManager().raiseEvent(new UserAuthenticatedEvent(subject));
 
         return populatedUserContext;
@@ -221,6 +334,79 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
     }
 
 
+    /**
+     * <p>
+     * Restores the {@link UserContext} kept by the given session if its user was validated within the revalidation
+     * interval.
+     * </p>
+     *
+     * @param session
+     * @return the restored user or null if the user must be authenticated again.
+     */
+    private UserContext restoreUserContext(PicketBoxSession session) {
+        long revalidationInterval = getRevalidationInterval();
+
+        if (revalidationInterval <= 0) {
+            return null;
+        }
+
+        UserContext sessionUserContext = session.getUserContext();
+
+        // sessions written to the store before the user was populated do not have its informations
+        if (sessionUserContext == null || !sessionUserContext.isAuthenticated() || sessionUserContext.getUser() == null) {
+            return null;
+        }
+
+        Object validationTime;
+
+        try {
+            validationTime = session.getAttribute(VALIDATION_TIME_ATTRIBUTE);
+        } catch (PicketBoxSessionException e) {
+            // invalidated concurrently by another thread
+            return null;
+        }
+
+        if (!(validationTime instanceof Long) || System.currentTimeMillis() - (Long) validationTime >= revalidationInterval) {
+            return null;
+        }
+
+        UserContext restoredUserContext = new UserContext(sessionUserContext.getAuthenticationResult());
+
+        restoredUserContext.setUser(sessionUserContext.getUser());
+        restoredUserContext.setRoles(sessionUserContext.getRoles());
+        restoredUserContext.setSession(session);
+
+        return restoredUserContext;
+    }
+
+    /**
+     * <p>
+     * Stores the informations of a validated user in its session, so the user can be restored from the session until the
+     * revalidation interval elapses.
+     * </p>
+     *
+     * @param subject
+     * @param session
+     */
+    private void recordValidation(UserContext subject, PicketBoxSession session) {
+        UserContext sessionUserContext = session.getUserContext();
+
+        if (sessionUserContext != null && sessionUserContext != subject) {
+            sessionUserContext.setUser(subject.getUser());
+            sessionUserContext.setRoles(subject.getRoles());
+        }
+
+        try {
+            session.setAttribute(VALIDATION_TIME_ATTRIBUTE, System.currentTimeMillis());
+        } catch (PicketBoxSessionException e) {
+            // invalidated concurrently by another thread, the user will not be restored from it
+        }
+    }
+
+    private long getRevalidationInterval() {
+        return this.configuration.getSessionManager().getRevalidationInterval();
+    }
+
     /**
      * <p>Tries to restore the session associated with the given {@link UserContext}.</p>
      *
@@ -279,13 +465,27 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
     protected void doStart() {
         this.eventManager = this.configuration.getEventManager().getEventManager();
 
+        // asynchronous event managers dispatch events in their own threads
+        if (this.eventManager instanceof PicketBoxLifecycle && !((PicketBoxLifecycle) this.eventManager).started()) {
+            ((PicketBoxLifecycle) this.eventManager).start();
+        }
+
         if (this.configuration != null) {
             this.authenticationProvider = new PicketBoxAuthenticationProvider(this, this.configuration);
 
+            AuthenticationCache authenticationCache = this.configuration.getAuthentication().getCache();
+
+            // cached results must be discarded when their users log out
+            if (authenticationCache != null) {
+                this.eventManager.addHandler(authenticationCache);
+            }
+
             if (!this.configuration.getAuthorization().getManagers().isEmpty()) {
                 this.authorizationManager = this.configuration.getAuthorization().getManagers().get(0);
             }
 
+            this.entitlementsManager = this.configuration.getAuthorization().getEntitlementsManager();
+
             this.identityManager = new DefaultIdentityManager(this.configuration.getIdentityManager()
                     .getIdentityManagerConfiguration().getIdentityStore());
 
@@ -295,6 +495,15 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
                 this.subjectPopulator = new DefaultUserContextPopulator(this.identityManager);
             }
 
+            GlobalIdentityManagerConfiguration identityManagerConfiguration = this.configuration.getIdentityManager();
+
+            if (identityManagerConfiguration.isUserPopulatorCached()
+                    && !(this.subjectPopulator instanceof CachingUserContextPopulator)) {
+                this.subjectPopulator = new CachingUserContextPopulator(this.subjectPopulator,
+                        identityManagerConfiguration.getUserPopulatorCacheSize(),
+                        identityManagerConfiguration.getUserPopulatorCacheTimeToLive(), TimeUnit.MILLISECONDS);
+            }
+
             this.sessionManager = this.configuration.getSessionManager().getManager();
 
             if (this.sessionManager == null && this.configuration.getSessionManager().getStore() != null) {
@@ -321,6 +530,10 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
         if (this.authorizationManager != null) {
             this.authorizationManager.start();
         }
+
+        if (this.entitlementsManager instanceof PicketBoxLifecycle) {
+            ((PicketBoxLifecycle) this.entitlementsManager).start();
+        }
     }
 
     protected void doConfigure() {
@@ -338,9 +551,26 @@ public abstract class AbstractPicketBoxManager extends AbstractPicketBoxLifeCycl
             this.authorizationManager.stop();
         }
 
+        if (this.entitlementsManager instanceof PicketBoxLifecycle) {
+            ((PicketBoxLifecycle) this.entitlementsManager).stop();
+        }
+
         if (this.sessionManager != null) {
             this.sessionManager.stop();
         }
+
+        if (this.configuration != null) {
+            AuthenticationCache authenticationCache = this.configuration.getAuthentication().getCache();
+
+            if (authenticationCache != null) {
+                this.eventManager.removeHandler(authenticationCache);
+                authenticationCache.clear();
+            }
+        }
+
+        if (this.eventManager instanceof PicketBoxLifecycle && ((PicketBoxLifecycle) this.eventManager).started()) {
+            ((PicketBoxLifecycle) this.eventManager).stop();
+        }
     }
 
     /* (non-Javadoc)
@@ -80,4 +80,32 @@ public interface PicketBoxLogger extends BasicLogger {
     @Message(id = 509, value = "ALL RESOURCES WILL BE PROTECTED. MAYBE YOU DID NOT DEFINE WHICH RESOURCES SHOULD BE PROTECTED.")
     void allResourcesWillBeProteced();
 
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 510, value = "Failed to expire session %s")
+    void errorExpiringSession(Object sessionId, @Cause Throwable throwable);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 511, value = "Discarding corrupted or incomplete session journal record in %s at offset %d")
+    void corruptedJournalRecord(String fileName, long offset);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 512, value = "Failed to write the session journal %s")
+    void errorWritingJournal(String fileName, @Cause Throwable throwable);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 513, value = "Failed to write session %s to the session store")
+    void errorWritingBehindSession(Object sessionId, @Cause Throwable throwable);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 514, value = "Failed to dispatch event %s to handler %s")
+    void errorDispatchingEvent(Object event, Object handler, @Cause Throwable throwable);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 515, value = "Failed to refresh the cached user informations of %s")
+    void errorRefreshingUserContext(String principalName, @Cause Throwable throwable);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 516, value = "Failed to reload the XACML policies from %s, the current policies are kept")
+    void errorReloadingXACMLPolicies(String directory, @Cause Throwable throwable);
+
 }
\ No newline at end of file
@@ -22,6 +22,10 @@
 
 package org.picketbox.core;
 
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.picketbox.core.authorization.EntitlementsManager.Entitlement;
 import org.picketbox.core.authorization.Resource;
 import org.picketbox.core.config.PicketBoxConfiguration;
 import org.picketbox.core.event.PicketBoxEventManager;
@@ -61,6 +65,42 @@ public interface PicketBoxManager extends PicketBoxLifecycle {
      */
     boolean authorize(UserContext subject, Resource resource);
 
+    /**
+     * <p>
+     * Checks if the specified {@link UserContext} is authorized to access each of the specified resources. Batches are
+     * authorized with a single call when the configured manager is a
+     * {@link org.picketbox.core.authorization.BatchAuthorizationManager}.
+     * </p>
+     *
+     * @param subject
+     * @param resources
+     * @return a {@link BitSet} with the bit of each authorized resource set, in the iteration order of the given resources.
+     */
+    BitSet authorizeAll(UserContext subject, Collection<? extends Resource> resources);
+
+    /**
+     * <p>
+     * Returns the entitlements of the specified {@link UserContext} on the specified {@link Resource}.
+     * </p>
+     *
+     * @param subject
+     * @param resource
+     * @return the entitlements, empty if the user is not authenticated or no entitlements manager is configured.
+     */
+    Entitlement[] entitlements(UserContext subject, Resource resource);
+
+    /**
+     * <p>
+     * Returns the entitlements of the specified {@link UserContext} on each of the specified resources. The user is evaluated
+     * only once when the configured manager is a {@link org.picketbox.core.authorization.BatchEntitlementsManager}.
+     * </p>
+     *
+     * @param subject
+     * @param resources
+     * @return the entitlements of each resource, in the iteration order of the given resources.
+     */
+    Entitlement[][] entitlements(UserContext subject, Collection<? extends Resource> resources);
+
     /**
      * <p>
      * Logout the specified {@link UserContext}.
@@ -178,4 +178,7 @@ public interface PicketBoxMessages {
 
     @Message(id = 53, value = "Unexpected credential type. Expected %s got %s.")
     RuntimeException unexpectedCredentialType(Credential credential, Class<? extends Credential> class1);
-}
\ No newline at end of file
+
+    @Message(id = 54, value = "Unable to write %s pending sessions to the session store.")
+    IllegalStateException unableToWritePendingSessions(int count, @Cause Throwable throwable);
+}
@@ -29,12 +29,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import javax.security.auth.Subject;
 
 import org.picketbox.core.authentication.AuthenticationResult;
 import org.picketbox.core.authentication.AuthenticationStatus;
 import org.picketbox.core.authentication.credential.TrustedUsernameCredential;
+import org.picketbox.core.authorization.RoleIndex;
+import org.picketbox.core.authorization.RoleSet;
 import org.picketbox.core.exceptions.PicketBoxSessionException;
 import org.picketbox.core.session.PicketBoxSession;
 import org.picketbox.core.session.SessionId;
@@ -72,6 +75,12 @@ public class UserContext implements Serializable {
 
     private AuthenticationResult authenticationResult;
 
+    // the roles indexed by the last RoleIndex used, recomputed when the roles change
+    private transient volatile RoleSet roleSet;
+
+    // canonical form of the role names, computed on first use
+    private transient volatile String roleFingerprint;
+
     // TODO: how to deal with groups/nested groups etc
 
     public UserContext() {
@@ -89,6 +98,18 @@ public class UserContext implements Serializable {
         this.credential = credential;
     }
 
+    /**
+     * <p>
+     * Creates an instance for a previous authentication. Used when restoring a {@link UserContext} from its serialized form.
+     * Not part of the public API, the authentication result is only set by the {@link PicketBoxManager}.
+     * </p>
+     *
+     * @param authenticationResult
+     */
+    UserContext(AuthenticationResult authenticationResult) {
+        this.authenticationResult = authenticationResult;
+    }
+
     /**
      * get the user
      *
@@ -202,6 +223,8 @@ public class UserContext implements Serializable {
         this.contextData.clear();
         this.principal = null;
         this.roles = null;
+        this.roleSet = null;
+        this.roleFingerprint = null;
         this.groups = null;
         this.subject = null;
         this.user = null;
@@ -252,6 +275,8 @@ public class UserContext implements Serializable {
 
     public void setRoles(Collection<Role> roles) {
         this.roles = roles;
+        this.roleSet = null;
+        this.roleFingerprint = null;
     }
 
     @SuppressWarnings("unchecked")
@@ -263,6 +288,52 @@ public class UserContext implements Serializable {
         return Collections.unmodifiableCollection(this.roles);
     }
 
+    /**
+     * <p>
+     * Returns the roles of this subject indexed by the given {@link RoleIndex}. The set is computed once and reused until
+     * the roles are set again or a different index is used.
+     * </p>
+     *
+     * @param index
+     * @return
+     */
+    public RoleSet getRoleSet(RoleIndex index) {
+        RoleSet currentRoleSet = this.roleSet;
+
+        if (currentRoleSet == null || currentRoleSet.getIndex() != index) {
+            currentRoleSet = index.createRoleSet(getRoles());
+            this.roleSet = currentRoleSet;
+        }
+
+        return currentRoleSet;
+    }
+
+    /**
+     * <p>
+     * Returns a canonical representation of the role names of this subject. Subjects with the same role names, regardless
+     * of their order or duplicates, have equal fingerprints. Used to cache decisions that only depend on the roles.
+     * </p>
+     *
+     * @return
+     */
+    public String getRoleFingerprint() {
+        String fingerprint = this.roleFingerprint;
+
+        if (fingerprint == null) {
+            StringBuilder builder = new StringBuilder();
+
+            // names are length prefixed, so no separator can be confused with a name
+            for (String roleName : new TreeSet<String>(getRoleNames())) {
+                builder.append(roleName.length()).append(':').append(roleName);
+            }
+
+            fingerprint = builder.toString();
+            this.roleFingerprint = fingerprint;
+        }
+
+        return fingerprint;
+    }
+
     protected void setAuthenticationResult(AuthenticationResult result) {
         this.authenticationResult = result;
     }
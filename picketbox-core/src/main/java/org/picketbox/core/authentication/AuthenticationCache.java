@@ -0,0 +1,393 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authentication;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.Principal;
+import java.security.SecureRandom;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.picketbox.core.Credential;
+import org.picketbox.core.authentication.credential.CertificateCredential;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.cache.BoundedCache;
+import org.picketbox.core.cache.EvictionPolicyType;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+import org.picketbox.core.event.SynchronousEventHandler;
+import org.picketbox.core.logout.UserLoggedOutEvent;
+import org.picketbox.core.logout.UserLoggedOutEventHandler;
+
+/**
+ * <p>
+ * Caches the results of authentications, so clients sending the same credential on every request are not validated against
+ * the identity store every time.
+ * </p>
+ * <p>
+ * Entries are keyed by a HMAC-SHA256 of the credential computed with a random key generated for each cache instance, so
+ * credentials are never kept in plain text and keys can not be precomputed. Only {@link UsernamePasswordCredential} and
+ * {@link CertificateCredential} instances are cached. Credentials that change on every request, like one time passwords and
+ * digests, are always validated.
+ * </p>
+ * <p>
+ * Successful results are cached for the time to live. Failed results are cached for the usually shorter negative time to
+ * live. The entries of a user are discarded when the user logs out, since the cache is also a synchronous
+ * {@link UserLoggedOutEventHandler}, or when {@link #invalidate(String)} is called, for example after a password change.
+ * </p>
+ */
+public class AuthenticationCache implements UserLoggedOutEventHandler, SynchronousEventHandler {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    public static final long DEFAULT_TIME_TO_LIVE = 60000;
+    public static final long DEFAULT_NEGATIVE_TIME_TO_LIVE = 5000;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final BoundedCache<Key, CachedResult> results;
+    private final long timeToLive;
+    private final long negativeTimeToLive;
+    private final ConcurrentMap<String, Long> invalidations = new ConcurrentHashMap<String, Long>();
+    private final ThreadLocal<Mac> mac;
+
+    public AuthenticationCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE, DEFAULT_NEGATIVE_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maximumSize the maximum number of cached results.
+     * @param timeToLive the time after which a successful result expires.
+     * @param negativeTimeToLive the time after which a failed result expires. Values less or equal than zero disable the
+     *        caching of failed results.
+     * @param unit the {@link TimeUnit} of the times to live.
+     */
+    public AuthenticationCache(int maximumSize, long timeToLive, long negativeTimeToLive, TimeUnit unit) {
+        this(maximumSize, timeToLive, negativeTimeToLive, unit, EvictionPolicyType.LRU);
+    }
+
+    /**
+     * @param maximumSize the maximum number of cached results.
+     * @param timeToLive the time after which a successful result expires.
+     * @param negativeTimeToLive the time after which a failed result expires. Values less or equal than zero disable the
+     *        caching of failed results.
+     * @param unit the {@link TimeUnit} of the times to live.
+     * @param evictionPolicy the policy used to select the results to be evicted.
+     */
+    public AuthenticationCache(int maximumSize, long timeToLive, long negativeTimeToLive, TimeUnit unit,
+            EvictionPolicyType evictionPolicy) {
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live must be greater than zero: " + timeToLive);
+        }
+
+        this.results = new BoundedCache<Key, CachedResult>(maximumSize, timeToLive, unit, evictionPolicy);
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.negativeTimeToLive = negativeTimeToLive > 0 ? unit.toNanos(negativeTimeToLive) : 0;
+
+        final byte[] secret = new byte[32];
+
+        new SecureRandom().nextBytes(secret);
+
+        this.mac = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    Mac mac = Mac.getInstance(MAC_ALGORITHM);
+
+                    mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Unable to create " + MAC_ALGORITHM + " instance.", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Creates the key used to look up and to cache the result of the given credential.
+     * </p>
+     *
+     * @param credential
+     * @return the key or null if the credential must not be cached.
+     */
+    public Key createKey(Credential credential) {
+        Mac mac = this.mac.get();
+
+        // subclasses, like OTPCredential, carry additional data and are not cached
+        if (credential.getClass() == UsernamePasswordCredential.class) {
+            String password = ((UsernamePasswordCredential) credential).getPassword();
+
+            if (password == null) {
+                return null;
+            }
+
+            update(mac, credential.getClass().getName());
+            update(mac, credential.getUserName());
+            update(mac, password);
+        } else if (credential.getClass() == CertificateCredential.class) {
+            X509Certificate[] certificates = ((CertificateCredential) credential).getCertificates();
+
+            if (certificates == null || certificates.length == 0) {
+                return null;
+            }
+
+            update(mac, credential.getClass().getName());
+            update(mac, credential.getUserName());
+
+            try {
+                for (X509Certificate certificate : certificates) {
+                    mac.update(certificate.getEncoded());
+                }
+            } catch (CertificateEncodingException e) {
+                mac.reset();
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        return new Key(mac.doFinal(), credential.getUserName(), System.nanoTime());
+    }
+
+    /**
+     * <p>
+     * Returns a copy of the result cached for the given key.
+     * </p>
+     *
+     * @param key
+     * @return the cached result or null if no valid result is cached.
+     */
+    public AuthenticationResult get(Key key) {
+        CachedResult cached = this.results.get(key);
+
+        if (cached == null) {
+            return null;
+        }
+
+        if (isInvalidated(cached)) {
+            this.results.remove(key);
+            return null;
+        }
+
+        return cached.toResult();
+    }
+
+    /**
+     * <p>
+     * Caches the given result. Only successful and failed results are cached. Results of authentications started before the
+     * user was invalidated are discarded.
+     * </p>
+     *
+     * @param key the key created before the authentication started.
+     * @param result
+     */
+    public void put(Key key, AuthenticationResult result) {
+        AuthenticationStatus status = result.getStatus();
+        long entryTimeToLive;
+
+        if (status == AuthenticationStatus.SUCCESS) {
+            entryTimeToLive = this.timeToLive;
+        } else if (status == AuthenticationStatus.FAILED || status == AuthenticationStatus.INVALID_CREDENTIALS) {
+            entryTimeToLive = this.negativeTimeToLive;
+        } else {
+            return;
+        }
+
+        if (entryTimeToLive <= 0) {
+            return;
+        }
+
+        CachedResult cached = new CachedResult(key, result);
+
+        if (!isInvalidated(cached)) {
+            this.results.put(key, cached, entryTimeToLive, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * <p>
+     * Discards the results cached for the given user. Results of authentications in progress are not cached.
+     * </p>
+     *
+     * @param userName the user name of the credential or the name of the authenticated principal.
+     */
+    public void invalidate(String userName) {
+        if (userName == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        // invalidations older than the time to live only concern expired entries
+        for (Iterator<Entry<String, Long>> iterator = this.invalidations.entrySet().iterator(); iterator.hasNext();) {
+            if (now - iterator.next().getValue() > this.timeToLive) {
+                iterator.remove();
+            }
+        }
+
+        this.invalidations.put(userName, now);
+    }
+
+    /**
+     * <p>
+     * Discards all cached results.
+     * </p>
+     */
+    public void clear() {
+        this.results.clear();
+        this.invalidations.clear();
+    }
+
+    /**
+     * @return the number of cached results.
+     */
+    public int size() {
+        return this.results.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.event.PicketBoxEventHandler#getEventType()
+     */
+    @Override
+    public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+        return UserLoggedOutEvent.class;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.logout.UserLoggedOutEventHandler#onLogOut(org.picketbox.core.logout.UserLoggedOutEvent)
+     */
+    @Override
+    public void onLogOut(UserLoggedOutEvent userLogOutEvent) {
+        Principal principal = userLogOutEvent.getPrincipal();
+
+        if (principal != null) {
+            invalidate(principal.getName());
+        }
+    }
+
+    private boolean isInvalidated(CachedResult cached) {
+        if (this.invalidations.isEmpty()) {
+            return false;
+        }
+
+        return isInvalidated(cached.userName, cached.createdAt) || isInvalidated(cached.principalName, cached.createdAt);
+    }
+
+    private boolean isInvalidated(String userName, long createdAt) {
+        if (userName == null) {
+            return false;
+        }
+
+        Long invalidatedAt = this.invalidations.get(userName);
+
+        return invalidatedAt != null && invalidatedAt - createdAt >= 0;
+    }
+
+    private static void update(Mac mac, String value) {
+        if (value != null) {
+            mac.update(value.getBytes(UTF8));
+        }
+
+        mac.update((byte) 0);
+    }
+
+    /**
+     * <p>
+     * The key of a cached result. Two keys are equal if they were created from equal credentials by the same cache.
+     * </p>
+     */
+    public static final class Key {
+
+        private final byte[] digest;
+        private final int hashCode;
+        private final String userName;
+        private final long createdAt;
+
+        Key(byte[] digest, String userName, long createdAt) {
+            this.digest = digest;
+            this.hashCode = Arrays.hashCode(digest);
+            this.userName = userName;
+            this.createdAt = createdAt;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(this.digest, ((Key) obj).digest);
+        }
+    }
+
+    private static final class CachedResult {
+
+        private final AuthenticationStatus status;
+        private final Principal principal;
+        private final String[] messages;
+        private final String userName;
+        private final String principalName;
+        private final long createdAt;
+
+        CachedResult(Key key, AuthenticationResult result) {
+            List<String> resultMessages = result.getMessages();
+
+            this.status = result.getStatus();
+            this.principal = result.getPrincipal();
+            this.messages = resultMessages.toArray(new String[resultMessages.size()]);
+            this.userName = key.userName;
+            this.principalName = this.principal != null ? this.principal.getName() : null;
+            this.createdAt = key.createdAt;
+        }
+
+        AuthenticationResult toResult() {
+            AuthenticationResult result = new AuthenticationResult(this.status);
+
+            result.setPrincipal(this.principal);
+
+            for (String message : this.messages) {
+                result.addMessage(message);
+            }
+
+            return result;
+        }
+    }
+}
@@ -22,6 +22,7 @@
 
 package org.picketbox.core.authentication;
 
+import org.picketbox.core.Credential;
 
 /**
  * <p>
@@ -62,4 +63,15 @@ public interface AuthenticationProvider {
      */
     AuthenticationMechanism getMechanism(String string);
 
+    /**
+     * <p>
+     * Returns the {@link AuthenticationMechanism} used to authenticate the given {@link Credential}. When more than one
+     * mechanism supports the credential, the first one in the configured order is returned.
+     * </p>
+     *
+     * @param credential
+     * @return the first mechanism supporting the credential, or null if none supports it.
+     */
+    AuthenticationMechanism getMechanism(Credential credential);
+
 }
@@ -26,6 +26,7 @@ import java.util.List;
 
 import org.picketbox.core.Credential;
 import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.authentication.AuthenticationCache;
 import org.picketbox.core.authentication.AuthenticationInfo;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.authentication.AuthenticationResult;
@@ -44,6 +45,7 @@ import org.picketlink.idm.IdentityManager;
 public abstract class AbstractAuthenticationMechanism implements AuthenticationMechanism {
 
     private PicketBoxManager picketBoxManager;
+    private AuthenticationCache authenticationCache;
 
     public AbstractAuthenticationMechanism() {
     }
@@ -67,6 +69,21 @@ public abstract class AbstractAuthenticationMechanism implements AuthenticationM
     }
 
     protected AuthenticationResult performAuthentication(Credential credential) throws AuthenticationException {
+        AuthenticationCache cache = this.authenticationCache;
+        AuthenticationCache.Key cacheKey = null;
+
+        if (cache != null) {
+            cacheKey = cache.createKey(credential);
+
+            if (cacheKey != null) {
+                AuthenticationResult cachedResult = cache.get(cacheKey);
+
+                if (cachedResult != null) {
+                    return cachedResult;
+                }
+            }
+        }
+
         Principal principal = null;
         AuthenticationResult result = new AuthenticationResult();
 
@@ -86,6 +103,10 @@ public abstract class AbstractAuthenticationMechanism implements AuthenticationM
             }
         }
 
+        if (cacheKey != null) {
+            cache.put(cacheKey, result);
+        }
+
         return result;
     }
 
@@ -148,6 +169,21 @@ public abstract class AbstractAuthenticationMechanism implements AuthenticationM
         return this.picketBoxManager;
     }
 
+    /**
+     * <p>
+     * Sets the {@link AuthenticationCache} consulted before validating a credential. Null disables the caching.
+     * </p>
+     *
+     * @param authenticationCache
+     */
+    public void setAuthenticationCache(AuthenticationCache authenticationCache) {
+        this.authenticationCache = authenticationCache;
+    }
+
+    public AuthenticationCache getAuthenticationCache() {
+        return this.authenticationCache;
+    }
+
     /**
      * <p>
      * Returns the {@link IdentityManager} instance that can be used to retrieve informations from the identity store.
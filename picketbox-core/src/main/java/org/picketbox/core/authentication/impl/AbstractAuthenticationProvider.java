@@ -22,9 +22,14 @@
 package org.picketbox.core.authentication.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.picketbox.core.Credential;
 import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.authentication.AuthenticationCache;
+import org.picketbox.core.authentication.AuthenticationInfo;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.authentication.AuthenticationProvider;
 import org.picketbox.core.config.PicketBoxConfiguration;
@@ -33,6 +38,13 @@ import org.picketbox.core.config.PicketBoxConfiguration;
  * <p>
  * Base class for {@link AuthenticationProvider} implementations.
  * </p>
+ * <p>
+ * Mechanisms are indexed when the provider is created by the {@link Credential} types declared in their
+ * {@link AuthenticationInfo}. The index only narrows the mechanisms checked for a credential: each candidate is still asked
+ * with {@link AuthenticationMechanism#supports(Credential)}, in the configured order, and the first one supporting the
+ * credential is used. Mechanisms overriding {@link AuthenticationMechanism#supports(Credential)} may accept any credential,
+ * so they are candidates for every type.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
@@ -40,11 +52,40 @@ import org.picketbox.core.config.PicketBoxConfiguration;
 public abstract class AbstractAuthenticationProvider implements AuthenticationProvider {
 
     private final List<AuthenticationMechanism> mechanisms = new ArrayList<AuthenticationMechanism>();
+    private final Map<Class<?>, AuthenticationMechanism[]> candidatesByCredentialType =
+            new HashMap<Class<?>, AuthenticationMechanism[]>();
+    private final AuthenticationMechanism[] customMechanisms;
     private PicketBoxManager picketBoxManager;
 
     public AbstractAuthenticationProvider(PicketBoxManager picketBoxManager, PicketBoxConfiguration configuration) {
         this.picketBoxManager = picketBoxManager;
         this.mechanisms.addAll(configuration.getAuthentication().getMechanisms());
+
+        AuthenticationCache authenticationCache = configuration.getAuthentication().getCache();
+
+        for (AuthenticationMechanism mechanism : this.mechanisms) {
+            if (mechanism instanceof AbstractAuthenticationMechanism) {
+                AbstractAuthenticationMechanism abstractMechanism = (AbstractAuthenticationMechanism) mechanism;
+
+                abstractMechanism.setPicketBoxManager(this.picketBoxManager);
+
+                if (authenticationCache != null) {
+                    abstractMechanism.setAuthenticationCache(authenticationCache);
+                }
+            }
+        }
+
+        this.customMechanisms = candidates(null);
+
+        for (AuthenticationMechanism mechanism : this.mechanisms) {
+            for (AuthenticationInfo info : mechanism.getAuthenticationInfo()) {
+                Class<? extends Credential> credentialType = info.getImplementation();
+
+                if (!this.candidatesByCredentialType.containsKey(credentialType)) {
+                    this.candidatesByCredentialType.put(credentialType, candidates(credentialType));
+                }
+            }
+        }
     }
 
     /*
@@ -85,11 +126,6 @@ public abstract class AbstractAuthenticationProvider implements AuthenticationPr
      */
     public AuthenticationMechanism getMechanism(String mechanismName) {
         for (AuthenticationMechanism currentMechanism : this.mechanisms) {
-
-            if (currentMechanism instanceof AbstractAuthenticationMechanism) {
-                ((AbstractAuthenticationMechanism) currentMechanism).setPicketBoxManager(this.picketBoxManager);
-            }
-
             if (currentMechanism.getClass().getName().equals(mechanismName)) {
                 return currentMechanism;
             }
@@ -98,4 +134,75 @@ public abstract class AbstractAuthenticationProvider implements AuthenticationPr
         return null;
     }
 
-}
\ No newline at end of file
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authentication.AuthenticationProvider#getMechanism(org.picketbox.core.Credential)
+     */
+    @Override
+    public AuthenticationMechanism getMechanism(Credential credential) {
+        AuthenticationMechanism[] candidates = this.candidatesByCredentialType.get(credential.getClass());
+
+        if (candidates == null) {
+            candidates = this.customMechanisms;
+        }
+
+        for (AuthenticationMechanism mechanism : candidates) {
+            if (mechanism.supports(credential)) {
+                return mechanism;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>
+     * Returns, in the configured order, the mechanisms that may support credentials of the given type: the ones declaring
+     * it and the ones overriding {@link AuthenticationMechanism#supports(Credential)}.
+     * </p>
+     *
+     * @param credentialType the credential type, or null to only return the mechanisms overriding the default check.
+     * @return
+     */
+    private AuthenticationMechanism[] candidates(Class<?> credentialType) {
+        List<AuthenticationMechanism> candidates = new ArrayList<AuthenticationMechanism>();
+
+        for (AuthenticationMechanism mechanism : this.mechanisms) {
+            if (!hasDefaultSupports(mechanism) || declares(mechanism, credentialType)) {
+                candidates.add(mechanism);
+            }
+        }
+
+        return candidates.toArray(new AuthenticationMechanism[candidates.size()]);
+    }
+
+    private static boolean declares(AuthenticationMechanism mechanism, Class<?> credentialType) {
+        for (AuthenticationInfo info : mechanism.getAuthenticationInfo()) {
+            if (info.getImplementation().equals(credentialType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>
+     * Checks if the given mechanism uses {@link AbstractAuthenticationMechanism#supports(Credential)}, which only accepts the
+     * declared credential types.
+     * </p>
+     *
+     * @param mechanism
+     * @return
+     */
+    private static boolean hasDefaultSupports(AuthenticationMechanism mechanism) {
+        try {
+            return mechanism.getClass().getMethod("supports", Credential.class).getDeclaringClass()
+                    == AbstractAuthenticationMechanism.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+}
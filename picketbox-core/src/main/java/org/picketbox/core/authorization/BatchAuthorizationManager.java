@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.picketbox.core.UserContext;
+import org.picketbox.core.exceptions.AuthorizationException;
+
+/**
+ * <p>
+ * An {@link AuthorizationManager} able to authorize many resources with one call, sharing the work that only depends on the
+ * subject, for example resolving its roles, across all the resources. Managers that do not implement this interface are
+ * called once for each resource.
+ * </p>
+ */
+public interface BatchAuthorizationManager extends AuthorizationManager {
+
+    /**
+     * Batch enforcement API
+     *
+     * @param resources resources for which we need to check access decisions
+     * @param subject subject (user/process) that is performing an action on the resources
+     * @return a {@link BitSet} with the bit of each authorized resource set. Bits are numbered in the iteration order of the
+     *         given resources.
+     * @throws AuthorizationException if some problem occurs during the authorization process.
+     */
+    BitSet authorizeAll(Collection<? extends Resource> resources, UserContext subject) throws AuthorizationException;
+}
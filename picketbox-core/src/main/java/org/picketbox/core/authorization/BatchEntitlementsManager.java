@@ -0,0 +1,47 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization;
+
+import java.util.Collection;
+
+import org.picketbox.core.UserContext;
+
+/**
+ * <p>
+ * An {@link EntitlementsManager} able to return the entitlements on many resources with one call, evaluating the subject,
+ * for example resolving its roles, only once. Managers that do not implement this interface are called once for each
+ * resource.
+ * </p>
+ */
+public interface BatchEntitlementsManager extends EntitlementsManager {
+
+    /**
+     * Batch entitlement API
+     *
+     * @param resources resources for which we need to check entitlements
+     * @param subject subject (user/process) that is performing an action on the resources
+     * @return the entitlements of each resource, in the iteration order of the given resources. Resources given more than
+     *         once get an element for each occurrence.
+     */
+    Entitlement[][] entitlements(Collection<? extends Resource> resources, UserContext subject);
+}
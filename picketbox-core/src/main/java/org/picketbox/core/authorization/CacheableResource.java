@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization;
+
+/**
+ * <p>
+ * A {@link Resource} whose authorization decisions can be cached. Resources that do not implement this interface are
+ * always evaluated by the {@link AuthorizationManager}.
+ * </p>
+ */
+public interface CacheableResource extends Resource {
+
+    /**
+     * <p>
+     * Returns the key identifying this resource in a decision cache. Resources with equal keys must always get the same
+     * decision for the same roles. The key must implement equals and hashCode.
+     * </p>
+     *
+     * @return the key or null if the decision must not be cached.
+     */
+    Object getCacheKey();
+}
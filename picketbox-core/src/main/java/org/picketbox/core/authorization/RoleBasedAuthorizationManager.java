@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization;
+
+/**
+ * <p>
+ * Marks the {@link AuthorizationManager} implementations whose decisions depend exclusively on the roles of the user and on
+ * the resource. Only their decisions can be shared by users having the same roles, so only these managers are wrapped by
+ * the decision cache of the configuration, see
+ * {@link org.picketbox.core.authorization.impl.DecisionCachingAuthorizationManager}.
+ * </p>
+ * <p>
+ * The marker is not inherited. Subclasses may decide on more than the roles, so a class is only treated as role based when it
+ * declares this interface itself.
+ * </p>
+ */
+public interface RoleBasedAuthorizationManager extends AuthorizationManager {
+}
@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.picketbox.core.PicketBoxMessages;
+import org.picketlink.idm.model.Role;
+
+/**
+ * <p>
+ * Interns a fixed set of role names to integer identifiers, so role checks can be performed as {@link BitSet} operations
+ * instead of string comparisons.
+ * </p>
+ * <p>
+ * Indexes are immutable and built when an {@link AuthorizationManager} is configured. Roles not known by the index are
+ * ignored when building a {@link RoleSet}, since no check performed against the index can require them.
+ * </p>
+ */
+public class RoleIndex {
+
+    private final Map<String, Integer> ids;
+    private final List<String> names;
+
+    public RoleIndex(Collection<String> roleNames) {
+        if (roleNames == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("roleNames");
+        }
+
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        List<String> names = new ArrayList<String>();
+
+        for (String roleName : roleNames) {
+            if (roleName != null && !ids.containsKey(roleName)) {
+                ids.put(roleName, names.size());
+                names.add(roleName);
+            }
+        }
+
+        this.ids = ids;
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @param roleName
+     * @return the identifier of the given role or -1 if the role is not known by this index.
+     */
+    public int getId(String roleName) {
+        Integer id = this.ids.get(roleName);
+
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id
+     * @return the name of the role with the given identifier.
+     */
+    public String getName(int id) {
+        return this.names.get(id);
+    }
+
+    /**
+     * @return the names of the indexed roles, ordered by identifier.
+     */
+    public List<String> getNames() {
+        return this.names;
+    }
+
+    /**
+     * @return the number of indexed roles.
+     */
+    public int size() {
+        return this.names.size();
+    }
+
+    /**
+     * <p>
+     * Returns a {@link BitSet} with the identifiers of the given roles. Roles not known by this index are ignored.
+     * </p>
+     *
+     * @param roleNames
+     * @return
+     */
+    public BitSet toBitSet(Collection<String> roleNames) {
+        BitSet bits = new BitSet(size());
+
+        for (String roleName : roleNames) {
+            int id = getId(roleName);
+
+            if (id >= 0) {
+                bits.set(id);
+            }
+        }
+
+        return bits;
+    }
+
+    /**
+     * <p>
+     * Creates the {@link RoleSet} of the given roles.
+     * </p>
+     *
+     * @param roles
+     * @return
+     */
+    public RoleSet createRoleSet(Collection<Role> roles) {
+        BitSet bits = new BitSet(size());
+
+        for (Role role : roles) {
+            int id = getId(role.getName());
+
+            if (id >= 0) {
+                bits.set(id);
+            }
+        }
+
+        return new RoleSet(this, bits);
+    }
+}
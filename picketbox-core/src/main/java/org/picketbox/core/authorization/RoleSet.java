@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization;
+
+import java.util.BitSet;
+
+/**
+ * <p>
+ * The roles of an user, represented by their identifiers in a {@link RoleIndex}. Instances are immutable and are created
+ * by {@link RoleIndex#createRoleSet(java.util.Collection)}.
+ * </p>
+ */
+public final class RoleSet {
+
+    private final RoleIndex index;
+    private final BitSet roles;
+
+    RoleSet(RoleIndex index, BitSet roles) {
+        this.index = index;
+        this.roles = roles;
+    }
+
+    /**
+     * @return the index used to create this set.
+     */
+    public RoleIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * @param id the identifier of a role in the index.
+     * @return true if this set contains the given role.
+     */
+    public boolean contains(int id) {
+        return id >= 0 && this.roles.get(id);
+    }
+
+    /**
+     * @param roles the identifiers of some roles in the index.
+     * @return true if this set contains at least one of the given roles.
+     */
+    public boolean containsAny(BitSet roles) {
+        return this.roles.intersects(roles);
+    }
+
+    /**
+     * @param roles the identifiers of some roles in the index.
+     * @return true if this set contains all the given roles.
+     */
+    public boolean containsAll(BitSet roles) {
+        for (int id = roles.nextSetBit(0); id >= 0; id = roles.nextSetBit(id + 1)) {
+            if (!this.roles.get(id)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if this set does not contain any indexed role.
+     */
+    public boolean isEmpty() {
+        return this.roles.isEmpty();
+    }
+
+    /**
+     * @return the number of indexed roles in this set.
+     */
+    public int size() {
+        return this.roles.cardinality();
+    }
+}
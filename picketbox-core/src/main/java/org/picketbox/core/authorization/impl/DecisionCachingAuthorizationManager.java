@@ -0,0 +1,321 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.BatchAuthorizationManager;
+import org.picketbox.core.authorization.CacheableResource;
+import org.picketbox.core.authorization.PolicyChangeListener;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.xacml.XACMLAuthorizationManager;
+import org.picketbox.core.cache.BoundedCache;
+import org.picketbox.core.cache.EvictionPolicyType;
+import org.picketbox.core.exceptions.AuthorizationException;
+
+/**
+ * <p>
+ * An {@link AuthorizationManager} that caches the decisions of another manager.
+ * </p>
+ * <p>
+ * Decisions are keyed by the role names of the user, see {@link UserContext#getRoleFingerprint()}, and by the key of the
+ * resource, see {@link CacheableResource}. Decisions about other resources are never cached. Use this manager only in front of
+ * managers whose decisions depend exclusively on the roles of the user and on the resource.
+ * </p>
+ * <p>
+ * Users whose roles change get a different key, so their previous decisions are never used. When the policies of the
+ * delegate change {@link #invalidateAll()} must be called. This is done automatically for the reloads of a
+ * {@link XACMLAuthorizationManager} delegate.
+ * </p>
+ * <p>
+ * Batches of resources are answered from the cache when possible, the remaining resources are authorized by the delegate
+ * with a single batch call if it is a {@link BatchAuthorizationManager}.
+ * </p>
+ */
+public class DecisionCachingAuthorizationManager implements BatchAuthorizationManager, PolicyChangeListener {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_TIME_TO_LIVE = 300000;
+
+    private final AuthorizationManager delegate;
+    private final BoundedCache<DecisionKey, Boolean> decisions;
+
+    // incremented on every invalidation, decisions taken before an invalidation are not cached
+    private volatile long invalidations;
+
+    public DecisionCachingAuthorizationManager(AuthorizationManager delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param delegate the manager taking the decisions.
+     * @param maximumSize the maximum number of cached decisions.
+     * @param timeToLive the time after which a cached decision expires.
+     * @param unit the {@link TimeUnit} of the time to live.
+     */
+    public DecisionCachingAuthorizationManager(AuthorizationManager delegate, int maximumSize, long timeToLive,
+            TimeUnit unit) {
+        if (delegate == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("delegate");
+        }
+
+        this.delegate = delegate;
+        this.decisions = new BoundedCache<DecisionKey, Boolean>(maximumSize, timeToLive, unit, EvictionPolicyType.LRU);
+
+        if (delegate instanceof XACMLAuthorizationManager) {
+            ((XACMLAuthorizationManager) delegate).addPolicyChangeListener(this);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.AuthorizationManager#authorize(org.picketbox.core.authorization.Resource,
+     * org.picketbox.core.UserContext)
+     */
+    @Override
+    public boolean authorize(Resource resource, UserContext subject) throws AuthorizationException {
+        Object resourceKey = getCacheKey(resource);
+
+        if (resourceKey == null || !subject.isAuthenticated()) {
+            return this.delegate.authorize(resource, subject);
+        }
+
+        DecisionKey key = new DecisionKey(subject.getRoleFingerprint(), resourceKey);
+        Boolean decision = this.decisions.get(key);
+
+        if (decision != null) {
+            return decision;
+        }
+
+        long invalidationsBeforeDecision = this.invalidations;
+        boolean authorized = this.delegate.authorize(resource, subject);
+
+        cache(key, authorized, invalidationsBeforeDecision);
+
+        return authorized;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.BatchAuthorizationManager#authorizeAll(java.util.Collection,
+     * org.picketbox.core.UserContext)
+     */
+    @Override
+    public BitSet authorizeAll(Collection<? extends Resource> resources, UserContext subject) throws AuthorizationException {
+        String roleFingerprint = subject.isAuthenticated() ? subject.getRoleFingerprint() : null;
+        BitSet decisions = new BitSet(resources.size());
+        List<Resource> pendingResources = new ArrayList<Resource>();
+        int[] pendingIndexes = new int[resources.size()];
+        DecisionKey[] pendingKeys = new DecisionKey[resources.size()];
+        int index = 0;
+
+        for (Resource resource : resources) {
+            Object resourceKey = roleFingerprint != null ? getCacheKey(resource) : null;
+            DecisionKey key = null;
+            Boolean decision = null;
+
+            if (resourceKey != null) {
+                key = new DecisionKey(roleFingerprint, resourceKey);
+                decision = this.decisions.get(key);
+            }
+
+            if (decision == null) {
+                pendingIndexes[pendingResources.size()] = index;
+                pendingKeys[pendingResources.size()] = key;
+                pendingResources.add(resource);
+            } else if (decision) {
+                decisions.set(index);
+            }
+
+            index++;
+        }
+
+        if (!pendingResources.isEmpty()) {
+            long invalidationsBeforeDecision = this.invalidations;
+            BitSet pendingDecisions = delegateAll(pendingResources, subject);
+
+            for (int i = 0; i < pendingResources.size(); i++) {
+                boolean authorized = pendingDecisions.get(i);
+
+                if (authorized) {
+                    decisions.set(pendingIndexes[i]);
+                }
+
+                if (pendingKeys[i] != null) {
+                    cache(pendingKeys[i], authorized, invalidationsBeforeDecision);
+                }
+            }
+        }
+
+        return decisions;
+    }
+
+    /**
+     * <p>
+     * Discards all cached decisions. Must be called when the policies of the delegate change.
+     * </p>
+     */
+    public synchronized void invalidateAll() {
+        this.invalidations++;
+        this.decisions.clear();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.PolicyChangeListener#onPolicyChange(org.picketbox.core.authorization.
+     * AuthorizationManager)
+     */
+    @Override
+    public void onPolicyChange(AuthorizationManager authorizationManager) {
+        invalidateAll();
+    }
+
+    /**
+     * @return the manager taking the decisions.
+     */
+    public AuthorizationManager getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * @return the number of decisions answered from the cache.
+     */
+    public long getHitCount() {
+        return this.decisions.getHitCount();
+    }
+
+    /**
+     * @return the number of cacheable decisions taken by the delegate.
+     */
+    public long getMissCount() {
+        return this.decisions.getMissCount();
+    }
+
+    /**
+     * @return the ratio of cacheable decisions answered from the cache.
+     */
+    public double getHitRate() {
+        return this.decisions.getHitRate();
+    }
+
+    public long getEvictionCount() {
+        return this.decisions.getEvictionCount();
+    }
+
+    /**
+     * @return the number of cached decisions.
+     */
+    public int size() {
+        return this.decisions.size();
+    }
+
+    @Override
+    public boolean started() {
+        return this.delegate.started();
+    }
+
+    @Override
+    public void start() {
+        this.delegate.start();
+    }
+
+    @Override
+    public boolean stopped() {
+        return this.delegate.stopped();
+    }
+
+    @Override
+    public void stop() {
+        this.delegate.stop();
+        invalidateAll();
+    }
+
+    private static Object getCacheKey(Resource resource) {
+        return resource instanceof CacheableResource ? ((CacheableResource) resource).getCacheKey() : null;
+    }
+
+    private BitSet delegateAll(List<Resource> resources, UserContext subject) {
+        if (this.delegate instanceof BatchAuthorizationManager) {
+            return ((BatchAuthorizationManager) this.delegate).authorizeAll(resources, subject);
+        }
+
+        BitSet decisions = new BitSet(resources.size());
+
+        for (int i = 0; i < resources.size(); i++) {
+            if (this.delegate.authorize(resources.get(i), subject)) {
+                decisions.set(i);
+            }
+        }
+
+        return decisions;
+    }
+
+    private synchronized void cache(DecisionKey key, boolean authorized, long invalidationsBeforeDecision) {
+        if (this.invalidations == invalidationsBeforeDecision) {
+            this.decisions.put(key, authorized);
+        }
+    }
+
+    private static final class DecisionKey {
+
+        private final String roleFingerprint;
+        private final Object resourceKey;
+        private final int hashCode;
+
+        DecisionKey(String roleFingerprint, Object resourceKey) {
+            this.roleFingerprint = roleFingerprint;
+            this.resourceKey = resourceKey;
+            this.hashCode = 31 * roleFingerprint.hashCode() + resourceKey.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+
+            DecisionKey other = (DecisionKey) obj;
+
+            return this.roleFingerprint.equals(other.roleFingerprint) && this.resourceKey.equals(other.resourceKey);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.ActionEntitlement;
+import org.picketbox.core.authorization.BatchEntitlementsManager;
+import org.picketbox.core.authorization.CacheableResource;
+import org.picketbox.core.authorization.EntitlementsManager;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.cache.BoundedCache;
+import org.picketbox.core.cache.EvictionPolicyType;
+
+/**
+ * <p>
+ * An {@link EntitlementsManager} that grants {@link ActionEntitlement} instances to roles. A user is entitled to the union of
+ * the actions granted to each of its roles.
+ * </p>
+ * <p>
+ * Resources are identified by their {@link CacheableResource#getCacheKey()}. Other resources have no entitlements, unless
+ * {@link #getResourceKey(Resource)} is overridden.
+ * </p>
+ * <p>
+ * The entitlements of a set of roles are computed once, for all the resources, and cached by the role names of the user, see
+ * {@link UserContext#getRoleFingerprint()}. Users whose roles change get a different key, so their previous entitlements are
+ * never used. Granting new actions discards all the cached entitlements.
+ * </p>
+ */
+public class DefaultEntitlementsManager extends AbstractPicketBoxLifeCycle implements BatchEntitlementsManager {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    public static final long DEFAULT_TIME_TO_LIVE = 300000;
+
+    private static final Entitlement[] NO_ENTITLEMENTS = new Entitlement[0];
+
+    private final ConcurrentMap<String, ConcurrentMap<Object, Set<String>>> grants =
+            new ConcurrentHashMap<String, ConcurrentMap<Object, Set<String>>>();
+    private final ConcurrentMap<String, ActionEntitlement> actions = new ConcurrentHashMap<String, ActionEntitlement>();
+    private final BoundedCache<String, Map<Object, Entitlement[]>> entitlements;
+
+    // incremented on every change of the grants, entitlements computed before a change are not cached
+    private volatile long invalidations;
+
+    public DefaultEntitlementsManager() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maximumSize the maximum number of cached role sets.
+     * @param timeToLive the time after which the cached entitlements of a role set expire.
+     * @param unit the {@link TimeUnit} of the time to live.
+     */
+    public DefaultEntitlementsManager(int maximumSize, long timeToLive, TimeUnit unit) {
+        this.entitlements = new BoundedCache<String, Map<Object, Entitlement[]>>(maximumSize, timeToLive, unit,
+                EvictionPolicyType.LRU);
+    }
+
+    /**
+     * <p>
+     * Grants the given actions on a resource to the users having the given role.
+     * </p>
+     *
+     * @param roleName
+     * @param resourceKey the key of the resource, see {@link CacheableResource#getCacheKey()}.
+     * @param actions
+     * @return
+     */
+    public synchronized DefaultEntitlementsManager grant(String roleName, Object resourceKey, String... actions) {
+        if (roleName == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("roleName");
+        }
+
+        if (resourceKey == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("resourceKey");
+        }
+
+        ConcurrentMap<Object, Set<String>> resources = this.grants.get(roleName);
+
+        if (resources == null) {
+            resources = new ConcurrentHashMap<Object, Set<String>>();
+            this.grants.put(roleName, resources);
+        }
+
+        Set<String> grantedActions = resources.get(resourceKey);
+
+        if (grantedActions == null) {
+            grantedActions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            resources.put(resourceKey, grantedActions);
+        }
+
+        for (String action : actions) {
+            if (action == null) {
+                throw PicketBoxMessages.MESSAGES.invalidNullArgument("action");
+            }
+
+            grantedActions.add(action);
+        }
+
+        invalidateAll();
+
+        return this;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.EntitlementsManager#entitlements(org.picketbox.core.authorization.Resource,
+     * org.picketbox.core.UserContext)
+     */
+    @Override
+    public Entitlement[] entitlements(Resource resource, UserContext subject) {
+        checkIfStarted();
+
+        return lookup(getEntitlements(subject), resource);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.BatchEntitlementsManager#entitlements(java.util.Collection,
+     * org.picketbox.core.UserContext)
+     */
+    @Override
+    public Entitlement[][] entitlements(Collection<? extends Resource> resources, UserContext subject) {
+        checkIfStarted();
+
+        Map<Object, Entitlement[]> userEntitlements = getEntitlements(subject);
+        Entitlement[][] result = new Entitlement[resources.size()][];
+        int index = 0;
+
+        for (Resource resource : resources) {
+            result[index++] = lookup(userEntitlements, resource);
+        }
+
+        return result;
+    }
+
+    /**
+     * <p>
+     * Discards all cached entitlements.
+     * </p>
+     */
+    public synchronized void invalidateAll() {
+        this.invalidations++;
+        this.entitlements.clear();
+    }
+
+    /**
+     * @return the number of role sets whose entitlements are cached.
+     */
+    public int size() {
+        return this.entitlements.size();
+    }
+
+    /**
+     * <p>
+     * Returns the key identifying the given resource in the grants.
+     * </p>
+     *
+     * @param resource
+     * @return the key or null if the resource has no entitlements.
+     */
+    protected Object getResourceKey(Resource resource) {
+        return resource instanceof CacheableResource ? ((CacheableResource) resource).getCacheKey() : null;
+    }
+
+    @Override
+    protected void doStart() {
+    }
+
+    @Override
+    protected void doStop() {
+        invalidateAll();
+    }
+
+    private Entitlement[] lookup(Map<Object, Entitlement[]> userEntitlements, Resource resource) {
+        Object resourceKey = getResourceKey(resource);
+
+        if (resourceKey == null) {
+            return NO_ENTITLEMENTS;
+        }
+
+        Entitlement[] resourceEntitlements = userEntitlements.get(resourceKey);
+
+        // cached arrays are shared by all the users with the same roles
+        return resourceEntitlements == null ? NO_ENTITLEMENTS : resourceEntitlements.clone();
+    }
+
+    private Map<Object, Entitlement[]> getEntitlements(UserContext subject) {
+        String roleFingerprint = subject.getRoleFingerprint();
+        Map<Object, Entitlement[]> userEntitlements = this.entitlements.get(roleFingerprint);
+
+        if (userEntitlements == null) {
+            long invalidationsBeforeEvaluation = this.invalidations;
+
+            userEntitlements = evaluate(subject.getRoleNames());
+
+            cache(roleFingerprint, userEntitlements, invalidationsBeforeEvaluation);
+        }
+
+        return userEntitlements;
+    }
+
+    private Map<Object, Entitlement[]> evaluate(Collection<String> roleNames) {
+        Map<Object, Set<String>> grantedActions = new HashMap<Object, Set<String>>();
+
+        for (String roleName : roleNames) {
+            Map<Object, Set<String>> resources = this.grants.get(roleName);
+
+            if (resources == null) {
+                continue;
+            }
+
+            for (Map.Entry<Object, Set<String>> entry : resources.entrySet()) {
+                Set<String> resourceActions = grantedActions.get(entry.getKey());
+
+                if (resourceActions == null) {
+                    resourceActions = new TreeSet<String>();
+                    grantedActions.put(entry.getKey(), resourceActions);
+                }
+
+                resourceActions.addAll(entry.getValue());
+            }
+        }
+
+        Map<Object, Entitlement[]> userEntitlements = new HashMap<Object, Entitlement[]>(grantedActions.size() * 4 / 3 + 1);
+
+        for (Map.Entry<Object, Set<String>> entry : grantedActions.entrySet()) {
+            Entitlement[] resourceEntitlements = new Entitlement[entry.getValue().size()];
+            int i = 0;
+
+            for (String action : entry.getValue()) {
+                resourceEntitlements[i++] = getAction(action);
+            }
+
+            userEntitlements.put(entry.getKey(), resourceEntitlements);
+        }
+
+        return userEntitlements;
+    }
+
+    private ActionEntitlement getAction(String action) {
+        ActionEntitlement entitlement = this.actions.get(action);
+
+        if (entitlement == null) {
+            entitlement = new ActionEntitlement(action);
+
+            ActionEntitlement existing = this.actions.putIfAbsent(action, entitlement);
+
+            if (existing != null) {
+                entitlement = existing;
+            }
+        }
+
+        return entitlement;
+    }
+
+    private synchronized void cache(String roleFingerprint, Map<Object, Entitlement[]> userEntitlements,
+            long invalidationsBeforeEvaluation) {
+        if (this.invalidations == invalidationsBeforeEvaluation) {
+            this.entitlements.put(roleFingerprint, userEntitlements);
+        }
+    }
+}
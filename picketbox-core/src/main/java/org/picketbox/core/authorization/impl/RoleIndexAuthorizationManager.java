@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization.impl;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.RoleBasedAuthorizationManager;
+import org.picketbox.core.authorization.RoleIndex;
+import org.picketbox.core.exceptions.AuthorizationException;
+
+/**
+ * <p>
+ * A {@link SimpleAuthorizationManager} that compiles its role names into a {@link RoleIndex} when they are configured.
+ * </p>
+ * <p>
+ * Each {@link UserContext} keeps its roles indexed by the {@link RoleIndex} after the first check, so checking if an user
+ * has any of the configured roles is a single {@link BitSet} check instead of a comparison of every configured role with
+ * every role of the user.
+ * </p>
+ */
+public class RoleIndexAuthorizationManager extends SimpleAuthorizationManager implements RoleBasedAuthorizationManager {
+
+    private volatile RoleIndex roleIndex = new RoleIndex(this.roleNames);
+
+    public RoleIndexAuthorizationManager() {
+    }
+
+    public RoleIndexAuthorizationManager(List<String> roleNames) {
+        setRoleNames(roleNames);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.impl.SimpleAuthorizationManager#setRoleNames(java.util.List)
+     */
+    @Override
+    public void setRoleNames(List<String> roleNames) {
+        super.setRoleNames(roleNames);
+        compile();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.impl.SimpleAuthorizationManager#start()
+     */
+    @Override
+    public void start() {
+        // role names may have been changed directly by subclasses
+        compile();
+        super.start();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.impl.SimpleAuthorizationManager#authorizeAll(java.util.Collection,
+     * org.picketbox.core.UserContext)
+     */
+    @Override
+    public BitSet authorizeAll(Collection<? extends Resource> resources, UserContext subject) throws AuthorizationException {
+        // subclasses may override authorize to take the resource into account
+        if (getClass() != RoleIndexAuthorizationManager.class) {
+            return super.authorizeAll(resources, subject);
+        }
+
+        return authorizeSubject(resources, subject);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.impl.SimpleAuthorizationManager#isAuthorized(org.picketbox.core.UserContext)
+     */
+    @Override
+    protected boolean isAuthorized(UserContext subject) {
+        if (!subject.isAuthenticated()) {
+            throw PicketBoxMessages.MESSAGES.userNotAuthenticated();
+        }
+
+        // the index only knows the configured roles, any indexed role of the subject grants access
+        return !subject.getRoleSet(this.roleIndex).isEmpty();
+    }
+
+    /**
+     * @return the index of the configured role names.
+     */
+    public RoleIndex getRoleIndex() {
+        return this.roleIndex;
+    }
+
+    private void compile() {
+        this.roleIndex = new RoleIndex(this.roleNames);
+    }
+}
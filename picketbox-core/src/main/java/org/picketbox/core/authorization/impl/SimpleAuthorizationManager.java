@@ -22,21 +22,30 @@
 package org.picketbox.core.authorization.impl;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
 
 import org.picketbox.core.PicketBoxMessages;
 import org.picketbox.core.UserContext;
 import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.BatchAuthorizationManager;
 import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.RoleBasedAuthorizationManager;
 import org.picketbox.core.exceptions.AuthorizationException;
 
 /**
  * A simple implementation of {@link AuthorizationManager} that just checks the subject against the injected role names.
+ * <p>
+ * Decisions only depend on the subject, so a batch of resources is authorized with a single check. Batches authorized by
+ * subclasses call {@link #authorize(Resource, UserContext)} for each resource, since it may be overridden to take the
+ * resource into account.
+ * </p>
  *
  * @author anil saldhana
  * @since Jul 23, 2012
  */
-public class SimpleAuthorizationManager implements AuthorizationManager {
+public class SimpleAuthorizationManager implements BatchAuthorizationManager, RoleBasedAuthorizationManager {
 
     protected List<String> roleNames = new ArrayList<String>();
 
@@ -75,13 +84,67 @@ public class SimpleAuthorizationManager implements AuthorizationManager {
 
     @Override
     public boolean authorize(Resource resource, UserContext subject) throws AuthorizationException {
-        if (stopped) {
-            throw PicketBoxMessages.MESSAGES.instanceAlreadyStopped();
+        checkIfStarted();
+        return isAuthorized(subject);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.BatchAuthorizationManager#authorizeAll(java.util.Collection,
+     * org.picketbox.core.UserContext)
+     */
+    @Override
+    public BitSet authorizeAll(Collection<? extends Resource> resources, UserContext subject) throws AuthorizationException {
+        if (getClass() == SimpleAuthorizationManager.class) {
+            return authorizeSubject(resources, subject);
         }
-        if (!started) {
-            throw PicketBoxMessages.MESSAGES.instanceNotStarted();
+
+        BitSet decisions = new BitSet(resources.size());
+        int index = 0;
+
+        for (Resource resource : resources) {
+            if (authorize(resource, subject)) {
+                decisions.set(index);
+            }
+
+            index++;
         }
 
+        return decisions;
+    }
+
+    /**
+     * <p>
+     * Authorizes all the given resources with a single check of the subject. Only valid when
+     * {@link #authorize(Resource, UserContext)} does not take the resource into account.
+     * </p>
+     *
+     * @param resources
+     * @param subject
+     * @return
+     */
+    protected BitSet authorizeSubject(Collection<? extends Resource> resources, UserContext subject) {
+        checkIfStarted();
+
+        BitSet decisions = new BitSet(resources.size());
+
+        if (isAuthorized(subject)) {
+            decisions.set(0, resources.size());
+        }
+
+        return decisions;
+    }
+
+    /**
+     * <p>
+     * Checks if the subject has any of the configured roles.
+     * </p>
+     *
+     * @param subject
+     * @return
+     */
+    protected boolean isAuthorized(UserContext subject) {
         for (String role : this.roleNames) {
             if (subject.hasRole(role)) {
                 return true;
@@ -90,4 +153,13 @@ public class SimpleAuthorizationManager implements AuthorizationManager {
 
         return false;
     }
+
+    private void checkIfStarted() {
+        if (stopped) {
+            throw PicketBoxMessages.MESSAGES.instanceAlreadyStopped();
+        }
+        if (!started) {
+            throw PicketBoxMessages.MESSAGES.instanceNotStarted();
+        }
+    }
 }
\ No newline at end of file
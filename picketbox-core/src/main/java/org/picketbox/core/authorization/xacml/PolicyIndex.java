@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization.xacml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.security.xacml.core.JBossPDP;
+import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
+import org.jboss.security.xacml.interfaces.PolicyLocator;
+import org.jboss.security.xacml.interfaces.XACMLPolicy;
+import org.jboss.security.xacml.locators.JBossPolicyLocator;
+
+/**
+ * <p>
+ * An immutable snapshot of the loaded policies, indexed by the resources and actions of their {@link PolicyTarget}.
+ * </p>
+ * <p>
+ * Each request is evaluated by a {@link PolicyDecisionPoint} holding only the policies that can apply to its resource and
+ * action. Decision points are created on the first request for each combination of indexed resource and action and reused
+ * afterwards. Resources and actions not restricted by any policy share the decision point of the unrestricted policies.
+ * </p>
+ */
+final class PolicyIndex {
+
+    private static final String ANY = "\u0000";
+
+    private final Map<String, Map<String, List<XACMLPolicy>>> byResourceAndAction =
+            new HashMap<String, Map<String, List<XACMLPolicy>>>();
+    private final Map<String, List<XACMLPolicy>> byResource = new HashMap<String, List<XACMLPolicy>>();
+    private final Map<String, List<XACMLPolicy>> byAction = new HashMap<String, List<XACMLPolicy>>();
+    private final List<XACMLPolicy> unrestricted = new ArrayList<XACMLPolicy>();
+    private final Set<String> actions = new HashSet<String>();
+    private final Map<String, Long> fileStamps;
+    private final int size;
+
+    // decision points by indexed resource and action, keys without applicable policies are kept apart
+    private final ConcurrentMap<String, PolicyDecisionPoint> decisionPoints =
+            new ConcurrentHashMap<String, PolicyDecisionPoint>();
+    private final Set<String> emptyKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    PolicyIndex(Map<XACMLPolicy, PolicyTarget> policies, Map<String, Long> fileStamps) {
+        for (Map.Entry<XACMLPolicy, PolicyTarget> entry : policies.entrySet()) {
+            XACMLPolicy policy = entry.getKey();
+            Set<String> resourceIds = entry.getValue().getResourceIds();
+            Set<String> policyActions = entry.getValue().getActions();
+
+            if (policyActions != null) {
+                this.actions.addAll(policyActions);
+            }
+
+            if (resourceIds == null && policyActions == null) {
+                this.unrestricted.add(policy);
+            } else if (resourceIds == null) {
+                for (String action : policyActions) {
+                    add(this.byAction, action, policy);
+                }
+            } else if (policyActions == null) {
+                for (String resourceId : resourceIds) {
+                    add(this.byResource, resourceId, policy);
+                }
+            } else {
+                for (String resourceId : resourceIds) {
+                    Map<String, List<XACMLPolicy>> resourceActions = this.byResourceAndAction.get(resourceId);
+
+                    if (resourceActions == null) {
+                        resourceActions = new HashMap<String, List<XACMLPolicy>>();
+                        this.byResourceAndAction.put(resourceId, resourceActions);
+                    }
+
+                    for (String action : policyActions) {
+                        add(resourceActions, action, policy);
+                    }
+                }
+            }
+        }
+
+        this.fileStamps = fileStamps;
+        this.size = policies.size();
+    }
+
+    /**
+     * <p>
+     * Returns the decision point for the given resource and action.
+     * </p>
+     *
+     * @param resourceId
+     * @param action
+     * @return the decision point or null if no policy applies to the resource and action.
+     */
+    PolicyDecisionPoint getDecisionPoint(String resourceId, String action) {
+        boolean indexedResource = this.byResourceAndAction.containsKey(resourceId) || this.byResource.containsKey(resourceId);
+        String indexedResourceId = indexedResource ? resourceId : ANY;
+        String indexedAction = this.actions.contains(action) ? action : ANY;
+        String key = indexedResourceId + ANY + indexedAction;
+        PolicyDecisionPoint decisionPoint = this.decisionPoints.get(key);
+
+        if (decisionPoint != null || this.emptyKeys.contains(key)) {
+            return decisionPoint;
+        }
+
+        Set<XACMLPolicy> policies = getApplicablePolicies(indexedResourceId, indexedAction);
+
+        if (policies.isEmpty()) {
+            this.emptyKeys.add(key);
+            return null;
+        }
+
+        decisionPoint = createDecisionPoint(policies);
+
+        PolicyDecisionPoint existing = this.decisionPoints.putIfAbsent(key, decisionPoint);
+
+        return existing != null ? existing : decisionPoint;
+    }
+
+    /**
+     * @return the last modification time of each loaded file, used to detect changes.
+     */
+    Map<String, Long> getFileStamps() {
+        return this.fileStamps;
+    }
+
+    /**
+     * @return the number of loaded policies.
+     */
+    int size() {
+        return this.size;
+    }
+
+    private Set<XACMLPolicy> getApplicablePolicies(String resourceId, String action) {
+        Set<XACMLPolicy> policies = new LinkedHashSet<XACMLPolicy>();
+        Map<String, List<XACMLPolicy>> resourceActions = this.byResourceAndAction.get(resourceId);
+
+        if (resourceActions != null) {
+            addAll(policies, resourceActions.get(action));
+        }
+
+        addAll(policies, this.byResource.get(resourceId));
+        addAll(policies, this.byAction.get(action));
+        policies.addAll(this.unrestricted);
+
+        return policies;
+    }
+
+    private static PolicyDecisionPoint createDecisionPoint(Set<XACMLPolicy> policies) {
+        PolicyDecisionPoint decisionPoint = new JBossPDP();
+        PolicyLocator locator = new JBossPolicyLocator();
+        Set<PolicyLocator> locators = new HashSet<PolicyLocator>();
+
+        locator.setPolicies(policies);
+        locators.add(locator);
+
+        decisionPoint.setPolicies(policies);
+        decisionPoint.setLocators(locators);
+
+        return decisionPoint;
+    }
+
+    private static void add(Map<String, List<XACMLPolicy>> index, String key, XACMLPolicy policy) {
+        List<XACMLPolicy> policies = index.get(key);
+
+        if (policies == null) {
+            policies = new ArrayList<XACMLPolicy>();
+            index.put(key, policies);
+        }
+
+        policies.add(policy);
+    }
+
+    private static void addAll(Set<XACMLPolicy> policies, List<XACMLPolicy> indexed) {
+        if (indexed != null) {
+            policies.addAll(indexed);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization.xacml;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * <p>
+ * The resources and actions a XACML 2.0 policy or policy set can apply to, extracted from the &lt;Target&gt; of its root
+ * element.
+ * </p>
+ * <p>
+ * A policy is restricted to a set of resources only if every &lt;Resource&gt; of its target requires the resource-id to be
+ * equal to a literal value. Any other target, like a missing &lt;Resources&gt; or a match using other functions or
+ * attributes, applies to every resource. Actions are handled in the same way. The extracted sets are therefore never
+ * smaller than the set of requests the policy really applies to.
+ * </p>
+ */
+public final class PolicyTarget {
+
+    public static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+    public static final String ACTION_ID = "urn:oasis:names:tc:xacml:1.0:action:action-id";
+
+    private static final Set<String> EQUAL_FUNCTIONS = new HashSet<String>();
+
+    static {
+        EQUAL_FUNCTIONS.add("urn:oasis:names:tc:xacml:1.0:function:string-equal");
+        EQUAL_FUNCTIONS.add("urn:oasis:names:tc:xacml:1.0:function:anyURI-equal");
+    }
+
+    private final Set<String> resourceIds;
+    private final Set<String> actions;
+
+    private PolicyTarget(Set<String> resourceIds, Set<String> actions) {
+        this.resourceIds = resourceIds != null ? Collections.unmodifiableSet(resourceIds) : null;
+        this.actions = actions != null ? Collections.unmodifiableSet(actions) : null;
+    }
+
+    /**
+     * <p>
+     * Extracts the target of the given policy document.
+     * </p>
+     *
+     * @param policy
+     * @return
+     * @throws Exception if the document can not be parsed.
+     */
+    public static PolicyTarget parse(InputStream policy) throws Exception {
+        return parse(createDocumentBuilder().parse(policy));
+    }
+
+    /**
+     * <p>
+     * Extracts the target of the given policy document.
+     * </p>
+     *
+     * @param policy
+     * @return
+     */
+    public static PolicyTarget parse(Document policy) {
+        Element target = getChild(policy.getDocumentElement(), "Target");
+
+        if (target == null) {
+            return new PolicyTarget(null, null);
+        }
+
+        return new PolicyTarget(extract(target, "Resources", "Resource", "ResourceMatch", "ResourceAttributeDesignator",
+                RESOURCE_ID), extract(target, "Actions", "Action", "ActionMatch", "ActionAttributeDesignator", ACTION_ID));
+    }
+
+    /**
+     * @return the identifiers of the resources the policy can apply to or null if it can apply to any resource.
+     */
+    public Set<String> getResourceIds() {
+        return this.resourceIds;
+    }
+
+    /**
+     * @return the actions the policy can apply to or null if it can apply to any action.
+     */
+    public Set<String> getActions() {
+        return this.actions;
+    }
+
+    private static Set<String> extract(Element target, String groupName, String itemName, String matchName,
+            String designatorName, String attributeId) {
+        Element group = getChild(target, groupName);
+
+        if (group == null) {
+            return null;
+        }
+
+        Set<String> values = new HashSet<String>();
+
+        for (Node item = group.getFirstChild(); item != null; item = item.getNextSibling()) {
+            if (!isElement(item, itemName)) {
+                // AnyResource and AnyAction of XACML 1.x
+                if (item.getNodeType() == Node.ELEMENT_NODE) {
+                    return null;
+                }
+
+                continue;
+            }
+
+            String value = null;
+
+            for (Node match = item.getFirstChild(); match != null && value == null; match = match.getNextSibling()) {
+                if (isElement(match, matchName) && EQUAL_FUNCTIONS.contains(((Element) match).getAttribute("MatchId"))) {
+                    Element designator = getChild((Element) match, designatorName);
+                    Element attributeValue = getChild((Element) match, "AttributeValue");
+
+                    if (designator != null && attributeValue != null
+                            && attributeId.equals(designator.getAttribute("AttributeId"))) {
+                        value = attributeValue.getTextContent().trim();
+                    }
+                }
+            }
+
+            // this alternative does not restrict the attribute
+            if (value == null) {
+                return null;
+            }
+
+            values.add(value);
+        }
+
+        return values.isEmpty() ? null : values;
+    }
+
+    private static Element getChild(Element parent, String localName) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (isElement(child, localName)) {
+                return (Element) child;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isElement(Node node, String localName) {
+        return node.getNodeType() == Node.ELEMENT_NODE && localName.equals(node.getLocalName());
+    }
+
+    private static DocumentBuilder createDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+
+        factory.setNamespaceAware(true);
+        factory.setExpandEntityReferences(false);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+
+        return factory.newDocumentBuilder();
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.authorization.xacml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.security.xacml.core.model.context.ActionType;
+import org.jboss.security.xacml.core.model.context.AttributeType;
+import org.jboss.security.xacml.core.model.context.EnvironmentType;
+import org.jboss.security.xacml.core.model.context.RequestType;
+import org.jboss.security.xacml.core.model.context.ResourceType;
+import org.jboss.security.xacml.core.model.context.SubjectType;
+import org.jboss.security.xacml.factories.PolicyFactory;
+import org.jboss.security.xacml.factories.RequestAttributeFactory;
+import org.jboss.security.xacml.factories.RequestResponseContextFactory;
+import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
+import org.jboss.security.xacml.interfaces.RequestContext;
+import org.jboss.security.xacml.interfaces.XACMLConstants;
+import org.jboss.security.xacml.interfaces.XACMLPolicy;
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxLogger;
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.BatchAuthorizationManager;
+import org.picketbox.core.authorization.PolicyChangeListener;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.exceptions.AuthorizationException;
+import org.picketlink.idm.model.Role;
+
+/**
+ * <p>
+ * An {@link AuthorizationManager} that evaluates XACML 2.0 policies with JBossXACML.
+ * </p>
+ * <p>
+ * The policies are loaded from the XML files of a directory when the manager is started, and indexed by the resources and
+ * actions of their targets, see {@link PolicyTarget}. Each request is evaluated only against the policies that can apply to
+ * its resource and action. When a reload interval is set, the directory is checked in background and the policies are
+ * loaded again when a file is added, changed or removed. The new policies replace the old ones atomically, so requests are
+ * never blocked by a reload. Policies that can not be loaded during a reload are reported and the previous policies are
+ * kept. The registered {@link PolicyChangeListener} instances are notified after each reload.
+ * </p>
+ * <p>
+ * Only {@link XACMLResource} instances are authorized, any other resource is denied. The request sent to the policy
+ * decision point has the name of the user as subject-id and its role names as role attributes. Requests are permitted only
+ * if the decision is Permit. Batches of resources share the policies and the subject attributes of a single request.
+ * </p>
+ */
+public class XACMLAuthorizationManager extends AbstractPicketBoxLifeCycle implements BatchAuthorizationManager {
+
+    public static final String SUBJECT_ID = "urn:oasis:names:tc:xacml:1.0:subject:subject-id";
+    public static final String ROLE = "urn:oasis:names:tc:xacml:2.0:subject:role";
+
+    private static final String ISSUER = null;
+
+    private final File policyDirectory;
+    private long reloadInterval;
+
+    private volatile PolicyIndex policies;
+    private ScheduledExecutorService reloader;
+
+    private final List<PolicyChangeListener> policyChangeListeners = new CopyOnWriteArrayList<PolicyChangeListener>();
+
+    // the request objects are reused by each thread, they are only read during an evaluation
+    private final ThreadLocal<ReusableRequest> requests = new ThreadLocal<ReusableRequest>() {
+        @Override
+        protected ReusableRequest initialValue() {
+            return new ReusableRequest();
+        }
+    };
+
+    /**
+     * @param policyDirectory the directory of the policy files. All files with the xml extension are loaded.
+     */
+    public XACMLAuthorizationManager(File policyDirectory) {
+        if (policyDirectory == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("policyDirectory");
+        }
+
+        this.policyDirectory = policyDirectory;
+    }
+
+    /**
+     * <p>
+     * Sets the interval between two checks for changed policy files. Zero, the default, disables the checks.
+     * </p>
+     *
+     * @param reloadInterval
+     * @param unit
+     */
+    public void setReloadInterval(long reloadInterval, TimeUnit unit) {
+        this.reloadInterval = unit.toMillis(reloadInterval);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.AuthorizationManager#authorize(org.picketbox.core.authorization.Resource,
+     * org.picketbox.core.UserContext)
+     */
+    @Override
+    public boolean authorize(Resource resource, UserContext subject) throws AuthorizationException {
+        checkIfStarted();
+
+        if (!(resource instanceof XACMLResource)) {
+            return false;
+        }
+
+        ReusableRequest request = this.requests.get();
+
+        try {
+            request.setSubject(subject);
+
+            return evaluate(this.policies, request, (XACMLResource) resource);
+        } catch (Exception e) {
+            throw PicketBoxMessages.MESSAGES.authorizationFailed(e);
+        } finally {
+            request.clear();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.authorization.BatchAuthorizationManager#authorizeAll(java.util.Collection,
+     * org.picketbox.core.UserContext)
+     */
+    @Override
+    public BitSet authorizeAll(Collection<? extends Resource> resources, UserContext subject) throws AuthorizationException {
+        checkIfStarted();
+
+        // all the resources are evaluated with the same policies, even if they are reloaded meanwhile
+        PolicyIndex policies = this.policies;
+        BitSet decisions = new BitSet(resources.size());
+        ReusableRequest request = this.requests.get();
+
+        try {
+            request.setSubject(subject);
+
+            int index = 0;
+
+            for (Resource resource : resources) {
+                if (resource instanceof XACMLResource && evaluate(policies, request, (XACMLResource) resource)) {
+                    decisions.set(index);
+                }
+
+                index++;
+            }
+        } catch (Exception e) {
+            throw PicketBoxMessages.MESSAGES.authorizationFailed(e);
+        } finally {
+            request.clear();
+        }
+
+        return decisions;
+    }
+
+    /**
+     * <p>
+     * Loads the policies again and replaces the current ones. Requests being evaluated are not affected.
+     * </p>
+     *
+     * @throws IllegalStateException if a policy can not be loaded. The current policies are kept.
+     */
+    public synchronized void reload() {
+        this.policies = load();
+
+        for (PolicyChangeListener listener : this.policyChangeListeners) {
+            listener.onPolicyChange(this);
+        }
+    }
+
+    /**
+     * <p>
+     * Registers a listener notified after the policies are loaded or reloaded.
+     * </p>
+     *
+     * @param listener
+     */
+    public void addPolicyChangeListener(PolicyChangeListener listener) {
+        this.policyChangeListeners.add(listener);
+    }
+
+    public void removePolicyChangeListener(PolicyChangeListener listener) {
+        this.policyChangeListeners.remove(listener);
+    }
+
+    /**
+     * @return the number of loaded policies.
+     */
+    public int getPolicyCount() {
+        return this.policies != null ? this.policies.size() : 0;
+    }
+
+    /**
+     * @return the directory of the policy files.
+     */
+    public File getPolicyDirectory() {
+        return this.policyDirectory;
+    }
+
+    @Override
+    protected void doStart() {
+        reload();
+
+        if (this.reloadInterval > 0) {
+            this.reloader = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "PicketBox-XACML-Reload-" + policyDirectory.getName());
+
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+
+            this.reloader.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    reloadIfChanged();
+                }
+            }, this.reloadInterval, this.reloadInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        if (this.reloader != null) {
+            this.reloader.shutdownNow();
+            this.reloader = null;
+        }
+    }
+
+    private static boolean evaluate(PolicyIndex policies, ReusableRequest request, XACMLResource resource)
+            throws Exception {
+        PolicyDecisionPoint decisionPoint = policies.getDecisionPoint(resource.getResourceId(), resource.getAction());
+
+        if (decisionPoint == null) {
+            return false;
+        }
+
+        try {
+            return decisionPoint.evaluate(request.setResource(resource)).getDecision() == XACMLConstants.DECISION_PERMIT;
+        } finally {
+            request.clearResource();
+        }
+    }
+
+    private void reloadIfChanged() {
+        try {
+            if (!getFileStamps(listPolicyFiles()).equals(this.policies.getFileStamps())) {
+                reload();
+            }
+        } catch (RuntimeException e) {
+            PicketBoxLogger.LOGGER.errorReloadingXACMLPolicies(this.policyDirectory.getPath(), e);
+        }
+    }
+
+    private PolicyIndex load() {
+        File[] files = listPolicyFiles();
+        Map<XACMLPolicy, PolicyTarget> loadedPolicies = new LinkedHashMap<XACMLPolicy, PolicyTarget>();
+
+        for (File file : files) {
+            try {
+                byte[] content = readFile(file);
+
+                loadedPolicies.put(PolicyFactory.createPolicy(new ByteArrayInputStream(content)),
+                        PolicyTarget.parse(new ByteArrayInputStream(content)));
+            } catch (Exception e) {
+                throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(file.getPath(), e);
+            }
+        }
+
+        return new PolicyIndex(loadedPolicies, getFileStamps(files));
+    }
+
+    private File[] listPolicyFiles() {
+        File[] files = this.policyDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".xml");
+            }
+        });
+
+        if (files == null) {
+            throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(this.policyDirectory.getPath(), null);
+        }
+
+        // policies are always loaded in the same order
+        Arrays.sort(files);
+
+        return files;
+    }
+
+    private static Map<String, Long> getFileStamps(File[] files) {
+        Map<String, Long> stamps = new HashMap<String, Long>();
+
+        for (File file : files) {
+            stamps.put(file.getName(), file.lastModified());
+        }
+
+        return stamps;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        InputStream input = new FileInputStream(file);
+
+        try {
+            int offset = 0;
+
+            while (offset < content.length) {
+                int read = input.read(content, offset, content.length - offset);
+
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file " + file.getPath());
+                }
+
+                offset += read;
+            }
+        } finally {
+            input.close();
+        }
+
+        return content;
+    }
+
+    /**
+     * <p>
+     * The request objects used by a thread. Only the attributes are replaced on every request.
+     * </p>
+     */
+    private static final class ReusableRequest {
+
+        private final RequestContext context = RequestResponseContextFactory.createRequestCtx();
+        private final RequestType request = new RequestType();
+        private final SubjectType subject = new SubjectType();
+        private final ResourceType resource = new ResourceType();
+        private final ActionType action = new ActionType();
+
+        ReusableRequest() {
+            this.request.getSubject().add(this.subject);
+            this.request.getResource().add(this.resource);
+            this.request.setAction(this.action);
+            this.request.setEnvironment(new EnvironmentType());
+        }
+
+        void setSubject(UserContext userContext) throws Exception {
+            List<AttributeType> subjectAttributes = this.subject.getAttribute();
+
+            subjectAttributes.add(RequestAttributeFactory.createStringAttributeType(SUBJECT_ID, ISSUER, userContext
+                    .getPrincipal().getName()));
+
+            for (Role role : userContext.getRoles()) {
+                subjectAttributes.add(RequestAttributeFactory.createStringAttributeType(ROLE, ISSUER, role.getName()));
+            }
+        }
+
+        RequestContext setResource(XACMLResource xacmlResource) throws Exception {
+            this.resource.getAttribute().add(RequestAttributeFactory.createStringAttributeType(PolicyTarget.RESOURCE_ID,
+                    ISSUER, xacmlResource.getResourceId()));
+            this.action.getAttribute().add(RequestAttributeFactory.createStringAttributeType(PolicyTarget.ACTION_ID, ISSUER,
+                    xacmlResource.getAction()));
+
+            this.context.setRequest(this.request);
+
+            return this.context;
+        }
+
+        void clearResource() {
+            this.resource.getAttribute().clear();
+            this.action.getAttribute().clear();
+        }
+
+        void clear() {
+            this.subject.getAttribute().clear();
+            clearResource();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A thread-safe cache holding at most a maximum number of entries. When it is full, entries are evicted according to an
+ * {@link EvictionPolicy}. Entries can also expire after a time to live.
+ * </p>
+ * <p>
+ * Reads never wait for the lock guarding the eviction policy. If the lock is busy the access is simply not recorded by the
+ * policy.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BoundedCache<K, V> {
+
+    private final int maximumSize;
+    private final long timeToLive;
+    private final ConcurrentMap<K, CacheEntry<V>> entries;
+    private final EvictionPolicy<K> evictionPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+
+    public BoundedCache(int maximumSize) {
+        this(maximumSize, 0, TimeUnit.MILLISECONDS, EvictionPolicyType.LRU);
+    }
+
+    /**
+     * @param maximumSize the maximum number of entries.
+     * @param timeToLive the time after which entries expire. Values less or equal than zero disable expiration.
+     * @param unit the {@link TimeUnit} of the time to live.
+     * @param evictionPolicy the policy used to select the entries to be evicted.
+     */
+    public BoundedCache(int maximumSize, long timeToLive, TimeUnit unit, EvictionPolicyType evictionPolicy) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be greater than zero: " + maximumSize);
+        }
+
+        this.maximumSize = maximumSize;
+        this.timeToLive = timeToLive > 0 ? unit.toNanos(timeToLive) : 0;
+        this.entries = new ConcurrentHashMap<K, CacheEntry<V>>(Math.min(maximumSize, 1 << 16));
+        this.evictionPolicy = (evictionPolicy != null ? evictionPolicy : EvictionPolicyType.LRU).create(maximumSize);
+    }
+
+    /**
+     * <p>
+     * Returns the value cached for the given key.
+     * </p>
+     *
+     * @param key
+     * @return the cached value or null if the key is not cached or if its entry expired.
+     */
+    public V get(K key) {
+        CacheEntry<V> entry = this.entries.get(key);
+
+        if (entry == null) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+
+        if (entry.isExpired(System.nanoTime())) {
+            this.missCount.incrementAndGet();
+            this.expirationCount.incrementAndGet();
+            remove(key, entry);
+            return null;
+        }
+
+        this.hitCount.incrementAndGet();
+
+        if (this.lock.tryLock()) {
+            try {
+                if (this.entries.get(key) == entry) {
+                    this.evictionPolicy.recordAccess(key);
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        return entry.value;
+    }
+
+    /**
+     * <p>
+     * Caches a value using the default time to live.
+     * </p>
+     *
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        put(key, value, this.timeToLive);
+    }
+
+    /**
+     * <p>
+     * Caches a value using a specific time to live.
+     * </p>
+     *
+     * @param key
+     * @param value
+     * @param timeToLive the time after which the entry expires. Values less or equal than zero disable expiration.
+     * @param unit the {@link TimeUnit} of the time to live.
+     */
+    public void put(K key, V value, long timeToLive, TimeUnit unit) {
+        put(key, value, timeToLive > 0 ? unit.toNanos(timeToLive) : 0);
+    }
+
+    /**
+     * <p>
+     * Removes the entry of the given key.
+     * </p>
+     *
+     * @param key
+     * @return the removed value or null if the key was not cached.
+     */
+    public V remove(K key) {
+        this.lock.lock();
+
+        try {
+            CacheEntry<V> entry = this.entries.remove(key);
+
+            if (entry == null) {
+                return null;
+            }
+
+            this.evictionPolicy.recordRemoval(key);
+
+            return entry.value;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Removes all entries.
+     * </p>
+     */
+    public void clear() {
+        this.lock.lock();
+
+        try {
+            this.entries.clear();
+            this.evictionPolicy.clear();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of cached entries, including expired entries not yet removed.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * @return the number of entries removed to make room for new ones.
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * @return the number of entries removed because their time to live elapsed.
+     */
+    public long getExpirationCount() {
+        return this.expirationCount.get();
+    }
+
+    /**
+     * @return the ratio of hits to lookups, or 0 if there were no lookups.
+     */
+    public double getHitRate() {
+        long hits = this.hitCount.get();
+        long lookups = hits + this.missCount.get();
+
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private void put(K key, V value, long timeToLiveNanos) {
+        CacheEntry<V> entry = new CacheEntry<V>(value, timeToLiveNanos > 0 ? System.nanoTime() + timeToLiveNanos : 0);
+
+        this.lock.lock();
+
+        try {
+            if (this.entries.put(key, entry) == null) {
+                this.evictionPolicy.recordInsert(key);
+            } else {
+                this.evictionPolicy.recordAccess(key);
+            }
+
+            while (this.entries.size() > this.maximumSize) {
+                K victim = this.evictionPolicy.selectVictim();
+
+                if (victim == null) {
+                    break;
+                }
+
+                this.entries.remove(victim);
+                this.evictionCount.incrementAndGet();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void remove(K key, CacheEntry<V> entry) {
+        this.lock.lock();
+
+        try {
+            if (this.entries.remove(key, entry)) {
+                this.evictionPolicy.recordRemoval(key);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private static final class CacheEntry<V> {
+
+        private final V value;
+        private final long expirationTime;
+
+        CacheEntry(V value, long expirationTime) {
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired(long now) {
+            return this.expirationTime != 0 && now - this.expirationTime >= 0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.cache;
+
+/**
+ * <p>
+ * An eviction policy decides which key should be removed from a bounded container when it is full. The container reports
+ * every insertion, access and removal of keys and asks the policy for a victim when it needs to free space.
+ * </p>
+ * <p>
+ * Implementations are not thread-safe. Callers are expected to guard them with a lock.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * <p>
+     * Records that a new key was added.
+     * </p>
+     *
+     * @param key
+     */
+    void recordInsert(K key);
+
+    /**
+     * <p>
+     * Records that an existing key was accessed.
+     * </p>
+     *
+     * @param key
+     */
+    void recordAccess(K key);
+
+    /**
+     * <p>
+     * Records that a key was removed by the container. The policy must stop tracking it.
+     * </p>
+     *
+     * @param key
+     */
+    void recordRemoval(K key);
+
+    /**
+     * <p>
+     * Selects the key that should be evicted and stops tracking it.
+     * </p>
+     *
+     * @return the key to be evicted or null if no key is being tracked.
+     */
+    K selectVictim();
+
+    /**
+     * <p>
+     * Stops tracking all keys.
+     * </p>
+     */
+    void clear();
+}
@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.cache;
+
+/**
+ * <p>
+ * The built-in {@link EvictionPolicy} implementations.
+ * </p>
+ */
+public enum EvictionPolicyType {
+
+    /**
+     * Evicts the least recently used key.
+     */
+    LRU {
+        @Override
+        public <K> EvictionPolicy<K> create(int maximumSize) {
+            return new LRUEvictionPolicy<K>();
+        }
+    },
+
+    /**
+     * Evicts the least frequently used key. Ties are broken by evicting the oldest key.
+     */
+    LFU {
+        @Override
+        public <K> EvictionPolicy<K> create(int maximumSize) {
+            return new LFUEvictionPolicy<K>();
+        }
+    },
+
+    /**
+     * Window TinyLFU. New keys must be used more often than the keys they would replace, which protects the container from
+     * bursts of keys that are used only once.
+     */
+    W_TINY_LFU {
+        @Override
+        public <K> EvictionPolicy<K> create(int maximumSize) {
+            return new WTinyLFUEvictionPolicy<K>(maximumSize);
+        }
+    };
+
+    /**
+     * <p>
+     * Creates a new policy instance.
+     * </p>
+     *
+     * @param maximumSize the expected maximum number of keys.
+     * @return
+     */
+    public abstract <K> EvictionPolicy<K> create(int maximumSize);
+}
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.cache;
+
+/**
+ * <p>
+ * A probabilistic counter of how often keys are used, based on a Count-Min sketch with 4-bit counters. Counters are halved
+ * periodically so that the recorded popularity of keys ages over time.
+ * </p>
+ * <p>
+ * Every long in the table holds sixteen counters. A key is mapped to four counters in four different longs, and its
+ * estimated frequency is the minimum among them.
+ * </p>
+ */
+public class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNTER = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * @param maximumSize the expected maximum number of keys tracked by the container using this sketch.
+     */
+    public FrequencySketch(int maximumSize) {
+        int capacity = 16;
+
+        while (capacity < maximumSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>
+     * Returns the estimated number of times the given key was used, up to 15.
+     * </p>
+     *
+     * @param key
+     * @return
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * <p>
+     * Increments the estimated frequency of the given key.
+     * </p>
+     *
+     * @param key
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && ++this.size == this.sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+
+        if ((this.table[index] & mask) != ((long) MAX_COUNTER << offset)) {
+            this.table[index] += 1L << offset;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+
+        this.size = this.size >>> 1;
+    }
+
+    private int indexOf(int hash, int depth) {
+        long value = (hash + SEEDS[depth]) * SEEDS[depth];
+
+        value += value >>> 32;
+
+        return ((int) value) & this.tableMask;
+    }
+
+    private static int spread(int hash) {
+        int value = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+
+        value = ((value >>> 16) ^ value) * 0x45d9f3b;
+
+        return (value >>> 16) ^ value;
+    }
+}
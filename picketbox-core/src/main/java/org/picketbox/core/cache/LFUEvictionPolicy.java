@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * <p>
+ * {@link EvictionPolicy} that evicts the least frequently used key. Keys are grouped in buckets by access frequency, which
+ * are kept in a list sorted by frequency, so all operations run in constant time. Inside a bucket the oldest key is evicted
+ * first.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ */
+public class LFUEvictionPolicy<K> implements EvictionPolicy<K> {
+
+    private final Map<K, FrequencyBucket<K>> keys = new HashMap<K, FrequencyBucket<K>>();
+
+    private FrequencyBucket<K> lowest;
+
+    @Override
+    public void recordInsert(K key) {
+        if (this.keys.containsKey(key)) {
+            recordAccess(key);
+            return;
+        }
+
+        FrequencyBucket<K> bucket = this.lowest;
+
+        if (bucket == null || bucket.frequency != 1) {
+            bucket = new FrequencyBucket<K>(1);
+            linkAfter(null, bucket);
+        }
+
+        bucket.keys.add(key);
+        this.keys.put(key, bucket);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        FrequencyBucket<K> current = this.keys.get(key);
+
+        if (current == null) {
+            return;
+        }
+
+        FrequencyBucket<K> next = current.next;
+
+        if (next == null || next.frequency != current.frequency + 1) {
+            next = new FrequencyBucket<K>(current.frequency + 1);
+            linkAfter(current, next);
+        }
+
+        next.keys.add(key);
+        this.keys.put(key, next);
+
+        removeFromBucket(current, key);
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        FrequencyBucket<K> bucket = this.keys.remove(key);
+
+        if (bucket != null) {
+            removeFromBucket(bucket, key);
+        }
+    }
+
+    @Override
+    public K selectVictim() {
+        if (this.lowest == null) {
+            return null;
+        }
+
+        Iterator<K> iterator = this.lowest.keys.iterator();
+        K victim = iterator.next();
+
+        recordRemoval(victim);
+
+        return victim;
+    }
+
+    @Override
+    public void clear() {
+        this.keys.clear();
+        this.lowest = null;
+    }
+
+    private void removeFromBucket(FrequencyBucket<K> bucket, K key) {
+        bucket.keys.remove(key);
+
+        if (bucket.keys.isEmpty()) {
+            unlink(bucket);
+        }
+    }
+
+    private void linkAfter(FrequencyBucket<K> previous, FrequencyBucket<K> bucket) {
+        if (previous == null) {
+            bucket.next = this.lowest;
+
+            if (this.lowest != null) {
+                this.lowest.previous = bucket;
+            }
+
+            this.lowest = bucket;
+        } else {
+            bucket.previous = previous;
+            bucket.next = previous.next;
+
+            if (previous.next != null) {
+                previous.next.previous = bucket;
+            }
+
+            previous.next = bucket;
+        }
+    }
+
+    private void unlink(FrequencyBucket<K> bucket) {
+        if (bucket.previous != null) {
+            bucket.previous.next = bucket.next;
+        } else {
+            this.lowest = bucket.next;
+        }
+
+        if (bucket.next != null) {
+            bucket.next.previous = bucket.previous;
+        }
+
+        bucket.previous = null;
+        bucket.next = null;
+    }
+
+    private static final class FrequencyBucket<K> {
+
+        private final long frequency;
+        private final LinkedHashSet<K> keys = new LinkedHashSet<K>();
+        private FrequencyBucket<K> previous;
+        private FrequencyBucket<K> next;
+
+        FrequencyBucket(long frequency) {
+            this.frequency = frequency;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * <p>
+ * {@link EvictionPolicy} that evicts the least recently used key.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ */
+public class LRUEvictionPolicy<K> implements EvictionPolicy<K> {
+
+    private final LinkedHashMap<K, Boolean> keys = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+
+    @Override
+    public void recordInsert(K key) {
+        this.keys.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        this.keys.get(key);
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        this.keys.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        Iterator<K> iterator = this.keys.keySet().iterator();
+
+        if (!iterator.hasNext()) {
+            return null;
+        }
+
+        K victim = iterator.next();
+
+        iterator.remove();
+
+        return victim;
+    }
+
+    @Override
+    public void clear() {
+        this.keys.clear();
+    }
+}
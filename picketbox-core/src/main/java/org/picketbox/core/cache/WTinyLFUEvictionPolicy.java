@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * <p>
+ * {@link EvictionPolicy} implementing Window TinyLFU.
+ * </p>
+ * <p>
+ * New keys enter a small LRU window (1% of the maximum size). Keys leaving the window go to the main space, which is a
+ * segmented LRU split in a probation and a protected (80%) segment. Once the main space is full they become candidates
+ * instead. When a victim is needed, a candidate is only admitted if the {@link FrequencySketch} estimates that it is used more often than the key it would replace;
+ * otherwise the candidate itself is evicted. This keeps popular keys in the container when it is flooded with keys that
+ * are used only once.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ */
+public class WTinyLFUEvictionPolicy<K> implements EvictionPolicy<K> {
+
+    private final FrequencySketch sketch;
+    private final int windowMaximum;
+    private final int mainMaximum;
+    private final int protectedMaximum;
+
+    private final LinkedHashMap<K, Boolean> window = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+    private final LinkedHashSet<K> candidates = new LinkedHashSet<K>();
+    private final LinkedHashMap<K, Boolean> probation = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+    private final LinkedHashMap<K, Boolean> protectedSegment = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+
+    /**
+     * @param maximumSize the maximum number of keys in the container.
+     */
+    public WTinyLFUEvictionPolicy(int maximumSize) {
+        int size = Math.max(1, maximumSize);
+
+        this.sketch = new FrequencySketch(size);
+        this.windowMaximum = Math.max(1, size / 100);
+        this.mainMaximum = Math.max(1, size - this.windowMaximum);
+        this.protectedMaximum = (int) (this.mainMaximum * 80L / 100L);
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        if (isTracked(key)) {
+            recordAccess(key);
+            return;
+        }
+
+        this.sketch.increment(key);
+        this.window.put(key, Boolean.TRUE);
+
+        if (this.window.size() > this.windowMaximum) {
+            K eldest = removeEldest(this.window);
+
+            // keys are only contested when the main space is full
+            if (this.probation.size() + this.protectedSegment.size() < this.mainMaximum) {
+                this.probation.put(eldest, Boolean.TRUE);
+            } else {
+                this.candidates.add(eldest);
+            }
+        }
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        this.sketch.increment(key);
+
+        if (this.window.containsKey(key)) {
+            this.window.get(key);
+        } else if (this.candidates.remove(key) || this.probation.remove(key) != null) {
+            promote(key);
+        } else {
+            this.protectedSegment.get(key);
+        }
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        if (this.window.remove(key) == null && !this.candidates.remove(key) && this.probation.remove(key) == null) {
+            this.protectedSegment.remove(key);
+        }
+    }
+
+    @Override
+    public K selectVictim() {
+        if (!this.candidates.isEmpty()) {
+            Iterator<K> iterator = this.candidates.iterator();
+            K candidate = iterator.next();
+
+            iterator.remove();
+
+            K victim = removeEldest(this.probation.isEmpty() ? this.protectedSegment : this.probation);
+
+            if (victim == null) {
+                return candidate;
+            }
+
+            if (this.sketch.frequency(candidate) > this.sketch.frequency(victim)) {
+                this.probation.put(candidate, Boolean.TRUE);
+                return victim;
+            }
+
+            // the candidate lost, so the victim goes back to the main space
+            this.probation.put(victim, Boolean.TRUE);
+
+            return candidate;
+        }
+
+        K victim = removeEldest(this.probation);
+
+        if (victim == null) {
+            victim = removeEldest(this.protectedSegment);
+        }
+
+        if (victim == null) {
+            victim = removeEldest(this.window);
+        }
+
+        return victim;
+    }
+
+    @Override
+    public void clear() {
+        this.window.clear();
+        this.candidates.clear();
+        this.probation.clear();
+        this.protectedSegment.clear();
+    }
+
+    private boolean isTracked(K key) {
+        return this.window.containsKey(key) || this.candidates.contains(key) || this.probation.containsKey(key)
+                || this.protectedSegment.containsKey(key);
+    }
+
+    private void promote(K key) {
+        this.protectedSegment.put(key, Boolean.TRUE);
+
+        if (this.protectedSegment.size() > this.protectedMaximum) {
+            K demoted = removeEldest(this.protectedSegment);
+
+            if (demoted != null) {
+                this.probation.put(demoted, Boolean.TRUE);
+            }
+        }
+    }
+
+    private static <K> K removeEldest(LinkedHashMap<K, Boolean> segment) {
+        Iterator<K> iterator = segment.keySet().iterator();
+
+        if (!iterator.hasNext()) {
+            return null;
+        }
+
+        K eldest = iterator.next();
+
+        iterator.remove();
+
+        return eldest;
+    }
+}
@@ -24,6 +24,7 @@ package org.picketbox.core.config;
 
 import java.util.List;
 
+import org.picketbox.core.authentication.AuthenticationCache;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 
 /**
@@ -34,11 +35,18 @@ import org.picketbox.core.authentication.AuthenticationMechanism;
 public class AuthenticationConfiguration {
     private EventManagerConfiguration eventManager;
     private List<AuthenticationMechanism> mechanisms;
+    private AuthenticationCache cache;
 
     public AuthenticationConfiguration(List<AuthenticationMechanism> mechanisms,
             EventManagerConfiguration eventManager) {
+        this(mechanisms, eventManager, null);
+    }
+
+    public AuthenticationConfiguration(List<AuthenticationMechanism> mechanisms,
+            EventManagerConfiguration eventManager, AuthenticationCache cache) {
         this.eventManager = eventManager;
         this.mechanisms = mechanisms;
+        this.cache = cache;
     }
 
     /**
@@ -58,4 +66,13 @@ public class AuthenticationConfiguration {
     public EventManagerConfiguration getEventManager() {
         return this.eventManager;
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the cache of authentication results
+     *
+     * @return the cache or null if authentication results are not cached
+     */
+    public AuthenticationCache getCache() {
+        return this.cache;
+    }
+}
@@ -24,12 +24,15 @@ package org.picketbox.core.config;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import org.picketbox.core.authentication.AuthenticationCache;
 import org.picketbox.core.authentication.AuthenticationMechanism;
 import org.picketbox.core.authentication.impl.CertificateAuthenticationMechanism;
 import org.picketbox.core.authentication.impl.DigestAuthenticationMechanism;
 import org.picketbox.core.authentication.impl.TrustedUsernameAuthenticationMechanism;
 import org.picketbox.core.authentication.impl.UserNamePasswordAuthenticationMechanism;
+import org.picketbox.core.cache.EvictionPolicyType;
 
 /**
  * A {@link ConfigurationBuilder} for Authentication
@@ -39,6 +42,7 @@ import org.picketbox.core.authentication.impl.UserNamePasswordAuthenticationMech
 public class AuthenticationConfigurationBuilder extends AbstractConfigurationBuilder<AuthenticationConfiguration> {
 
     protected List<AuthenticationMechanism> mechanisms;
+    protected AuthenticationCache cache;
 
     public AuthenticationConfigurationBuilder(ConfigurationBuilder builder) {
         super(builder);
@@ -50,6 +54,54 @@ public class AuthenticationConfigurationBuilder extends AbstractConfigurationBui
         return this;
     }
 
+    /**
+     * <p>
+     * Caches the authentication results using the default size and times to live.
+     * </p>
+     *
+     * @return
+     */
+    public AuthenticationConfigurationBuilder cache() {
+        return cache(new AuthenticationCache());
+    }
+
+    /**
+     * <p>
+     * Caches the authentication results.
+     * </p>
+     *
+     * @param maximumSize the maximum number of cached results.
+     * @param timeToLive the time after which a successful result expires.
+     * @param negativeTimeToLive the time after which a failed result expires.
+     * @param unit the {@link TimeUnit} of the times to live.
+     * @return
+     */
+    public AuthenticationConfigurationBuilder cache(int maximumSize, long timeToLive, long negativeTimeToLive, TimeUnit unit) {
+        return cache(new AuthenticationCache(maximumSize, timeToLive, negativeTimeToLive, unit));
+    }
+
+    /**
+     * <p>
+     * Caches the authentication results.
+     * </p>
+     *
+     * @param maximumSize the maximum number of cached results.
+     * @param timeToLive the time after which a successful result expires.
+     * @param negativeTimeToLive the time after which a failed result expires.
+     * @param unit the {@link TimeUnit} of the times to live.
+     * @param evictionPolicy the policy used to select the results to be evicted.
+     * @return
+     */
+    public AuthenticationConfigurationBuilder cache(int maximumSize, long timeToLive, long negativeTimeToLive, TimeUnit unit,
+            EvictionPolicyType evictionPolicy) {
+        return cache(new AuthenticationCache(maximumSize, timeToLive, negativeTimeToLive, unit, evictionPolicy));
+    }
+
+    public AuthenticationConfigurationBuilder cache(AuthenticationCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
     @Override
     protected void setDefaults() {
         this.mechanisms.add(new UserNamePasswordAuthenticationMechanism());
@@ -60,6 +112,6 @@ public class AuthenticationConfigurationBuilder extends AbstractConfigurationBui
 
     @Override
     public AuthenticationConfiguration doBuild() {
-        return new AuthenticationConfiguration(this.mechanisms, this.builder.eventManager().build());
+        return new AuthenticationConfiguration(this.mechanisms, this.builder.eventManager().build(), this.cache);
     }
 }
\ No newline at end of file
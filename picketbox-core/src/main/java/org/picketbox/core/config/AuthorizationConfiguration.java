@@ -25,6 +25,7 @@ package org.picketbox.core.config;
 import java.util.List;
 
 import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.EntitlementsManager;
 
 /**
  * Configuration for Authorization
@@ -34,12 +35,22 @@ import org.picketbox.core.authorization.AuthorizationManager;
 public class AuthorizationConfiguration {
 
     private List<AuthorizationManager> managers;
+    private EntitlementsManager entitlementsManager;
 
     public AuthorizationConfiguration(List<AuthorizationManager> managers) {
+        this(managers, null);
+    }
+
+    public AuthorizationConfiguration(List<AuthorizationManager> managers, EntitlementsManager entitlementsManager) {
         this.managers = managers;
+        this.entitlementsManager = entitlementsManager;
     }
 
     public List<AuthorizationManager> getManagers() {
         return this.managers;
     }
+
+    public EntitlementsManager getEntitlementsManager() {
+        return this.entitlementsManager;
+    }
 }
\ No newline at end of file
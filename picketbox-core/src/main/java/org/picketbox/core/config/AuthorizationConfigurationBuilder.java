@@ -22,10 +22,19 @@
 
 package org.picketbox.core.config;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.EntitlementsManager;
+import org.picketbox.core.authorization.RoleBasedAuthorizationManager;
+import org.picketbox.core.authorization.impl.DecisionCachingAuthorizationManager;
+import org.picketbox.core.authorization.impl.DefaultEntitlementsManager;
+import org.picketbox.core.authorization.impl.RoleIndexAuthorizationManager;
+import org.picketbox.core.authorization.xacml.XACMLAuthorizationManager;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
@@ -34,6 +43,9 @@ import org.picketbox.core.authorization.AuthorizationManager;
 public class AuthorizationConfigurationBuilder extends AbstractConfigurationBuilder<AuthorizationConfiguration> {
 
     private final List<AuthorizationManager> managers;
+    private int decisionCacheSize;
+    private long decisionCacheTimeToLive;
+    private EntitlementsManager entitlementsManager;
 
     public AuthorizationConfigurationBuilder(ConfigurationBuilder builder) {
         super(builder);
@@ -55,6 +67,94 @@ public class AuthorizationConfigurationBuilder extends AbstractConfigurationBuil
         return this;
     }
 
+    /**
+     * <p>
+     * Authorizes the users having any of the given roles. The role names are compiled into a
+     * {@link org.picketbox.core.authorization.RoleIndex} by a {@link RoleIndexAuthorizationManager}.
+     * </p>
+     *
+     * @param roleNames
+     * @return
+     */
+    public AuthorizationConfigurationBuilder roles(String... roleNames) {
+        return manager(new RoleIndexAuthorizationManager(new ArrayList<String>(Arrays.asList(roleNames))));
+    }
+
+    /**
+     * <p>
+     * Authorizes the users using the XACML policies stored in the given directory. See {@link XACMLAuthorizationManager}.
+     * </p>
+     *
+     * @param policyDirectory
+     * @return
+     */
+    public AuthorizationConfigurationBuilder xacml(File policyDirectory) {
+        return manager(new XACMLAuthorizationManager(policyDirectory));
+    }
+
+    public AuthorizationConfigurationBuilder entitlements(EntitlementsManager entitlementsManager) {
+        this.entitlementsManager = entitlementsManager;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Grants the given actions on a resource to the users having the given role. The grants are evaluated by a
+     * {@link DefaultEntitlementsManager}.
+     * </p>
+     *
+     * @param roleName
+     * @param resourceKey the key of the resource, see {@link org.picketbox.core.authorization.CacheableResource}.
+     * @param actions
+     * @return
+     */
+    public AuthorizationConfigurationBuilder grant(String roleName, Object resourceKey, String... actions) {
+        if (!(this.entitlementsManager instanceof DefaultEntitlementsManager)) {
+            this.entitlementsManager = new DefaultEntitlementsManager();
+        }
+
+        ((DefaultEntitlementsManager) this.entitlementsManager).grant(roleName, resourceKey, actions);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Caches the decisions of the configured managers using the default size and time to live.
+     * </p>
+     *
+     * @return
+     */
+    public AuthorizationConfigurationBuilder decisionCache() {
+        return decisionCache(DecisionCachingAuthorizationManager.DEFAULT_MAXIMUM_SIZE,
+                DecisionCachingAuthorizationManager.DEFAULT_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * <p>
+     * Caches the decisions of the configured managers with a {@link DecisionCachingAuthorizationManager}. Only decisions
+     * about {@link org.picketbox.core.authorization.CacheableResource} instances are cached.
+     * </p>
+     * <p>
+     * Only the managers whose class declares {@link RoleBasedAuthorizationManager} are wrapped, the decisions of other
+     * managers, like the {@link XACMLAuthorizationManager} or subclasses of role based managers, may depend on more than the
+     * roles of the user.
+     * </p>
+     *
+     * @param maximumSize the maximum number of cached decisions of each manager.
+     * @param timeToLive the time after which a cached decision expires.
+     * @param unit the {@link TimeUnit} of the time to live.
+     * @return
+     */
+    public AuthorizationConfigurationBuilder decisionCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be greater than zero: " + maximumSize);
+        }
+
+        this.decisionCacheSize = maximumSize;
+        this.decisionCacheTimeToLive = unit.toMillis(timeToLive);
+        return this;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -62,7 +162,34 @@ public class AuthorizationConfigurationBuilder extends AbstractConfigurationBuil
      */
     @Override
     public AuthorizationConfiguration doBuild() {
-        return new AuthorizationConfiguration(this.managers);
+        List<AuthorizationManager> managers = this.managers;
+
+        if (this.decisionCacheSize > 0) {
+            managers = new ArrayList<AuthorizationManager>();
+
+            for (AuthorizationManager manager : this.managers) {
+                if (isRoleBased(manager)) {
+                    manager = new DecisionCachingAuthorizationManager(manager, this.decisionCacheSize,
+                            this.decisionCacheTimeToLive, TimeUnit.MILLISECONDS);
+                }
+
+                managers.add(manager);
+            }
+        }
+
+        return new AuthorizationConfiguration(managers, this.entitlementsManager);
+    }
+
+    /**
+     * <p>
+     * Checks if the class of the given manager declares {@link RoleBasedAuthorizationManager}. Inheriting it is not enough.
+     * </p>
+     *
+     * @param manager
+     * @return
+     */
+    private static boolean isRoleBased(AuthorizationManager manager) {
+        return Arrays.asList(manager.getClass().getInterfaces()).contains(RoleBasedAuthorizationManager.class);
     }
 
 }
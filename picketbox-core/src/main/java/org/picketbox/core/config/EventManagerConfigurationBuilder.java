@@ -24,7 +24,10 @@ package org.picketbox.core.config;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
+import org.picketbox.core.event.AsyncEventManager;
+import org.picketbox.core.event.BackpressurePolicy;
 import org.picketbox.core.event.PicketBoxEventHandler;
 import org.picketbox.core.event.PicketBoxEventManager;
 import org.picketbox.core.event.DefaultEventManager;
@@ -37,6 +40,11 @@ public class EventManagerConfigurationBuilder extends AbstractConfigurationBuild
 
     private PicketBoxEventManager manager;
     private List<PicketBoxEventHandler> handlers;
+    private boolean asynchronous;
+    private int workerThreads = AsyncEventManager.DEFAULT_WORKER_THREADS;
+    private int queueCapacity = AsyncEventManager.DEFAULT_QUEUE_CAPACITY;
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+    private ThreadFactory threadFactory;
 
     public EventManagerConfigurationBuilder(ConfigurationBuilder builder) {
         super(builder);
@@ -51,7 +59,12 @@ public class EventManagerConfigurationBuilder extends AbstractConfigurationBuild
     @Override
     protected void setDefaults() {
         if (manager == null) {
-            manager = new DefaultEventManager(this.handlers);
+            if (this.asynchronous) {
+                manager = new AsyncEventManager(this.handlers, this.workerThreads, this.queueCapacity,
+                        this.backpressurePolicy, this.threadFactory);
+            } else {
+                manager = new DefaultEventManager(this.handlers);
+            }
         }
     }
 
@@ -60,6 +73,54 @@ public class EventManagerConfigurationBuilder extends AbstractConfigurationBuild
         return this;
     }
 
+    /**
+     * <p>
+     * Dispatches events in background threads using an {@link AsyncEventManager} with its default settings.
+     * </p>
+     *
+     * @return
+     */
+    public EventManagerConfigurationBuilder asynchronous() {
+        this.asynchronous = true;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Dispatches events in background threads using an {@link AsyncEventManager}.
+     * </p>
+     *
+     * @param workerThreads the number of worker threads.
+     * @param queueCapacity the maximum number of events queued for each worker.
+     * @param backpressurePolicy what to do when a queue is full.
+     * @return
+     */
+    public EventManagerConfigurationBuilder asynchronous(int workerThreads, int queueCapacity,
+            BackpressurePolicy backpressurePolicy) {
+        return asynchronous(workerThreads, queueCapacity, backpressurePolicy, null);
+    }
+
+    /**
+     * <p>
+     * Dispatches events in background threads using an {@link AsyncEventManager}.
+     * </p>
+     *
+     * @param workerThreads the number of worker threads.
+     * @param queueCapacity the maximum number of events queued for each worker.
+     * @param backpressurePolicy what to do when a queue is full.
+     * @param threadFactory creates the worker threads, for instance virtual threads where the platform supports them.
+     * @return
+     */
+    public EventManagerConfigurationBuilder asynchronous(int workerThreads, int queueCapacity,
+            BackpressurePolicy backpressurePolicy, ThreadFactory threadFactory) {
+        this.asynchronous = true;
+        this.workerThreads = workerThreads;
+        this.queueCapacity = queueCapacity;
+        this.backpressurePolicy = backpressurePolicy;
+        this.threadFactory = threadFactory;
+        return this;
+    }
+
     public EventManagerConfigurationBuilder handler(PicketBoxEventHandler authenticationEventHandler) {
         this.handlers.add(authenticationEventHandler);
         return this;
@@ -32,10 +32,19 @@ public class GlobalIdentityManagerConfiguration {
 
     private IdentityManagerConfiguration identityManagerConfiguration;
     private UserContextPopulator userPopulator;
+    private int userPopulatorCacheSize;
+    private long userPopulatorCacheTimeToLive;
 
     public GlobalIdentityManagerConfiguration(IdentityManagerConfiguration identityManagerConfiguration, UserContextPopulator userPopulator) {
+        this(identityManagerConfiguration, userPopulator, 0, 0);
+    }
+
+    public GlobalIdentityManagerConfiguration(IdentityManagerConfiguration identityManagerConfiguration,
+            UserContextPopulator userPopulator, int userPopulatorCacheSize, long userPopulatorCacheTimeToLive) {
         this.identityManagerConfiguration = identityManagerConfiguration;
         this.userPopulator = userPopulator;
+        this.userPopulatorCacheSize = userPopulatorCacheSize;
+        this.userPopulatorCacheTimeToLive = userPopulatorCacheTimeToLive;
     }
 
     public IdentityManagerConfiguration getIdentityManagerConfiguration() {
@@ -45,4 +54,25 @@ public class GlobalIdentityManagerConfiguration {
     public UserContextPopulator getUserPopulator() {
         return this.userPopulator;
     }
+
+    /**
+     * @return true if the informations loaded by the user populator should be cached.
+     */
+    public boolean isUserPopulatorCached() {
+        return this.userPopulatorCacheSize > 0;
+    }
+
+    /**
+     * @return the maximum number of principals cached by the user populator.
+     */
+    public int getUserPopulatorCacheSize() {
+        return this.userPopulatorCacheSize;
+    }
+
+    /**
+     * @return the time to live, in milliseconds, of the informations cached by the user populator.
+     */
+    public long getUserPopulatorCacheTimeToLive() {
+        return this.userPopulatorCacheTimeToLive;
+    }
 }
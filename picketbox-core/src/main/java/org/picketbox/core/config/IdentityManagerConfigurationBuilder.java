@@ -22,7 +22,10 @@
 
 package org.picketbox.core.config;
 
+import java.util.concurrent.TimeUnit;
+
 import org.picketbox.core.identity.UserContextPopulator;
+import org.picketbox.core.identity.impl.CachingUserContextPopulator;
 import org.picketlink.idm.IdentityManager;
 import org.picketlink.idm.internal.DefaultIdentityManager;
 
@@ -42,6 +45,8 @@ public class IdentityManagerConfigurationBuilder extends AbstractConfigurationBu
     private FileIdentityManagerConfigurationBuilder fileIdentityManagerManager;
 
     private UserContextPopulator userPopulator;
+    private int userPopulatorCacheSize;
+    private long userPopulatorCacheTimeToLive;
 
     public IdentityManagerConfigurationBuilder(ConfigurationBuilder builder) {
         super(builder);
@@ -90,7 +95,8 @@ public class IdentityManagerConfigurationBuilder extends AbstractConfigurationBu
 
     @Override
     public GlobalIdentityManagerConfiguration doBuild() {
-        return new GlobalIdentityManagerConfiguration(this.identityManagerBuilder.build(), this.userPopulator);
+        return new GlobalIdentityManagerConfiguration(this.identityManagerBuilder.build(), this.userPopulator,
+                this.userPopulatorCacheSize, this.userPopulatorCacheTimeToLive);
     }
 
     public IdentityManagerConfigurationBuilder userPopulator(UserContextPopulator userPopulator) {
@@ -98,4 +104,37 @@ public class IdentityManagerConfigurationBuilder extends AbstractConfigurationBu
         return this;
     }
 
+    /**
+     * <p>
+     * Caches the informations loaded by the user populator, configured or default, using the default size and time to live.
+     * </p>
+     *
+     * @return
+     */
+    public IdentityManagerConfigurationBuilder userPopulatorCache() {
+        return userPopulatorCache(CachingUserContextPopulator.DEFAULT_MAXIMUM_SIZE,
+                CachingUserContextPopulator.DEFAULT_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * <p>
+     * Caches the informations loaded by the user populator, configured or default. Use
+     * {@link #userPopulator(UserContextPopulator)} with a {@link CachingUserContextPopulator} to configure the refresh ahead.
+     * </p>
+     *
+     * @param maximumSize the maximum number of cached principals.
+     * @param timeToLive the time after which the cached informations of a principal expire.
+     * @param unit the {@link TimeUnit} of the time to live.
+     * @return
+     */
+    public IdentityManagerConfigurationBuilder userPopulatorCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be greater than zero: " + maximumSize);
+        }
+
+        this.userPopulatorCacheSize = maximumSize;
+        this.userPopulatorCacheTimeToLive = unit.toMillis(timeToLive);
+        return this;
+    }
+
 }
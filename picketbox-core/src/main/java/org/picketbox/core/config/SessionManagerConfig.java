@@ -22,8 +22,12 @@
 
 package org.picketbox.core.config;
 
+import org.picketbox.core.session.SessionExpirationScheduler;
+import org.picketbox.core.session.SessionIdGenerator;
 import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.SessionSerializer;
 import org.picketbox.core.session.SessionStore;
+import org.picketbox.core.session.TimingWheelExpirationScheduler;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
@@ -31,9 +35,23 @@ import org.picketbox.core.session.SessionStore;
  */
 public class SessionManagerConfig {
 
+    public static final long DEFAULT_TOUCH_GRANULARITY = 1000;
+
     private SessionManager manager;
     private SessionStore store;
     private int sessionTimeout;
+    private long idleTimeout;
+    private long absoluteTimeout;
+    private long touchGranularity = DEFAULT_TOUCH_GRANULARITY;
+    private int maxSessionsPerPrincipal;
+    private SessionExpirationScheduler expirationScheduler;
+    private long expirationTickDuration = TimingWheelExpirationScheduler.DEFAULT_TICK_DURATION;
+    private int expirationWheelSize = TimingWheelExpirationScheduler.DEFAULT_WHEEL_SIZE;
+    private int expirationWorkerThreads = TimingWheelExpirationScheduler.DEFAULT_WORKER_THREADS;
+    private SessionSerializer serializer;
+    private boolean refreshAttributesFromStore;
+    private SessionIdGenerator sessionIdGenerator;
+    private long revalidationInterval;
 
     public SessionManagerConfig(SessionManager manager, SessionStore store, int sessionTimeout) {
         this.manager = manager;
@@ -53,4 +71,183 @@ public class SessionManagerConfig {
         return this.sessionTimeout;
     }
 
+    /**
+     * <p>
+     * Returns the time, in milliseconds, a session may stay idle before it expires. Values less or equal than zero disable
+     * idle expiration.
+     * </p>
+     *
+     * @return
+     */
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    protected void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * <p>
+     * Returns the time, in milliseconds, after which a session expires regardless of its activity. Defaults to the
+     * session timeout when not set. Values less or equal than zero disable absolute expiration.
+     * </p>
+     *
+     * @return
+     */
+    public long getAbsoluteTimeout() {
+        if (this.absoluteTimeout <= 0) {
+            return this.sessionTimeout * 60L * 1000L;
+        }
+
+        return this.absoluteTimeout;
+    }
+
+    protected void setAbsoluteTimeout(long absoluteTimeout) {
+        this.absoluteTimeout = absoluteTimeout;
+    }
+
+    /**
+     * <p>
+     * Returns the window, in milliseconds, inside which session accesses are coalesced into a single touch.
+     * </p>
+     *
+     * @return
+     */
+    public long getTouchGranularity() {
+        return this.touchGranularity;
+    }
+
+    protected void setTouchGranularity(long touchGranularity) {
+        this.touchGranularity = touchGranularity;
+    }
+
+    /**
+     * <p>
+     * Returns the maximum number of concurrent sessions of a single principal. When exceeded, the oldest sessions of the
+     * principal are expired. Values less or equal than zero disable this limit.
+     * </p>
+     *
+     * @return
+     */
+    public int getMaxSessionsPerPrincipal() {
+        return this.maxSessionsPerPrincipal;
+    }
+
+    protected void setMaxSessionsPerPrincipal(int maxSessionsPerPrincipal) {
+        this.maxSessionsPerPrincipal = maxSessionsPerPrincipal;
+    }
+
+    /**
+     * <p>
+     * Returns the {@link SessionExpirationScheduler} used to expire sessions. If null a default scheduler will be created
+     * using the tick duration, wheel size and worker threads from this configuration.
+     * </p>
+     *
+     * @return
+     */
+    public SessionExpirationScheduler getExpirationScheduler() {
+        return this.expirationScheduler;
+    }
+
+    protected void setExpirationScheduler(SessionExpirationScheduler expirationScheduler) {
+        this.expirationScheduler = expirationScheduler;
+    }
+
+    /**
+     * <p>
+     * Returns the tick duration, in milliseconds, of the default expiration scheduler.
+     * </p>
+     *
+     * @return
+     */
+    public long getExpirationTickDuration() {
+        return this.expirationTickDuration;
+    }
+
+    protected void setExpirationTickDuration(long expirationTickDuration) {
+        this.expirationTickDuration = expirationTickDuration;
+    }
+
+    public int getExpirationWheelSize() {
+        return this.expirationWheelSize;
+    }
+
+    protected void setExpirationWheelSize(int expirationWheelSize) {
+        this.expirationWheelSize = expirationWheelSize;
+    }
+
+    public int getExpirationWorkerThreads() {
+        return this.expirationWorkerThreads;
+    }
+
+    protected void setExpirationWorkerThreads(int expirationWorkerThreads) {
+        this.expirationWorkerThreads = expirationWorkerThreads;
+    }
+
+    /**
+     * <p>
+     * Returns the {@link SessionSerializer} used by the store to write sessions outside the heap. If null the store's default
+     * serializer is used.
+     * </p>
+     *
+     * @return
+     */
+    public SessionSerializer getSerializer() {
+        return this.serializer;
+    }
+
+    protected void setSerializer(SessionSerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * <p>
+     * Indicates if session attributes are read from the store every time they are accessed. Only useful when the store is
+     * shared by different nodes. By default attributes are read from the local session.
+     * </p>
+     *
+     * @return
+     */
+    public boolean isRefreshAttributesFromStore() {
+        return this.refreshAttributesFromStore;
+    }
+
+    protected void setRefreshAttributesFromStore(boolean refreshAttributesFromStore) {
+        this.refreshAttributesFromStore = refreshAttributesFromStore;
+    }
+
+    /**
+     * <p>
+     * Returns the {@link SessionIdGenerator} used to create session identifiers. If null a
+     * {@link org.picketbox.core.session.SecureSessionIdGenerator} is used.
+     * </p>
+     *
+     * @return
+     */
+    public SessionIdGenerator getSessionIdGenerator() {
+        return this.sessionIdGenerator;
+    }
+
+    protected void setSessionIdGenerator(SessionIdGenerator sessionIdGenerator) {
+        this.sessionIdGenerator = sessionIdGenerator;
+    }
+
+    /**
+     * <p>
+     * Returns the time, in milliseconds, during which a user restored from a valid session is trusted without being
+     * authenticated again and without reloading its informations from the identity store. If zero every restored user is
+     * authenticated again.
+     * </p>
+     *
+     * @return
+     */
+    public long getRevalidationInterval() {
+        return this.revalidationInterval;
+    }
+
+    protected void setRevalidationInterval(long revalidationInterval) {
+        this.revalidationInterval = revalidationInterval;
+    }
+
 }
@@ -22,11 +22,24 @@
 
 package org.picketbox.core.config;
 
+import java.util.concurrent.TimeUnit;
+
 import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.cache.EvictionPolicyType;
+import org.picketbox.core.session.BoundedSessionStore;
+import org.picketbox.core.session.CachingSessionStore;
 import org.picketbox.core.session.FileSessionStore;
 import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.JournalSyncPolicy;
+import org.picketbox.core.session.JournaledFileSessionStore;
+import org.picketbox.core.session.MappedSessionStore;
+import org.picketbox.core.session.SessionExpirationScheduler;
+import org.picketbox.core.session.SessionIdGenerator;
 import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.SessionSerializer;
 import org.picketbox.core.session.SessionStore;
+import org.picketbox.core.session.TimingWheelExpirationScheduler;
+import org.picketbox.core.session.WriteBehindSessionStore;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
@@ -37,6 +50,25 @@ public class SessionManagerConfigurationBuilder extends AbstractConfigurationBui
     private SessionManager manager;
     private SessionStore store;
     private int sessionTimeout;
+    private long idleTimeout;
+    private long absoluteTimeout;
+    private long touchGranularity = -1;
+    private int maxSessionsPerPrincipal;
+    private SessionExpirationScheduler expirationScheduler;
+    private long expirationTickDuration;
+    private int expirationWheelSize;
+    private int expirationWorkerThreads;
+    private SessionSerializer serializer;
+    private boolean refreshAttributesFromStore;
+    private boolean writeBehind;
+    private int writeBehindBatchSize = WriteBehindSessionStore.DEFAULT_BATCH_SIZE;
+    private long writeBehindFlushInterval = WriteBehindSessionStore.DEFAULT_FLUSH_INTERVAL;
+    private int writeBehindMaxPendingSessions = WriteBehindSessionStore.DEFAULT_MAX_PENDING_SESSIONS;
+    private boolean localCache;
+    private SessionIdGenerator sessionIdGenerator;
+    private int localCacheMaximumSessions = CachingSessionStore.DEFAULT_MAXIMUM_SESSIONS;
+    private long localCacheTimeToLive = CachingSessionStore.DEFAULT_TIME_TO_LIVE;
+    private long revalidationInterval;
 
     public SessionManagerConfigurationBuilder(ConfigurationBuilder configurationBuilder) {
         super(configurationBuilder);
@@ -53,6 +85,65 @@ public class SessionManagerConfigurationBuilder extends AbstractConfigurationBui
         return this;
     }
 
+    /**
+     * Create a {@link InMemorySessionStore} sized for the expected load.
+     *
+     * @param initialCapacity the initial number of sessions the store can hold without resizing.
+     * @param concurrencyLevel the estimated number of threads updating the store concurrently.
+     * @return
+     */
+    public SessionManagerConfigurationBuilder inMemorySessionStore(int initialCapacity, int concurrencyLevel) {
+        if (this.store == null) {
+            this.store = new InMemorySessionStore(initialCapacity, concurrencyLevel);
+        }
+        if (this.store instanceof InMemorySessionStore == false) {
+            throw PicketBoxMessages.MESSAGES.wrongSessionStore(this.store.getClass().getName());
+        }
+
+        return this;
+    }
+
+    /**
+     * Create a {@link BoundedSessionStore} that evicts the least recently used sessions.
+     *
+     * @param maximumSessions the maximum number of sessions.
+     * @return
+     */
+    public SessionManagerConfigurationBuilder boundedSessionStore(int maximumSessions) {
+        return boundedSessionStore(maximumSessions, 0, EvictionPolicyType.LRU);
+    }
+
+    /**
+     * Create a {@link BoundedSessionStore}.
+     *
+     * @param maximumSessions the maximum number of sessions.
+     * @param evictionPolicy the policy used to select the sessions to be evicted.
+     * @return
+     */
+    public SessionManagerConfigurationBuilder boundedSessionStore(int maximumSessions, EvictionPolicyType evictionPolicy) {
+        return boundedSessionStore(maximumSessions, 0, evictionPolicy);
+    }
+
+    /**
+     * Create a {@link BoundedSessionStore}.
+     *
+     * @param maximumSessions the maximum number of sessions.
+     * @param maximumWeight the maximum estimated size, in bytes, of all sessions.
+     * @param evictionPolicy the policy used to select the sessions to be evicted.
+     * @return
+     */
+    public SessionManagerConfigurationBuilder boundedSessionStore(int maximumSessions, long maximumWeight,
+            EvictionPolicyType evictionPolicy) {
+        if (this.store == null) {
+            this.store = new BoundedSessionStore(maximumSessions, maximumWeight, evictionPolicy, null);
+        }
+        if (this.store instanceof BoundedSessionStore == false) {
+            throw PicketBoxMessages.MESSAGES.wrongSessionStore(this.store.getClass().getName());
+        }
+
+        return this;
+    }
+
     /**
      * Create a {@link FileSessionStore}
      *
@@ -86,22 +177,319 @@ public class SessionManagerConfigurationBuilder extends AbstractConfigurationBui
         return this;
     }
 
+    /**
+     * Create a {@link JournaledFileSessionStore}
+     *
+     * @param directory directory where the session snapshot and journal files are stored
+     * @param syncPolicy defines when the journal records are forced to disk
+     * @return
+     */
+    public SessionManagerConfigurationBuilder fileSessionStore(String directory, JournalSyncPolicy syncPolicy) {
+        if (this.store == null) {
+            this.store = new JournaledFileSessionStore(directory, syncPolicy);
+        }
+        if (this.store instanceof JournaledFileSessionStore == false) {
+            throw PicketBoxMessages.MESSAGES.wrongSessionStore(this.store.getClass().getName());
+        }
+
+        return this;
+    }
+
+    /**
+     * Create a {@link MappedSessionStore}, which keeps sessions outside the heap in a memory-mapped file.
+     *
+     * @param fileName the file where sessions are stored
+     * @return
+     */
+    public SessionManagerConfigurationBuilder mappedSessionStore(String fileName) {
+        return mappedSessionStore(fileName, MappedSessionStore.DEFAULT_INITIAL_SLOTS, MappedSessionStore.DEFAULT_SLOT_SIZE);
+    }
+
+    /**
+     * Create a {@link MappedSessionStore}, which keeps sessions outside the heap in a memory-mapped file.
+     *
+     * @param fileName the file where sessions are stored
+     * @param initialSlots the number of slots of a new file
+     * @param slotSize the size of each slot, in bytes
+     * @return
+     */
+    public SessionManagerConfigurationBuilder mappedSessionStore(String fileName, int initialSlots, int slotSize) {
+        if (this.store == null) {
+            this.store = new MappedSessionStore(fileName, initialSlots, slotSize);
+        }
+        if (this.store instanceof MappedSessionStore == false) {
+            throw PicketBoxMessages.MESSAGES.wrongSessionStore(this.store.getClass().getName());
+        }
+
+        return this;
+    }
+
     public SessionManagerConfigurationBuilder store(SessionStore store) {
         this.store = store;
         return this;
     }
 
+    /**
+     * Write sessions to the configured store asynchronously, using a {@link WriteBehindSessionStore} with the default
+     * settings.
+     *
+     * @return
+     */
+    public SessionManagerConfigurationBuilder writeBehind() {
+        this.writeBehind = true;
+        return this;
+    }
+
+    /**
+     * Write sessions to the configured store asynchronously, using a {@link WriteBehindSessionStore}.
+     *
+     * @param batchSize the number of pending sessions that triggers a flush before the flush interval elapses.
+     * @param flushInterval the maximum time a write stays pending.
+     * @param unit the {@link TimeUnit} of the flush interval.
+     * @param maxPendingSessions the maximum number of pending sessions. Writers block when it is reached.
+     * @return
+     */
+    public SessionManagerConfigurationBuilder writeBehind(int batchSize, long flushInterval, TimeUnit unit,
+            int maxPendingSessions) {
+        this.writeBehind = true;
+        this.writeBehindBatchSize = batchSize;
+        this.writeBehindFlushInterval = unit.toMillis(flushInterval);
+        this.writeBehindMaxPendingSessions = maxPendingSessions;
+        return this;
+    }
+
+    /**
+     * Set the time after which sessions expire regardless of their activity. Same as
+     * {@link #absoluteTimeout(long, TimeUnit)}.
+     *
+     * @param timeoutInMinutes
+     * @return
+     */
     public SessionManagerConfigurationBuilder sessionTimeout(int timeoutInMinutes) {
         this.sessionTimeout = timeoutInMinutes;
         return this;
     }
 
+    /**
+     * Set the time a session may stay idle before it expires. Every access to the session restarts the idle period.
+     *
+     * @param timeoutInMinutes
+     * @return
+     */
+    public SessionManagerConfigurationBuilder idleTimeout(int timeoutInMinutes) {
+        return idleTimeout(timeoutInMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Set the time a session may stay idle before it expires. Every access to the session restarts the idle period.
+     *
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public SessionManagerConfigurationBuilder idleTimeout(long timeout, TimeUnit unit) {
+        this.idleTimeout = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Set the time after which sessions expire regardless of their activity.
+     *
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public SessionManagerConfigurationBuilder absoluteTimeout(long timeout, TimeUnit unit) {
+        this.absoluteTimeout = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Set the window inside which accesses to a session are coalesced into a single touch. Larger values make session
+     * accesses cheaper at the cost of a less precise idle expiration.
+     *
+     * @param granularity
+     * @param unit
+     * @return
+     */
+    public SessionManagerConfigurationBuilder touchGranularity(long granularity, TimeUnit unit) {
+        this.touchGranularity = unit.toMillis(granularity);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of concurrent sessions of a single principal. When a new session exceeds it, the oldest sessions
+     * of the principal are expired.
+     *
+     * @param maxSessions
+     * @return
+     */
+    public SessionManagerConfigurationBuilder maxSessionsPerPrincipal(int maxSessions) {
+        this.maxSessionsPerPrincipal = maxSessions;
+        return this;
+    }
+
+    /**
+     * Use a custom {@link SessionExpirationScheduler} to expire sessions.
+     *
+     * @param expirationScheduler
+     * @return
+     */
+    public SessionManagerConfigurationBuilder expirationScheduler(SessionExpirationScheduler expirationScheduler) {
+        this.expirationScheduler = expirationScheduler;
+        return this;
+    }
+
+    /**
+     * Set the tick duration of the default {@link TimingWheelExpirationScheduler}. Sessions are expired with a precision of
+     * one tick.
+     *
+     * @param duration
+     * @param unit
+     * @return
+     */
+    public SessionManagerConfigurationBuilder expirationTickDuration(long duration, TimeUnit unit) {
+        this.expirationTickDuration = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Set the number of buckets of the default {@link TimingWheelExpirationScheduler}.
+     *
+     * @param wheelSize
+     * @return
+     */
+    public SessionManagerConfigurationBuilder expirationWheelSize(int wheelSize) {
+        this.expirationWheelSize = wheelSize;
+        return this;
+    }
+
+    /**
+     * Set the number of threads used by the default {@link TimingWheelExpirationScheduler} to expire sessions.
+     *
+     * @param workerThreads
+     * @return
+     */
+    public SessionManagerConfigurationBuilder expirationWorkerThreads(int workerThreads) {
+        this.expirationWorkerThreads = workerThreads;
+        return this;
+    }
+
+    /**
+     * Use a custom {@link SessionSerializer} to write sessions to the file and memory-mapped stores. By default sessions are
+     * written using a {@link org.picketbox.core.session.CompactSessionSerializer}.
+     *
+     * @param serializer
+     * @return
+     */
+    public SessionManagerConfigurationBuilder serializer(SessionSerializer serializer) {
+        this.serializer = serializer;
+        return this;
+    }
+
+    /**
+     * Read session attributes from the store every time they are accessed, instead of reading them from the local session.
+     * Use it when the store is shared by different nodes. Attributes changed locally and not yet written to the store are
+     * not overwritten.
+     *
+     * @return
+     */
+    public SessionManagerConfigurationBuilder refreshAttributesFromStore() {
+        this.refreshAttributesFromStore = true;
+        return this;
+    }
+
+    /**
+     * Keep a local copy of the recently used sessions in front of the configured store, using a {@link CachingSessionStore}.
+     * Use it when the store is shared by different nodes or is remote.
+     *
+     * @param maximumSessions the maximum number of sessions kept locally.
+     * @param timeToLive the time after which a local copy is discarded and the session is read again from the store.
+     * @param unit the {@link TimeUnit} of the time to live.
+     * @return
+     */
+    public SessionManagerConfigurationBuilder localCache(int maximumSessions, long timeToLive, TimeUnit unit) {
+        this.localCache = true;
+        this.localCacheMaximumSessions = maximumSessions;
+        this.localCacheTimeToLive = unit.toMillis(timeToLive);
+        return this;
+    }
+
+    /**
+     * Use a custom {@link SessionIdGenerator} to create session identifiers. By default identifiers are created by a
+     * {@link org.picketbox.core.session.SecureSessionIdGenerator}.
+     *
+     * @param sessionIdGenerator
+     * @return
+     */
+    public SessionManagerConfigurationBuilder sessionIdGenerator(SessionIdGenerator sessionIdGenerator) {
+        this.sessionIdGenerator = sessionIdGenerator;
+        return this;
+    }
+
+    /**
+     * Trust users restored from a valid session for the given interval. During the interval the user, its roles and its
+     * principal are taken from the session, without authenticating the user again or querying the identity store. After
+     * the interval the user is authenticated again and its informations are reloaded, so changes in the identity store are
+     * picked up.
+     *
+     * @param interval
+     * @param unit
+     * @return
+     */
+    public SessionManagerConfigurationBuilder revalidationInterval(long interval, TimeUnit unit) {
+        this.revalidationInterval = unit.toMillis(interval);
+        return this;
+    }
+
     @Override
     protected void setDefaults() {
+        if (this.touchGranularity < 0) {
+            this.touchGranularity = SessionManagerConfig.DEFAULT_TOUCH_GRANULARITY;
+        }
+
+        if (this.expirationTickDuration <= 0) {
+            this.expirationTickDuration = TimingWheelExpirationScheduler.DEFAULT_TICK_DURATION;
+        }
+
+        if (this.expirationWheelSize <= 0) {
+            this.expirationWheelSize = TimingWheelExpirationScheduler.DEFAULT_WHEEL_SIZE;
+        }
+
+        if (this.expirationWorkerThreads <= 0) {
+            this.expirationWorkerThreads = TimingWheelExpirationScheduler.DEFAULT_WORKER_THREADS;
+        }
     }
 
     @Override
     protected SessionManagerConfig doBuild() {
-        return new SessionManagerConfig(this.manager, this.store, this.sessionTimeout);
+        SessionStore store = this.store;
+
+        if (this.writeBehind) {
+            store = new WriteBehindSessionStore(store != null ? store : new InMemorySessionStore(), this.writeBehindBatchSize,
+                    this.writeBehindFlushInterval, TimeUnit.MILLISECONDS, this.writeBehindMaxPendingSessions);
+        }
+
+        if (this.localCache) {
+            store = new CachingSessionStore(store != null ? store : new InMemorySessionStore(), this.localCacheMaximumSessions,
+                    this.localCacheTimeToLive, TimeUnit.MILLISECONDS);
+        }
+
+        SessionManagerConfig config = new SessionManagerConfig(this.manager, store, this.sessionTimeout);
+
+        config.setIdleTimeout(this.idleTimeout);
+        config.setAbsoluteTimeout(this.absoluteTimeout);
+        config.setTouchGranularity(this.touchGranularity);
+        config.setMaxSessionsPerPrincipal(this.maxSessionsPerPrincipal);
+        config.setExpirationScheduler(this.expirationScheduler);
+        config.setExpirationTickDuration(this.expirationTickDuration);
+        config.setExpirationWheelSize(this.expirationWheelSize);
+        config.setExpirationWorkerThreads(this.expirationWorkerThreads);
+        config.setSerializer(this.serializer);
+        config.setRefreshAttributesFromStore(this.refreshAttributesFromStore);
+        config.setSessionIdGenerator(this.sessionIdGenerator);
+        config.setRevalidationInterval(this.revalidationInterval);
+
+        return config;
     }
 }
\ No newline at end of file
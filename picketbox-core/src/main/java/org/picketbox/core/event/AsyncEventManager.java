@@ -0,0 +1,418 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.event;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.picketbox.core.PicketBoxLifecycle;
+import org.picketbox.core.PicketBoxLogger;
+import org.picketbox.core.PicketBoxMessages;
+
+/**
+ * <p>
+ * A {@link PicketBoxEventManager} that dispatches events to their handlers in background threads, so slow handlers do not add
+ * to the latency of the operation raising the event.
+ * </p>
+ * <p>
+ * Each worker thread has its own bounded queue and each handler is always served by the same worker, so a handler receives
+ * its events in the order they were raised and never receives two events at the same time. When a queue is full the
+ * configured {@link BackpressurePolicy} applies. Handlers implementing {@link SynchronousEventHandler} are always dispatched
+ * in the thread raising the event, as are all handlers while the manager is not started.
+ * </p>
+ * <p>
+ * Exceptions thrown by asynchronous handlers are logged and do not reach the thread that raised the event. Events still
+ * queued are dispatched before {@link #stop()} returns, events raised while stopping are dispatched in the thread
+ * raising them.
+ * </p>
+ */
+public class AsyncEventManager extends DefaultEventManager implements PicketBoxLifecycle {
+
+    public static final int DEFAULT_WORKER_THREADS = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+    private static final long POLL_TIMEOUT = 100;
+
+    private final int workerThreads;
+    private final int queueCapacity;
+    private final BackpressurePolicy backpressurePolicy;
+    private final ThreadFactory threadFactory;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong callerRunsEvents = new AtomicLong();
+
+    // number of threads queueing an event, workers do not exit while an event may still be queued
+    private final AtomicInteger queueingThreads = new AtomicInteger();
+
+    private volatile boolean running;
+    private Worker[] workers;
+
+    public AsyncEventManager(List<PicketBoxEventHandler> handlers) {
+        this(handlers, DEFAULT_WORKER_THREADS, DEFAULT_QUEUE_CAPACITY, BackpressurePolicy.BLOCK, null);
+    }
+
+    /**
+     * <p>
+     * Creates a new instance.
+     * </p>
+     *
+     * @param handlers the handlers registered when the instance is created.
+     * @param workerThreads the number of worker threads.
+     * @param queueCapacity the maximum number of events queued for each worker.
+     * @param backpressurePolicy what to do when a queue is full. If null {@link BackpressurePolicy#BLOCK} is used.
+     * @param threadFactory creates the worker threads. If null daemon threads are created.
+     */
+    public AsyncEventManager(List<PicketBoxEventHandler> handlers, int workerThreads, int queueCapacity,
+            BackpressurePolicy backpressurePolicy, ThreadFactory threadFactory) {
+        super(handlers);
+
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("Number of worker threads must be greater than zero: " + workerThreads);
+        }
+
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be greater than zero: " + queueCapacity);
+        }
+
+        this.workerThreads = workerThreads;
+        this.queueCapacity = queueCapacity;
+        this.backpressurePolicy = backpressurePolicy != null ? backpressurePolicy : BackpressurePolicy.BLOCK;
+        this.threadFactory = threadFactory != null ? threadFactory : new DaemonThreadFactory();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.event.DefaultEventManager#dispatch(org.picketbox.core.event.PicketBoxEvent,
+     * org.picketbox.core.event.PicketBoxEventHandler)
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    protected void dispatch(PicketBoxEvent event, PicketBoxEventHandler handler) {
+        if (handler instanceof SynchronousEventHandler) {
+            super.dispatch(event, handler);
+            return;
+        }
+
+        this.queueingThreads.incrementAndGet();
+
+        try {
+            Worker[] currentWorkers = this.workers;
+
+            if (!this.running || currentWorkers == null) {
+                super.dispatch(event, handler);
+                return;
+            }
+
+            currentWorkers[workerIndex(handler, currentWorkers.length)].enqueue(new DispatchTask(event, handler));
+        } finally {
+            this.queueingThreads.decrementAndGet();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxLifecycle#start()
+     */
+    @Override
+    public synchronized void start() {
+        if (this.running) {
+            throw PicketBoxMessages.MESSAGES.instanceAlreadyStarted();
+        }
+
+        Worker[] newWorkers = new Worker[this.workerThreads];
+
+        for (int i = 0; i < newWorkers.length; i++) {
+            newWorkers[i] = new Worker(this.queueCapacity);
+        }
+
+        this.workers = newWorkers;
+        this.running = true;
+
+        for (Worker worker : newWorkers) {
+            worker.thread = this.threadFactory.newThread(worker);
+            worker.thread.start();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxLifecycle#stop()
+     */
+    @Override
+    public synchronized void stop() {
+        if (!this.running) {
+            throw PicketBoxMessages.MESSAGES.instanceAlreadyStopped();
+        }
+
+        this.running = false;
+
+        for (Worker worker : this.workers) {
+            worker.wakeUp();
+        }
+
+        for (Worker worker : this.workers) {
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        this.workers = null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxLifecycle#started()
+     */
+    @Override
+    public boolean started() {
+        return this.running;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.PicketBoxLifecycle#stopped()
+     */
+    @Override
+    public boolean stopped() {
+        return !this.running;
+    }
+
+    /**
+     * @return the number of events waiting to be dispatched.
+     */
+    public int getPendingCount() {
+        Worker[] currentWorkers = this.workers;
+        int pending = 0;
+
+        if (currentWorkers != null) {
+            for (Worker worker : currentWorkers) {
+                pending += worker.queue.size();
+            }
+        }
+
+        return pending;
+    }
+
+    /**
+     * @return the number of events discarded by the {@link BackpressurePolicy#DROP_OLDEST} policy.
+     */
+    public long getDroppedCount() {
+        return this.droppedEvents.get();
+    }
+
+    /**
+     * @return the number of times the {@link BackpressurePolicy#CALLER_RUNS} policy dispatched the events of a full queue in
+     *         the caller thread.
+     */
+    public long getCallerRunsCount() {
+        return this.callerRunsEvents.get();
+    }
+
+    public int getWorkerThreads() {
+        return this.workerThreads;
+    }
+
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return this.backpressurePolicy;
+    }
+
+    private static int workerIndex(PicketBoxEventHandler handler, int workerCount) {
+        int hash = System.identityHashCode(handler);
+
+        // spreads the bits, identity hash codes are not uniformly distributed in the lower bits
+        hash ^= (hash >>> 16);
+
+        return (hash & 0x7fffffff) % workerCount;
+    }
+
+    /**
+     * <p>
+     * An event waiting to be dispatched to one of its handlers.
+     * </p>
+     */
+    private static class DispatchTask {
+
+        @SuppressWarnings("rawtypes")
+        private final PicketBoxEvent event;
+        private final PicketBoxEventHandler handler;
+
+        @SuppressWarnings("rawtypes")
+        DispatchTask(PicketBoxEvent event, PicketBoxEventHandler handler) {
+            this.event = event;
+            this.handler = handler;
+        }
+
+        @SuppressWarnings("unchecked")
+        void run() {
+            try {
+                this.event.dispatch(this.handler);
+            } catch (RuntimeException e) {
+                PicketBoxLogger.LOGGER.errorDispatchingEvent(this.event, this.handler, e);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Dispatches the events of the handlers assigned to it, in the order they were queued.
+     * </p>
+     */
+    private class Worker implements Runnable {
+
+        // used to wake up a worker waiting for events when the manager is stopped
+        private final DispatchTask wakeUpTask = new DispatchTask(null, null);
+
+        // held while dispatching, so events dispatched by a caller do not run concurrently with the ones of the worker
+        private final ReentrantLock dispatchLock = new ReentrantLock(true);
+
+        private final BlockingQueue<DispatchTask> queue;
+        private Thread thread;
+
+        Worker(int capacity) {
+            this.queue = new ArrayBlockingQueue<DispatchTask>(capacity);
+        }
+
+        void enqueue(DispatchTask task) {
+            if (this.queue.offer(task)) {
+                return;
+            }
+
+            switch (backpressurePolicy) {
+                case DROP_OLDEST:
+                    while (!this.queue.offer(task)) {
+                        if (this.queue.poll() != null) {
+                            droppedEvents.incrementAndGet();
+                        }
+                    }
+
+                    break;
+                case CALLER_RUNS:
+                    callerRunsEvents.incrementAndGet();
+                    runInline(task);
+                    break;
+                default:
+                    try {
+                        this.queue.put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        runInline(task);
+                    }
+            }
+        }
+
+        /**
+         * <p>
+         * Dispatches the given event in the caller thread, after the events already queued, so the handlers still receive
+         * their events in order.
+         * </p>
+         *
+         * @param task
+         */
+        private void runInline(DispatchTask task) {
+            this.dispatchLock.lock();
+
+            try {
+                DispatchTask queuedTask;
+
+                while ((queuedTask = this.queue.poll()) != null) {
+                    if (queuedTask != this.wakeUpTask) {
+                        queuedTask.run();
+                    }
+                }
+
+                task.run();
+            } finally {
+                this.dispatchLock.unlock();
+            }
+        }
+
+        void wakeUp() {
+            this.queue.offer(this.wakeUpTask);
+        }
+
+        @Override
+        public void run() {
+            for (;;) {
+                // the lock is only contended when a caller dispatches the events of a full queue, the fair ordering makes
+                // sure the caller gets it as soon as the current event is dispatched
+                this.dispatchLock.lock();
+
+                try {
+                    DispatchTask task;
+
+                    try {
+                        task = this.queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        task = null;
+                    }
+
+                    if (task != null && task != this.wakeUpTask) {
+                        task.run();
+                    }
+                } finally {
+                    this.dispatchLock.unlock();
+                }
+
+                // events queued before the manager was stopped are still dispatched
+                if (!running && queueingThreads.get() == 0 && this.queue.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final int instance = INSTANCE_COUNTER.incrementAndGet();
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "PicketBox-EventDispatcher-" + this.instance + "-"
+                    + this.threadCounter.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.event;
+
+/**
+ * <p>
+ * Defines what an {@link AsyncEventManager} does when an event is raised and the queue of the worker that should dispatch it
+ * is full.
+ * </p>
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * The thread raising the event waits until the queue has space. No event is lost.
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued event is discarded to make room for the new one. Raising an event never waits.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The queued events and then the new one are dispatched in the thread raising it. No event is lost and the handlers
+     * receive their events in order, but raising an event waits for the event being dispatched by the worker.
+     */
+    CALLER_RUNS
+}
@@ -23,20 +23,36 @@
 package org.picketbox.core.event;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
+ * <p>
  * Default Implementation of the {@link PicketBoxEventManager}
+ * </p>
+ * <p>
+ * Handlers are kept in an immutable table that is copied whenever a handler is added or removed, so events can be raised
+ * concurrently with registrations without locking. The handlers of each concrete event class, including the handlers of its
+ * superclasses implementing {@link PicketBoxEvent}, are resolved on the first event of that class and cached, so raising an
+ * event is a single map lookup followed by an iteration over an array.
+ * </p>
+ * <p>
+ * Handlers registered for interfaces are not matched. Events of unrelated handler types may implement the same interface, and
+ * would then be dispatched to handlers they can not handle.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
 public class DefaultEventManager implements PicketBoxEventManager {
 
-    @SuppressWarnings("rawtypes")
-    private Map<Class<? extends PicketBoxEvent>, List<PicketBoxEventHandler>> observers = new HashMap<Class<? extends PicketBoxEvent>, List<PicketBoxEventHandler>>();
+    private static final PicketBoxEventHandler[] NO_HANDLERS = new PicketBoxEventHandler[0];
+
+    private volatile Registry registry = new Registry(Collections.<Class<?>, PicketBoxEventHandler[]> emptyMap());
 
     public DefaultEventManager(List<PicketBoxEventHandler> handlers) {
         for (PicketBoxEventHandler handler : handlers) {
@@ -50,31 +66,163 @@ public class DefaultEventManager implements PicketBoxEventManager {
      * @see org.picketbox.core.authentication.api.AuthenticationEventManager#raiseEvent(org.picketbox.core.authentication.api.
      * AuthenticationEvent)
      */
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @SuppressWarnings({ "rawtypes" })
     @Override
     public void raiseEvent(PicketBoxEvent event) {
-        List<PicketBoxEventHandler> handlers = this.observers.get(event.getClass());
+        PicketBoxEventHandler[] handlers = this.registry.resolve(event.getClass());
+
+        for (PicketBoxEventHandler authenticationEventHandler : handlers) {
+            dispatch(event, authenticationEventHandler);
+        }
+    }
+
+    /**
+     * <p>
+     * Dispatches the event to one of its handlers. Events are dispatched in the caller thread.
+     * </p>
+     *
+     * @param event
+     * @param handler
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected void dispatch(PicketBoxEvent event, PicketBoxEventHandler handler) {
+        event.dispatch(handler);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.event.PicketBoxEventManager#addHandler(org.picketbox.core.event.PicketBoxEventHandler)
+     */
+    @Override
+    public synchronized void addHandler(PicketBoxEventHandler handler) {
+        Class<?> eventType = handler.getEventType();
+        Map<Class<?>, PicketBoxEventHandler[]> handlersByType = new HashMap<Class<?>, PicketBoxEventHandler[]>(
+                this.registry.handlersByType);
+        PicketBoxEventHandler[] handlers = handlersByType.get(eventType);
+
+        if (handlers == null) {
+            handlers = NO_HANDLERS;
+        }
+
+        PicketBoxEventHandler[] newHandlers = new PicketBoxEventHandler[handlers.length + 1];
+
+        System.arraycopy(handlers, 0, newHandlers, 0, handlers.length);
+        newHandlers[handlers.length] = handler;
+
+        handlersByType.put(eventType, newHandlers);
+
+        this.registry = new Registry(handlersByType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.event.PicketBoxEventManager#removeHandler(org.picketbox.core.event.PicketBoxEventHandler)
+     */
+    @Override
+    public synchronized boolean removeHandler(PicketBoxEventHandler handler) {
+        Class<?> eventType = handler.getEventType();
+        PicketBoxEventHandler[] handlers = this.registry.handlersByType.get(eventType);
 
         if (handlers == null) {
-            handlers = this.observers.get(event.getClass().getSuperclass());
+            return false;
         }
 
-        if (handlers != null) {
-            for (PicketBoxEventHandler authenticationEventHandler : handlers) {
-                event.dispatch(authenticationEventHandler);
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i] == handler) {
+                Map<Class<?>, PicketBoxEventHandler[]> handlersByType = new HashMap<Class<?>, PicketBoxEventHandler[]>(
+                        this.registry.handlersByType);
+
+                if (handlers.length == 1) {
+                    handlersByType.remove(eventType);
+                } else {
+                    PicketBoxEventHandler[] newHandlers = new PicketBoxEventHandler[handlers.length - 1];
+
+                    System.arraycopy(handlers, 0, newHandlers, 0, i);
+                    System.arraycopy(handlers, i + 1, newHandlers, i, handlers.length - i - 1);
+
+                    handlersByType.put(eventType, newHandlers);
+                }
+
+                this.registry = new Registry(handlersByType);
+
+                return true;
             }
         }
+
+        return false;
     }
 
-    @SuppressWarnings("rawtypes")
-    public void addHandler(PicketBoxEventHandler handler) {
-        if (!this.observers.containsKey(handler.getEventType())) {
-            this.observers.put(handler.getEventType(), new ArrayList<PicketBoxEventHandler>());
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.event.PicketBoxEventManager#hasHandlers(java.lang.Class)
+     */
+    @Override
+    public boolean hasHandlers(Class<?> eventType) {
+        return this.registry.resolve(eventType).length > 0;
+    }
+
+    /**
+     * <p>
+     * An immutable snapshot of the registered handlers, with the handlers resolved for each concrete event class. A new
+     * snapshot is created on every change, so resolutions computed from an older snapshot are never cached in a newer one.
+     * </p>
+     */
+    private static final class Registry {
+
+        private final Map<Class<?>, PicketBoxEventHandler[]> handlersByType;
+        private final ConcurrentMap<Class<?>, PicketBoxEventHandler[]> handlersByEventClass =
+                new ConcurrentHashMap<Class<?>, PicketBoxEventHandler[]>();
+
+        Registry(Map<Class<?>, PicketBoxEventHandler[]> handlersByType) {
+            this.handlersByType = handlersByType;
+        }
+
+        PicketBoxEventHandler[] resolve(Class<?> eventClass) {
+            PicketBoxEventHandler[] handlers = this.handlersByEventClass.get(eventClass);
+
+            if (handlers == null) {
+                handlers = doResolve(eventClass);
+
+                PicketBoxEventHandler[] existing = this.handlersByEventClass.putIfAbsent(eventClass, handlers);
+
+                if (existing != null) {
+                    handlers = existing;
+                }
+            }
+
+            return handlers;
         }
 
-        List<PicketBoxEventHandler> handlers = this.observers.get(handler.getEventType());
+        /**
+         * <p>
+         * Collects the handlers of the given class and of its superclasses implementing {@link PicketBoxEvent}. Handlers of
+         * more specific types come first.
+         * </p>
+         *
+         * @param eventClass
+         * @return
+         */
+        private PicketBoxEventHandler[] doResolve(Class<?> eventClass) {
+            if (this.handlersByType.isEmpty()) {
+                return NO_HANDLERS;
+            }
+
+            List<PicketBoxEventHandler> handlers = new ArrayList<PicketBoxEventHandler>();
+
+            for (Class<?> type = eventClass; type != null && PicketBoxEvent.class.isAssignableFrom(type);
+                    type = type.getSuperclass()) {
+                PicketBoxEventHandler[] typeHandlers = this.handlersByType.get(type);
 
-        handlers.add(handler);
+                if (typeHandlers != null) {
+                    Collections.addAll(handlers, typeHandlers);
+                }
+            }
+
+            return handlers.isEmpty() ? NO_HANDLERS : handlers.toArray(new PicketBoxEventHandler[handlers.size()]);
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -49,4 +49,23 @@ public interface PicketBoxEventManager {
      * @param defaultSessionEventHandler
      */
     void addHandler(PicketBoxEventHandler handler);
+
+    /**
+     * <p>Removes a {@link PicketBoxEventHandler}. Events raised after this method returns are not dispatched to it.</p>
+     *
+     * @param handler
+     * @return true if the handler was registered.
+     */
+    boolean removeHandler(PicketBoxEventHandler handler);
+
+    /**
+     * <p>
+     * Checks if any handler would receive events of the given type. Callers can use it to avoid creating events nobody is
+     * listening to.
+     * </p>
+     *
+     * @param eventType the concrete event class.
+     * @return true if at least one handler is registered for the given type, or for one of its superclasses or interfaces.
+     */
+    boolean hasHandlers(Class<?> eventType);
 }
@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.identity.impl;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.picketbox.core.PicketBoxLogger;
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationResult;
+import org.picketbox.core.authentication.AuthenticationStatus;
+import org.picketbox.core.cache.BoundedCache;
+import org.picketbox.core.cache.EvictionPolicyType;
+import org.picketbox.core.identity.UserContextPopulator;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * A {@link UserContextPopulator} that caches the {@link User} and the roles loaded by another populator, so the identity
+ * store is not queried on every authentication of the same principal.
+ * </p>
+ * <p>
+ * Cached informations expire after a time to live. Entries used after the refresh ahead threshold are reloaded while the
+ * cached informations are still returned, so frequently used principals are never blocked by an expired entry. Reloads are
+ * executed by the configured {@link Executor} or, if none is configured, by the first thread using the entry after the
+ * threshold. Entries should be invalidated with {@link #invalidate(String)} when the user or its roles are changed.
+ * </p>
+ */
+public class CachingUserContextPopulator implements UserContextPopulator {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    public static final long DEFAULT_TIME_TO_LIVE = 300000;
+    public static final float DEFAULT_REFRESH_AHEAD_FACTOR = 0.75f;
+
+    private final UserContextPopulator delegate;
+    private final BoundedCache<String, CachedIdentity> cache;
+    private final long refreshAfter;
+    private final Executor executor;
+
+    // incremented on every invalidation, loads started before an invalidation are not cached
+    private volatile long invalidations;
+
+    public CachingUserContextPopulator(UserContextPopulator delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param delegate the populator used to load the informations of the principals.
+     * @param maximumSize the maximum number of cached principals.
+     * @param timeToLive the time after which the cached informations of a principal expire.
+     * @param unit the {@link TimeUnit} of the time to live.
+     */
+    public CachingUserContextPopulator(UserContextPopulator delegate, int maximumSize, long timeToLive, TimeUnit unit) {
+        this(delegate, maximumSize, timeToLive, unit, DEFAULT_REFRESH_AHEAD_FACTOR, null);
+    }
+
+    /**
+     * @param delegate the populator used to load the informations of the principals.
+     * @param maximumSize the maximum number of cached principals.
+     * @param timeToLive the time after which the cached informations of a principal expire.
+     * @param unit the {@link TimeUnit} of the time to live.
+     * @param refreshAheadFactor the fraction of the time to live after which the informations are reloaded when used. Values
+     *        greater or equal than 1 disable the refresh ahead.
+     * @param executor the {@link Executor} used to reload the informations. If null the informations are reloaded by the
+     *        thread using them.
+     */
+    public CachingUserContextPopulator(UserContextPopulator delegate, int maximumSize, long timeToLive, TimeUnit unit,
+            float refreshAheadFactor, Executor executor) {
+        if (delegate == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("delegate");
+        }
+
+        if (refreshAheadFactor <= 0) {
+            throw new IllegalArgumentException("Refresh ahead factor must be greater than zero: " + refreshAheadFactor);
+        }
+
+        this.delegate = delegate;
+        this.cache = new BoundedCache<String, CachedIdentity>(maximumSize, timeToLive, unit, EvictionPolicyType.LRU);
+        this.refreshAfter = refreshAheadFactor < 1 ? (long) (unit.toNanos(timeToLive) * (double) refreshAheadFactor)
+                : Long.MAX_VALUE;
+        this.executor = executor;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.identity.UserContextPopulator#getIdentity(org.picketbox.core.UserContext)
+     */
+    @Override
+    public UserContext getIdentity(UserContext authenticatedUserContext) {
+        if (authenticatedUserContext == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("authenticatedUserContext");
+        }
+
+        Principal principal = authenticatedUserContext.getPrincipal();
+        String principalName = principal.getName();
+        CachedIdentity cached = this.cache.get(principalName);
+
+        if (cached == null) {
+            long invalidationsBeforeLoad = this.invalidations;
+
+            // populators may return a new context instead of populating the given one
+            UserContext userContext = this.delegate.getIdentity(authenticatedUserContext);
+
+            cache(principalName, new CachedIdentity(userContext), invalidationsBeforeLoad);
+
+            return userContext;
+        }
+
+        authenticatedUserContext.setUser(cached.user);
+        authenticatedUserContext.setRoles(new ArrayList<Role>(cached.roles));
+
+        if (System.nanoTime() - cached.loadedAt > this.refreshAfter && cached.refreshing.compareAndSet(false, true)) {
+            refresh(principal, cached);
+        }
+
+        return authenticatedUserContext;
+    }
+
+    /**
+     * <p>
+     * Discards the cached informations of the given principal.
+     * </p>
+     *
+     * @param principalName
+     */
+    public synchronized void invalidate(String principalName) {
+        this.invalidations++;
+        this.cache.remove(principalName);
+    }
+
+    /**
+     * <p>
+     * Discards the cached informations of all principals.
+     * </p>
+     */
+    public synchronized void clear() {
+        this.invalidations++;
+        this.cache.clear();
+    }
+
+    /**
+     * @return the number of cached principals.
+     */
+    public int size() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return the populator used to load the informations of the principals.
+     */
+    public UserContextPopulator getDelegate() {
+        return this.delegate;
+    }
+
+    private void refresh(final Principal principal, final CachedIdentity cached) {
+        final long invalidationsBeforeLoad = this.invalidations;
+        Runnable reload = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    UserContext userContext = CachingUserContextPopulator.this.delegate.getIdentity(
+                            new ReloadingUserContext(principal));
+
+                    if (!cache(principal.getName(), new CachedIdentity(userContext), invalidationsBeforeLoad)) {
+                        cached.refreshing.set(false);
+                    }
+                } catch (RuntimeException e) {
+                    // the cached informations are kept until they expire, the next use tries again
+                    cached.refreshing.set(false);
+                    PicketBoxLogger.LOGGER.errorRefreshingUserContext(principal.getName(), e);
+                }
+            }
+        };
+
+        if (this.executor == null) {
+            reload.run();
+        } else {
+            this.executor.execute(reload);
+        }
+    }
+
+    private synchronized boolean cache(String principalName, CachedIdentity identity, long invalidationsBeforeLoad) {
+        if (this.invalidations != invalidationsBeforeLoad) {
+            return false;
+        }
+
+        this.cache.put(principalName, identity);
+
+        return true;
+    }
+
+    /**
+     * <p>
+     * The {@link UserContext} passed to the delegate when reloading the informations of an authenticated user. Only its user
+     * and roles are kept.
+     * </p>
+     */
+    private static class ReloadingUserContext extends UserContext {
+
+        private static final long serialVersionUID = 1L;
+
+        ReloadingUserContext(Principal principal) {
+            AuthenticationResult result = new AuthenticationResult(AuthenticationStatus.SUCCESS);
+
+            result.setPrincipal(principal);
+
+            setAuthenticationResult(result);
+        }
+    }
+
+    private static class CachedIdentity {
+
+        private final User user;
+        private final Collection<Role> roles;
+        private final long loadedAt = System.nanoTime();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CachedIdentity(UserContext userContext) {
+            Collection<Role> loadedRoles = userContext.getRoles();
+
+            this.user = userContext.getUser();
+            this.roles = loadedRoles != null ? Collections.unmodifiableList(new ArrayList<Role>(loadedRoles)) : Collections
+                    .<Role> emptyList();
+        }
+    }
+}
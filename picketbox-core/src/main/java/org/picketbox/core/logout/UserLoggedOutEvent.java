@@ -22,6 +22,8 @@
 
 package org.picketbox.core.logout;
 
+import java.security.Principal;
+
 import org.picketbox.core.event.PicketBoxEvent;
 
 /**
@@ -31,12 +33,28 @@ import org.picketbox.core.event.PicketBoxEvent;
  */
 public class UserLoggedOutEvent implements PicketBoxEvent<UserLoggedOutEventHandler> {
 
+    private Principal principal;
+
     /**
      * @param result
      */
     public UserLoggedOutEvent() {
     }
 
+    /**
+     * @param principal the principal of the user that logged out.
+     */
+    public UserLoggedOutEvent(Principal principal) {
+        this.principal = principal;
+    }
+
+    /**
+     * @return the principal of the user that logged out or null if unknown.
+     */
+    public Principal getPrincipal() {
+        return this.principal;
+    }
+
     /*
      * (non-Javadoc)
      *
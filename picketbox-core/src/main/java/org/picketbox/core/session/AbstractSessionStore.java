@@ -22,13 +22,18 @@
 package org.picketbox.core.session;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxMessages;
 
 /**
- * Abstract class for implementations of {@link SessionStore}
+ * Abstract class for implementations of {@link SessionStore}. Sessions are kept in a {@link ConcurrentHashMap}, so stores can
+ * be safely accessed by application threads and by the expiration threads at the same time.
  *
  * @author Pedro Silva
  * @author anil saldhana
@@ -36,9 +41,26 @@ import org.picketbox.core.AbstractPicketBoxLifeCycle;
  */
 public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle implements SessionStore {
 
-    protected Map<Serializable, PicketBoxSession> sessions = new HashMap<Serializable, PicketBoxSession>();
+    public static final int DEFAULT_INITIAL_CAPACITY = 16;
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
 
+    protected final ConcurrentMap<Serializable, PicketBoxSession> sessions;
 
+    protected final PrincipalSessionIndex principalIndex = new PrincipalSessionIndex();
+
+    protected SessionSerializer serializer = new CompactSessionSerializer();
+
+    public AbstractSessionStore() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param initialCapacity the initial number of sessions the store can hold without resizing.
+     * @param concurrencyLevel the estimated number of threads updating the store concurrently.
+     */
+    protected AbstractSessionStore(int initialCapacity, int concurrencyLevel) {
+        this.sessions = new ConcurrentHashMap<Serializable, PicketBoxSession>(initialCapacity, 0.75f, concurrencyLevel);
+    }
 
     /*
      * (non-Javadoc)
@@ -57,7 +79,9 @@ public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle im
      */
     @Override
     public void store(PicketBoxSession session) {
+        session.drainDirtyAttributes();
         this.sessions.put(session.getId().getId(), session);
+        this.principalIndex.add(session);
     }
 
     /*
@@ -68,6 +92,7 @@ public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle im
     @Override
     public void remove(SessionId<? extends Serializable> id) {
         this.sessions.remove(id.getId());
+        this.principalIndex.remove(id.getId());
     }
 
     /*
@@ -77,17 +102,105 @@ public abstract class AbstractSessionStore extends AbstractPicketBoxLifeCycle im
      */
     @Override
     public void update(PicketBoxSession session) {
-        this.sessions.put(session.getId().getId(), session);
+        session.drainDirtyAttributes();
+
+        // only replaces existing sessions, so a session removed by another thread is not stored again
+        if (this.sessions.replace(session.getId().getId(), session) != null) {
+            this.principalIndex.add(session);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#count()
+     */
+    @Override
+    public int count() {
+        return this.sessions.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#findByPrincipal(java.lang.String)
+     */
+    @Override
+    public Collection<SessionId<? extends Serializable>> findByPrincipal(String principalName) {
+        return this.principalIndex.get(principalName);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#iterator()
+     */
+    @Override
+    public Iterator<PicketBoxSession> iterator() {
+        return getSessions().iterator();
+    }
+
+    /**
+     * <p>
+     * Returns a read-only view of the stored sessions. The view is weakly consistent: it can be iterated while other
+     * threads are changing the store, never throws {@link java.util.ConcurrentModificationException} and may or may not
+     * reflect changes made after the iteration started.
+     * </p>
+     *
+     * @return
+     */
+    public Collection<PicketBoxSession> getSessions() {
+        return Collections.unmodifiableCollection(this.sessions.values());
+    }
+
+    /**
+     * <p>
+     * Returns the {@link SessionSerializer} used by stores that keep sessions outside the heap.
+     * </p>
+     *
+     * @return
+     */
+    public SessionSerializer getSerializer() {
+        return this.serializer;
+    }
+
+    /**
+     * <p>
+     * Sets the {@link SessionSerializer} used by stores that keep sessions outside the heap. It must be set before the
+     * store is started.
+     * </p>
+     *
+     * @param serializer
+     */
+    public void setSerializer(SessionSerializer serializer) {
+        if (serializer == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("serializer");
+        }
+
+        this.serializer = serializer;
     }
 
     @Override
     protected void doStart() {
     }
 
+    /**
+     * <p>
+     * Rebuilds the {@link PrincipalSessionIndex} from the sessions in memory. Used by stores that load their sessions in bulk.
+     * </p>
+     */
+    protected void rebuildPrincipalIndex() {
+        this.principalIndex.clear();
+
+        for (PicketBoxSession session : this.sessions.values()) {
+            this.principalIndex.add(session);
+        }
+    }
+
     @Override
     protected void doStop() {
         this.sessions.clear();
-        this.sessions = null;
+        this.principalIndex.clear();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,358 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.picketbox.core.PicketBoxLogger;
+import org.picketbox.core.cache.EvictionPolicy;
+import org.picketbox.core.cache.EvictionPolicyType;
+import org.picketbox.core.exceptions.PicketBoxSessionException;
+
+/**
+ * <p>
+ * An in-memory {@link SessionStore} that holds at most a maximum number of sessions and, optionally, at most an estimated
+ * number of bytes. When one of the limits is exceeded sessions are evicted according to an {@link EvictionPolicy} and
+ * expired, so the registered {@link org.picketbox.core.session.event.SessionEventHandler} instances are notified through
+ * their onExpiration method.
+ * </p>
+ * <p>
+ * Reads never wait for the eviction lock. If the lock is busy the access is simply not recorded by the policy.
+ * </p>
+ */
+public class BoundedSessionStore extends AbstractSessionStore {
+
+    private final int maximumSessions;
+    private final long maximumWeight;
+    private final SessionWeigher weigher;
+    private final EvictionPolicy<Serializable> evictionPolicy;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // guarded by evictionLock
+    private final Map<Serializable, Long> weights = new HashMap<Serializable, Long>();
+    private long totalWeight;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public BoundedSessionStore(int maximumSessions) {
+        this(maximumSessions, EvictionPolicyType.LRU);
+    }
+
+    public BoundedSessionStore(int maximumSessions, EvictionPolicyType evictionPolicy) {
+        this(maximumSessions, 0, evictionPolicy, null);
+    }
+
+    /**
+     * @param maximumSessions the maximum number of sessions.
+     * @param maximumWeight the maximum estimated size, in bytes, of all sessions. Values less or equal than zero disable this
+     *        limit.
+     * @param evictionPolicy the policy used to select the sessions to be evicted.
+     * @param weigher the {@link SessionWeigher} used to estimate the size of sessions. If null a
+     *        {@link DefaultSessionWeigher} is used.
+     */
+    public BoundedSessionStore(int maximumSessions, long maximumWeight, EvictionPolicyType evictionPolicy,
+            SessionWeigher weigher) {
+        super(Math.min(Math.max(maximumSessions, 1), 1 << 16), DEFAULT_CONCURRENCY_LEVEL);
+
+        if (maximumSessions <= 0) {
+            throw new IllegalArgumentException("Maximum number of sessions must be greater than zero: " + maximumSessions);
+        }
+
+        this.maximumSessions = maximumSessions;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher != null ? weigher : new DefaultSessionWeigher();
+        this.evictionPolicy = (evictionPolicy != null ? evictionPolicy : EvictionPolicyType.LRU).create(maximumSessions);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#load(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public PicketBoxSession load(SessionId<? extends Serializable> key) {
+        PicketBoxSession session = super.load(key);
+
+        if (session == null) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+
+        this.hitCount.incrementAndGet();
+
+        if (this.evictionLock.tryLock()) {
+            try {
+                if (this.sessions.containsKey(key.getId())) {
+                    this.evictionPolicy.recordAccess(key.getId());
+                }
+            } finally {
+                this.evictionLock.unlock();
+            }
+        }
+
+        return session;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#store(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void store(PicketBoxSession session) {
+        List<PicketBoxSession> evicted;
+
+        session.drainDirtyAttributes();
+
+        this.evictionLock.lock();
+
+        try {
+            Serializable key = session.getId().getId();
+
+            if (this.sessions.put(key, session) == null) {
+                this.evictionPolicy.recordInsert(key);
+            } else {
+                this.evictionPolicy.recordAccess(key);
+            }
+
+            this.principalIndex.add(session);
+            updateWeight(key, session);
+
+            evicted = evictIfNecessary();
+        } finally {
+            this.evictionLock.unlock();
+        }
+
+        expireEvicted(evicted);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#update(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void update(PicketBoxSession session) {
+        List<PicketBoxSession> evicted;
+
+        session.drainDirtyAttributes();
+
+        this.evictionLock.lock();
+
+        try {
+            Serializable key = session.getId().getId();
+
+            if (this.sessions.replace(key, session) == null) {
+                return;
+            }
+
+            this.evictionPolicy.recordAccess(key);
+
+            this.principalIndex.add(session);
+            updateWeight(key, session);
+
+            evicted = evictIfNecessary();
+        } finally {
+            this.evictionLock.unlock();
+        }
+
+        expireEvicted(evicted);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#remove(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public void remove(SessionId<? extends Serializable> id) {
+        this.evictionLock.lock();
+
+        try {
+            Serializable key = id.getId();
+
+            if (this.sessions.remove(key) != null) {
+                this.evictionPolicy.recordRemoval(key);
+                this.principalIndex.remove(key);
+                removeWeight(key);
+            }
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of loads that found a session.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * @return the number of loads that did not find a session.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * @return the number of sessions evicted because one of the limits was exceeded.
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * @return the estimated size, in bytes, of all stored sessions.
+     */
+    public long getWeight() {
+        this.evictionLock.lock();
+
+        try {
+            return this.totalWeight;
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of stored sessions.
+     */
+    public int size() {
+        return this.sessions.size();
+    }
+
+    public int getMaximumSessions() {
+        return this.maximumSessions;
+    }
+
+    public long getMaximumWeight() {
+        return this.maximumWeight;
+    }
+
+    @Override
+    protected void doStop() {
+        this.evictionLock.lock();
+
+        try {
+            super.doStop();
+            this.evictionPolicy.clear();
+            this.weights.clear();
+            this.totalWeight = 0;
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    private void updateWeight(Serializable key, PicketBoxSession session) {
+        if (this.maximumWeight <= 0) {
+            return;
+        }
+
+        long weight = this.weigher.weigh(session);
+        Long previous = this.weights.put(key, weight);
+
+        this.totalWeight += weight - (previous != null ? previous : 0);
+    }
+
+    private void removeWeight(Serializable key) {
+        Long previous = this.weights.remove(key);
+
+        if (previous != null) {
+            this.totalWeight -= previous;
+        }
+    }
+
+    private boolean isOverLimit() {
+        return this.sessions.size() > this.maximumSessions
+                || (this.maximumWeight > 0 && this.totalWeight > this.maximumWeight);
+    }
+
+    /**
+     * <p>
+     * Removes sessions until the store is within its limits. Must be called holding the eviction lock.
+     * </p>
+     *
+     * @return the evicted sessions.
+     */
+    private List<PicketBoxSession> evictIfNecessary() {
+        List<PicketBoxSession> evicted = null;
+
+        while (isOverLimit()) {
+            Serializable victim = this.evictionPolicy.selectVictim();
+
+            if (victim == null) {
+                break;
+            }
+
+            PicketBoxSession session = this.sessions.remove(victim);
+
+            this.principalIndex.remove(victim);
+            removeWeight(victim);
+
+            if (session != null) {
+                if (evicted == null) {
+                    evicted = new ArrayList<PicketBoxSession>();
+                }
+
+                evicted.add(session);
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * <p>
+     * Expires the evicted sessions. Called without holding the eviction lock, because expiring a session raises events whose
+     * handlers may call back into this store.
+     * </p>
+     *
+     * @param evicted
+     */
+    private void expireEvicted(List<PicketBoxSession> evicted) {
+        if (evicted == null) {
+            return;
+        }
+
+        for (PicketBoxSession session : evicted) {
+            this.evictionCount.incrementAndGet();
+
+            if (session.isValid()) {
+                try {
+                    session.expire();
+                } catch (PicketBoxSessionException e) {
+                    PicketBoxLogger.LOGGER.errorExpiringSession(session.getId(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.cache.BoundedCache;
+import org.picketbox.core.cache.EvictionPolicyType;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+import org.picketbox.core.event.SynchronousEventHandler;
+import org.picketbox.core.session.event.SessionEvent;
+import org.picketbox.core.session.event.SessionEventHandler;
+
+/**
+ * <p>
+ * A {@link SessionStore} that keeps a bounded local copy of the recently used sessions in front of another store, usually
+ * a shared or remote one.
+ * </p>
+ * <p>
+ * Loads are answered from the local cache when possible. Writes go to both the delegate store and the cache. Cached
+ * sessions expire after a time to live, which bounds how stale a session changed by another node can be. Sessions are
+ * removed from the cache as soon as they are invalidated or expired, since this store is also a {@link SessionEventHandler}
+ * registered by the {@link DefaultSessionManager}.
+ * </p>
+ */
+public class CachingSessionStore extends AbstractPicketBoxLifeCycle implements SessionStore, SessionEventHandler,
+        SynchronousEventHandler {
+
+    public static final int DEFAULT_MAXIMUM_SESSIONS = 1000;
+    public static final long DEFAULT_TIME_TO_LIVE = 30000;
+
+    private final SessionStore delegate;
+    private final BoundedCache<Serializable, PicketBoxSession> cache;
+
+    public CachingSessionStore(SessionStore delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SESSIONS, DEFAULT_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param delegate the store the sessions are read from and written to.
+     * @param maximumSessions the maximum number of sessions kept locally.
+     * @param timeToLive the time after which a local copy is discarded and the session is read again from the delegate.
+     * @param unit the {@link TimeUnit} of the time to live.
+     */
+    public CachingSessionStore(SessionStore delegate, int maximumSessions, long timeToLive, TimeUnit unit) {
+        this(delegate, maximumSessions, timeToLive, unit, EvictionPolicyType.LRU);
+    }
+
+    /**
+     * @param delegate the store the sessions are read from and written to.
+     * @param maximumSessions the maximum number of sessions kept locally.
+     * @param timeToLive the time after which a local copy is discarded and the session is read again from the delegate.
+     * @param unit the {@link TimeUnit} of the time to live.
+     * @param evictionPolicy the policy used to select the local copies to be evicted.
+     */
+    public CachingSessionStore(SessionStore delegate, int maximumSessions, long timeToLive, TimeUnit unit,
+            EvictionPolicyType evictionPolicy) {
+        if (delegate == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("delegate");
+        }
+
+        this.delegate = delegate;
+        this.cache = new BoundedCache<Serializable, PicketBoxSession>(maximumSessions, timeToLive, unit, evictionPolicy);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#load(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public PicketBoxSession load(SessionId<? extends Serializable> key) {
+        PicketBoxSession session = this.cache.get(key.getId());
+
+        if (session != null) {
+            if (session.isValid()) {
+                return session;
+            }
+
+            this.cache.remove(key.getId());
+        }
+
+        session = this.delegate.load(key);
+
+        if (session != null && session.isValid()) {
+            this.cache.put(key.getId(), session);
+        }
+
+        return session;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#store(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void store(PicketBoxSession session) {
+        this.delegate.store(session);
+        this.cache.put(session.getId().getId(), session);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#update(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void update(PicketBoxSession session) {
+        this.delegate.update(session);
+
+        // removed sessions are invalid and must not be cached again
+        if (session.isValid()) {
+            this.cache.put(session.getId().getId(), session);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#remove(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public void remove(SessionId<? extends Serializable> id) {
+        this.cache.remove(id.getId());
+        this.delegate.remove(id);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#count()
+     */
+    @Override
+    public int count() {
+        return this.delegate.count();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#findByPrincipal(java.lang.String)
+     */
+    @Override
+    public Collection<SessionId<? extends Serializable>> findByPrincipal(String principalName) {
+        return this.delegate.findByPrincipal(principalName);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#iterator()
+     */
+    @Override
+    public Iterator<PicketBoxSession> iterator() {
+        return this.delegate.iterator();
+    }
+
+    /**
+     * <p>
+     * Discards the local copy of the given session, so the next load reads it from the delegate store. Useful when another
+     * node is known to have changed the session.
+     * </p>
+     *
+     * @param id
+     */
+    public void invalidate(SessionId<? extends Serializable> id) {
+        this.cache.remove(id.getId());
+    }
+
+    /**
+     * @return the store the sessions are read from and written to.
+     */
+    public SessionStore getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * @return the number of loads answered from the local cache.
+     */
+    public long getHitCount() {
+        return this.cache.getHitCount();
+    }
+
+    /**
+     * @return the number of loads that had to read from the delegate store.
+     */
+    public long getMissCount() {
+        return this.cache.getMissCount();
+    }
+
+    /**
+     * @return the ratio of loads answered from the local cache.
+     */
+    public double getHitRate() {
+        return this.cache.getHitRate();
+    }
+
+    public long getEvictionCount() {
+        return this.cache.getEvictionCount();
+    }
+
+    /**
+     * @return the number of sessions kept locally.
+     */
+    public int size() {
+        return this.cache.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.event.PicketBoxEventHandler#getEventType()
+     */
+    @Override
+    public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+        return SessionEvent.class;
+    }
+
+    @Override
+    public void onCreate(SessionEvent sessionEvent) {
+    }
+
+    @Override
+    public void onSetAttribute(SessionEvent sessionEvent, String key, Object val) {
+    }
+
+    @Override
+    public void onGetAttribute(SessionEvent sessionEvent, String key) {
+    }
+
+    @Override
+    public void onInvalidate(SessionEvent sessionEvent) {
+        invalidate(sessionEvent.getSession().getId());
+    }
+
+    @Override
+    public void onExpiration(SessionEvent sessionEvent) {
+        invalidate(sessionEvent.getSession().getId());
+    }
+
+    @Override
+    protected void doStart() {
+        this.delegate.start();
+    }
+
+    @Override
+    protected void doStop() {
+        this.delegate.stop();
+        this.cache.clear();
+    }
+}
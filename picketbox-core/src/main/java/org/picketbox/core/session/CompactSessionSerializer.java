@@ -0,0 +1,702 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.security.auth.Subject;
+
+import org.picketbox.core.PicketBoxPrincipal;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationResult;
+import org.picketbox.core.authentication.AuthenticationStatus;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.SimpleRole;
+import org.picketlink.idm.model.User;
+
+/**
+ * <p>
+ * Default {@link SessionSerializer}. Sessions are written using a compact binary format instead of the default Java
+ * serialization.
+ * </p>
+ * <p>
+ * The format starts with a header containing a magic number and a version, followed by the session times, the session id,
+ * the authentication state of the {@link UserContext} and the session attributes. Numbers are written as variable-length
+ * integers and every string is written only once per payload, further occurrences are written as references to the first
+ * one. Values of well-known types (strings, numbers, dates, lists, maps, etc) are written with a type tag. Values of any
+ * other type fall back to Java serialization.
+ * </p>
+ * <p>
+ * Payloads written by newer versions of the format are rejected. Payloads written with Java serialization, for instance by
+ * a {@link JavaSessionSerializer}, are still accepted.
+ * </p>
+ */
+public class CompactSessionSerializer implements SessionSerializer {
+
+    // version 2 added SecureSessionId values
+    public static final int VERSION = 2;
+
+    private static final byte MAGIC_0 = 'P';
+    private static final byte MAGIC_1 = 'B';
+
+    private static final byte JAVA_MAGIC_0 = (byte) 0xAC;
+    private static final byte JAVA_MAGIC_1 = (byte) 0xED;
+
+    private static final int HEADER_LENGTH = 4;
+
+    private static final int FLAG_INVALID = 1;
+    private static final int FLAG_USER_CONTEXT = 1 << 1;
+    private static final int FLAG_AUTHENTICATION_RESULT = 1 << 2;
+
+    private static final int ROLES_NONE = 0;
+    private static final int ROLES_NAMES = 1;
+    private static final int ROLES_JAVA = 2;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INT = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_FLOAT = 7;
+    private static final int TAG_SHORT = 8;
+    private static final int TAG_BYTE = 9;
+    private static final int TAG_CHAR = 10;
+    private static final int TAG_BYTES = 11;
+    private static final int TAG_LIST = 12;
+    private static final int TAG_MAP = 13;
+    private static final int TAG_DATE = 14;
+    private static final int TAG_SESSION_ID = 15;
+    private static final int TAG_PRINCIPAL = 16;
+    private static final int TAG_JAVA = 17;
+    private static final int TAG_SECURE_SESSION_ID = 18;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionSerializer#serialize(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public byte[] serialize(PicketBoxSession session) throws IOException {
+        Output output = new Output();
+        UserContext userContext = session.getUserContext();
+        AuthenticationResult authenticationResult = userContext != null ? userContext.getAuthenticationResult() : null;
+        int flags = 0;
+
+        if (!session.isValid()) {
+            flags |= FLAG_INVALID;
+        }
+
+        if (userContext != null) {
+            flags |= FLAG_USER_CONTEXT;
+        }
+
+        if (authenticationResult != null) {
+            flags |= FLAG_AUTHENTICATION_RESULT;
+        }
+
+        output.writeByte(MAGIC_0);
+        output.writeByte(MAGIC_1);
+        output.writeByte(VERSION);
+        output.writeByte(flags);
+
+        output.writeVarLong(session.getCreationTime());
+        output.writeVarLong(zigzag(session.getLastAccessedTime() - session.getCreationTime()));
+
+        writeValue(output, session.getId());
+
+        if (userContext != null) {
+            if (authenticationResult != null) {
+                AuthenticationStatus status = authenticationResult.getStatus();
+
+                output.writeString(status != null ? status.name() : null);
+                writeValue(output, authenticationResult.getPrincipal());
+            }
+
+            writeRoles(output, userContext.getRoles());
+            writeValue(output, userContext.getUser());
+            writeValue(output, userContext.getSubject());
+        }
+
+        Map<String, Object> attributes = session.attributes;
+
+        output.writeVarInt(attributes.size());
+
+        for (Entry<String, Object> entry : attributes.entrySet()) {
+            output.writeString(entry.getKey());
+            writeValue(output, entry.getValue());
+        }
+
+        return output.toByteArray();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionSerializer#deserialize(byte[])
+     */
+    @Override
+    public PicketBoxSession deserialize(byte[] data) throws IOException {
+        if (data.length >= 2 && data[0] == JAVA_MAGIC_0 && data[1] == JAVA_MAGIC_1) {
+            return (PicketBoxSession) JavaSessionSerializer.fromBytes(data);
+        }
+
+        checkHeader(data);
+
+        Input input = new Input(data, HEADER_LENGTH);
+        int flags = data[3];
+
+        long creationTime = input.readVarLong();
+        long lastAccessedTime = creationTime + unzigzag(input.readVarLong());
+
+        @SuppressWarnings("unchecked")
+        SessionId<? extends Serializable> id = (SessionId<? extends Serializable>) readValue(input);
+
+        UserContext userContext = null;
+
+        if ((flags & FLAG_USER_CONTEXT) != 0) {
+            AuthenticationResult authenticationResult = null;
+
+            if ((flags & FLAG_AUTHENTICATION_RESULT) != 0) {
+                String status = input.readString();
+
+                authenticationResult = new AuthenticationResult();
+
+                if (status != null) {
+                    authenticationResult.setStatus(AuthenticationStatus.valueOf(status));
+                }
+
+                authenticationResult.setPrincipal((Principal) readValue(input));
+            }
+
+            userContext = SecurityActions.newUserContext(authenticationResult);
+
+            userContext.setRoles(readRoles(input));
+            userContext.setUser((User) readValue(input));
+            userContext.setSubject((Subject) readValue(input));
+        }
+
+        PicketBoxSession session = new PicketBoxSession(userContext, id, creationTime, lastAccessedTime);
+
+        int attributeCount = input.readVarInt();
+
+        for (int i = 0; i < attributeCount; i++) {
+            String key = input.readString();
+            Object value = readValue(input);
+
+            // ConcurrentHashMap does not allow null values
+            if (key != null && value != null) {
+                session.attributes.put(key, value);
+            }
+        }
+
+        session.invalid = (flags & FLAG_INVALID) != 0;
+
+        if (userContext != null) {
+            userContext.setSession(session);
+        }
+
+        return session;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionSerializer#serializeAttributes(java.util.Map)
+     */
+    @Override
+    public byte[] serializeAttributes(Map<String, Object> attributes) throws IOException {
+        Output output = new Output();
+
+        output.writeByte(MAGIC_0);
+        output.writeByte(MAGIC_1);
+        output.writeByte(VERSION);
+        output.writeByte(0);
+
+        output.writeVarInt(attributes.size());
+
+        for (Entry<String, Object> entry : attributes.entrySet()) {
+            output.writeString(entry.getKey());
+            writeValue(output, entry.getValue());
+        }
+
+        return output.toByteArray();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionSerializer#deserializeAttributes(byte[])
+     */
+    @Override
+    public Map<String, Object> deserializeAttributes(byte[] data) throws IOException {
+        checkHeader(data);
+
+        Input input = new Input(data, HEADER_LENGTH);
+        int count = input.readVarInt();
+        Map<String, Object> attributes = new HashMap<String, Object>();
+
+        for (int i = 0; i < count; i++) {
+            String key = input.readString();
+
+            attributes.put(key, readValue(input));
+        }
+
+        return attributes;
+    }
+
+    private void checkHeader(byte[] data) throws IOException {
+        if (data.length < HEADER_LENGTH || data[0] != MAGIC_0 || data[1] != MAGIC_1) {
+            throw new IOException("Invalid session data header.");
+        }
+
+        int version = data[2];
+
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported session data version: " + version);
+        }
+    }
+
+    private void writeRoles(Output output, Collection<Role> roles) throws IOException {
+        if (roles == null || roles.isEmpty()) {
+            output.writeVarInt(ROLES_NONE);
+            return;
+        }
+
+        for (Role role : roles) {
+            if (role == null || role.getClass() != SimpleRole.class) {
+                output.writeVarInt(ROLES_JAVA);
+                output.writeBytes(JavaSessionSerializer.toBytes(new ArrayList<Role>(roles)));
+                return;
+            }
+        }
+
+        output.writeVarInt(ROLES_NAMES);
+        output.writeVarInt(roles.size());
+
+        for (Role role : roles) {
+            output.writeString(role.getName());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Role> readRoles(Input input) throws IOException {
+        int type = input.readVarInt();
+
+        switch (type) {
+            case ROLES_NONE:
+                return null;
+            case ROLES_NAMES:
+                int size = input.readVarInt();
+                List<Role> roles = new ArrayList<Role>(size);
+
+                for (int i = 0; i < size; i++) {
+                    roles.add(new SimpleRole(input.readString()));
+                }
+
+                return roles;
+            case ROLES_JAVA:
+                return (Collection<Role>) JavaSessionSerializer.fromBytes(input.readBytes());
+            default:
+                throw new IOException("Invalid roles type: " + type);
+        }
+    }
+
+    private void writeValue(Output output, Object value) throws IOException {
+        if (value == null) {
+            output.writeVarInt(TAG_NULL);
+            return;
+        }
+
+        Class<?> type = value.getClass();
+
+        if (type == String.class) {
+            output.writeVarInt(TAG_STRING);
+            output.writeString((String) value);
+        } else if (type == Integer.class) {
+            output.writeVarInt(TAG_INT);
+            output.writeVarInt(zigzag((Integer) value));
+        } else if (type == Long.class) {
+            output.writeVarInt(TAG_LONG);
+            output.writeVarLong(zigzag((Long) value));
+        } else if (type == Boolean.class) {
+            output.writeVarInt((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (type == Double.class) {
+            output.writeVarInt(TAG_DOUBLE);
+            output.writeLong(Double.doubleToLongBits((Double) value));
+        } else if (type == Float.class) {
+            output.writeVarInt(TAG_FLOAT);
+            output.writeVarInt(Float.floatToIntBits((Float) value));
+        } else if (type == Short.class) {
+            output.writeVarInt(TAG_SHORT);
+            output.writeVarInt(zigzag((Short) value));
+        } else if (type == Byte.class) {
+            output.writeVarInt(TAG_BYTE);
+            output.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            output.writeVarInt(TAG_CHAR);
+            output.writeVarInt((Character) value);
+        } else if (type == byte[].class) {
+            output.writeVarInt(TAG_BYTES);
+            output.writeBytes((byte[]) value);
+        } else if (type == ArrayList.class) {
+            List<?> list = (List<?>) value;
+
+            output.writeVarInt(TAG_LIST);
+            output.writeVarInt(list.size());
+
+            for (Object element : list) {
+                writeValue(output, element);
+            }
+        } else if (type == HashMap.class) {
+            Map<?, ?> map = (Map<?, ?>) value;
+
+            output.writeVarInt(TAG_MAP);
+            output.writeVarInt(map.size());
+
+            for (Entry<?, ?> entry : map.entrySet()) {
+                writeValue(output, entry.getKey());
+                writeValue(output, entry.getValue());
+            }
+        } else if (type == Date.class) {
+            output.writeVarInt(TAG_DATE);
+            output.writeVarLong(zigzag(((Date) value).getTime()));
+        } else if (type == DefaultSessionId.class) {
+            output.writeVarInt(TAG_SESSION_ID);
+            output.writeString(((DefaultSessionId) value).getId());
+        } else if (type == SecureSessionId.class) {
+            output.writeVarInt(TAG_SECURE_SESSION_ID);
+            output.writeBytes(((SecureSessionId) value).getBytes());
+        } else if (type == PicketBoxPrincipal.class) {
+            output.writeVarInt(TAG_PRINCIPAL);
+            output.writeString(((PicketBoxPrincipal) value).getName());
+        } else {
+            output.writeVarInt(TAG_JAVA);
+            output.writeBytes(JavaSessionSerializer.toBytes(value));
+        }
+    }
+
+    private Object readValue(Input input) throws IOException {
+        int tag = input.readVarInt();
+
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return input.readString();
+            case TAG_INT:
+                return Integer.valueOf(unzigzag(input.readVarInt()));
+            case TAG_LONG:
+                return Long.valueOf(unzigzag(input.readVarLong()));
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(input.readLong()));
+            case TAG_FLOAT:
+                return Float.valueOf(Float.intBitsToFloat(input.readVarInt()));
+            case TAG_SHORT:
+                return Short.valueOf((short) unzigzag(input.readVarInt()));
+            case TAG_BYTE:
+                return Byte.valueOf(input.readByte());
+            case TAG_CHAR:
+                return Character.valueOf((char) input.readVarInt());
+            case TAG_BYTES:
+                return input.readBytes();
+            case TAG_LIST:
+                int size = input.readVarInt();
+                List<Object> list = new ArrayList<Object>(Math.min(size, input.remaining()));
+
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(input));
+                }
+
+                return list;
+            case TAG_MAP:
+                int entries = input.readVarInt();
+                Map<Object, Object> map = new HashMap<Object, Object>();
+
+                for (int i = 0; i < entries; i++) {
+                    Object key = readValue(input);
+
+                    map.put(key, readValue(input));
+                }
+
+                return map;
+            case TAG_DATE:
+                return new Date(unzigzag(input.readVarLong()));
+            case TAG_SESSION_ID:
+                return new DefaultSessionId(input.readString());
+            case TAG_PRINCIPAL:
+                return new PicketBoxPrincipal(input.readString());
+            case TAG_JAVA:
+                return JavaSessionSerializer.fromBytes(input.readBytes());
+            case TAG_SECURE_SESSION_ID:
+                return SecureSessionId.wrap(input.readBytes());
+            default:
+                throw new IOException("Invalid value type: " + tag);
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * <p>
+     * Growable output buffer. Strings are written only once, further occurrences are written as references to their index
+     * in the dictionary.
+     * </p>
+     */
+    private static final class Output {
+
+        private byte[] buffer = new byte[256];
+        private int position;
+        private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            this.buffer[this.position++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+
+            while ((value & ~0x7F) != 0) {
+                this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            this.buffer[this.position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+
+            while ((value & ~0x7FL) != 0) {
+                this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            this.buffer[this.position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                this.buffer[this.position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeBytes(byte[] value) {
+            writeVarInt(value.length);
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, this.buffer, this.position, value.length);
+            this.position += value.length;
+        }
+
+        /**
+         * <p>
+         * Writes a string reference: 0 for null, 1 followed by the UTF-8 bytes for a new string or the index of a known
+         * string plus 2.
+         * </p>
+         *
+         * @param value
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+
+            Integer index = this.dictionary.get(value);
+
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+
+            this.dictionary.put(value, this.dictionary.size());
+
+            writeVarInt(1);
+            writeBytes(value.getBytes(UTF_8));
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[this.position];
+
+            System.arraycopy(this.buffer, 0, result, 0, this.position);
+
+            return result;
+        }
+
+        private void ensureCapacity(int length) {
+            if (this.position + length > this.buffer.length) {
+                byte[] newBuffer = new byte[Math.max(this.buffer.length << 1, this.position + length)];
+
+                System.arraycopy(this.buffer, 0, newBuffer, 0, this.position);
+
+                this.buffer = newBuffer;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Reads the data written by an {@link Output}.
+     * </p>
+     */
+    private static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+        private final List<String> dictionary = new ArrayList<String>();
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int remaining() {
+            return this.buffer.length - this.position;
+        }
+
+        byte readByte() throws IOException {
+            if (this.position >= this.buffer.length) {
+                throw new EOFException("Unexpected end of session data.");
+            }
+
+            return this.buffer[this.position++];
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = readByte();
+
+                value |= (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IOException("Malformed variable-length integer.");
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = readByte();
+
+                value |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IOException("Malformed variable-length integer.");
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+
+            return value;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = readVarInt();
+
+            if (length < 0 || length > remaining()) {
+                throw new EOFException("Unexpected end of session data.");
+            }
+
+            byte[] value = new byte[length];
+
+            System.arraycopy(this.buffer, this.position, value, 0, length);
+
+            this.position += length;
+
+            return value;
+        }
+
+        String readString() throws IOException {
+            int reference = readVarInt();
+
+            if (reference == 0) {
+                return null;
+            }
+
+            if (reference == 1) {
+                String value = new String(readBytes(), UTF_8);
+
+                this.dictionary.add(value);
+
+                return value;
+            }
+
+            int index = reference - 2;
+
+            if (index < 0 || index >= this.dictionary.size()) {
+                throw new IOException("Invalid string reference: " + reference);
+            }
+
+            return this.dictionary.get(index);
+        }
+    }
+}
@@ -24,22 +24,44 @@ package org.picketbox.core.session;
 
 import org.picketbox.core.event.PicketBoxEvent;
 import org.picketbox.core.event.PicketBoxEventHandler;
-import org.picketbox.core.exceptions.PicketBoxSessionException;
+import org.picketbox.core.event.SynchronousEventHandler;
+import org.picketbox.core.session.event.SessionAttributeRemovalHandler;
 import org.picketbox.core.session.event.SessionEvent;
 import org.picketbox.core.session.event.SessionEventHandler;
 
 /**
  * <p>Built-in implementation for {@link SessionEventHandler} that delegate the processing for the {@link SessionManager}.</p>
+ * <p>Sessions must be written and removed before the operation that raised the event returns, so this handler is always
+ * called synchronously.</p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
  */
-public class DefaultSessionEventHandler implements SessionEventHandler {
+public class DefaultSessionEventHandler implements SessionAttributeRemovalHandler, SynchronousEventHandler {
 
     private SessionManager sessionManager;
+    private SessionStore sessionStore;
+    private boolean refreshAttributesFromStore;
 
     public DefaultSessionEventHandler(SessionManager sessionManager) {
+        this(sessionManager, null, false);
+    }
+
+    /**
+     * <p>
+     * Creates a handler that refreshes the attributes read from sessions with the values in the given store, if
+     * <code>refreshAttributesFromStore</code> is true.
+     * </p>
+     *
+     * @param sessionManager
+     * @param sessionStore the store sessions are read from when refreshing attributes.
+     * @param refreshAttributesFromStore
+     */
+    public DefaultSessionEventHandler(SessionManager sessionManager, SessionStore sessionStore,
+            boolean refreshAttributesFromStore) {
         this.sessionManager = sessionManager;
+        this.sessionStore = sessionStore;
+        this.refreshAttributesFromStore = refreshAttributesFromStore && sessionStore != null;
     }
 
     @Override
@@ -57,16 +79,34 @@ public class DefaultSessionEventHandler implements SessionEventHandler {
         this.sessionManager.update(sessionEvent.getSession());
     }
 
+    /**
+     * <p>
+     * Writes the session back to the store, so stores keeping copies of the sessions see the removal.
+     * </p>
+     */
+    @Override
+    public void onRemoveAttribute(SessionEvent sessionEvent, String key) {
+        this.sessionManager.update(sessionEvent.getSession());
+    }
+
+    /**
+     * <p>
+     * Does nothing unless refreshing attributes from the store is enabled. The stored session is loaded directly from the
+     * store, so it is neither touched nor written back, and the attribute is only updated locally.
+     * </p>
+     */
     @Override
     public void onGetAttribute(SessionEvent sessionEvent, String key) {
-        PicketBoxSession storedSession = this.sessionManager.retrieve(sessionEvent.getSession().getId());
-
-        if (storedSession != null) {
-            try {
-                sessionEvent.getSession().setAttribute(key, storedSession.getAttributes().get(key));
-            } catch (PicketBoxSessionException e) {
-                throw new IllegalStateException("Unable to update session with stored attribute.", e);
-            }
+        if (!this.refreshAttributesFromStore) {
+            return;
+        }
+
+        PicketBoxSession session = sessionEvent.getSession();
+        PicketBoxSession storedSession = this.sessionStore.load(session.getId());
+
+        // stores keeping sessions in the heap return the same instance
+        if (storedSession != null && storedSession != session) {
+            session.refreshAttribute(key, storedSession.attributes.get(key));
         }
     }
 
@@ -23,12 +23,23 @@
 package org.picketbox.core.session;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxLogger;
 import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.PicketBoxMessages;
 import org.picketbox.core.UserContext;
 import org.picketbox.core.config.PicketBoxConfiguration;
 import org.picketbox.core.event.PicketBoxEventHandler;
+import org.picketbox.core.exceptions.PicketBoxSessionException;
+import org.picketbox.core.session.event.SessionCreatedEvent;
 import org.picketbox.core.session.event.SessionEvent;
 import org.picketbox.core.session.event.SessionEventHandler;
 
@@ -39,10 +50,24 @@ import org.picketbox.core.session.event.SessionEventHandler;
  */
 public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements SessionManager {
 
+    private static final Comparator<PicketBoxSession> CREATION_TIME_ORDER = new Comparator<PicketBoxSession>() {
+        @Override
+        public int compare(PicketBoxSession session1, PicketBoxSession session2) {
+            long creationTime1 = session1.getCreationTime();
+            long creationTime2 = session2.getCreationTime();
+
+            return creationTime1 < creationTime2 ? -1 : (creationTime1 == creationTime2 ? 0 : 1);
+        }
+    };
+
     private SessionStore sessionStore;
     private final SessionExpirationManager sessionExpirationManager;
     private PicketBoxManager picketBoxManager;
-    private PicketBoxEventHandler defaultSessionEventHandler = new DefaultSessionEventHandler(this);
+    private final long touchGranularity;
+    private final int maxSessionsPerPrincipal;
+    private final boolean refreshAttributesFromStore;
+    private final SessionIdGenerator sessionIdGenerator;
+    private PicketBoxEventHandler defaultSessionEventHandler;
 
     /**
      * Construct the session manager
@@ -55,12 +80,38 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
         PicketBoxConfiguration configuration = this.picketBoxManager.getConfiguration();
 
         this.sessionExpirationManager = new SessionExpirationManager(configuration);
+        this.touchGranularity = configuration.getSessionManager().getTouchGranularity();
+        this.maxSessionsPerPrincipal = configuration.getSessionManager().getMaxSessionsPerPrincipal();
+        this.refreshAttributesFromStore = configuration.getSessionManager().isRefreshAttributesFromStore();
         this.sessionStore = configuration.getSessionManager().getStore();
 
+        SessionIdGenerator idGenerator = configuration.getSessionManager().getSessionIdGenerator();
+
+        this.sessionIdGenerator = idGenerator != null ? idGenerator : new SecureSessionIdGenerator();
+
         if (this.sessionStore == null) {
             this.sessionStore = new InMemorySessionStore();
         }
 
+        SessionSerializer serializer = configuration.getSessionManager().getSerializer();
+
+        SessionStore targetStore = this.sessionStore;
+
+        if (targetStore instanceof CachingSessionStore) {
+            targetStore = ((CachingSessionStore) targetStore).getDelegate();
+        }
+
+        if (targetStore instanceof WriteBehindSessionStore) {
+            targetStore = ((WriteBehindSessionStore) targetStore).getDelegate();
+        }
+
+        if (serializer != null && targetStore instanceof AbstractSessionStore) {
+            ((AbstractSessionStore) targetStore).setSerializer(serializer);
+        }
+
+        this.defaultSessionEventHandler = new DefaultSessionEventHandler(this, this.sessionStore,
+                this.refreshAttributesFromStore);
+
         registerDefaultEventHandler();
     }
 
@@ -73,29 +124,26 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
 
         PicketBoxSession session = doCreateSession(authenticatedUserContext);
 
-        session.setEventManager(this.picketBoxManager.getEventManager());
+        prepare(session);
 
-        fireEvent(new SessionEvent(session) {
-            @Override
-            public void dispatch(SessionEventHandler handler) {
-                handler.onCreate(this);
-            }
-        });
+        if (this.picketBoxManager.getEventManager().hasHandlers(SessionCreatedEvent.class)) {
+            fireEvent(new SessionCreatedEvent(session));
+        }
 
         if (session.getId() == null || session.getId().getId() == null) {
             throw new IllegalStateException("Invalid session id: " + session.getId());
         }
 
-        // checks for duplicate session id
-        if (this.sessionStore.load(session.getId()) != null) {
-            throw new IllegalStateException("Duplicate session id: " + session.getId());
-        }
-
         authenticatedUserContext.setSession(session);
 
+        // identifiers are not checked against the store, the SessionIdGenerator makes collisions negligible
         this.sessionStore.store(session);
 
-        this.sessionExpirationManager.setTimer(session);
+        // bounded stores may evict the new session right away
+        if (session.isValid()) {
+            this.sessionExpirationManager.schedule(session);
+            enforceMaxSessionsPerPrincipal(session);
+        }
 
         return session;
     }
@@ -109,10 +157,17 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
     public PicketBoxSession retrieve(SessionId<? extends Serializable> id) {
         checkIfStarted();
 
-        PicketBoxSession session = this.sessionStore.load(id);
+        PicketBoxSession session = load(id);
 
         if (session != null) {
-            session.setEventManager(this.picketBoxManager.getEventManager());
+            long lastAccessedTime = session.getLastAccessedTime();
+
+            session.touch();
+
+            // the access time is written back at most once per touch granularity window
+            if (session.isValid() && session.getLastAccessedTime() != lastAccessedTime) {
+                update(session);
+            }
         }
 
         return session;
@@ -128,6 +183,7 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
         checkIfStarted();
 
         if (session != null) {
+            this.sessionExpirationManager.cancel(session);
             this.sessionStore.remove(session.getId());
         }
     }
@@ -139,16 +195,101 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
     public void update(PicketBoxSession session) {
         checkIfStarted();
 
+        // nothing changed since the session was last written
+        if (!session.isDirty()) {
+            return;
+        }
+
         this.sessionStore.update(session);
     }
 
+    /* (non-Javadoc)
+     * @see org.picketbox.core.session.SessionManager#count()
+     */
+    @Override
+    public int count() {
+        checkIfStarted();
+        return this.sessionStore.count();
+    }
+
+    /* (non-Javadoc)
+     * @see org.picketbox.core.session.SessionManager#findByPrincipal(java.lang.String)
+     */
+    @Override
+    public List<PicketBoxSession> findByPrincipal(String principalName) {
+        checkIfStarted();
+
+        if (principalName == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("principalName");
+        }
+
+        Collection<SessionId<? extends Serializable>> ids = this.sessionStore.findByPrincipal(principalName);
+        List<PicketBoxSession> sessions = new ArrayList<PicketBoxSession>(ids.size());
+
+        for (SessionId<? extends Serializable> id : ids) {
+            PicketBoxSession session = load(id);
+
+            // the session may have been removed after the index was read
+            if (session != null && session.isValid()) {
+                sessions.add(session);
+            }
+        }
+
+        return sessions;
+    }
+
+    /* (non-Javadoc)
+     * @see org.picketbox.core.session.SessionManager#invalidateAllFor(java.lang.String)
+     */
+    @Override
+    public int invalidateAllFor(String principalName) {
+        int invalidated = 0;
+
+        for (PicketBoxSession session : findByPrincipal(principalName)) {
+            if (session.isValid()) {
+                try {
+                    session.invalidate();
+                    invalidated++;
+                } catch (PicketBoxSessionException e) {
+                    // invalidated concurrently by another thread
+                }
+            }
+        }
+
+        return invalidated;
+    }
+
+    /* (non-Javadoc)
+     * @see org.picketbox.core.session.SessionManager#iterate(org.picketbox.core.session.SessionFilter)
+     */
+    @Override
+    public Iterator<PicketBoxSession> iterate(SessionFilter filter) {
+        checkIfStarted();
+        return new FilteringIterator(this.sessionStore.iterator(), filter);
+    }
+
     protected PicketBoxSession doCreateSession(UserContext authenticatedUserContext) {
-        return new PicketBoxSession(authenticatedUserContext, new DefaultSessionId());
+        return new PicketBoxSession(authenticatedUserContext, this.sessionIdGenerator.generate());
     }
 
     @Override
     protected void doStart() {
         this.sessionStore.start();
+        this.sessionExpirationManager.start();
+
+        // sessions recovered by persistent stores must expire like the ones created by this manager
+        if (this.sessionExpirationManager.isExpirationEnabled()) {
+            Iterator<PicketBoxSession> sessions = this.sessionStore.iterator();
+
+            while (sessions.hasNext()) {
+                PicketBoxSession session = sessions.next();
+
+                if (session.isValid()) {
+                    prepare(session);
+                    this.sessionExpirationManager.schedule(session);
+                }
+            }
+        }
     }
 
     /*
@@ -158,9 +299,92 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
      */
     @Override
     protected void doStop() {
+        this.sessionExpirationManager.stop();
         this.sessionStore.stop();
     }
 
+    /**
+     * <p>
+     * Expires the oldest sessions of the principal of the given session if the principal now has more sessions than allowed.
+     * The sessions are found using the principal index kept by the store.
+     * </p>
+     *
+     * @param session
+     */
+    private void enforceMaxSessionsPerPrincipal(PicketBoxSession session) {
+        if (this.maxSessionsPerPrincipal <= 0) {
+            return;
+        }
+
+        String principalName = PrincipalSessionIndex.getPrincipalName(session);
+
+        if (principalName == null) {
+            return;
+        }
+
+        Collection<SessionId<? extends Serializable>> ids = this.sessionStore.findByPrincipal(principalName);
+
+        if (ids.size() <= this.maxSessionsPerPrincipal) {
+            return;
+        }
+
+        List<PicketBoxSession> otherSessions = new ArrayList<PicketBoxSession>(ids.size());
+
+        for (SessionId<? extends Serializable> id : ids) {
+            // the new session is always kept
+            if (id.getId().equals(session.getId().getId())) {
+                continue;
+            }
+
+            PicketBoxSession otherSession = load(id);
+
+            if (otherSession != null && otherSession.isValid()) {
+                otherSessions.add(otherSession);
+            }
+        }
+
+        // the sort is stable, so sessions created in the same millisecond keep the order of the index
+        Collections.sort(otherSessions, CREATION_TIME_ORDER);
+
+        int exceeding = otherSessions.size() - (this.maxSessionsPerPrincipal - 1);
+
+        for (int i = 0; i < exceeding; i++) {
+            PicketBoxSession exceedingSession = otherSessions.get(i);
+
+            if (exceedingSession.isValid()) {
+                try {
+                    exceedingSession.expire();
+                } catch (PicketBoxSessionException e) {
+                    PicketBoxLogger.LOGGER.errorExpiringSession(exceedingSession.getId(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Loads a session from the store and prepares it to be used by this manager.
+     * </p>
+     *
+     * @param id
+     * @return
+     */
+    private PicketBoxSession load(SessionId<? extends Serializable> id) {
+        PicketBoxSession session = this.sessionStore.load(id);
+
+        if (session != null) {
+            prepare(session);
+        }
+
+        return session;
+    }
+
+    private void prepare(PicketBoxSession session) {
+        session.setEventManager(this.picketBoxManager.getEventManager());
+        session.setTouchGranularity(this.touchGranularity);
+        session.setExpirationManager(this.sessionExpirationManager);
+    }
+
     /**
      * <p>Fires the specified {@link SessionEvent}.</p>
      *
@@ -175,9 +399,75 @@ public class DefaultSessionManager extends AbstractPicketBoxLifeCycle implements
      */
     private void registerDefaultEventHandler() {
         this.picketBoxManager.getEventManager().addHandler(this.defaultSessionEventHandler );
+
+        // stores keeping local state, like caches, must be notified about invalidated sessions
+        if (this.sessionStore instanceof PicketBoxEventHandler) {
+            this.picketBoxManager.getEventManager().addHandler((PicketBoxEventHandler) this.sessionStore);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the {@link SessionIdGenerator} used to create session identifiers. Use it to restore identifiers sent back by
+     * clients.
+     * </p>
+     *
+     * @return
+     */
+    public SessionIdGenerator getSessionIdGenerator() {
+        return this.sessionIdGenerator;
     }
 
     protected PicketBoxManager getPicketBoxManager() {
         return picketBoxManager;
     }
+
+    /**
+     * <p>
+     * Returns the sessions accepted by a {@link SessionFilter}, reading ahead at most one session.
+     * </p>
+     */
+    private class FilteringIterator implements Iterator<PicketBoxSession> {
+
+        private final Iterator<PicketBoxSession> sessions;
+        private final SessionFilter filter;
+        private PicketBoxSession next;
+
+        FilteringIterator(Iterator<PicketBoxSession> sessions, SessionFilter filter) {
+            this.sessions = sessions;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.next == null && this.sessions.hasNext()) {
+                PicketBoxSession candidate = this.sessions.next();
+
+                if (candidate.isValid() && (this.filter == null || this.filter.accept(candidate))) {
+                    prepare(candidate);
+                    this.next = candidate;
+                }
+            }
+
+            return this.next != null;
+        }
+
+        @Override
+        public PicketBoxSession next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            PicketBoxSession session = this.next;
+
+            this.next = null;
+
+            return session;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>
+ * Default {@link SessionWeigher}. It does not walk object graphs, it only adds a fixed overhead for the session and its user
+ * context to a rough estimate of each attribute based on its type.
+ * </p>
+ */
+public class DefaultSessionWeigher implements SessionWeigher {
+
+    private static final long SESSION_OVERHEAD = 512;
+    private static final long ENTRY_OVERHEAD = 48;
+    private static final long STRING_OVERHEAD = 40;
+    private static final long OBJECT_OVERHEAD = 64;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionWeigher#weigh(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public long weigh(PicketBoxSession session) {
+        long weight = SESSION_OVERHEAD;
+
+        for (Entry<String, Object> entry : session.attributes.entrySet()) {
+            weight += ENTRY_OVERHEAD + weighValue(entry.getKey()) + weighValue(entry.getValue());
+        }
+
+        return weight;
+    }
+
+    protected long weighValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        if (value instanceof String) {
+            return STRING_OVERHEAD + 2L * ((String) value).length();
+        }
+
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        }
+
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+
+        if (value instanceof char[]) {
+            return 16 + 2L * ((char[]) value).length;
+        }
+
+        if (value instanceof Collection) {
+            return OBJECT_OVERHEAD + ENTRY_OVERHEAD * ((Collection<?>) value).size();
+        }
+
+        if (value instanceof Map) {
+            return OBJECT_OVERHEAD + 2 * ENTRY_OVERHEAD * ((Map<?, ?>) value).size();
+        }
+
+        return OBJECT_OVERHEAD;
+    }
+}
@@ -21,12 +21,16 @@
  */
 package org.picketbox.core.session;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Map;
 
@@ -34,16 +38,22 @@ import org.picketbox.core.PicketBoxMessages;
 import org.picketbox.core.util.StreamUtil;
 
 /**
- * A {@link SessionStore} that serializes/deserializes sessions from a file
+ * A {@link SessionStore} that serializes/deserializes sessions from a file.
+ * <p>
+ * Sessions are loaded when the store is started and written back when it is stopped, using the configured
+ * {@link SessionSerializer}. Files written by previous versions, using Java serialization, are still loaded.
+ * </p>
  *
  * @author anil saldhana
  * @since Aug 22, 2012
  */
 public class FileSessionStore extends AbstractSessionStore {
+
+    private static final int FILE_MAGIC = 0x50425346;
+
     private String sessionFileName = "PBOXSESSION.DAT";
 
     public FileSessionStore() {
-        loadFromFile();
     }
 
     public FileSessionStore(String sessionFileName) {
@@ -51,44 +61,85 @@ public class FileSessionStore extends AbstractSessionStore {
             throw PicketBoxMessages.MESSAGES.invalidNullArgument("sessionFileName");
         }
         this.sessionFileName = sessionFileName;
+    }
+
+    @Override
+    protected void doStart() {
         loadFromFile();
+        rebuildPrincipalIndex();
     }
 
     @Override
     protected void doStop() {
-        super.doStop();
         storeToFile();
+        super.doStop();
     }
 
     @SuppressWarnings("unchecked")
     protected void loadFromFile() {
-        ObjectInputStream ois = null;
+        InputStream input = null;
         try {
             File file = new File(sessionFileName);
             if (file.exists() == false) {
                 return; // If there is no session file, return as the store will create one
             }
-            ois = new ObjectInputStream(new FileInputStream(file));
+            input = new BufferedInputStream(new FileInputStream(file));
             this.sessions.clear();
-            this.sessions.putAll((Map<? extends Serializable, ? extends PicketBoxSession>) ois.readObject());
+
+            input.mark(4);
+
+            DataInputStream dataInput = new DataInputStream(input);
+
+            if (dataInput.readInt() != FILE_MAGIC) {
+                // file written using Java serialization
+                input.reset();
+                this.sessions.putAll((Map<? extends Serializable, ? extends PicketBoxSession>) new ObjectInputStream(input)
+                        .readObject());
+                return;
+            }
+
+            int count = dataInput.readInt();
+
+            for (int i = 0; i < count; i++) {
+                byte[] data = new byte[dataInput.readInt()];
+
+                dataInput.readFully(data);
+
+                PicketBoxSession session = this.serializer.deserialize(data);
+
+                this.sessions.put(session.getId().getId(), session);
+            }
         } catch (IOException e) {
             throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(sessionFileName, e);
         } catch (ClassNotFoundException e) {
             throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(sessionFileName, e);
         } finally {
-            StreamUtil.safeClose(ois);
+            StreamUtil.safeClose(input);
         }
     }
 
     protected void storeToFile() {
-        ObjectOutputStream oos = null;
+        DataOutputStream output = null;
         try {
-            oos = new ObjectOutputStream(new FileOutputStream(sessionFileName));
-            oos.writeObject(this.sessions);
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sessionFileName)));
+
+            PicketBoxSession[] sessions = this.sessions.values().toArray(new PicketBoxSession[0]);
+
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(sessions.length);
+
+            for (PicketBoxSession session : sessions) {
+                byte[] data = this.serializer.serialize(session);
+
+                output.writeInt(data.length);
+                output.write(data);
+            }
+
+            output.flush();
         } catch (IOException e) {
             throw PicketBoxMessages.MESSAGES.unableToStoreToFile(sessionFileName, e);
         } finally {
-            StreamUtil.safeClose(oos);
+            StreamUtil.safeClose(output);
         }
     }
-}
\ No newline at end of file
+}
@@ -28,4 +28,16 @@ package org.picketbox.core.session;
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
 public class InMemorySessionStore extends AbstractSessionStore {
+
+    public InMemorySessionStore() {
+        super();
+    }
+
+    /**
+     * @param initialCapacity the initial number of sessions the store can hold without resizing.
+     * @param concurrencyLevel the estimated number of threads updating the store concurrently.
+     */
+    public InMemorySessionStore(int initialCapacity, int concurrencyLevel) {
+        super(initialCapacity, concurrencyLevel);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.picketbox.core.util.StreamUtil;
+
+/**
+ * <p>
+ * {@link SessionSerializer} that uses the default Java serialization.
+ * </p>
+ */
+public class JavaSessionSerializer implements SessionSerializer {
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionSerializer#serialize(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public byte[] serialize(PicketBoxSession session) throws IOException {
+        return toBytes(session);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionSerializer#deserialize(byte[])
+     */
+    @Override
+    public PicketBoxSession deserialize(byte[] data) throws IOException {
+        return (PicketBoxSession) fromBytes(data);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionSerializer#serializeAttributes(java.util.Map)
+     */
+    @Override
+    public byte[] serializeAttributes(Map<String, Object> attributes) throws IOException {
+        return toBytes(new HashMap<String, Object>(attributes));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionSerializer#deserializeAttributes(byte[])
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> deserializeAttributes(byte[] data) throws IOException {
+        return (Map<String, Object>) fromBytes(data);
+    }
+
+    /**
+     * <p>
+     * Serializes any object using Java serialization.
+     * </p>
+     *
+     * @param object
+     * @return
+     * @throws IOException
+     */
+    static byte[] toBytes(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = null;
+
+        try {
+            output = new ObjectOutputStream(bytes);
+            output.writeObject(object);
+            output.flush();
+        } finally {
+            StreamUtil.safeClose(output);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * <p>
+     * Deserializes an object serialized with {@link #toBytes(Object)}.
+     * </p>
+     *
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    static Object fromBytes(byte[] data) throws IOException {
+        ObjectInputStream input = null;
+
+        try {
+            input = new ObjectInputStream(new ByteArrayInputStream(data));
+            return input.readObject();
+        } catch (ClassNotFoundException e) {
+            IOException exception = new IOException("Class not found: " + e.getMessage());
+
+            exception.initCause(e);
+
+            throw exception;
+        } finally {
+            StreamUtil.safeClose(input);
+        }
+    }
+}
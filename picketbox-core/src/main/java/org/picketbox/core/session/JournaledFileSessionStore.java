@@ -0,0 +1,1052 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.picketbox.core.PicketBoxLogger;
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.util.StreamUtil;
+
+/**
+ * <p>
+ * A {@link SessionStore} that persists sessions in a directory using a write-ahead journal.
+ * </p>
+ * <p>
+ * Every store, update and remove is appended to the journal as a small record protected by a CRC32 checksum. Updates of
+ * a stored session only write the attributes changed since it was last written. Records are
+ * written by a background thread that commits all pending records at once, and forced to disk according to the configured
+ * {@link JournalSyncPolicy}. When the journal grows beyond the compaction threshold, it is rotated and the live sessions are
+ * written to a snapshot, after which the older files are deleted.
+ * </p>
+ * <p>
+ * On start the store loads the latest snapshot and replays the journals written after it. Incomplete records at the end of
+ * a journal, for example after a crash in the middle of a write, are discarded.
+ * </p>
+ * <p>
+ * When records can not be written, the calls waiting for them under {@link JournalSyncPolicy#ALWAYS} fail and a compaction is
+ * requested, so a snapshot of the sessions kept in memory replaces the incomplete journal. Records appended until the
+ * snapshot is written are only acknowledged by it.
+ * </p>
+ */
+public class JournaledFileSessionStore extends AbstractSessionStore {
+
+    public static final long DEFAULT_FLUSH_INTERVAL = 100;
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 64L * 1024L * 1024L;
+
+    protected static final byte RECORD_STORE = 1;
+    protected static final byte RECORD_REMOVE = 2;
+    protected static final byte RECORD_ATTRIBUTES = 3;
+
+    private static final int SNAPSHOT_MAGIC = 0x50425353;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final int RECORD_OVERHEAD = 1 + 4 + 4;
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String FILE_PREFIX = "sessions-";
+
+    private final File directory;
+    private final JournalSyncPolicy syncPolicy;
+    private final long flushInterval;
+    private final long compactionThreshold;
+
+    /**
+     * Writers hold the read lock while changing the sessions and appending the corresponding record, so the compaction can
+     * take a consistent copy by holding the write lock.
+     */
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final Condition recordsAppended = this.journalLock.newCondition();
+    private final Condition recordsFlushed = this.journalLock.newCondition();
+
+    // guarded by journalLock
+    private ByteArrayOutputStream pendingRecords = new ByteArrayOutputStream();
+    private long appendedSequence;
+    private long flushedSequence;
+    // the highest sequence of the records that could not be written, and the cause
+    private long failedSequence;
+    private IOException writeFailure;
+    private boolean compactionRequested;
+    private long compactions;
+    private boolean running;
+
+    // only accessed by the flusher thread, or when it is not running
+    private long generation;
+    private RandomAccessFile journalFile;
+    private FileChannel journalChannel;
+    private long journalSize;
+
+    private Thread flusherThread;
+
+    public JournaledFileSessionStore(String directory) {
+        this(directory, JournalSyncPolicy.INTERVAL);
+    }
+
+    public JournaledFileSessionStore(String directory, JournalSyncPolicy syncPolicy) {
+        this(directory, syncPolicy, DEFAULT_FLUSH_INTERVAL, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param directory the directory where the snapshot and journal files are stored.
+     * @param syncPolicy when records are forced to disk.
+     * @param flushInterval the maximum time, in milliseconds, records wait before being written.
+     * @param compactionThreshold the journal size, in bytes, that triggers a compaction.
+     */
+    public JournaledFileSessionStore(String directory, JournalSyncPolicy syncPolicy, long flushInterval,
+            long compactionThreshold) {
+        if (directory == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("directory");
+        }
+
+        this.directory = new File(directory);
+        this.syncPolicy = syncPolicy != null ? syncPolicy : JournalSyncPolicy.INTERVAL;
+        this.flushInterval = flushInterval > 0 ? flushInterval : DEFAULT_FLUSH_INTERVAL;
+        this.compactionThreshold = compactionThreshold > 0 ? compactionThreshold : DEFAULT_COMPACTION_THRESHOLD;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#store(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void store(PicketBoxSession session) {
+        long sequence;
+
+        this.stateLock.readLock().lock();
+
+        try {
+            synchronized (session) {
+                Set<String> changedAttributes = session.drainDirtyAttributes();
+
+                try {
+                    sequence = append(RECORD_STORE, serializeSession(session));
+                } catch (RuntimeException e) {
+                    session.restoreDirtyAttributes(changedAttributes);
+                    throw e;
+                }
+
+                // the session is only visible once its record is appended
+                this.sessions.put(session.getId().getId(), session);
+                this.principalIndex.add(session);
+            }
+        } finally {
+            this.stateLock.readLock().unlock();
+        }
+
+        awaitDurability(sequence);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#update(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void update(PicketBoxSession session) {
+        long sequence;
+
+        this.stateLock.readLock().lock();
+
+        try {
+            // the session lock keeps the records of concurrent updates of the same session in order
+            synchronized (session) {
+                Serializable id = session.getId().getId();
+                PicketBoxSession previous = this.sessions.get(id);
+
+                if (previous == null) {
+                    return;
+                }
+
+                Set<String> changedAttributes = session.drainDirtyAttributes();
+
+                try {
+                    if (previous == session) {
+                        sequence = append(RECORD_ATTRIBUTES, serializeChangedAttributes(session, changedAttributes));
+                    } else {
+                        sequence = append(RECORD_STORE, serializeSession(session));
+                    }
+                } catch (RuntimeException e) {
+                    session.restoreDirtyAttributes(changedAttributes);
+                    throw e;
+                }
+
+                if (this.sessions.replace(id, previous, session)) {
+                    this.principalIndex.add(session);
+                } else if (!this.sessions.containsKey(id)) {
+                    // removed concurrently, maybe before the record was appended, so the removal is appended again
+                    sequence = append(RECORD_REMOVE, serializeId(id));
+                }
+            }
+        } finally {
+            this.stateLock.readLock().unlock();
+        }
+
+        awaitDurability(sequence);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#remove(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public void remove(SessionId<? extends Serializable> id) {
+        long sequence;
+
+        this.stateLock.readLock().lock();
+
+        try {
+            if (this.sessions.remove(id.getId()) == null) {
+                return;
+            }
+
+            this.principalIndex.remove(id.getId());
+
+            sequence = append(RECORD_REMOVE, serializeId(id.getId()));
+        } finally {
+            this.stateLock.readLock().unlock();
+        }
+
+        awaitDurability(sequence);
+    }
+
+    /**
+     * <p>
+     * Writes a snapshot of the live sessions and discards the current journal.
+     * </p>
+     */
+    public void compact() {
+        checkIfStarted();
+
+        this.journalLock.lock();
+
+        try {
+            // the compaction is done by the flusher thread, so the files are only touched by one thread
+            long target = this.compactions + 1;
+
+            this.compactionRequested = true;
+            this.recordsAppended.signal();
+
+            while (this.running && this.compactions < target) {
+                this.recordsFlushed.awaitUninterruptibly();
+            }
+        } finally {
+            this.journalLock.unlock();
+        }
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    public JournalSyncPolicy getSyncPolicy() {
+        return this.syncPolicy;
+    }
+
+    @Override
+    protected void doStart() {
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.directory.getPath(), null);
+        }
+
+        recover();
+        rebuildPrincipalIndex();
+
+        try {
+            this.generation++;
+            writeSnapshot(this.generation, new HashMap<Serializable, PicketBoxSession>(this.sessions));
+            openJournal(this.generation);
+            deleteFilesBefore(this.generation);
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.directory.getPath(), e);
+        }
+
+        this.journalLock.lock();
+
+        try {
+            this.running = true;
+        } finally {
+            this.journalLock.unlock();
+        }
+
+        this.flusherThread = new Thread(new Flusher(), "PicketBox-SessionJournal-" + this.directory.getName());
+        this.flusherThread.setDaemon(true);
+        this.flusherThread.start();
+    }
+
+    @Override
+    protected void doStop() {
+        this.journalLock.lock();
+
+        try {
+            this.running = false;
+            this.recordsAppended.signal();
+        } finally {
+            this.journalLock.unlock();
+        }
+
+        try {
+            this.flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        StreamUtil.safeClose(this.journalFile);
+
+        super.doStop();
+    }
+
+    /**
+     * <p>
+     * Serializes the given session to be written in a record.
+     * </p>
+     *
+     * @param session
+     * @return
+     */
+    protected byte[] serializeSession(PicketBoxSession session) {
+        try {
+            return this.serializer.serialize(session);
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.directory.getPath(), e);
+        }
+    }
+
+    /**
+     * <p>
+     * Serializes the changed attributes of a session: the session id, its last accessed time and the current values of the
+     * given attributes, where removed attributes are written as null.
+     * </p>
+     *
+     * @param session
+     * @param changedAttributes
+     * @return
+     */
+    private byte[] serializeChangedAttributes(PicketBoxSession session, Set<String> changedAttributes) {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+
+        for (String key : changedAttributes) {
+            attributes.put(key, session.attributes.get(key));
+        }
+
+        byte[] id = serializeId(session.getId().getId());
+        byte[] values;
+
+        try {
+            values = this.serializer.serializeAttributes(attributes);
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.directory.getPath(), e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + id.length + 8 + values.length);
+
+        buffer.putInt(id.length);
+        buffer.put(id);
+        buffer.putLong(session.getLastAccessedTime());
+        buffer.put(values);
+
+        return buffer.array();
+    }
+
+    private void applyChangedAttributes(byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int idLength = buffer.getInt();
+
+        if (idLength < 0 || idLength > buffer.remaining() - 8) {
+            throw new IOException("Invalid attributes record.");
+        }
+
+        byte[] id = new byte[idLength];
+
+        buffer.get(id);
+
+        long lastAccessedTime = buffer.getLong();
+        byte[] values = new byte[buffer.remaining()];
+
+        buffer.get(values);
+
+        PicketBoxSession session = this.sessions.get(JavaSessionSerializer.fromBytes(id));
+
+        // the session may have been removed by a later record
+        if (session == null) {
+            return;
+        }
+
+        for (Entry<String, Object> attribute : this.serializer.deserializeAttributes(values).entrySet()) {
+            if (attribute.getValue() == null) {
+                session.attributes.remove(attribute.getKey());
+            } else {
+                session.attributes.put(attribute.getKey(), attribute.getValue());
+            }
+        }
+
+        session.lastAccessedTime = lastAccessedTime;
+    }
+
+    private byte[] serializeId(Serializable id) {
+        try {
+            return JavaSessionSerializer.toBytes(id);
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.directory.getPath(), e);
+        }
+    }
+
+    /**
+     * <p>
+     * Deserializes a session read from a record.
+     * </p>
+     *
+     * @param payload
+     * @return
+     * @throws IOException
+     */
+    protected PicketBoxSession deserializeSession(byte[] payload) throws IOException {
+        return this.serializer.deserialize(payload);
+    }
+
+    /**
+     * <p>
+     * Applies a record read from a snapshot or journal to the sessions being recovered.
+     * </p>
+     *
+     * @param type
+     * @param payload
+     * @throws IOException
+     */
+    protected void applyRecord(byte type, byte[] payload) throws IOException {
+        if (type == RECORD_STORE) {
+            PicketBoxSession session = deserializeSession(payload);
+
+            this.sessions.put(session.getId().getId(), session);
+        } else if (type == RECORD_REMOVE) {
+            this.sessions.remove(JavaSessionSerializer.fromBytes(payload));
+        } else if (type == RECORD_ATTRIBUTES) {
+            applyChangedAttributes(payload);
+        } else {
+            throw new IOException("Unknown record type: " + type);
+        }
+    }
+
+    /**
+     * <p>
+     * Appends a record to the pending records. Must be called holding the read lock of the state lock.
+     * </p>
+     *
+     * @param type
+     * @param payload
+     * @return the sequence of the record.
+     */
+    private long append(byte type, byte[] payload) {
+        byte[] record = encodeRecord(type, payload);
+
+        this.journalLock.lock();
+
+        try {
+            checkIfStarted();
+
+            this.pendingRecords.write(record, 0, record.length);
+
+            long sequence = ++this.appendedSequence;
+
+            if (this.syncPolicy == JournalSyncPolicy.ALWAYS) {
+                this.recordsAppended.signal();
+            }
+
+            return sequence;
+        } finally {
+            this.journalLock.unlock();
+        }
+    }
+
+    private void awaitDurability(long sequence) {
+        if (this.syncPolicy != JournalSyncPolicy.ALWAYS) {
+            return;
+        }
+
+        this.journalLock.lock();
+
+        try {
+            while (this.running && this.flushedSequence < sequence && this.failedSequence < sequence) {
+                this.recordsFlushed.awaitUninterruptibly();
+            }
+
+            if (this.flushedSequence < sequence && this.failedSequence >= sequence) {
+                throw PicketBoxMessages.MESSAGES.unableToStoreToFile(journalFileName(this.generation), this.writeFailure);
+            }
+        } finally {
+            this.journalLock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Writes all pending records to the journal. Only called by the flusher thread.
+     * </p>
+     *
+     * @param force
+     */
+    private void flushPendingRecords(boolean force) {
+        byte[] records;
+        long sequence;
+
+        this.journalLock.lock();
+
+        try {
+            // after a failure the journal is incomplete, the pending records are written by the next snapshot instead
+            records = this.writeFailure == null ? this.pendingRecords.toByteArray() : new byte[0];
+            sequence = this.appendedSequence;
+            this.pendingRecords.reset();
+        } finally {
+            this.journalLock.unlock();
+        }
+
+        try {
+            if (records.length > 0) {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+
+                while (buffer.hasRemaining()) {
+                    this.journalChannel.write(buffer);
+                }
+
+                this.journalSize += records.length;
+
+                if (force) {
+                    this.journalChannel.force(false);
+                }
+            }
+        } catch (IOException e) {
+            PicketBoxLogger.LOGGER.errorWritingJournal(journalFileName(this.generation), e);
+            discardIncompleteRecords();
+            recordFailure(sequence, e);
+            return;
+        }
+
+        this.journalLock.lock();
+
+        try {
+            // records written after a failure are only durable once the snapshot replaces the incomplete journal
+            if (this.writeFailure == null) {
+                this.flushedSequence = Math.max(this.flushedSequence, sequence);
+            }
+
+            this.recordsFlushed.signalAll();
+        } finally {
+            this.journalLock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Fails the calls waiting for the records up to the given sequence. The flusher compacts the journal until it succeeds.
+     * </p>
+     *
+     * @param sequence
+     * @param failure
+     */
+    private void recordFailure(long sequence, IOException failure) {
+        this.journalLock.lock();
+
+        try {
+            this.failedSequence = Math.max(this.failedSequence, sequence);
+            this.writeFailure = failure;
+            this.recordsFlushed.signalAll();
+        } finally {
+            this.journalLock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Truncates the journal to the last completely written record, if possible, so records written later are not
+     * preceded by a partial one.
+     * </p>
+     */
+    private void discardIncompleteRecords() {
+        try {
+            this.journalChannel.truncate(this.journalSize);
+            this.journalChannel.position(this.journalSize);
+        } catch (IOException e) {
+            // the compaction replaces the journal anyway
+        }
+    }
+
+    /**
+     * <p>
+     * Rotates the journal and writes a snapshot of the live sessions. Only called by the flusher thread.
+     * </p>
+     */
+    private void doCompact() {
+        Map<Serializable, PicketBoxSession> liveSessions;
+        long newGeneration;
+        long snapshotSequence;
+
+        this.stateLock.writeLock().lock();
+
+        try {
+            flushPendingRecords(this.syncPolicy != JournalSyncPolicy.NONE);
+
+            // no records are appended while the write lock is held
+            snapshotSequence = getAppendedSequence();
+            newGeneration = this.generation + 1;
+
+            StreamUtil.safeClose(this.journalFile);
+            openJournal(newGeneration);
+
+            liveSessions = new HashMap<Serializable, PicketBoxSession>(this.sessions);
+        } catch (IOException e) {
+            PicketBoxLogger.LOGGER.errorWritingJournal(journalFileName(this.generation + 1), e);
+            failPendingRecovery(getAppendedSequence(), e);
+            return;
+        } finally {
+            this.stateLock.writeLock().unlock();
+        }
+
+        try {
+            writeSnapshot(newGeneration, liveSessions);
+            deleteFilesBefore(newGeneration);
+        } catch (IOException e) {
+            PicketBoxLogger.LOGGER.errorWritingJournal(snapshotFileName(newGeneration), e);
+            failPendingRecovery(snapshotSequence, e);
+            return;
+        }
+
+        this.journalLock.lock();
+
+        try {
+            // the snapshot holds every record appended before it, including the ones that could not be written
+            this.flushedSequence = Math.max(this.flushedSequence, snapshotSequence);
+            this.writeFailure = null;
+            this.recordsFlushed.signalAll();
+        } finally {
+            this.journalLock.unlock();
+        }
+    }
+
+    private long getAppendedSequence() {
+        this.journalLock.lock();
+
+        try {
+            return this.appendedSequence;
+        } finally {
+            this.journalLock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Fails the calls waiting for a snapshot to replace a journal with missing records, when the snapshot can not be written.
+     * </p>
+     *
+     * @param sequence
+     * @param failure
+     */
+    private void failPendingRecovery(long sequence, IOException failure) {
+        this.journalLock.lock();
+
+        try {
+            if (this.writeFailure != null) {
+                this.failedSequence = Math.max(this.failedSequence, sequence);
+                this.writeFailure = failure;
+                this.recordsFlushed.signalAll();
+            }
+        } finally {
+            this.journalLock.unlock();
+        }
+    }
+
+    private void openJournal(long newGeneration) throws IOException {
+        this.journalFile = new RandomAccessFile(new File(this.directory, journalFileName(newGeneration)), "rw");
+        this.journalChannel = this.journalFile.getChannel();
+        this.journalChannel.position(this.journalChannel.size());
+        this.journalSize = this.journalChannel.size();
+        this.generation = newGeneration;
+    }
+
+    private void writeSnapshot(long snapshotGeneration, Map<Serializable, PicketBoxSession> liveSessions)
+            throws IOException {
+        File temporaryFile = new File(this.directory, snapshotFileName(snapshotGeneration) + ".tmp");
+        FileOutputStream fileOutputStream = new FileOutputStream(temporaryFile);
+        DataOutputStream output = null;
+
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeLong(snapshotGeneration);
+            output.writeInt(liveSessions.size());
+
+            for (PicketBoxSession session : liveSessions.values()) {
+                output.write(encodeRecord(RECORD_STORE, serializeSession(session)));
+            }
+
+            output.flush();
+            fileOutputStream.getFD().sync();
+        } finally {
+            StreamUtil.safeClose(output != null ? output : fileOutputStream);
+        }
+
+        File snapshotFile = new File(this.directory, snapshotFileName(snapshotGeneration));
+
+        if (!temporaryFile.renameTo(snapshotFile)) {
+            throw new IOException("Could not rename " + temporaryFile + " to " + snapshotFile);
+        }
+
+        // the rename is only durable once the directory entry is
+        syncDirectory(this.directory);
+    }
+
+    /**
+     * <p>
+     * Forces the entries of the given directory to disk. Directories can only be opened with the <code>java.nio.file</code>
+     * API, available since Java 7, so this method does nothing on older runtimes or on platforms that do not allow opening
+     * directories.
+     * </p>
+     *
+     * @param directory
+     * @throws IOException if the directory could not be forced to disk.
+     */
+    private static void syncDirectory(File directory) throws IOException {
+        FileChannel channel;
+
+        try {
+            Class<?> pathType = Class.forName("java.nio.file.Path");
+            Class<?> openOptionType = Class.forName("java.nio.file.OpenOption");
+            Object[] options = (Object[]) Array.newInstance(openOptionType, 1);
+
+            options[0] = Class.forName("java.nio.file.StandardOpenOption").getField("READ").get(null);
+
+            Object path = File.class.getMethod("toPath").invoke(directory);
+
+            channel = (FileChannel) FileChannel.class.getMethod("open", pathType, options.getClass()).invoke(null, path,
+                    options);
+        } catch (Exception e) {
+            return;
+        }
+
+        try {
+            channel.force(true);
+        } finally {
+            StreamUtil.safeClose(channel);
+        }
+    }
+
+    /**
+     * <p>
+     * Loads the latest snapshot and replays the journals written after it.
+     * </p>
+     */
+    private void recover() {
+        this.sessions.clear();
+
+        Map<Long, File> snapshots = listFiles(SNAPSHOT_SUFFIX);
+        Map<Long, File> journals = listFiles(JOURNAL_SUFFIX);
+
+        long snapshotGeneration = -1;
+
+        List<Long> snapshotGenerations = new ArrayList<Long>(snapshots.keySet());
+
+        Collections.sort(snapshotGenerations, Collections.reverseOrder());
+
+        for (Long candidate : snapshotGenerations) {
+            if (loadSnapshot(snapshots.get(candidate))) {
+                snapshotGeneration = candidate;
+                break;
+            }
+
+            this.sessions.clear();
+        }
+
+        List<Long> journalGenerations = new ArrayList<Long>(journals.keySet());
+
+        Collections.sort(journalGenerations);
+
+        for (Long journalGeneration : journalGenerations) {
+            if (journalGeneration >= snapshotGeneration) {
+                replayJournal(journals.get(journalGeneration));
+            }
+        }
+
+        long lastGeneration = Math.max(snapshotGeneration, 0);
+
+        if (!journalGenerations.isEmpty()) {
+            lastGeneration = Math.max(lastGeneration, journalGenerations.get(journalGenerations.size() - 1));
+        }
+
+        if (!snapshotGenerations.isEmpty()) {
+            lastGeneration = Math.max(lastGeneration, snapshotGenerations.get(0));
+        }
+
+        this.generation = lastGeneration;
+    }
+
+    private boolean loadSnapshot(File file) {
+        DataInputStream input = null;
+
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (input.readInt() != SNAPSHOT_MAGIC) {
+                return false;
+            }
+
+            input.readLong();
+
+            int count = input.readInt();
+
+            for (int i = 0; i < count; i++) {
+                if (replayRecord(input) <= 0) {
+                    PicketBoxLogger.LOGGER.corruptedJournalRecord(file.getPath(), i);
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(file.getPath(), e);
+        } finally {
+            StreamUtil.safeClose(input);
+        }
+    }
+
+    private void replayJournal(File file) {
+        DataInputStream input = null;
+
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            long offset = 0;
+
+            while (true) {
+                int recordSize = replayRecord(input);
+
+                if (recordSize == 0) {
+                    break;
+                }
+
+                if (recordSize < 0) {
+                    // a torn write at the end of the journal. Everything after it is discarded.
+                    PicketBoxLogger.LOGGER.corruptedJournalRecord(file.getPath(), offset);
+                    break;
+                }
+
+                offset += recordSize;
+            }
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(file.getPath(), e);
+        } finally {
+            StreamUtil.safeClose(input);
+        }
+    }
+
+    /**
+     * <p>
+     * Reads and applies a single record.
+     * </p>
+     *
+     * @param input
+     * @return the size of the record, 0 if the end of the stream was reached or -1 if the record is incomplete or corrupted.
+     * @throws IOException
+     */
+    private int replayRecord(DataInputStream input) throws IOException {
+        int type = input.read();
+
+        if (type == -1) {
+            return 0;
+        }
+
+        try {
+            int length = input.readInt();
+
+            if (length < 0 || length > MAX_RECORD_SIZE) {
+                return -1;
+            }
+
+            byte[] payload = new byte[length];
+
+            input.readFully(payload);
+
+            int checksum = input.readInt();
+
+            if (checksum != checksum((byte) type, payload)) {
+                return -1;
+            }
+
+            applyRecord((byte) type, payload);
+
+            return RECORD_OVERHEAD + length;
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    private Map<Long, File> listFiles(String suffix) {
+        Map<Long, File> files = new HashMap<Long, File>();
+        File[] candidates = this.directory.listFiles();
+
+        if (candidates == null) {
+            return files;
+        }
+
+        for (File candidate : candidates) {
+            String name = candidate.getName();
+
+            if (name.startsWith(FILE_PREFIX) && name.endsWith(suffix)) {
+                try {
+                    files.put(Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - suffix.length()), 16),
+                            candidate);
+                } catch (NumberFormatException e) {
+                    // not one of our files
+                }
+            }
+        }
+
+        return files;
+    }
+
+    private void deleteFilesBefore(long currentGeneration) {
+        for (Entry<Long, File> entry : listFiles(JOURNAL_SUFFIX).entrySet()) {
+            if (entry.getKey() < currentGeneration) {
+                entry.getValue().delete();
+            }
+        }
+
+        for (Entry<Long, File> entry : listFiles(SNAPSHOT_SUFFIX).entrySet()) {
+            if (entry.getKey() < currentGeneration) {
+                entry.getValue().delete();
+            }
+        }
+    }
+
+    private static String journalFileName(long generation) {
+        return FILE_PREFIX + String.format("%016x", generation) + JOURNAL_SUFFIX;
+    }
+
+    private static String snapshotFileName(long generation) {
+        return FILE_PREFIX + String.format("%016x", generation) + SNAPSHOT_SUFFIX;
+    }
+
+    private static byte[] encodeRecord(byte type, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+
+        buffer.put(type);
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+        buffer.putInt(checksum(type, payload));
+
+        return buffer.array();
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * <p>
+     * Writes the pending records at every flush interval, or as soon as they are appended when using
+     * {@link JournalSyncPolicy#ALWAYS}, and compacts the journal when it grows beyond the threshold.
+     * </p>
+     */
+    private class Flusher implements Runnable {
+
+        @Override
+        public void run() {
+            boolean force = syncPolicy != JournalSyncPolicy.NONE;
+
+            while (true) {
+                boolean stopping;
+                boolean compact;
+
+                journalLock.lock();
+
+                try {
+                    // after a failure the compaction is retried at every flush interval
+                    if (running && (writeFailure != null || pendingRecords.size() == 0 && !compactionRequested)) {
+                        try {
+                            recordsAppended.await(flushInterval, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    stopping = !running;
+                    compact = compactionRequested || writeFailure != null;
+                    compactionRequested = false;
+                } finally {
+                    journalLock.unlock();
+                }
+
+                flushPendingRecords(force || stopping);
+
+                if (stopping) {
+                    break;
+                }
+
+                if (compact || journalSize >= compactionThreshold) {
+                    doCompact();
+
+                    journalLock.lock();
+
+                    try {
+                        compactions++;
+                        recordsFlushed.signalAll();
+                    } finally {
+                        journalLock.unlock();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,959 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.picketbox.core.PicketBoxMessages;
+import org.picketbox.core.util.StreamUtil;
+
+/**
+ * <p>
+ * A {@link SessionStore} that keeps serialized sessions outside the Java heap, in a memory-mapped file.
+ * </p>
+ * <p>
+ * The file is divided in fixed-size slots. A session is written to a chain of slots, starting with a head slot that also
+ * holds the session id, and is only deserialized when loaded. Slots are returned to a free list when sessions are removed.
+ * Sessions are located using an open-addressing index keyed by the bytes of their id, which is the only per-session data
+ * kept on the heap (two ints per entry).
+ * </p>
+ * <p>
+ * When the store is started again with the same file, the index and the free list are rebuilt by scanning the slots. Slots
+ * that were being written during a crash are not reachable from any head slot and are released.
+ * </p>
+ * <p>
+ * Sessions returned by {@link #load(SessionId)} are copies. Changes must be written back using {@link #update(PicketBoxSession)},
+ * which is what the {@link DefaultSessionEventHandler} does when attributes are set.
+ * </p>
+ */
+public class MappedSessionStore extends AbstractSessionStore {
+
+    public static final int DEFAULT_SLOT_SIZE = 512;
+    public static final int DEFAULT_INITIAL_SLOTS = 1024;
+
+    private static final int MAGIC = 0x5042534d;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 16;
+    private static final int SLOT_HEADER_SIZE = 7;
+    private static final byte SLOT_FREE = 0;
+    private static final byte SLOT_HEAD = 1;
+    private static final byte SLOT_CONTINUATION = 2;
+
+    private final File file;
+    private final int slotSize;
+    private final int slotDataSize;
+    private final int initialSlots;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int slotCount;
+    private int[] freeSlots;
+    private int freeCount;
+    private SlotIndex index;
+    private long version;
+
+    public MappedSessionStore(String fileName) {
+        this(fileName, DEFAULT_INITIAL_SLOTS, DEFAULT_SLOT_SIZE);
+    }
+
+    /**
+     * @param fileName the file where sessions are stored.
+     * @param initialSlots the number of slots of a new file. The file doubles its size when it runs out of slots.
+     * @param slotSize the size of each slot, in bytes. Ideally most sessions fit in a single slot.
+     */
+    public MappedSessionStore(String fileName, int initialSlots, int slotSize) {
+        if (fileName == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("fileName");
+        }
+
+        if (slotSize <= SLOT_HEADER_SIZE + 8 || slotSize > 0xffff) {
+            throw new IllegalArgumentException("Invalid slot size: " + slotSize);
+        }
+
+        this.file = new File(fileName);
+        this.slotSize = slotSize;
+        this.slotDataSize = slotSize - SLOT_HEADER_SIZE;
+        this.initialSlots = Math.max(1, initialSlots);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#load(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public PicketBoxSession load(SessionId<? extends Serializable> key) {
+        byte[] keyBytes = toBytes(key.getId());
+        byte[] record;
+
+        this.lock.readLock().lock();
+
+        try {
+            checkIfStarted();
+
+            int position = this.index.find(keyBytes, hash(keyBytes));
+
+            if (position < 0) {
+                return null;
+            }
+
+            record = readChain(this.buffer.duplicate(), this.index.headAt(position));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        return deserializeSession(record);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#store(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void store(PicketBoxSession session) {
+        write(session, false);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#update(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void update(PicketBoxSession session) {
+        write(session, true);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#remove(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public void remove(SessionId<? extends Serializable> id) {
+        byte[] keyBytes = toBytes(id.getId());
+
+        this.lock.writeLock().lock();
+
+        try {
+            checkIfStarted();
+
+            int position = this.index.find(keyBytes, hash(keyBytes));
+
+            if (position >= 0) {
+                int head = this.index.headAt(position);
+
+                this.index.removeAt(position);
+                freeChain(head);
+                this.principalIndex.remove(id.getId());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Returns a copy of all stored sessions. Every session is deserialized, so this is an expensive operation.
+     * </p>
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#getSessions()
+     */
+    @Override
+    public Collection<PicketBoxSession> getSessions() {
+        List<byte[]> records = new ArrayList<byte[]>();
+
+        this.lock.readLock().lock();
+
+        try {
+            checkIfStarted();
+
+            ByteBuffer view = this.buffer.duplicate();
+
+            for (int slot = 0; slot < this.slotCount; slot++) {
+                if (view.get(slotOffset(slot)) == SLOT_HEAD) {
+                    records.add(readChain(view, slot));
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        List<PicketBoxSession> result = new ArrayList<PicketBoxSession>(records.size());
+
+        for (byte[] record : records) {
+            result.add(deserializeSession(record));
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * <p>
+     * Returns an {@link Iterator} that deserializes the stored sessions one at a time, as it advances.
+     * </p>
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#iterator()
+     */
+    @Override
+    public Iterator<PicketBoxSession> iterator() {
+        return new SlotIterator();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#count()
+     */
+    @Override
+    public int count() {
+        return size();
+    }
+
+    /**
+     * @return the number of stored sessions.
+     */
+    public int size() {
+        this.lock.readLock().lock();
+
+        try {
+            return this.index != null ? this.index.size : 0;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of slots in the file.
+     */
+    public int getSlotCount() {
+        this.lock.readLock().lock();
+
+        try {
+            return this.slotCount;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of unused slots.
+     */
+    public int getFreeSlotCount() {
+        this.lock.readLock().lock();
+
+        try {
+            return this.freeCount;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doStart() {
+        this.lock.writeLock().lock();
+
+        try {
+            boolean existingFile = this.file.exists() && this.file.length() > FILE_HEADER_SIZE;
+
+            this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+            this.channel = this.randomAccessFile.getChannel();
+
+            if (existingFile) {
+                remap();
+            } else {
+                this.slotCount = this.initialSlots;
+                mapFile(fileSize(this.slotCount));
+                this.buffer.putInt(0, MAGIC);
+                this.buffer.putInt(4, VERSION);
+                this.buffer.putInt(8, this.slotSize);
+                this.buffer.putInt(12, this.slotCount);
+            }
+
+            rebuild();
+            rebuildPrincipalIndex();
+        } catch (IOException e) {
+            StreamUtil.safeClose(this.randomAccessFile);
+            throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(this.file.getPath(), e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        this.lock.writeLock().lock();
+
+        try {
+            this.buffer.force();
+            StreamUtil.safeClose(this.randomAccessFile);
+
+            this.buffer = null;
+            this.channel = null;
+            this.randomAccessFile = null;
+            this.index = null;
+            this.freeSlots = null;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+
+        super.doStop();
+    }
+
+    /**
+     * <p>
+     * Rebuilds the {@link PrincipalSessionIndex} by reading all stored sessions. Called when the store is started.
+     * </p>
+     *
+     * @see org.picketbox.core.session.AbstractSessionStore#rebuildPrincipalIndex()
+     */
+    @Override
+    protected void rebuildPrincipalIndex() {
+        this.principalIndex.clear();
+
+        ByteBuffer view = this.buffer.duplicate();
+
+        for (int position = 0; position < this.index.heads.length; position++) {
+            if (this.index.heads[position] != 0) {
+                this.principalIndex.add(deserializeSession(readChain(view, this.index.headAt(position))));
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Serializes the given session.
+     * </p>
+     *
+     * @param session
+     * @return
+     */
+    protected byte[] serializeSession(PicketBoxSession session) {
+        try {
+            return this.serializer.serialize(session);
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.file.getPath(), e);
+        }
+    }
+
+    /**
+     * <p>
+     * Deserializes a session.
+     * </p>
+     *
+     * @param bytes
+     * @return
+     */
+    protected PicketBoxSession deserializeSession(byte[] bytes) {
+        try {
+            return this.serializer.deserialize(bytes);
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToLoadFromFile(this.file.getPath(), e);
+        }
+    }
+
+    private void write(PicketBoxSession session, boolean onlyIfPresent) {
+        // records are always rewritten as a whole
+        session.drainDirtyAttributes();
+
+        byte[] keyBytes = toBytes(session.getId().getId());
+        byte[] sessionBytes = serializeSession(session);
+        int hash = hash(keyBytes);
+
+        this.lock.writeLock().lock();
+
+        try {
+            checkIfStarted();
+
+            int position = this.index.find(keyBytes, hash);
+
+            if (onlyIfPresent && position < 0) {
+                return;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(4 + keyBytes.length + 8 + 4 + sessionBytes.length);
+
+            record.putInt(keyBytes.length);
+            record.put(keyBytes);
+            record.putLong(++this.version);
+            record.putInt(sessionBytes.length);
+            record.put(sessionBytes);
+
+            // the new chain is written before the old one is released, so a crash leaves at least one of them
+            int head = writeChain(record.array());
+
+            if (position >= 0) {
+                int previousHead = this.index.headAt(position);
+
+                this.index.setHeadAt(position, head);
+                freeChain(previousHead);
+            } else {
+                this.index.insert(hash, head);
+            }
+
+            this.principalIndex.add(session);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the given record to a chain of free slots. The head slot is marked as used only after all the other slots were
+     * written.
+     * </p>
+     *
+     * @param record
+     * @return the head slot.
+     */
+    private int writeChain(byte[] record) {
+        int slotsNeeded = Math.max(1, (record.length + this.slotDataSize - 1) / this.slotDataSize);
+
+        while (this.freeCount < slotsNeeded) {
+            grow();
+        }
+
+        int[] slots = new int[slotsNeeded];
+
+        for (int i = 0; i < slotsNeeded; i++) {
+            slots[i] = this.freeSlots[--this.freeCount];
+        }
+
+        for (int i = slotsNeeded - 1; i >= 0; i--) {
+            int offset = slotOffset(slots[i]);
+            int start = i * this.slotDataSize;
+            int length = Math.min(this.slotDataSize, record.length - start);
+
+            this.buffer.putInt(offset + 1, i + 1 < slotsNeeded ? slots[i + 1] : -1);
+            this.buffer.putShort(offset + 5, (short) length);
+
+            ByteBuffer data = this.buffer.duplicate();
+
+            data.position(offset + SLOT_HEADER_SIZE);
+            data.put(record, start, length);
+
+            this.buffer.put(offset, i == 0 ? SLOT_HEAD : SLOT_CONTINUATION);
+        }
+
+        return slots[0];
+    }
+
+    private void freeChain(int head) {
+        int slot = head;
+
+        while (slot >= 0) {
+            int offset = slotOffset(slot);
+            int next = this.buffer.getInt(offset + 1);
+
+            this.buffer.put(offset, SLOT_FREE);
+            this.freeSlots[this.freeCount++] = slot;
+
+            slot = next;
+        }
+    }
+
+    private byte[] readChain(ByteBuffer view, int head) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.slotDataSize);
+        byte[] data = new byte[this.slotDataSize];
+        int slot = head;
+
+        while (slot >= 0) {
+            int offset = slotOffset(slot);
+            int length = view.getShort(offset + 5) & 0xffff;
+
+            view.position(offset + SLOT_HEADER_SIZE);
+            view.get(data, 0, length);
+            bytes.write(data, 0, length);
+
+            slot = view.getInt(offset + 1);
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+
+        record.position(4 + record.getInt(0) + 8);
+
+        byte[] session = new byte[record.getInt()];
+
+        record.get(session);
+
+        return session;
+    }
+
+    /**
+     * <p>
+     * Reads the key and version from a head slot. Returns null if the chain is not valid.
+     * </p>
+     */
+    private KeyAndVersion readKey(ByteBuffer view, int head, BitSet visited) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.slotDataSize);
+        byte[] data = new byte[this.slotDataSize];
+        int slot = head;
+
+        while (slot >= 0) {
+            if (slot >= this.slotCount || visited.get(slot)) {
+                return null;
+            }
+
+            int offset = slotOffset(slot);
+
+            if (view.get(offset) != (slot == head ? SLOT_HEAD : SLOT_CONTINUATION)) {
+                return null;
+            }
+
+            int length = view.getShort(offset + 5) & 0xffff;
+
+            if (length > this.slotDataSize) {
+                return null;
+            }
+
+            visited.set(slot);
+
+            // only the beginning of the record is needed
+            if (bytes.size() < this.slotDataSize * 2) {
+                view.position(offset + SLOT_HEADER_SIZE);
+                view.get(data, 0, length);
+                bytes.write(data, 0, length);
+            }
+
+            slot = view.getInt(offset + 1);
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+
+        if (record.remaining() < 4) {
+            return null;
+        }
+
+        int keyLength = record.getInt();
+
+        if (keyLength < 0 || record.remaining() < keyLength + 8) {
+            return null;
+        }
+
+        byte[] key = new byte[keyLength];
+
+        record.get(key);
+
+        return new KeyAndVersion(key, record.getLong());
+    }
+
+    private boolean keyEquals(int head, byte[] key) {
+        ByteBuffer view = this.buffer.duplicate();
+        int offset = slotOffset(head);
+        int keyLength = view.getInt(offset + SLOT_HEADER_SIZE);
+
+        if (keyLength != key.length) {
+            return false;
+        }
+
+        if (4 + keyLength <= this.slotDataSize) {
+            for (int i = 0; i < keyLength; i++) {
+                if (view.get(offset + SLOT_HEADER_SIZE + 4 + i) != key[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        KeyAndVersion stored = readKey(view, head, new BitSet());
+
+        return stored != null && Arrays.equals(stored.key, key);
+    }
+
+    /**
+     * <p>
+     * Rebuilds the index and the free list by scanning all slots. For duplicated keys the most recent version wins. Slots
+     * that are not reachable from a valid head slot are released.
+     * </p>
+     */
+    private void rebuild() {
+        ByteBuffer view = this.buffer.duplicate();
+        BitSet used = new BitSet(this.slotCount);
+
+        this.index = new SlotIndex(16);
+        this.version = 0;
+
+        List<Integer> heads = new ArrayList<Integer>();
+        List<KeyAndVersion> keys = new ArrayList<KeyAndVersion>();
+
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            if (view.get(slotOffset(slot)) == SLOT_HEAD) {
+                BitSet chain = new BitSet();
+                KeyAndVersion key = readKey(view, slot, chain);
+
+                if (key != null) {
+                    heads.add(slot);
+                    keys.add(key);
+                }
+            }
+        }
+
+        for (int i = 0; i < heads.size(); i++) {
+            KeyAndVersion key = keys.get(i);
+            int hash = hash(key.key);
+            int position = this.index.find(key.key, hash);
+
+            this.version = Math.max(this.version, key.version);
+
+            if (position < 0) {
+                this.index.insert(hash, heads.get(i));
+            } else if (readKey(view, this.index.headAt(position), new BitSet()).version < key.version) {
+                this.index.setHeadAt(position, heads.get(i));
+            }
+        }
+
+        for (int position = 0; position < this.index.heads.length; position++) {
+            if (this.index.heads[position] != 0) {
+                readKey(view, this.index.headAt(position), used);
+            }
+        }
+
+        this.freeSlots = new int[this.slotCount];
+        this.freeCount = 0;
+
+        for (int slot = this.slotCount - 1; slot >= 0; slot--) {
+            if (!used.get(slot)) {
+                if (view.get(slotOffset(slot)) != SLOT_FREE) {
+                    this.buffer.put(slotOffset(slot), SLOT_FREE);
+                }
+
+                this.freeSlots[this.freeCount++] = slot;
+            }
+        }
+    }
+
+    private void grow() {
+        long newSlotCount = (long) this.slotCount * 2;
+
+        if (fileSize(newSlotCount) > Integer.MAX_VALUE) {
+            newSlotCount = (Integer.MAX_VALUE - FILE_HEADER_SIZE) / this.slotSize;
+        }
+
+        if (newSlotCount <= this.slotCount) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.file.getPath(), null);
+        }
+
+        try {
+            this.buffer.force();
+            mapFile(fileSize(newSlotCount));
+        } catch (IOException e) {
+            throw PicketBoxMessages.MESSAGES.unableToStoreToFile(this.file.getPath(), e);
+        }
+
+        int previousSlotCount = this.slotCount;
+
+        this.slotCount = (int) newSlotCount;
+        this.buffer.putInt(12, this.slotCount);
+
+        int[] newFreeSlots = new int[this.slotCount];
+
+        System.arraycopy(this.freeSlots, 0, newFreeSlots, 0, this.freeCount);
+
+        this.freeSlots = newFreeSlots;
+
+        for (int slot = this.slotCount - 1; slot >= previousSlotCount; slot--) {
+            this.freeSlots[this.freeCount++] = slot;
+        }
+    }
+
+    private void remap() throws IOException {
+        mapFile(this.channel.size());
+
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid session file: " + this.file.getPath());
+        }
+
+        if (this.buffer.getInt(8) != this.slotSize) {
+            throw new IOException("Session file uses a different slot size: " + this.buffer.getInt(8));
+        }
+
+        this.slotCount = this.buffer.getInt(12);
+
+        if (fileSize(this.slotCount) > this.channel.size()) {
+            throw new IOException("Truncated session file: " + this.file.getPath());
+        }
+    }
+
+    private void mapFile(long size) throws IOException {
+        if (this.randomAccessFile.length() < size) {
+            this.randomAccessFile.setLength(size);
+        }
+
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private long fileSize(long slots) {
+        return FILE_HEADER_SIZE + slots * this.slotSize;
+    }
+
+    private int slotOffset(int slot) {
+        return FILE_HEADER_SIZE + slot * this.slotSize;
+    }
+
+    private static byte[] toBytes(Serializable id) {
+        if (id instanceof SecureSessionId) {
+            return ((SecureSessionId) id).getBytes();
+        }
+
+        if (id instanceof String) {
+            try {
+                return ((String) id).getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = null;
+
+        try {
+            output = new ObjectOutputStream(bytes);
+            output.writeObject(id);
+            output.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            StreamUtil.safeClose(output);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static int hash(byte[] key) {
+        int hash = Arrays.hashCode(key);
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * <p>
+     * Iterates over the head slots, reading and deserializing one session at a time. The lock is only held while a record is
+     * read, so writers are not blocked by slow consumers.
+     * </p>
+     */
+    private final class SlotIterator implements Iterator<PicketBoxSession> {
+
+        private int nextSlot;
+        private PicketBoxSession next;
+
+        @Override
+        public boolean hasNext() {
+            if (this.next == null) {
+                this.next = advance();
+            }
+
+            return this.next != null;
+        }
+
+        @Override
+        public PicketBoxSession next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            PicketBoxSession session = this.next;
+
+            this.next = null;
+
+            return session;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private PicketBoxSession advance() {
+            byte[] record = null;
+
+            lock.readLock().lock();
+
+            try {
+                // the store was stopped
+                if (buffer == null) {
+                    return null;
+                }
+
+                ByteBuffer view = buffer.duplicate();
+
+                while (record == null && this.nextSlot < slotCount) {
+                    int slot = this.nextSlot++;
+
+                    if (view.get(slotOffset(slot)) == SLOT_HEAD) {
+                        record = readChain(view, slot);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            return record != null ? deserializeSession(record) : null;
+        }
+    }
+
+    private static final class KeyAndVersion {
+
+        private final byte[] key;
+        private final long version;
+
+        KeyAndVersion(byte[] key, long version) {
+            this.key = key;
+            this.version = version;
+        }
+    }
+
+    /**
+     * <p>
+     * Open-addressing hash table, with linear probing, mapping key hashes to head slots. Keys are not stored in the table,
+     * they are compared against the bytes in the head slot.
+     * </p>
+     */
+    private final class SlotIndex {
+
+        // head slot + 1, zero means empty
+        private int[] heads;
+        private int[] hashes;
+        private int mask;
+        private int size;
+
+        SlotIndex(int capacity) {
+            int normalized = 16;
+
+            while (normalized < capacity) {
+                normalized <<= 1;
+            }
+
+            this.heads = new int[normalized];
+            this.hashes = new int[normalized];
+            this.mask = normalized - 1;
+        }
+
+        int find(byte[] key, int hash) {
+            int position = hash & this.mask;
+
+            while (this.heads[position] != 0) {
+                if (this.hashes[position] == hash && keyEquals(this.heads[position] - 1, key)) {
+                    return position;
+                }
+
+                position = (position + 1) & this.mask;
+            }
+
+            return -1;
+        }
+
+        int headAt(int position) {
+            return this.heads[position] - 1;
+        }
+
+        void setHeadAt(int position, int head) {
+            this.heads[position] = head + 1;
+        }
+
+        void insert(int hash, int head) {
+            if ((this.size + 1) * 2 > this.heads.length) {
+                resize();
+            }
+
+            int position = hash & this.mask;
+
+            while (this.heads[position] != 0) {
+                position = (position + 1) & this.mask;
+            }
+
+            this.heads[position] = head + 1;
+            this.hashes[position] = hash;
+            this.size++;
+        }
+
+        /**
+         * Removes the entry at the given position, shifting back the following entries of the probe sequence so no
+         * tombstones are needed.
+         */
+        void removeAt(int position) {
+            int empty = position;
+            int current = position;
+
+            while (true) {
+                current = (current + 1) & this.mask;
+
+                if (this.heads[current] == 0) {
+                    break;
+                }
+
+                int ideal = this.hashes[current] & this.mask;
+
+                // moves the entry back if its ideal position is not between the empty slot and its current position
+                if (((current - ideal) & this.mask) >= ((current - empty) & this.mask)) {
+                    this.heads[empty] = this.heads[current];
+                    this.hashes[empty] = this.hashes[current];
+                    empty = current;
+                }
+            }
+
+            this.heads[empty] = 0;
+            this.hashes[empty] = 0;
+            this.size--;
+        }
+
+        private void resize() {
+            int[] oldHeads = this.heads;
+            int[] oldHashes = this.hashes;
+
+            this.heads = new int[oldHeads.length * 2];
+            this.hashes = new int[oldHeads.length * 2];
+            this.mask = this.heads.length - 1;
+            this.size = 0;
+
+            for (int i = 0; i < oldHeads.length; i++) {
+                if (oldHeads[i] != 0) {
+                    insert(oldHashes[i], oldHeads[i] - 1);
+                }
+            }
+        }
+    }
+}
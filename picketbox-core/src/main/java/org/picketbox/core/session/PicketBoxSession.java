@@ -21,9 +21,14 @@
  */
 package org.picketbox.core.session;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -31,8 +36,12 @@ import org.picketbox.core.PicketBoxMessages;
 import org.picketbox.core.UserContext;
 import org.picketbox.core.event.PicketBoxEventManager;
 import org.picketbox.core.exceptions.PicketBoxSessionException;
+import org.picketbox.core.session.event.SessionAttributeGetEvent;
+import org.picketbox.core.session.event.SessionAttributeRemovedEvent;
+import org.picketbox.core.session.event.SessionAttributeSetEvent;
 import org.picketbox.core.session.event.SessionEvent;
-import org.picketbox.core.session.event.SessionEventHandler;
+import org.picketbox.core.session.event.SessionExpiredEvent;
+import org.picketbox.core.session.event.SessionInvalidatedEvent;
 
 /**
  * A session that is capable of storing attributes
@@ -48,12 +57,27 @@ public class PicketBoxSession implements Serializable {
 
     protected SessionId<? extends Serializable> id;
 
-    protected boolean invalid = false;
+    protected volatile boolean invalid = false;
 
     protected UserContext subject;
 
+    protected long creationTime = System.currentTimeMillis();
+
+    protected volatile long lastAccessedTime = this.creationTime;
+
     private transient PicketBoxEventManager eventManager;
 
+    private transient long touchGranularity;
+
+    private transient Set<String> dirtyAttributes = newDirtyAttributes();
+
+    private transient SessionAttributeGetEvent lastGetEvent;
+
+    private transient SessionExpirationManager expirationManager;
+
+    // set when the last accessed time moves, so it is written back to the store with the next update
+    private transient volatile boolean accessed;
+
     public PicketBoxSession() {
         this(new DefaultSessionId());
     }
@@ -63,6 +87,23 @@ public class PicketBoxSession implements Serializable {
         this.subject = subject;
     }
 
+    /**
+     * <p>
+     * Creates a session restoring its creation and last accessed times. Used by {@link SessionSerializer} implementations.
+     * </p>
+     *
+     * @param subject
+     * @param id
+     * @param creationTime
+     * @param lastAccessedTime
+     */
+    public PicketBoxSession(UserContext subject, SessionId<? extends Serializable> id, long creationTime,
+            long lastAccessedTime) {
+        this(subject, id);
+        this.creationTime = creationTime;
+        this.lastAccessedTime = lastAccessedTime;
+    }
+
     /**
      * Usable by {@link PicketBoxSessionManager#create()}
      */
@@ -80,6 +121,7 @@ public class PicketBoxSession implements Serializable {
     }
 
     /**
+     * Remove an attribute. Raises a {@link SessionAttributeRemovedEvent}, so the removal is written to the store.
      *
      * @param key
      * @throws PicketBoxSessionException
@@ -87,6 +129,11 @@ public class PicketBoxSession implements Serializable {
     public void removeAttribute(String key) throws PicketBoxSessionException {
         checkIfIsInvalid();
         attributes.remove(key);
+        this.dirtyAttributes.add(key);
+
+        if (hasHandlers(SessionAttributeRemovedEvent.class)) {
+            raiseEvent(new SessionAttributeRemovedEvent(this, key));
+        }
     }
 
     /**
@@ -96,17 +143,16 @@ public class PicketBoxSession implements Serializable {
      * @param val
      * @throws PicketBoxSessionException
      */
-    public void setAttribute(final String key, final Object val) throws PicketBoxSessionException {
+    public void setAttribute(String key, Object val) throws PicketBoxSessionException {
         checkIfIsInvalid();
+        touch();
 
         attributes.put(key, val);
+        this.dirtyAttributes.add(key);
 
-        this.eventManager.raiseEvent(new SessionEvent(this) {
-            @Override
-            public void dispatch(SessionEventHandler handler) {
-                handler.onSetAttribute(this, key, val);
-            }
-        });
+        if (hasHandlers(SessionAttributeSetEvent.class)) {
+            raiseEvent(new SessionAttributeSetEvent(this, key, val));
+        }
     }
 
     /**
@@ -127,19 +173,84 @@ public class PicketBoxSession implements Serializable {
      * @return
      * @throws PicketBoxSessionException
      */
-    public Object getAttribute(final String key) throws PicketBoxSessionException {
+    public Object getAttribute(String key) throws PicketBoxSessionException {
         checkIfIsInvalid();
+        touch();
 
-        this.eventManager.raiseEvent(new SessionEvent(this) {
-            @Override
-            public void dispatch(SessionEventHandler handler) {
-                handler.onGetAttribute(this, key);
-            }
-        });
+        if (hasHandlers(SessionAttributeGetEvent.class)) {
+            raiseEvent(getAttributeEvent(key));
+        }
 
         return attributes.get(key);
     }
 
+    /**
+     * <p>
+     * Checks if any attribute was set or removed, or the last accessed time moved, since the last time this session was
+     * written to its store.
+     * </p>
+     *
+     * @return
+     */
+    public boolean isDirty() {
+        return this.accessed || !this.dirtyAttributes.isEmpty();
+    }
+
+    /**
+     * <p>
+     * Returns the names of the attributes set or removed since the last call to this method and marks them as clean. Used
+     * by stores to write only the changed attributes. Attributes changed while this method is running remain dirty.
+     * </p>
+     *
+     * @return
+     */
+    public Set<String> drainDirtyAttributes() {
+        this.accessed = false;
+
+        Set<String> drained = new HashSet<String>();
+        Iterator<String> iterator = this.dirtyAttributes.iterator();
+
+        while (iterator.hasNext()) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+
+        return drained;
+    }
+
+    /**
+     * <p>
+     * Marks the given attributes as dirty again, when writing the changes returned by {@link #drainDirtyAttributes()} failed.
+     * </p>
+     *
+     * @param attributeNames
+     */
+    void restoreDirtyAttributes(Set<String> attributeNames) {
+        this.accessed = true;
+        this.dirtyAttributes.addAll(attributeNames);
+    }
+
+    /**
+     * <p>
+     * Updates an attribute with the value read from the store, without raising events. Attributes changed locally and not
+     * yet written to the store are kept.
+     * </p>
+     *
+     * @param key
+     * @param value the stored value, or null if the attribute is not stored.
+     */
+    void refreshAttribute(String key, Object value) {
+        if (this.dirtyAttributes.contains(key)) {
+            return;
+        }
+
+        if (value == null) {
+            this.attributes.remove(key);
+        } else {
+            this.attributes.put(key, value);
+        }
+    }
+
     /**
      * Is the session valid?
      *
@@ -168,13 +279,8 @@ public class PicketBoxSession implements Serializable {
      */
     public void invalidate(boolean raiseEvent) throws PicketBoxSessionException {
         checkIfIsInvalid();
-        if (raiseEvent) {
-            this.eventManager.raiseEvent(new SessionEvent(this) {
-                @Override
-                public void dispatch(SessionEventHandler handler) {
-                    handler.onInvalidate(this);
-                }
-            });
+        if (raiseEvent && hasHandlers(SessionInvalidatedEvent.class)) {
+            raiseEvent(new SessionInvalidatedEvent(this));
         }
         this.attributes.clear();
         this.invalid = true;
@@ -190,12 +296,46 @@ public class PicketBoxSession implements Serializable {
      */
     public void expire() throws PicketBoxSessionException {
         invalidate();
-        this.eventManager.raiseEvent(new SessionEvent(this) {
-            @Override
-            public void dispatch(SessionEventHandler handler) {
-                handler.onExpiration(this);
+
+        if (hasHandlers(SessionExpiredEvent.class)) {
+            raiseEvent(new SessionExpiredEvent(this));
+        }
+    }
+
+    /**
+     * <p>
+     * Records an access to this session. Accesses inside the touch granularity window of the last recorded one are coalesced,
+     * so the last accessed time moves forward at most once per window.
+     * </p>
+     */
+    public void touch() {
+        long now = System.currentTimeMillis();
+
+        if (now - this.lastAccessedTime >= this.touchGranularity) {
+            this.lastAccessedTime = now;
+            this.accessed = true;
+
+            // other copies of this session may be the ones scheduled for expiration
+            SessionExpirationManager expirationManager = this.expirationManager;
+
+            if (expirationManager != null && this.id != null && this.id.getId() != null) {
+                expirationManager.touch(this.id.getId(), now);
             }
-        });
+        }
+    }
+
+    /**
+     * @return the time, in milliseconds, when this session was created.
+     */
+    public long getCreationTime() {
+        return this.creationTime;
+    }
+
+    /**
+     * @return the time, in milliseconds, of the last recorded access to this session.
+     */
+    public long getLastAccessedTime() {
+        return this.lastAccessedTime;
     }
 
     /**
@@ -217,8 +357,73 @@ public class PicketBoxSession implements Serializable {
             throw PicketBoxMessages.MESSAGES.invalidatedSession();
     }
 
+    /**
+     * <p>
+     * Checks if this session is attached to a {@link PicketBoxEventManager} with handlers for the given event type. Events
+     * are only created when this method returns true.
+     * </p>
+     *
+     * @param eventType
+     * @return
+     */
+    private boolean hasHandlers(Class<? extends SessionEvent> eventType) {
+        PicketBoxEventManager eventManager = this.eventManager;
+
+        return eventManager != null && eventManager.hasHandlers(eventType);
+    }
+
+    /**
+     * <p>
+     * Returns the event for a read of the given attribute. Events are immutable, so the last one is reused while the same
+     * attribute is read repeatedly.
+     * </p>
+     *
+     * @param key
+     * @return
+     */
+    private SessionAttributeGetEvent getAttributeEvent(String key) {
+        SessionAttributeGetEvent event = this.lastGetEvent;
+
+        if (event == null || !key.equals(event.getKey())) {
+            event = new SessionAttributeGetEvent(this, key);
+            this.lastGetEvent = event;
+        }
+
+        return event;
+    }
+
+    /**
+     * <p>
+     * Raises the given event if this session is attached to a {@link PicketBoxEventManager}.
+     * </p>
+     *
+     * @param event
+     */
+    private void raiseEvent(SessionEvent event) {
+        if (this.eventManager != null) {
+            this.eventManager.raiseEvent(event);
+        }
+    }
+
     protected void setEventManager(PicketBoxEventManager eventManager) {
         this.eventManager = eventManager;
     }
 
+    protected void setTouchGranularity(long touchGranularity) {
+        this.touchGranularity = touchGranularity;
+    }
+
+    void setExpirationManager(SessionExpirationManager expirationManager) {
+        this.expirationManager = expirationManager;
+    }
+
+    private static Set<String> newDirtyAttributes() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.dirtyAttributes = newDirtyAttributes();
+    }
+
 }
\ No newline at end of file
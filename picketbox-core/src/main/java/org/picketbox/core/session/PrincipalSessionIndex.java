@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationResult;
+
+/**
+ * <p>
+ * A secondary index from principal names to the identifiers of their sessions. It is maintained by the {@link SessionStore}
+ * implementations, so sessions can be looked up by principal in time proportional to the number of sessions of that
+ * principal instead of scanning the whole store.
+ * </p>
+ * <p>
+ * Sessions without an authenticated principal are not indexed. This class is thread-safe.
+ * </p>
+ */
+public class PrincipalSessionIndex {
+
+    private final ConcurrentMap<String, Map<Serializable, SessionId<? extends Serializable>>> sessionsByPrincipal =
+            new ConcurrentHashMap<String, Map<Serializable, SessionId<? extends Serializable>>>();
+
+    // both maps are only changed while holding the lock of the principal's sessions
+    private final ConcurrentMap<Serializable, String> principalsByKey = new ConcurrentHashMap<Serializable, String>();
+
+    /**
+     * <p>
+     * Indexes the given session by its principal. Sessions already indexed under another principal are moved.
+     * </p>
+     *
+     * @param session
+     */
+    public void add(PicketBoxSession session) {
+        SessionId<? extends Serializable> id = session.getId();
+        Serializable key = id.getId();
+        String principalName = getPrincipalName(session);
+        String currentPrincipalName = this.principalsByKey.get(key);
+
+        if (currentPrincipalName != null && !currentPrincipalName.equals(principalName)) {
+            remove(key);
+        }
+
+        if (principalName == null) {
+            return;
+        }
+
+        for (;;) {
+            Map<Serializable, SessionId<? extends Serializable>> ids = this.sessionsByPrincipal.get(principalName);
+
+            if (ids == null) {
+                ids = new LinkedHashMap<Serializable, SessionId<? extends Serializable>>(4);
+
+                Map<Serializable, SessionId<? extends Serializable>> existing = this.sessionsByPrincipal.putIfAbsent(
+                        principalName, ids);
+
+                if (existing != null) {
+                    ids = existing;
+                }
+            }
+
+            synchronized (ids) {
+                // the map may have been discarded after becoming empty
+                if (this.sessionsByPrincipal.get(principalName) != ids) {
+                    continue;
+                }
+
+                ids.put(key, id);
+                this.principalsByKey.put(key, principalName);
+            }
+
+            return;
+        }
+    }
+
+    /**
+     * <p>
+     * Removes the session with the given key, the value returned by {@link SessionId#getId()}, from the index.
+     * </p>
+     *
+     * @param key
+     */
+    public void remove(Serializable key) {
+        String principalName = this.principalsByKey.get(key);
+
+        if (principalName == null) {
+            return;
+        }
+
+        Map<Serializable, SessionId<? extends Serializable>> ids = this.sessionsByPrincipal.get(principalName);
+
+        if (ids == null) {
+            return;
+        }
+
+        synchronized (ids) {
+            if (this.principalsByKey.remove(key, principalName)) {
+                ids.remove(key);
+            }
+
+            if (ids.isEmpty()) {
+                this.sessionsByPrincipal.remove(principalName, ids);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Returns a copy of the identifiers of the sessions of the given principal, in the order they were first indexed.
+     * </p>
+     *
+     * @param principalName
+     * @return
+     */
+    public List<SessionId<? extends Serializable>> get(String principalName) {
+        if (principalName == null) {
+            return Collections.emptyList();
+        }
+
+        Map<Serializable, SessionId<? extends Serializable>> ids = this.sessionsByPrincipal.get(principalName);
+
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+
+        synchronized (ids) {
+            return new ArrayList<SessionId<? extends Serializable>>(ids.values());
+        }
+    }
+
+    /**
+     * @return the number of principals with at least one session.
+     */
+    public int getPrincipalCount() {
+        return this.sessionsByPrincipal.size();
+    }
+
+    public void clear() {
+        this.sessionsByPrincipal.clear();
+        this.principalsByKey.clear();
+    }
+
+    /**
+     * <p>
+     * Returns the name of the principal authenticated in the given session, or null if there is none.
+     * </p>
+     *
+     * @param session
+     * @return
+     */
+    public static String getPrincipalName(PicketBoxSession session) {
+        UserContext userContext = session.getUserContext();
+
+        if (userContext == null) {
+            return null;
+        }
+
+        AuthenticationResult result = userContext.getAuthenticationResult();
+
+        if (result == null || result.getPrincipal() == null) {
+            return null;
+        }
+
+        return result.getPrincipal().getName();
+    }
+}
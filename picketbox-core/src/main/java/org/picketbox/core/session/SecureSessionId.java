@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.util.Arrays;
+
+import org.picketbox.core.PicketBoxMessages;
+
+/**
+ * <p>
+ * A {@link SessionId} made of random bytes, usually created by a {@link SecureSessionIdGenerator}.
+ * </p>
+ * <p>
+ * Instances are their own identifier, so they can be used directly as keys by the stores: the hash code is computed only
+ * once and equality compares the raw bytes. The {@link String} representation is the URL-safe Base64 encoding of the bytes,
+ * without padding, and can be converted back using {@link #fromString(String)}.
+ * </p>
+ */
+public final class SecureSessionId implements SessionId<SecureSessionId> {
+
+    private static final long serialVersionUID = 4153087366127513446L;
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int[] DECODING = new int[128];
+
+    static {
+        Arrays.fill(DECODING, -1);
+
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODING[ALPHABET[i]] = i;
+        }
+    }
+
+    private final byte[] bytes;
+
+    private transient int hashCode;
+
+    /**
+     * @param bytes the identifier bytes. The array is copied.
+     */
+    public SecureSessionId(byte[] bytes) {
+        this(bytes, true);
+    }
+
+    private SecureSessionId(byte[] bytes, boolean copy) {
+        if (bytes == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("bytes");
+        }
+
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Session identifiers can not be empty.");
+        }
+
+        this.bytes = copy ? bytes.clone() : bytes;
+    }
+
+    /**
+     * <p>
+     * Creates an instance without copying the given array. The caller must not change it afterwards.
+     * </p>
+     *
+     * @param bytes
+     * @return
+     */
+    static SecureSessionId wrap(byte[] bytes) {
+        return new SecureSessionId(bytes, false);
+    }
+
+    /**
+     * <p>
+     * Restores an instance from the value returned by {@link #toString()}.
+     * </p>
+     *
+     * @param value
+     * @return
+     * @throws IllegalArgumentException if the value is not a valid URL-safe Base64 string, or is not the canonical encoding
+     *         of its bytes.
+     */
+    public static SecureSessionId fromString(String value) {
+        if (value == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("value");
+        }
+
+        int length = value.length();
+
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("Invalid session identifier: " + value);
+        }
+
+        byte[] bytes = new byte[length * 3 / 4];
+        int position = 0;
+        int buffer = 0;
+        int bits = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            int digit = c < DECODING.length ? DECODING[c] : -1;
+
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid session identifier: " + value);
+            }
+
+            buffer = (buffer << 6) | digit;
+            bits += 6;
+
+            if (bits >= 8) {
+                bits -= 8;
+                bytes[position++] = (byte) (buffer >> bits);
+            }
+        }
+
+        // the unused bits of the last character must be zero, otherwise several strings would decode to the same bytes
+        if ((buffer & ((1 << bits) - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid session identifier: " + value);
+        }
+
+        return wrap(bytes);
+    }
+
+    /**
+     * <p>
+     * Returns this instance, which is used as the key of the session.
+     * </p>
+     *
+     * @see org.picketbox.core.session.SessionId#getId()
+     */
+    @Override
+    public SecureSessionId getId() {
+        return this;
+    }
+
+    /**
+     * @return a copy of the identifier bytes.
+     */
+    public byte[] getBytes() {
+        return this.bytes.clone();
+    }
+
+    /**
+     * @return the number of identifier bytes.
+     */
+    public int length() {
+        return this.bytes.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof SecureSessionId)) {
+            return false;
+        }
+
+        SecureSessionId other = (SecureSessionId) obj;
+
+        return hashCode() == other.hashCode() && Arrays.equals(this.bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.hashCode;
+
+        if (hash == 0) {
+            hash = Arrays.hashCode(this.bytes);
+
+            if (hash == 0) {
+                hash = 1;
+            }
+
+            this.hashCode = hash;
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return the URL-safe Base64 encoding of the identifier bytes, without padding.
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[(this.bytes.length * 8 + 5) / 6];
+        int position = 0;
+        int buffer = 0;
+        int bits = 0;
+
+        for (byte b : this.bytes) {
+            buffer = (buffer << 8) | (b & 0xFF);
+            bits += 8;
+
+            while (bits >= 6) {
+                bits -= 6;
+                chars[position++] = ALPHABET[(buffer >> bits) & 0x3F];
+            }
+        }
+
+        if (bits > 0) {
+            chars[position++] = ALPHABET[(buffer << (6 - bits)) & 0x3F];
+        }
+
+        return new String(chars, 0, position);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * <p>
+ * Default {@link SessionIdGenerator}. Generates {@link SecureSessionId} instances with 128 random bits by default.
+ * </p>
+ * <p>
+ * Each thread has its own {@link SecureRandom}, seeded independently, and a buffer of random bytes that is refilled in bulk,
+ * so generating an identifier does not contend with other threads and usually just copies bytes from the buffer.
+ * </p>
+ */
+public class SecureSessionIdGenerator implements SessionIdGenerator {
+
+    public static final int DEFAULT_ID_LENGTH = 16;
+    public static final int MINIMUM_ID_LENGTH = 16;
+    public static final String DEFAULT_ALGORITHM = "SHA1PRNG";
+
+    private static final int IDS_PER_REFILL = 64;
+
+    private final int idLength;
+    private final String algorithm;
+
+    private final ThreadLocal<RandomBuffer> buffers = new ThreadLocal<RandomBuffer>() {
+        @Override
+        protected RandomBuffer initialValue() {
+            return new RandomBuffer(createRandom(), idLength * IDS_PER_REFILL);
+        }
+    };
+
+    public SecureSessionIdGenerator() {
+        this(DEFAULT_ID_LENGTH, DEFAULT_ALGORITHM);
+    }
+
+    /**
+     * @param idLength the number of random bytes of each identifier. Must be at least {@link #MINIMUM_ID_LENGTH}.
+     * @param algorithm the {@link SecureRandom} algorithm. If not available the platform default is used.
+     */
+    public SecureSessionIdGenerator(int idLength, String algorithm) {
+        if (idLength < MINIMUM_ID_LENGTH) {
+            throw new IllegalArgumentException("Session identifiers must have at least " + MINIMUM_ID_LENGTH + " bytes: "
+                    + idLength);
+        }
+
+        this.idLength = idLength;
+        this.algorithm = algorithm;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionIdGenerator#generate()
+     */
+    @Override
+    public SecureSessionId generate() {
+        return SecureSessionId.wrap(this.buffers.get().next(this.idLength));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionIdGenerator#parse(java.lang.String)
+     */
+    @Override
+    public SecureSessionId parse(String value) {
+        return SecureSessionId.fromString(value);
+    }
+
+    public int getIdLength() {
+        return this.idLength;
+    }
+
+    private SecureRandom createRandom() {
+        SecureRandom random;
+
+        try {
+            random = this.algorithm != null ? SecureRandom.getInstance(this.algorithm) : new SecureRandom();
+        } catch (NoSuchAlgorithmException e) {
+            random = new SecureRandom();
+        }
+
+        // forces the seeding now, using the platform seed source
+        random.nextBytes(new byte[1]);
+
+        return random;
+    }
+
+    /**
+     * <p>
+     * Random bytes owned by a single thread.
+     * </p>
+     */
+    private static final class RandomBuffer {
+
+        private final SecureRandom random;
+        private final byte[] buffer;
+        private int position;
+
+        RandomBuffer(SecureRandom random, int size) {
+            this.random = random;
+            this.buffer = new byte[size];
+            this.position = size;
+        }
+
+        byte[] next(int length) {
+            if (this.position + length > this.buffer.length) {
+                this.random.nextBytes(this.buffer);
+                this.position = 0;
+            }
+
+            byte[] bytes = new byte[length];
+
+            System.arraycopy(this.buffer, this.position, bytes, 0, length);
+
+            // used bytes are not kept in memory
+            for (int i = this.position; i < this.position + length; i++) {
+                this.buffer[i] = 0;
+            }
+
+            this.position += length;
+
+            return bytes;
+        }
+    }
+}
@@ -21,9 +21,14 @@
  */
 package org.picketbox.core.session;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationResult;
+
 /**
  * Privileged Blocks
  *
@@ -32,6 +37,8 @@ import java.security.PrivilegedAction;
  */
 class SecurityActions {
 
+    private static volatile Constructor<UserContext> userContextConstructor;
+
     static ClassLoader getClassLoader(final Class<?> theClass) {
         if (System.getSecurityManager() == null) {
             return theClass.getClassLoader();
@@ -99,6 +106,55 @@ class SecurityActions {
         });
     }
 
+    /**
+     * Creates a {@link UserContext} for a previous authentication with its package private constructor, which is not part of
+     * the public API.
+     *
+     * @param authenticationResult
+     * @return
+     */
+    static UserContext newUserContext(AuthenticationResult authenticationResult) {
+        Constructor<UserContext> constructor = userContextConstructor;
+
+        if (constructor == null) {
+            constructor = getUserContextConstructor();
+            userContextConstructor = constructor;
+        }
+
+        try {
+            return constructor.newInstance(authenticationResult);
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static Constructor<UserContext> getUserContextConstructor() {
+        if (System.getSecurityManager() == null) {
+            return doGetUserContextConstructor();
+        }
+        return AccessController.doPrivileged(new PrivilegedAction<Constructor<UserContext>>() {
+            public Constructor<UserContext> run() {
+                return doGetUserContextConstructor();
+            }
+        });
+    }
+
+    private static Constructor<UserContext> doGetUserContextConstructor() {
+        try {
+            Constructor<UserContext> constructor = UserContext.class.getDeclaredConstructor(AuthenticationResult.class);
+
+            constructor.setAccessible(true);
+
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Get the system property
      *
@@ -21,49 +21,223 @@
  */
 package org.picketbox.core.session;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxLogger;
 import org.picketbox.core.config.PicketBoxConfiguration;
+import org.picketbox.core.config.SessionManagerConfig;
 import org.picketbox.core.exceptions.PicketBoxSessionException;
+import org.picketbox.core.session.SessionExpirationScheduler.Expiration;
 
 /**
- * A manager capable of creating PicketBox sessions
+ * A manager capable of expiring PicketBox sessions. Each manager owns its {@link SessionExpirationScheduler}, which is
+ * started and stopped together with the manager.
+ * <p>
+ * The last access of each scheduled session is tracked by the manager itself, since stores may return a different copy of
+ * the session on every load. Copies prepared by the {@link DefaultSessionManager} report their accesses to the manager.
+ * </p>
  *
  * @author anil saldhana
  * @since Jul 16, 2012
  */
-public class SessionExpirationManager {
+public class SessionExpirationManager extends AbstractPicketBoxLifeCycle {
 
-    private static Timer timer = new Timer();
-
-    private final long expiryValue;
+    private final long idleTimeout;
+    private final long absoluteTimeout;
+    private final SessionExpirationScheduler scheduler;
+    private final ConcurrentMap<Serializable, ExpirationTask> tasks = new ConcurrentHashMap<Serializable, ExpirationTask>();
 
     public SessionExpirationManager(PicketBoxConfiguration configuration) {
-        this.expiryValue = configuration.getSessionManager().getSessionTimeout() * 60 * 1000;
+        SessionManagerConfig sessionManagerConfig = configuration.getSessionManager();
+
+        this.idleTimeout = sessionManagerConfig.getIdleTimeout();
+        this.absoluteTimeout = sessionManagerConfig.getAbsoluteTimeout();
+
+        SessionExpirationScheduler configuredScheduler = sessionManagerConfig.getExpirationScheduler();
+
+        if (configuredScheduler == null) {
+            configuredScheduler = new TimingWheelExpirationScheduler(sessionManagerConfig.getExpirationTickDuration(),
+                    TimeUnit.MILLISECONDS, sessionManagerConfig.getExpirationWheelSize(),
+                    sessionManagerConfig.getExpirationWorkerThreads());
+        }
+
+        this.scheduler = configuredScheduler;
+    }
+
+    /**
+     * @return true if an idle or an absolute timeout is configured.
+     */
+    boolean isExpirationEnabled() {
+        return this.idleTimeout > 0 || this.absoluteTimeout > 0;
+    }
+
+    /**
+     * Schedule the expiration of the given session. If neither an idle nor an absolute timeout is configured no task will be
+     * scheduled.
+     *
+     * @param session
+     */
+    void schedule(final PicketBoxSession session) {
+        if (!isExpirationEnabled()) {
+            return;
+        }
+
+        checkIfStarted();
+
+        Serializable key = session.getId().getId();
+        ExpirationTask task = new ExpirationTask(key, session);
+
+        ExpirationTask previous = this.tasks.put(key, task);
+
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        task.scheduleAt(task.getDeadline());
     }
 
     /**
-     * Set a timer for the configured delay. If the delay is <= 0 no task will be scheduled.
+     * Records an access to the session with the given identifier, made through any copy of the session.
+     *
+     * @param key
+     * @param lastAccessedTime
+     */
+    void touch(Serializable key, long lastAccessedTime) {
+        ExpirationTask task = this.tasks.get(key);
+
+        if (task != null) {
+            task.touch(lastAccessedTime);
+        }
+    }
+
+    /**
+     * Cancel any pending expiration for the given session.
      *
      * @param session
      */
-    void setTimer(final PicketBoxSession session) {
-        if (this.expiryValue <= 0) {
+    void cancel(PicketBoxSession session) {
+        if (session == null || session.getId() == null) {
             return;
         }
 
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                if (session.isValid()) {
-                    try {
-                        session.expire();
-                    } catch (PicketBoxSessionException e) {
-                        e.printStackTrace();
-                    }
+        ExpirationTask task = this.tasks.remove(session.getId().getId());
+
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.AbstractPicketBoxLifeCycle#doStart()
+     */
+    @Override
+    protected void doStart() {
+        this.scheduler.start();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.AbstractPicketBoxLifeCycle#doStop()
+     */
+    @Override
+    protected void doStop() {
+        this.scheduler.stop();
+        this.tasks.clear();
+    }
+
+    private class ExpirationTask implements Runnable {
+
+        private final Serializable key;
+        private final PicketBoxSession session;
+        private final AtomicLong lastAccessedTime;
+        private volatile Expiration expiration;
+        private volatile boolean cancelled;
+
+        ExpirationTask(Serializable key, PicketBoxSession session) {
+            this.key = key;
+            this.session = session;
+            this.lastAccessedTime = new AtomicLong(session.getLastAccessedTime());
+        }
+
+        @Override
+        public void run() {
+            if (this.cancelled || tasks.get(this.key) != this) {
+                return;
+            }
+
+            long deadline = getDeadline();
+
+            if (this.session.isValid() && deadline > System.currentTimeMillis()) {
+                scheduleAt(deadline);
+                return;
+            }
+
+            if (!tasks.remove(this.key, this)) {
+                return;
+            }
+
+            if (this.session.isValid()) {
+                try {
+                    this.session.expire();
+                } catch (PicketBoxSessionException e) {
+                    PicketBoxLogger.LOGGER.errorExpiringSession(this.key, e);
                 }
             }
-        }, expiryValue);
+        }
+
+        void touch(long accessTime) {
+            long current = this.lastAccessedTime.get();
+
+            while (accessTime > current && !this.lastAccessedTime.compareAndSet(current, accessTime)) {
+                current = this.lastAccessedTime.get();
+            }
+        }
+
+        /**
+         * Returns the time when the session should expire, considering its last recorded access. Touches do not
+         * reschedule anything: when the task runs it checks this deadline and, if the session was accessed in the
+         * meantime, schedules itself again for the remaining time.
+         *
+         * @return
+         */
+        long getDeadline() {
+            long deadline = Long.MAX_VALUE;
+
+            if (idleTimeout > 0) {
+                deadline = Math.max(this.lastAccessedTime.get(), this.session.getLastAccessedTime()) + idleTimeout;
+            }
+
+            if (absoluteTimeout > 0) {
+                deadline = Math.min(deadline, this.session.getCreationTime() + absoluteTimeout);
+            }
+
+            return deadline;
+        }
+
+        void scheduleAt(long deadline) {
+            this.expiration = scheduler.schedule(this, deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+
+            if (this.cancelled) {
+                this.expiration.cancel();
+            }
+        }
+
+        void cancel() {
+            this.cancelled = true;
+
+            Expiration current = this.expiration;
+
+            if (current != null) {
+                current.cancel();
+            }
+        }
     }
-}
\ No newline at end of file
+}
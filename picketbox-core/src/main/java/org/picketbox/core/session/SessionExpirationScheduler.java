@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.util.concurrent.TimeUnit;
+
+import org.picketbox.core.PicketBoxLifecycle;
+
+/**
+ * <p>
+ * Schedulers are responsible for running expiration tasks after a given delay. They are used by the
+ * {@link SessionExpirationManager} to expire {@link PicketBoxSession} instances.
+ * </p>
+ * <p>
+ * Implementations are expected to be started and stopped together with the {@link SessionManager} that owns them, and to
+ * support cheap scheduling and cancellation since one task is scheduled for each live session.
+ * </p>
+ *
+ * @see TimingWheelExpirationScheduler
+ */
+public interface SessionExpirationScheduler extends PicketBoxLifecycle {
+
+    /**
+     * <p>
+     * Schedules the given task to be executed after the specified delay.
+     * </p>
+     *
+     * @param task the task to be executed when the delay elapses.
+     * @param delay the delay.
+     * @param unit the {@link TimeUnit} for the delay.
+     * @return an {@link Expiration} that can be used to cancel the task.
+     */
+    Expiration schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * <p>
+     * Represents a task scheduled by a {@link SessionExpirationScheduler}.
+     * </p>
+     */
+    interface Expiration {
+
+        /**
+         * <p>
+         * Cancels the task. Cancelled tasks are never executed.
+         * </p>
+         *
+         * @return true if the task was cancelled. False if the task was already executed or cancelled.
+         */
+        boolean cancel();
+
+        /**
+         * <p>
+         * Checks if this task was cancelled.
+         * </p>
+         *
+         * @return
+         */
+        boolean isCancelled();
+    }
+}
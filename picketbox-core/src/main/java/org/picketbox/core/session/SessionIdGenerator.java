@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * Generates the identifiers of new {@link PicketBoxSession} instances.
+ * </p>
+ * <p>
+ * Identifiers must be unique and unpredictable, since knowing the identifier of a session is enough to restore it. The
+ * {@link DefaultSessionManager} does not check new identifiers against the store, so implementations must produce enough
+ * random bits to make collisions negligible. Implementations must be thread-safe.
+ * </p>
+ *
+ * @see SecureSessionIdGenerator
+ */
+public interface SessionIdGenerator {
+
+    /**
+     * <p>
+     * Generates a new identifier.
+     * </p>
+     *
+     * @return
+     */
+    SessionId<? extends Serializable> generate();
+
+    /**
+     * <p>
+     * Restores an identifier generated by this instance from its {@link String} representation, for instance when it is
+     * sent back by a client.
+     * </p>
+     *
+     * @param value
+     * @return
+     * @throws IllegalArgumentException if the value is not a valid identifier.
+     */
+    SessionId<? extends Serializable> parse(String value);
+}
@@ -23,6 +23,8 @@
 package org.picketbox.core.session;
 
 import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
 
 import org.picketbox.core.PicketBoxLifecycle;
 import org.picketbox.core.UserContext;
@@ -75,4 +77,45 @@ public interface SessionManager extends PicketBoxLifecycle {
      * @param session
      */
     void update(PicketBoxSession session);
+
+    /**
+     * <p>
+     * Returns the number of sessions.
+     * </p>
+     *
+     * @return
+     */
+    int count();
+
+    /**
+     * <p>
+     * Returns the sessions of the given principal, in time proportional to the number of sessions returned.
+     * </p>
+     *
+     * @param principalName
+     * @return
+     */
+    List<PicketBoxSession> findByPrincipal(String principalName);
+
+    /**
+     * <p>
+     * Invalidates all sessions of the given principal. Useful to log a user out everywhere or after a password change.
+     * </p>
+     *
+     * @param principalName
+     * @return the number of invalidated sessions.
+     */
+    int invalidateAllFor(String principalName);
+
+    /**
+     * <p>
+     * Returns an {@link Iterator} over the sessions accepted by the given {@link SessionFilter}. Sessions are read from the
+     * store as the iterator advances, so all sessions are never held in memory at once. If the filter is null all sessions
+     * are returned.
+     * </p>
+     *
+     * @param filter
+     * @return
+     */
+    Iterator<PicketBoxSession> iterate(SessionFilter filter);
 }
\ No newline at end of file
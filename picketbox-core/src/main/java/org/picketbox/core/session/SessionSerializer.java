@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * <p>
+ * Converts {@link PicketBoxSession} instances to and from bytes. Used by the stores that keep sessions outside the heap.
+ * </p>
+ * <p>
+ * Implementations must be thread-safe.
+ * </p>
+ *
+ * @see CompactSessionSerializer
+ * @see JavaSessionSerializer
+ */
+public interface SessionSerializer {
+
+    /**
+     * <p>
+     * Serializes the given session.
+     * </p>
+     *
+     * @param session
+     * @return
+     * @throws IOException if the session could not be serialized.
+     */
+    byte[] serialize(PicketBoxSession session) throws IOException;
+
+    /**
+     * <p>
+     * Deserializes a session previously serialized by this serializer.
+     * </p>
+     *
+     * @param data
+     * @return
+     * @throws IOException if the data is not valid.
+     */
+    PicketBoxSession deserialize(byte[] data) throws IOException;
+
+    /**
+     * <p>
+     * Serializes a set of changed attributes. Removed attributes are mapped to null.
+     * </p>
+     *
+     * @param attributes
+     * @return
+     * @throws IOException if the attributes could not be serialized.
+     */
+    byte[] serializeAttributes(Map<String, Object> attributes) throws IOException;
+
+    /**
+     * <p>
+     * Deserializes a set of changed attributes previously serialized by this serializer. Removed attributes are mapped to
+     * null.
+     * </p>
+     *
+     * @param data
+     * @return
+     * @throws IOException if the data is not valid.
+     */
+    Map<String, Object> deserializeAttributes(byte[] data) throws IOException;
+}
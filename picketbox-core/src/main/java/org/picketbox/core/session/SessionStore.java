@@ -23,6 +23,8 @@
 package org.picketbox.core.session;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
 
 import org.picketbox.core.PicketBoxLifecycle;
 
@@ -71,4 +73,35 @@ public interface SessionStore extends PicketBoxLifecycle {
      */
     void update(PicketBoxSession session);
 
+    /**
+     * <p>
+     * Returns the number of stored sessions.
+     * </p>
+     *
+     * @return
+     */
+    int count();
+
+    /**
+     * <p>
+     * Returns the identifiers of the sessions of the given principal. Stores keep an index by principal name, so this method
+     * runs in time proportional to the number of sessions returned.
+     * </p>
+     *
+     * @param principalName
+     * @return
+     */
+    Collection<SessionId<? extends Serializable>> findByPrincipal(String principalName);
+
+    /**
+     * <p>
+     * Returns an {@link Iterator} over the stored sessions. Sessions are read as the iterator advances. The iterator is weakly
+     * consistent: it never throws {@link java.util.ConcurrentModificationException} and may or may not reflect changes made
+     * after it was created.
+     * </p>
+     *
+     * @return
+     */
+    Iterator<PicketBoxSession> iterator();
+
 }
\ No newline at end of file
@@ -0,0 +1,406 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxMessages;
+
+/**
+ * <p>
+ * A {@link SessionExpirationScheduler} backed by a hashed timing wheel.
+ * </p>
+ * <p>
+ * The wheel is an array of buckets, each one covering a single tick. Scheduling and cancelling a task only enqueues it
+ * (O(1)); a single ticker thread moves new tasks into their buckets, unlinks cancelled ones and, on each tick, hands the
+ * due tasks to a pool of worker threads. Tasks whose delay is longer than a full turn of the wheel just keep a count of the
+ * remaining rounds. Cancelled tasks are dropped on the next tick instead of staying queued until they were due.
+ * </p>
+ * <p>
+ * Expiration precision is bounded by the tick duration, which is fine for session timeouts that are usually expressed in
+ * minutes.
+ * </p>
+ */
+public class TimingWheelExpirationScheduler extends AbstractPicketBoxLifeCycle implements SessionExpirationScheduler {
+
+    public static final long DEFAULT_TICK_DURATION = 1000;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    public static final int DEFAULT_WORKER_THREADS = 1;
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final int workerThreads;
+
+    private final Queue<WheelEntry> pendingEntries = new ConcurrentLinkedQueue<WheelEntry>();
+    private final Queue<WheelEntry> cancelledEntries = new ConcurrentLinkedQueue<WheelEntry>();
+
+    private volatile boolean running;
+    private volatile long startTime;
+    private Thread tickerThread;
+    private ExecutorService workers;
+
+    public TimingWheelExpirationScheduler() {
+        this(DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE, DEFAULT_WORKER_THREADS);
+    }
+
+    /**
+     * <p>
+     * Creates a new instance.
+     * </p>
+     *
+     * @param tickDuration the duration of a single tick.
+     * @param unit the {@link TimeUnit} of the tick duration.
+     * @param wheelSize the number of buckets. It is rounded up to the next power of two.
+     * @param workerThreads the number of threads used to run the expired tasks.
+     */
+    public TimingWheelExpirationScheduler(long tickDuration, TimeUnit unit, int wheelSize, int workerThreads) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be greater than zero: " + tickDuration);
+        }
+
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^30: " + wheelSize);
+        }
+
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("Worker threads must be greater than zero: " + workerThreads);
+        }
+
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.wheel = createWheel(wheelSize);
+        this.mask = this.wheel.length - 1;
+        this.workerThreads = workerThreads;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionExpirationScheduler#schedule(java.lang.Runnable, long,
+     * java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public Expiration schedule(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("task");
+        }
+
+        checkIfStarted();
+
+        WheelEntry entry = new WheelEntry(task, System.nanoTime() - this.startTime + unit.toNanos(Math.max(0, delay)));
+
+        this.pendingEntries.add(entry);
+
+        return entry;
+    }
+
+    @Override
+    protected void doStart() {
+        final int instance = INSTANCE_COUNTER.incrementAndGet();
+
+        this.workers = Executors.newFixedThreadPool(this.workerThreads, new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PicketBox-SessionExpiration-" + instance + "-worker-"
+                        + threadCounter.incrementAndGet());
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        this.startTime = System.nanoTime();
+        this.running = true;
+
+        this.tickerThread = new Thread(new Ticker(), "PicketBox-SessionExpiration-" + instance + "-ticker");
+        this.tickerThread.setDaemon(true);
+        this.tickerThread.start();
+    }
+
+    @Override
+    protected void doStop() {
+        this.running = false;
+
+        this.tickerThread.interrupt();
+
+        try {
+            this.tickerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.workers.shutdownNow();
+        this.pendingEntries.clear();
+        this.cancelledEntries.clear();
+
+        for (Bucket bucket : this.wheel) {
+            bucket.clear();
+        }
+    }
+
+    private static Bucket[] createWheel(int wheelSize) {
+        int normalizedSize = 1;
+
+        while (normalizedSize < wheelSize) {
+            normalizedSize <<= 1;
+        }
+
+        Bucket[] wheel = new Bucket[normalizedSize];
+
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        return wheel;
+    }
+
+    /**
+     * <p>
+     * Hands an expired entry to the workers.
+     * </p>
+     *
+     * @param entry
+     */
+    private void fire(WheelEntry entry) {
+        if (entry.state.compareAndSet(WheelEntry.ST_WAITING, WheelEntry.ST_EXPIRED)) {
+            try {
+                this.workers.execute(entry.task);
+            } catch (RejectedExecutionException e) {
+                // scheduler is stopping, nothing else to do.
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * The ticker advances the wheel. All bucket manipulation happens in this thread, so buckets need no synchronization.
+     * </p>
+     */
+    private class Ticker implements Runnable {
+
+        private long tick;
+
+        @Override
+        public void run() {
+            while (running) {
+                if (!waitForNextTick()) {
+                    break;
+                }
+
+                removeCancelledEntries();
+                transferPendingEntries();
+
+                wheel[(int) (this.tick & mask)].expireEntries();
+
+                this.tick++;
+            }
+        }
+
+        private boolean waitForNextTick() {
+            long deadline = tickDuration * (this.tick + 1);
+
+            for (;;) {
+                long currentTime = System.nanoTime() - startTime;
+                long sleepTime = (deadline - currentTime + 999999) / 1000000;
+
+                if (sleepTime <= 0) {
+                    return true;
+                }
+
+                try {
+                    Thread.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        private void transferPendingEntries() {
+            for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+                WheelEntry entry = pendingEntries.poll();
+
+                if (entry == null) {
+                    break;
+                }
+
+                if (entry.isCancelled()) {
+                    continue;
+                }
+
+                long expirationTick = entry.deadline / tickDuration;
+
+                entry.remainingRounds = (expirationTick - this.tick) / wheel.length;
+
+                wheel[(int) (Math.max(expirationTick, this.tick) & mask)].add(entry);
+            }
+        }
+
+        private void removeCancelledEntries() {
+            for (;;) {
+                WheelEntry entry = cancelledEntries.poll();
+
+                if (entry == null) {
+                    break;
+                }
+
+                if (entry.bucket != null) {
+                    entry.bucket.remove(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * A doubly-linked list of entries. Only accessed by the ticker thread.
+     * </p>
+     */
+    private static final class Bucket {
+
+        private WheelEntry head;
+        private WheelEntry tail;
+
+        void add(WheelEntry entry) {
+            entry.bucket = this;
+
+            if (this.head == null) {
+                this.head = entry;
+                this.tail = entry;
+            } else {
+                this.tail.next = entry;
+                entry.prev = this.tail;
+                this.tail = entry;
+            }
+        }
+
+        void remove(WheelEntry entry) {
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            }
+
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+
+            if (entry == this.head) {
+                this.head = entry.next;
+            }
+
+            if (entry == this.tail) {
+                this.tail = entry.prev;
+            }
+
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+
+        void expireEntries() {
+            WheelEntry entry = this.head;
+
+            while (entry != null) {
+                WheelEntry next = entry.next;
+
+                if (entry.isCancelled()) {
+                    remove(entry);
+                } else if (entry.remainingRounds <= 0) {
+                    remove(entry);
+                    entry.fire();
+                } else {
+                    entry.remainingRounds--;
+                }
+
+                entry = next;
+            }
+        }
+
+        void clear() {
+            this.head = null;
+            this.tail = null;
+        }
+    }
+
+    /**
+     * <p>
+     * A task scheduled in the wheel.
+     * </p>
+     */
+    private final class WheelEntry implements Expiration {
+
+        private static final int ST_WAITING = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_WAITING);
+
+        // only accessed by the ticker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private WheelEntry prev;
+        private WheelEntry next;
+
+        WheelEntry(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!this.state.compareAndSet(ST_WAITING, ST_CANCELLED)) {
+                return false;
+            }
+
+            cancelledEntries.add(this);
+
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.state.get() == ST_CANCELLED;
+        }
+
+        void fire() {
+            TimingWheelExpirationScheduler.this.fire(this);
+        }
+    }
+}
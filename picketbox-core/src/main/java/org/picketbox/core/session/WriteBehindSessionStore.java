@@ -0,0 +1,567 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.core.session;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.picketbox.core.AbstractPicketBoxLifeCycle;
+import org.picketbox.core.PicketBoxLogger;
+import org.picketbox.core.PicketBoxMessages;
+
+/**
+ * <p>
+ * A {@link SessionStore} that writes sessions to another store asynchronously.
+ * </p>
+ * <p>
+ * Stores, updates and removals are kept in memory and written to the delegate store by a background thread, in batches,
+ * when the number of pending sessions reaches the batch size or when the flush interval elapses. Repeated writes of the same
+ * session are coalesced, so only its latest state is written. Loads of pending sessions are answered from memory, so
+ * callers always see their own writes.
+ * </p>
+ * <p>
+ * The number of pending sessions is bounded. When it is reached, writers block until the background thread catches up.
+ * Pending sessions are written synchronously when the store is stopped or when {@link #flush()} is called.
+ * </p>
+ * <p>
+ * A write that fails stays pending, so loads still see it, and is retried by the background thread with an increasing delay
+ * until it succeeds. {@link #flush()} and {@link #stop()} throw an exception when some writes could not be applied.
+ * </p>
+ * <p>
+ * Pending sessions are indexed by principal, so {@link #findByPrincipal(String)} sees them without a flush. {@link #count()}
+ * and {@link #iterator()} flush the pending sessions first.
+ * </p>
+ */
+public class WriteBehindSessionStore extends AbstractPicketBoxLifeCycle implements SessionStore {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    public static final int DEFAULT_MAX_PENDING_SESSIONS = 10000;
+
+    // the retry delay of failed writes doubles up to this multiple of the flush interval
+    private static final int MAX_RETRY_DELAY_FACTOR = 32;
+
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+    private final SessionStore delegate;
+    private final int batchSize;
+    private final long flushInterval;
+    private final int maxPendingSessions;
+
+    private final ConcurrentMap<Serializable, PendingWrite> pendingWrites = new ConcurrentHashMap<Serializable, PendingWrite>();
+    private final PrincipalSessionIndex pendingIndex = new PrincipalSessionIndex();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition writesPending = this.lock.newCondition();
+    private final Condition spaceAvailable = this.lock.newCondition();
+
+    // only one thread writes to the delegate at a time, so writes of the same session are never reordered
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicLong coalescedWrites = new AtomicLong();
+    private final AtomicLong flushedWrites = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread flusherThread;
+
+    public WriteBehindSessionStore(SessionStore delegate) {
+        this(delegate, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL, TimeUnit.MILLISECONDS, DEFAULT_MAX_PENDING_SESSIONS);
+    }
+
+    /**
+     * <p>
+     * Creates a new instance.
+     * </p>
+     *
+     * @param delegate the store the sessions are written to.
+     * @param batchSize the number of pending sessions that triggers a flush before the flush interval elapses.
+     * @param flushInterval the maximum time a write stays pending.
+     * @param unit the {@link TimeUnit} of the flush interval.
+     * @param maxPendingSessions the maximum number of pending sessions. Writers block when it is reached.
+     */
+    public WriteBehindSessionStore(SessionStore delegate, int batchSize, long flushInterval, TimeUnit unit,
+            int maxPendingSessions) {
+        if (delegate == null) {
+            throw PicketBoxMessages.MESSAGES.invalidNullArgument("delegate");
+        }
+
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than zero: " + batchSize);
+        }
+
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("Flush interval must be greater than zero: " + flushInterval);
+        }
+
+        if (maxPendingSessions < batchSize) {
+            throw new IllegalArgumentException("Maximum pending sessions must not be less than the batch size: "
+                    + maxPendingSessions);
+        }
+
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.flushInterval = unit.toMillis(flushInterval);
+        this.maxPendingSessions = maxPendingSessions;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#load(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public PicketBoxSession load(SessionId<? extends Serializable> key) {
+        PendingWrite pendingWrite = this.pendingWrites.get(key.getId());
+
+        if (pendingWrite != null) {
+            return pendingWrite.session;
+        }
+
+        return this.delegate.load(key);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#store(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void store(PicketBoxSession session) {
+        enqueue(session.getId().getId(), new PendingWrite(PendingWrite.STORE, session));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#update(org.picketbox.core.session.PicketBoxSession)
+     */
+    @Override
+    public void update(PicketBoxSession session) {
+        enqueue(session.getId().getId(), new PendingWrite(PendingWrite.UPDATE, session));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#remove(org.picketbox.core.session.SessionId)
+     */
+    @Override
+    public void remove(SessionId<? extends Serializable> id) {
+        enqueue(id.getId(), new PendingWrite(PendingWrite.REMOVE, id));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#count()
+     */
+    @Override
+    public int count() {
+        flush();
+        return this.delegate.count();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#findByPrincipal(java.lang.String)
+     */
+    @Override
+    public Collection<SessionId<? extends Serializable>> findByPrincipal(String principalName) {
+        Map<Serializable, SessionId<? extends Serializable>> ids =
+                new LinkedHashMap<Serializable, SessionId<? extends Serializable>>();
+
+        for (SessionId<? extends Serializable> id : this.delegate.findByPrincipal(principalName)) {
+            PendingWrite pendingWrite = this.pendingWrites.get(id.getId());
+
+            if (pendingWrite == null || pendingWrite.type != PendingWrite.REMOVE) {
+                ids.put(id.getId(), id);
+            }
+        }
+
+        for (SessionId<? extends Serializable> id : this.pendingIndex.get(principalName)) {
+            ids.put(id.getId(), id);
+        }
+
+        return ids.values();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.SessionStore#iterator()
+     */
+    @Override
+    public Iterator<PicketBoxSession> iterator() {
+        flush();
+        return this.delegate.iterator();
+    }
+
+    /**
+     * <p>
+     * Writes all pending sessions to the delegate store, blocking until they are written.
+     * </p>
+     *
+     * @throws IllegalStateException if some writes could not be applied. They stay pending and are retried.
+     */
+    public void flush() {
+        List<RuntimeException> failures = flushPendingWrites(Integer.MAX_VALUE);
+
+        if (!failures.isEmpty()) {
+            throw PicketBoxMessages.MESSAGES.unableToWritePendingSessions(failures.size(), failures.get(0));
+        }
+    }
+
+    /**
+     * @return the store the sessions are written to.
+     */
+    public SessionStore getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * @return the number of sessions waiting to be written.
+     */
+    public int getPendingCount() {
+        return this.pendingWrites.size();
+    }
+
+    /**
+     * @return the number of writes merged into a pending write of the same session.
+     */
+    public long getCoalescedCount() {
+        return this.coalescedWrites.get();
+    }
+
+    /**
+     * @return the number of writes applied to the delegate store.
+     */
+    public long getFlushedCount() {
+        return this.flushedWrites.get();
+    }
+
+    @Override
+    protected void doStart() {
+        this.delegate.start();
+
+        this.running = true;
+
+        this.flusherThread = new Thread(new Flusher(), "PicketBox-SessionWriteBehind-" + INSTANCE_COUNTER.incrementAndGet());
+        this.flusherThread.setDaemon(true);
+        this.flusherThread.start();
+    }
+
+    /**
+     * <p>
+     * Stops the background thread and writes the pending sessions. If some of them can not be written, the exception is
+     * thrown and the delegate store is left started, so the writes are not lost and stopping can be retried.
+     * </p>
+     */
+    @Override
+    protected void doStop() {
+        this.lock.lock();
+
+        try {
+            this.running = false;
+            this.writesPending.signalAll();
+            this.spaceAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        try {
+            this.flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+
+        this.delegate.stop();
+    }
+
+    /**
+     * <p>
+     * Records a write, merging it with the pending write of the same session if there is one. Blocks while the maximum
+     * number of pending sessions is reached.
+     * </p>
+     *
+     * @param key
+     * @param write
+     */
+    private void enqueue(Serializable key, PendingWrite write) {
+        for (;;) {
+            PendingWrite pending = this.pendingWrites.get(key);
+
+            if (pending != null) {
+                PendingWrite merged = pending.merge(write);
+
+                if (this.pendingWrites.replace(key, pending, merged)) {
+                    this.coalescedWrites.incrementAndGet();
+                    updatePendingIndex(key, merged);
+                    return;
+                }
+
+                continue;
+            }
+
+            awaitSpace();
+
+            if (this.pendingWrites.putIfAbsent(key, write) == null) {
+                updatePendingIndex(key, write);
+                break;
+            }
+        }
+
+        if (this.pendingWrites.size() >= this.batchSize) {
+            signal(this.writesPending);
+        }
+    }
+
+    private void updatePendingIndex(Serializable key, PendingWrite write) {
+        if (write.type == PendingWrite.REMOVE) {
+            this.pendingIndex.remove(key);
+        } else {
+            this.pendingIndex.add(write.session);
+        }
+    }
+
+    private void awaitSpace() {
+        // the flusher may write here through the delegate, for instance when expiring sessions evicted by it
+        if (Thread.currentThread() == this.flusherThread || this.pendingWrites.size() < this.maxPendingSessions) {
+            return;
+        }
+
+        this.lock.lock();
+
+        try {
+            while (this.running && this.pendingWrites.size() >= this.maxPendingSessions) {
+                this.writesPending.signal();
+
+                try {
+                    this.spaceAvailable.await(this.flushInterval, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void signal(Condition condition) {
+        this.lock.lock();
+
+        try {
+            condition.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the pending sessions to the delegate store, in batches of at most the given size. Only the writes pending when
+     * this method is called are written.
+     * </p>
+     *
+     * @param maximumBatchSize
+     * @return the exceptions thrown by the writes that could not be applied.
+     */
+    private List<RuntimeException> flushPendingWrites(int maximumBatchSize) {
+        List<RuntimeException> failures = new ArrayList<RuntimeException>();
+
+        this.flushLock.lock();
+
+        try {
+            List<Entry<Serializable, PendingWrite>> batch = new ArrayList<Entry<Serializable, PendingWrite>>();
+            int remaining = this.pendingWrites.size();
+
+            for (Entry<Serializable, PendingWrite> entry : this.pendingWrites.entrySet()) {
+                if (remaining-- <= 0) {
+                    break;
+                }
+
+                batch.add(entry);
+
+                if (batch.size() >= maximumBatchSize) {
+                    writeBatch(batch, failures);
+                    batch.clear();
+                }
+            }
+
+            writeBatch(batch, failures);
+        } finally {
+            this.flushLock.unlock();
+        }
+
+        return failures;
+    }
+
+    private void writeBatch(List<Entry<Serializable, PendingWrite>> batch, List<RuntimeException> failures) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        for (Entry<Serializable, PendingWrite> entry : batch) {
+            PendingWrite write = entry.getValue();
+
+            try {
+                write.apply(this.delegate);
+                this.flushedWrites.incrementAndGet();
+            } catch (RuntimeException e) {
+                // a failed write stays pending and is retried. A newer write replaces it.
+                PicketBoxLogger.LOGGER.errorWritingBehindSession(entry.getKey(), e);
+                failures.add(e);
+                continue;
+            }
+
+            // the write stays pending until it is applied, so loads never miss it. A newer write is kept.
+            if (this.pendingWrites.remove(entry.getKey(), write)) {
+                this.pendingIndex.remove(entry.getKey());
+            }
+        }
+
+        signal(this.spaceAvailable);
+    }
+
+    /**
+     * <p>
+     * A write waiting to be applied to the delegate store.
+     * </p>
+     */
+    private static final class PendingWrite {
+
+        private static final int STORE = 0;
+        private static final int UPDATE = 1;
+        private static final int REMOVE = 2;
+
+        private final int type;
+        private final PicketBoxSession session;
+        private final SessionId<? extends Serializable> id;
+
+        PendingWrite(int type, PicketBoxSession session) {
+            this.type = type;
+            this.session = session;
+            this.id = session.getId();
+        }
+
+        PendingWrite(int type, SessionId<? extends Serializable> id) {
+            this.type = type;
+            this.session = null;
+            this.id = id;
+        }
+
+        /**
+         * <p>
+         * Merges a newer write of the same session. A store followed by updates is still a store, and any write followed by
+         * a removal is a removal.
+         * </p>
+         *
+         * @param newer
+         * @return
+         */
+        PendingWrite merge(PendingWrite newer) {
+            if (newer.type == UPDATE && this.type == STORE) {
+                return new PendingWrite(STORE, newer.session);
+            }
+
+            if (newer.type == UPDATE && this.type == REMOVE) {
+                // the session was removed, updates are ignored as they would be by the delegate store
+                return this;
+            }
+
+            return newer;
+        }
+
+        void apply(SessionStore store) {
+            switch (this.type) {
+                case STORE:
+                    store.store(this.session);
+                    break;
+                case UPDATE:
+                    store.update(this.session);
+                    break;
+                default:
+                    store.remove(this.id);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Flushes the pending writes when the batch size is reached or when the flush interval elapses. After a write fails, the
+     * next flush waits for a retry delay that doubles on each failure, whatever the number of pending writes.
+     * </p>
+     */
+    private class Flusher implements Runnable {
+
+        @Override
+        public void run() {
+            long retryDelay = 0;
+
+            while (running) {
+                long delay = retryDelay > 0 ? retryDelay : flushInterval;
+
+                try {
+                    awaitFlush(TimeUnit.MILLISECONDS.toNanos(delay), retryDelay > 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if (flushPendingWrites(batchSize).isEmpty()) {
+                    retryDelay = 0;
+                } else {
+                    retryDelay = Math.min(delay * 2, flushInterval * MAX_RETRY_DELAY_FACTOR);
+                }
+            }
+        }
+
+        private void awaitFlush(long nanos, boolean retrying) throws InterruptedException {
+            lock.lock();
+
+            try {
+                while (running && nanos > 0 && (retrying || pendingWrites.size() < batchSize)) {
+                    nanos = writesPending.awaitNanos(nanos);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -27,6 +27,11 @@ import org.picketbox.core.session.PicketBoxSession;
 
 /**
  * <p> {@link PicketBoxEventHandler} that handle {@link PicketBoxSession} related events.</p>
+ * <p>
+ * Handlers whose {@link #getEventType()} is {@link SessionEvent} receive all session events. Handlers interested in a single
+ * callback should return its event type instead, for example {@link SessionAttributeGetEvent}, so sessions do not create
+ * events for callbacks nobody is listening to.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
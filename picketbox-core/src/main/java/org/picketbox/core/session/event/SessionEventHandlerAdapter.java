@@ -31,10 +31,14 @@ import org.picketbox.core.event.PicketBoxEventHandler;
  * Instead of overriding all methods from the {@link SessionEventHandler} interface you can override only the ones that you want
  * to.
  * </p>
+ * <p>
+ * It also implements {@link SessionAttributeRemovalHandler}, so subclasses can override
+ * {@link #onRemoveAttribute(SessionEvent, String)} to be notified about removed attributes.
+ * </p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  */
-public class SessionEventHandlerAdapter implements SessionEventHandler {
+public class SessionEventHandlerAdapter implements SessionAttributeRemovalHandler {
 
     @Override
     public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
@@ -73,6 +77,17 @@ public class SessionEventHandlerAdapter implements SessionEventHandler {
 
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketbox.core.session.event.SessionAttributeRemovalHandler#onRemoveAttribute(org.picketbox.core.session.event.
+     * SessionEvent, java.lang.String)
+     */
+    @Override
+    public void onRemoveAttribute(SessionEvent sessionEvent, String key) {
+
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -21,6 +21,7 @@
  */
 package org.picketbox.core.util;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -35,6 +36,15 @@ import org.omg.CORBA_2_3.portable.InputStream;
  * @since Aug 22, 2012
  */
 public class StreamUtil {
+    public static void safeClose(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+        }
+    }
+
     public static void safeClose(InputStream is) {
         try {
             if (is != null) {
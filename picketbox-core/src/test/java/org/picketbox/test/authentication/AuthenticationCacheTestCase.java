@@ -0,0 +1,225 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketbox.core.Credential;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.PicketBoxPrincipal;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.AuthenticationCache;
+import org.picketbox.core.authentication.AuthenticationInfo;
+import org.picketbox.core.authentication.AuthenticationResult;
+import org.picketbox.core.authentication.AuthenticationStatus;
+import org.picketbox.core.authentication.credential.OTPCredential;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.authentication.impl.AbstractAuthenticationMechanism;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.exceptions.AuthenticationException;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests the {@link AuthenticationCache}.
+ * </p>
+ */
+public class AuthenticationCacheTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if a successful result is returned from the cache when the same credential is authenticated again.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSuccessfulResultIsCached() throws Exception {
+        CountingMechanism mechanism = new CountingMechanism();
+
+        mechanism.setAuthenticationCache(new AuthenticationCache());
+
+        AuthenticationResult firstResult = mechanism.authenticate(new UsernamePasswordCredential("admin", "admin"));
+        AuthenticationResult secondResult = mechanism.authenticate(new UsernamePasswordCredential("admin", "admin"));
+
+        assertEquals(1, mechanism.count);
+        assertEquals(AuthenticationStatus.SUCCESS, secondResult.getStatus());
+        assertEquals("admin", secondResult.getPrincipal().getName());
+        assertNotSame(firstResult, secondResult);
+
+        mechanism.authenticate(new UsernamePasswordCredential("admin", "bad_password"));
+
+        assertEquals(2, mechanism.count);
+    }
+
+    /**
+     * <p>
+     * Tests if one time passwords are never cached.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOTPCredentialIsNotCached() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache();
+
+        assertNull(cache.createKey(new OTPCredential("admin", "admin", "123456")));
+    }
+
+    /**
+     * <p>
+     * Tests if failed results expire after the negative time to live.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNegativeTimeToLive() throws Exception {
+        CountingMechanism mechanism = new CountingMechanism();
+
+        mechanism.setAuthenticationCache(new AuthenticationCache(10, 1, 100, TimeUnit.MINUTES));
+
+        assertEquals(AuthenticationStatus.FAILED,
+                mechanism.authenticate(new UsernamePasswordCredential("admin", "bad_password")).getStatus());
+        assertEquals(AuthenticationStatus.FAILED,
+                mechanism.authenticate(new UsernamePasswordCredential("admin", "bad_password")).getStatus());
+        assertEquals(1, mechanism.count);
+
+        mechanism.setAuthenticationCache(new AuthenticationCache(10, 60000, 50, TimeUnit.MILLISECONDS));
+
+        mechanism.authenticate(new UsernamePasswordCredential("admin", "bad_password"));
+
+        Thread.sleep(100);
+
+        mechanism.authenticate(new UsernamePasswordCredential("admin", "bad_password"));
+
+        assertEquals(3, mechanism.count);
+    }
+
+    /**
+     * <p>
+     * Tests if the results of an user are discarded when the user is invalidated.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidate() throws Exception {
+        CountingMechanism mechanism = new CountingMechanism();
+        AuthenticationCache cache = new AuthenticationCache();
+
+        mechanism.setAuthenticationCache(cache);
+
+        mechanism.authenticate(new UsernamePasswordCredential("admin", "admin"));
+        mechanism.authenticate(new UsernamePasswordCredential("guest", "guest"));
+
+        cache.invalidate("admin");
+
+        mechanism.authenticate(new UsernamePasswordCredential("admin", "admin"));
+        mechanism.authenticate(new UsernamePasswordCredential("guest", "guest"));
+
+        assertEquals(3, mechanism.count);
+
+        mechanism.authenticate(new UsernamePasswordCredential("admin", "admin"));
+
+        assertEquals(3, mechanism.count);
+    }
+
+    /**
+     * <p>
+     * Tests if the results of an user are discarded when the user logs out.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLogoutInvalidatesCachedResults() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+        CountingMechanism mechanism = new CountingMechanism();
+
+        builder.authentication().mechanism(mechanism).cache();
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+
+        UserContext subject = picketBoxManager.authenticate(createUserContext("admin", "admin"));
+
+        assertTrue(subject.isAuthenticated());
+
+        subject = picketBoxManager.authenticate(createUserContext("admin", "admin"));
+
+        assertTrue(subject.isAuthenticated());
+        assertEquals(1, mechanism.count);
+
+        picketBoxManager.logout(subject);
+
+        subject = picketBoxManager.authenticate(createUserContext("admin", "admin"));
+
+        assertTrue(subject.isAuthenticated());
+        assertEquals(2, mechanism.count);
+    }
+
+    private UserContext createUserContext(String userName, String password) {
+        UserContext userContext = new UserContext();
+
+        userContext.setCredential(new UsernamePasswordCredential(userName, password));
+
+        return userContext;
+    }
+
+    private static class CountingMechanism extends AbstractAuthenticationMechanism {
+
+        private int count;
+
+        @Override
+        public List<AuthenticationInfo> getAuthenticationInfo() {
+            List<AuthenticationInfo> info = new ArrayList<AuthenticationInfo>();
+
+            info.add(new AuthenticationInfo("Counting", "Counting", UsernamePasswordCredential.class));
+
+            return info;
+        }
+
+        @Override
+        protected Principal doAuthenticate(Credential credential, AuthenticationResult result)
+                throws AuthenticationException {
+            UsernamePasswordCredential passwordCredential = (UsernamePasswordCredential) credential;
+
+            this.count++;
+
+            if (passwordCredential.getUserName().equals(passwordCredential.getPassword())) {
+                return new PicketBoxPrincipal(passwordCredential.getUserName());
+            }
+
+            return null;
+        }
+    }
+}
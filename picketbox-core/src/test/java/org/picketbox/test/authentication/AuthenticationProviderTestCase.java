@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.picketbox.core.AbstractCredential;
+import org.picketbox.core.Credential;
+import org.picketbox.core.PicketBoxPrincipal;
+import org.picketbox.core.authentication.AuthenticationInfo;
+import org.picketbox.core.authentication.AuthenticationMechanism;
+import org.picketbox.core.authentication.AuthenticationResult;
+import org.picketbox.core.authentication.credential.OTPCredential;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.authentication.impl.AbstractAuthenticationMechanism;
+import org.picketbox.core.authentication.impl.OTPAuthenticationMechanism;
+import org.picketbox.core.authentication.impl.PicketBoxAuthenticationProvider;
+import org.picketbox.core.authentication.impl.UserNamePasswordAuthenticationMechanism;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.exceptions.AuthenticationException;
+
+/**
+ * <p>
+ * Tests how the {@link PicketBoxAuthenticationProvider} selects the mechanism used to authenticate a {@link Credential}.
+ * </p>
+ */
+public class AuthenticationProviderTestCase {
+
+    /**
+     * <p>
+     * Tests if the first configured mechanism supporting a credential is selected.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFirstSupportingMechanismIsSelected() throws Exception {
+        NamedMechanism first = new NamedMechanism("first", UsernamePasswordCredential.class);
+        NamedMechanism second = new NamedMechanism("second", UsernamePasswordCredential.class);
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authentication().mechanism(first).mechanism(second);
+
+        PicketBoxAuthenticationProvider provider = new PicketBoxAuthenticationProvider(null, builder.build());
+        AuthenticationMechanism mechanism = provider.getMechanism(new UsernamePasswordCredential("admin", "admin"));
+
+        assertSame(first, mechanism);
+        assertEquals("first", mechanism.authenticate(new UsernamePasswordCredential("admin", "admin")).getPrincipal()
+                .getName());
+    }
+
+    /**
+     * <p>
+     * Tests if credentials are only dispatched to mechanisms supporting their exact type, so a {@link OTPCredential} is never
+     * authenticated by a password only mechanism.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSubclassIsNotDispatchedToSuperclassMechanism() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authentication().mechanism(new OTPAuthenticationMechanism());
+
+        PicketBoxAuthenticationProvider provider = new PicketBoxAuthenticationProvider(null, builder.build());
+
+        assertTrue(provider.getMechanism(new OTPCredential("admin", "admin", "123456")) instanceof OTPAuthenticationMechanism);
+        assertTrue(provider.getMechanism(new UsernamePasswordCredential("admin", "admin"))
+                instanceof UserNamePasswordAuthenticationMechanism);
+    }
+
+    /**
+     * <p>
+     * Tests if credential types not declared by any mechanism are resolved with
+     * {@link AuthenticationMechanism#supports(Credential)}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUndeclaredCredentialType() throws Exception {
+        NamedMechanism mechanism = new NamedMechanism("custom", CustomCredential.class) {
+            @Override
+            public boolean supports(Credential credential) {
+                return credential instanceof CustomCredential;
+            }
+        };
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authentication().mechanism(mechanism);
+
+        PicketBoxAuthenticationProvider provider = new PicketBoxAuthenticationProvider(null, builder.build());
+
+        assertSame(mechanism, provider.getMechanism(new CustomCredential() {
+        }));
+        assertNull(provider.getMechanism(new AbstractCredential()));
+        assertNull(provider.getMechanism(new AbstractCredential()));
+    }
+
+    /**
+     * <p>
+     * Tests if {@link AuthenticationMechanism#supports(Credential)} is checked for every credential, even when the mechanism
+     * declares its type.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSupportsIsCheckedForDeclaredTypes() throws Exception {
+        NamedMechanism first = new NamedMechanism("first", UsernamePasswordCredential.class) {
+            @Override
+            public boolean supports(Credential credential) {
+                return super.supports(credential) && !"guest".equals(((UsernamePasswordCredential) credential).getUserName());
+            }
+        };
+        NamedMechanism second = new NamedMechanism("second", UsernamePasswordCredential.class);
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authentication().mechanism(first).mechanism(second);
+
+        PicketBoxAuthenticationProvider provider = new PicketBoxAuthenticationProvider(null, builder.build());
+
+        assertSame(first, provider.getMechanism(new UsernamePasswordCredential("admin", "admin")));
+        assertSame(second, provider.getMechanism(new UsernamePasswordCredential("guest", "guest")));
+        assertSame(first, provider.getMechanism(new UsernamePasswordCredential("admin", "admin")));
+    }
+
+    private static class CustomCredential extends AbstractCredential {
+    }
+
+    private static class NamedMechanism extends AbstractAuthenticationMechanism {
+
+        private final String name;
+        private final Class<? extends Credential> credentialType;
+
+        NamedMechanism(String name, Class<? extends Credential> credentialType) {
+            this.name = name;
+            this.credentialType = credentialType;
+        }
+
+        @Override
+        public List<AuthenticationInfo> getAuthenticationInfo() {
+            List<AuthenticationInfo> info = new ArrayList<AuthenticationInfo>();
+
+            info.add(new AuthenticationInfo(this.name, this.name, this.credentialType));
+
+            return info;
+        }
+
+        @Override
+        protected Principal doAuthenticate(Credential credential, AuthenticationResult result)
+                throws AuthenticationException {
+            return new PicketBoxPrincipal(this.name);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authorization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.CacheableResource;
+import org.picketbox.core.authorization.resource.AbstractPicketBoxResource;
+import org.picketlink.idm.model.Role;
+import org.picketbox.test.AuthenticatedUserContext;
+import org.picketlink.idm.model.SimpleRole;
+
+/**
+ * <p>
+ * Fixtures shared by the authorization tests.
+ * </p>
+ */
+public final class AuthorizationTestUtil {
+
+    private AuthorizationTestUtil() {
+    }
+
+    /**
+     * <p>
+     * Creates an authenticated {@link UserContext} for the admin user, granted the given roles.
+     * </p>
+     *
+     * @param roleNames
+     * @return
+     */
+    public static UserContext createUserContext(String... roleNames) {
+        return createUserContextFor("admin", roleNames);
+    }
+
+    /**
+     * <p>
+     * Creates an authenticated {@link UserContext} for the given user, granted the given roles.
+     * </p>
+     *
+     * @param userName
+     * @param roleNames
+     * @return
+     */
+    public static UserContext createUserContextFor(String userName, String... roleNames) {
+        UserContext userContext = new AuthenticatedUserContext(userName);
+
+        userContext.setRoles(createRoles(roleNames));
+
+        return userContext;
+    }
+
+    public static List<Role> createRoles(String... roleNames) {
+        List<Role> roles = new ArrayList<Role>();
+
+        for (String roleName : roleNames) {
+            roles.add(new SimpleRole(roleName));
+        }
+
+        return roles;
+    }
+
+    /**
+     * <p>
+     * A {@link CacheableResource} identified by its path.
+     * </p>
+     */
+    public static class KeyedResource extends AbstractPicketBoxResource implements CacheableResource {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+
+        public KeyedResource(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public Object getCacheKey() {
+            return this.path;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authorization;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.picketbox.test.authorization.AuthorizationTestUtil.createUserContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.BatchAuthorizationManager;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.impl.DecisionCachingAuthorizationManager;
+import org.picketbox.core.authorization.impl.RoleIndexAuthorizationManager;
+import org.picketbox.core.authorization.impl.SimpleAuthorizationManager;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.exceptions.AuthorizationException;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+import org.picketbox.test.authorization.AuthorizationTestUtil.KeyedResource;
+
+/**
+ * <p>
+ * Tests the {@link BatchAuthorizationManager} implementations and {@link PicketBoxManager#authorizeAll}.
+ * </p>
+ */
+public class BatchAuthorizationTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if the role based managers authorize all the resources of a batch at once.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRoleBasedManagers() throws Exception {
+        List<Resource> resources = createResources("/admin", "/reports", "/public");
+
+        for (SimpleAuthorizationManager authorizationManager : new SimpleAuthorizationManager[] {
+                new SimpleAuthorizationManager(), new RoleIndexAuthorizationManager() }) {
+            authorizationManager.setRoleNames(Arrays.asList("manager"));
+            authorizationManager.start();
+
+            assertEquals(createBitSet(0, 1, 2), authorizationManager.authorizeAll(resources, createUserContext("manager")));
+            assertEquals(new BitSet(), authorizationManager.authorizeAll(resources, createUserContext("guest")));
+            assertEquals(new BitSet(), authorizationManager.authorizeAll(new ArrayList<Resource>(),
+                    createUserContext("manager")));
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if batches authorized by subclasses of the role based managers are not answered with a single check, since they
+     * may override {@link AuthorizationManager#authorize(Resource, UserContext)}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRoleBasedManagerSubclasses() throws Exception {
+        List<Resource> resources = createResources("/admin", "/reports", "/public");
+
+        for (SimpleAuthorizationManager authorizationManager : new SimpleAuthorizationManager[] {
+                new SimpleAuthorizationManager() {
+                    @Override
+                    public boolean authorize(Resource resource, UserContext subject) {
+                        return !"/admin".equals(((KeyedResource) resource).getCacheKey()) && super.authorize(resource, subject);
+                    }
+                }, new RoleIndexAuthorizationManager() {
+                    @Override
+                    public boolean authorize(Resource resource, UserContext subject) {
+                        return !"/admin".equals(((KeyedResource) resource).getCacheKey()) && super.authorize(resource, subject);
+                    }
+                } }) {
+            authorizationManager.setRoleNames(Arrays.asList("manager"));
+            authorizationManager.start();
+
+            assertEquals(createBitSet(1, 2), authorizationManager.authorizeAll(resources, createUserContext("manager")));
+            assertEquals(new BitSet(), authorizationManager.authorizeAll(resources, createUserContext("guest")));
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if batches are answered from the decision cache and only the remaining resources are authorized by the delegate.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDecisionCache() throws Exception {
+        PathAuthorizationManager delegate = new PathAuthorizationManager("/admin", "/public");
+        DecisionCachingAuthorizationManager authorizationManager = new DecisionCachingAuthorizationManager(delegate);
+        List<Resource> resources = createResources("/admin", "/reports", "/public");
+        UserContext userContext = createUserContext("manager");
+
+        authorizationManager.start();
+
+        assertTrue(authorizationManager.authorize(resources.get(0), userContext));
+        assertEquals(1, delegate.count);
+
+        assertEquals(createBitSet(0, 2), authorizationManager.authorizeAll(resources, userContext));
+        assertEquals(3, delegate.count);
+
+        assertEquals(createBitSet(0, 2), authorizationManager.authorizeAll(resources, userContext));
+        assertEquals(3, delegate.count);
+        assertEquals(3, authorizationManager.size());
+    }
+
+    /**
+     * <p>
+     * Tests if the {@link PicketBoxManager} authorizes batches with managers that do not support them.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPicketBoxManager() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+        PathAuthorizationManager authorizationManager = new PathAuthorizationManager("/reports");
+
+        builder.authorization().manager(authorizationManager);
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+        UserContext authenticatingUserContext = new UserContext();
+
+        authenticatingUserContext.setCredential(new UsernamePasswordCredential("admin", "admin"));
+
+        UserContext authenticatedUserContext = picketBoxManager.authenticate(authenticatingUserContext);
+        List<Resource> resources = createResources("/admin", "/reports", "/public");
+
+        assertEquals(createBitSet(1), picketBoxManager.authorizeAll(authenticatedUserContext, resources));
+        assertEquals(3, authorizationManager.count);
+
+        // the same rules of single authorizations apply to users not authenticated
+        assertEquals(createBitSet(0, 1, 2), picketBoxManager.authorizeAll(new UserContext(), resources));
+    }
+
+    private List<Resource> createResources(String... paths) {
+        List<Resource> resources = new ArrayList<Resource>();
+
+        for (String path : paths) {
+            resources.add(new KeyedResource(path));
+        }
+
+        return resources;
+    }
+
+    private BitSet createBitSet(int... indexes) {
+        BitSet bitSet = new BitSet();
+
+        for (int index : indexes) {
+            bitSet.set(index);
+        }
+
+        return bitSet;
+    }
+
+    /**
+     * <p>
+     * An {@link AuthorizationManager} without batch support that authorizes some paths to everyone.
+     * </p>
+     */
+    private static class PathAuthorizationManager implements AuthorizationManager {
+
+        private final List<String> paths;
+        private int count;
+        private boolean started;
+
+        PathAuthorizationManager(String... paths) {
+            this.paths = Arrays.asList(paths);
+        }
+
+        @Override
+        public boolean authorize(Resource resource, UserContext subject) throws AuthorizationException {
+            this.count++;
+            return this.paths.contains(((KeyedResource) resource).getCacheKey());
+        }
+
+        @Override
+        public boolean started() {
+            return this.started;
+        }
+
+        @Override
+        public void start() {
+            this.started = true;
+        }
+
+        @Override
+        public boolean stopped() {
+            return !this.started;
+        }
+
+        @Override
+        public void stop() {
+            this.started = false;
+        }
+    }
+}
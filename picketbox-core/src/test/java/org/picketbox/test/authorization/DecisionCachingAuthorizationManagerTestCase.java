@@ -0,0 +1,214 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authorization;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.picketbox.test.authorization.AuthorizationTestUtil.createUserContext;
+import static org.picketbox.test.authorization.AuthorizationTestUtil.createUserContextFor;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.impl.DecisionCachingAuthorizationManager;
+import org.picketbox.core.authorization.impl.SimpleAuthorizationManager;
+import org.picketbox.core.authorization.resource.AbstractPicketBoxResource;
+import org.picketbox.core.authorization.xacml.XACMLAuthorizationManager;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.exceptions.AuthorizationException;
+import org.picketbox.test.authorization.AuthorizationTestUtil.KeyedResource;
+
+/**
+ * <p>
+ * Tests the {@link DecisionCachingAuthorizationManager}.
+ * </p>
+ */
+public class DecisionCachingAuthorizationManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if decisions are cached by roles and resource key.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDecisionsAreCached() throws Exception {
+        CountingAuthorizationManager delegate = new CountingAuthorizationManager("manager");
+        DecisionCachingAuthorizationManager authorizationManager = new DecisionCachingAuthorizationManager(delegate);
+
+        authorizationManager.start();
+
+        assertTrue(authorizationManager.authorize(new KeyedResource("/admin"), createUserContext("manager", "guest")));
+        assertTrue(authorizationManager.authorize(new KeyedResource("/admin"), createUserContext("guest", "manager")));
+        assertFalse(authorizationManager.authorize(new KeyedResource("/admin"), createUserContext("guest")));
+        assertFalse(authorizationManager.authorize(new KeyedResource("/admin"), createUserContext("guest")));
+        assertTrue(authorizationManager.authorize(new KeyedResource("/other"), createUserContext("manager")));
+
+        assertEquals(3, delegate.count);
+        assertEquals(2, authorizationManager.getHitCount());
+        assertEquals(3, authorizationManager.getMissCount());
+        assertEquals(3, authorizationManager.size());
+    }
+
+    /**
+     * <p>
+     * Tests if decisions about resources without a key are never cached.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUncacheableResource() throws Exception {
+        CountingAuthorizationManager delegate = new CountingAuthorizationManager("manager");
+        DecisionCachingAuthorizationManager authorizationManager = new DecisionCachingAuthorizationManager(delegate);
+        Resource resource = new AbstractPicketBoxResource() {
+            private static final long serialVersionUID = 1L;
+        };
+
+        authorizationManager.start();
+
+        authorizationManager.authorize(resource, createUserContext("manager"));
+        authorizationManager.authorize(resource, createUserContext("manager"));
+        authorizationManager.authorize(new KeyedResource(null), createUserContext("manager"));
+
+        assertEquals(3, delegate.count);
+        assertEquals(0, authorizationManager.size());
+    }
+
+    /**
+     * <p>
+     * Tests if decisions are taken again after they are invalidated or expired.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidation() throws Exception {
+        CountingAuthorizationManager delegate = new CountingAuthorizationManager("manager");
+        DecisionCachingAuthorizationManager authorizationManager = new DecisionCachingAuthorizationManager(delegate, 10, 50,
+                TimeUnit.MILLISECONDS);
+
+        authorizationManager.start();
+
+        authorizationManager.authorize(new KeyedResource("/admin"), createUserContext("manager"));
+
+        delegate.setRoleNames(Arrays.asList("developer"));
+        authorizationManager.invalidateAll();
+
+        assertFalse(authorizationManager.authorize(new KeyedResource("/admin"), createUserContext("manager")));
+
+        Thread.sleep(100);
+
+        assertFalse(authorizationManager.authorize(new KeyedResource("/admin"), createUserContext("manager")));
+        assertEquals(3, delegate.count);
+    }
+
+    /**
+     * <p>
+     * Tests if the configured role based managers are decorated by the {@link ConfigurationBuilder}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConfiguration() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authorization().roles("manager").xacml(new File("policies")).decisionCache(100, 1, TimeUnit.MINUTES);
+
+        List<AuthorizationManager> managers = builder.build().getAuthorization().getManagers();
+
+        assertTrue(managers.get(0) instanceof DecisionCachingAuthorizationManager);
+
+        // XACML decisions may depend on more than the roles of the user
+        assertTrue(managers.get(1) instanceof XACMLAuthorizationManager);
+    }
+
+    /**
+     * <p>
+     * Tests if subclasses of role based managers are not cached, since they may decide on more than the roles.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSubclassDecidingByUserIsNotCached() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authorization().manager(new UserAuthorizationManager("admin", "manager")).decisionCache();
+
+        List<AuthorizationManager> managers = builder.build().getAuthorization().getManagers();
+
+        assertTrue(managers.get(0) instanceof UserAuthorizationManager);
+
+        AuthorizationManager authorizationManager = managers.get(0);
+
+        authorizationManager.start();
+
+        assertTrue(authorizationManager.authorize(new KeyedResource("/admin"), createUserContextFor("admin", "manager")));
+        assertFalse(authorizationManager.authorize(new KeyedResource("/admin"), createUserContextFor("guest", "manager")));
+    }
+
+    /**
+     * <p>
+     * Grants access to a single user having one of the roles.
+     * </p>
+     */
+    private static class UserAuthorizationManager extends SimpleAuthorizationManager {
+
+        private final String userName;
+
+        UserAuthorizationManager(String userName, String... roleNames) {
+            this.userName = userName;
+            setRoleNames(Arrays.asList(roleNames));
+        }
+
+        @Override
+        public boolean authorize(Resource resource, UserContext subject) throws AuthorizationException {
+            return this.userName.equals(subject.getPrincipal().getName()) && super.authorize(resource, subject);
+        }
+    }
+
+    private static class CountingAuthorizationManager extends SimpleAuthorizationManager {
+
+        private int count;
+
+        CountingAuthorizationManager(String... roleNames) {
+            setRoleNames(Arrays.asList(roleNames));
+        }
+
+        @Override
+        public boolean authorize(Resource resource, UserContext subject) throws AuthorizationException {
+            this.count++;
+            return super.authorize(resource, subject);
+        }
+    }
+}
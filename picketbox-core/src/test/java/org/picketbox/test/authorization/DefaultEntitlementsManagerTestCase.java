@@ -0,0 +1,216 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authorization;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.picketbox.test.authorization.AuthorizationTestUtil.createUserContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.authorization.ActionEntitlement;
+import org.picketbox.core.authorization.EntitlementsManager;
+import org.picketbox.core.authorization.EntitlementsManager.Entitlement;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.impl.DefaultEntitlementsManager;
+import org.picketbox.core.authorization.resource.AbstractPicketBoxResource;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+import org.picketbox.test.authorization.AuthorizationTestUtil.KeyedResource;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.SimpleRole;
+
+/**
+ * <p>
+ * Tests the {@link DefaultEntitlementsManager}.
+ * </p>
+ */
+public class DefaultEntitlementsManagerTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if users are entitled to the union of the actions granted to their roles.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEntitlements() throws Exception {
+        DefaultEntitlementsManager entitlementsManager = createEntitlementsManager();
+
+        assertEntitlements(entitlementsManager.entitlements(new KeyedResource("/reports"), createUserContext("guest")),
+                "read");
+        assertEntitlements(
+                entitlementsManager.entitlements(new KeyedResource("/reports"), createUserContext("guest", "manager")),
+                "delete", "read", "write");
+        assertEntitlements(entitlementsManager.entitlements(new KeyedResource("/admin"), createUserContext("guest")));
+        assertEntitlements(entitlementsManager.entitlements(new AbstractPicketBoxResource() {
+            private static final long serialVersionUID = 1L;
+        }, createUserContext("manager")));
+    }
+
+    /**
+     * <p>
+     * Tests if the entitlements of many resources are returned in one call, in the order of the resources.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBatchEntitlements() throws Exception {
+        DefaultEntitlementsManager entitlementsManager = createEntitlementsManager();
+        List<Resource> resources = new ArrayList<Resource>();
+
+        resources.add(new KeyedResource("/admin"));
+        resources.add(new KeyedResource("/reports"));
+        resources.add(new KeyedResource("/unknown"));
+        resources.add(resources.get(0));
+
+        Entitlement[][] entitlements = entitlementsManager.entitlements(resources, createUserContext("manager"));
+
+        assertEquals(resources.size(), entitlements.length);
+        assertEntitlements(entitlements[0], "read");
+        assertEntitlements(entitlements[1], "delete", "write");
+        assertEntitlements(entitlements[2]);
+        assertEntitlements(entitlements[3], "read");
+        assertEquals(1, entitlementsManager.size());
+    }
+
+    /**
+     * <p>
+     * Tests if cached entitlements are not used after the roles of a user or the grants change.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidation() throws Exception {
+        DefaultEntitlementsManager entitlementsManager = createEntitlementsManager();
+        UserContext userContext = createUserContext("guest");
+
+        assertEntitlements(entitlementsManager.entitlements(new KeyedResource("/admin"), userContext));
+
+        List<Role> roles = new ArrayList<Role>(userContext.getRoles());
+
+        roles.add(new SimpleRole("manager"));
+        userContext.setRoles(roles);
+
+        assertEntitlements(entitlementsManager.entitlements(new KeyedResource("/admin"), userContext), "read");
+
+        entitlementsManager.grant("guest", "/admin", "list");
+
+        assertEquals(0, entitlementsManager.size());
+        assertEntitlements(entitlementsManager.entitlements(new KeyedResource("/admin"), userContext), "list", "read");
+    }
+
+    /**
+     * <p>
+     * Tests if the entitlements configured with the {@link ConfigurationBuilder} are available from the
+     * {@link PicketBoxManager}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPicketBoxManager() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authorization().grant("developer", "/sources", "read", "write").grant("admin", "/admin", "read");
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+        UserContext authenticatingUserContext = new UserContext();
+
+        authenticatingUserContext.setCredential(new UsernamePasswordCredential("admin", "admin"));
+
+        UserContext authenticatedUserContext = picketBoxManager.authenticate(authenticatingUserContext);
+
+        assertTrue(authenticatedUserContext.isAuthenticated());
+
+        Resource sources = new KeyedResource("/sources");
+        Resource admin = new KeyedResource("/admin");
+        Entitlement[][] entitlements = picketBoxManager.entitlements(authenticatedUserContext, Arrays.asList(sources, admin));
+
+        assertEntitlements(entitlements[0], "read", "write");
+        assertEntitlements(entitlements[1], "read");
+        assertEntitlements(picketBoxManager.entitlements(new UserContext(), sources));
+        assertEquals(2, picketBoxManager.entitlements(new UserContext(), Arrays.asList(sources, admin)).length);
+    }
+
+    /**
+     * <p>
+     * Tests if entitlements managers without batch support are called once for each resource of a batch.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testManagerWithoutBatchSupport() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authorization().entitlements(new EntitlementsManager() {
+            @Override
+            public Entitlement[] entitlements(Resource resource, UserContext subject) {
+                return new Entitlement[] { new ActionEntitlement(((KeyedResource) resource).getCacheKey().toString()) };
+            }
+        });
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+        UserContext authenticatingUserContext = new UserContext();
+
+        authenticatingUserContext.setCredential(new UsernamePasswordCredential("admin", "admin"));
+
+        UserContext authenticatedUserContext = picketBoxManager.authenticate(authenticatingUserContext);
+        Entitlement[][] entitlements = picketBoxManager.entitlements(authenticatedUserContext,
+                Arrays.asList(new KeyedResource("/sources"), new KeyedResource("/admin")));
+
+        assertEquals(2, entitlements.length);
+        assertEntitlements(entitlements[0], "/sources");
+        assertEntitlements(entitlements[1], "/admin");
+    }
+
+    private DefaultEntitlementsManager createEntitlementsManager() {
+        DefaultEntitlementsManager entitlementsManager = new DefaultEntitlementsManager();
+
+        entitlementsManager.grant("guest", "/reports", "read");
+        entitlementsManager.grant("manager", "/reports", "write", "delete");
+        entitlementsManager.grant("manager", "/admin", "read");
+
+        entitlementsManager.start();
+
+        return entitlementsManager;
+    }
+
+    private void assertEntitlements(Entitlement[] entitlements, String... actions) {
+        assertEquals(actions.length, entitlements.length);
+
+        for (int i = 0; i < actions.length; i++) {
+            assertEquals(new ActionEntitlement(actions[i]), entitlements[i]);
+        }
+    }
+}
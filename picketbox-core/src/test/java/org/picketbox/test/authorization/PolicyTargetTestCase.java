@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authorization;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.picketbox.core.authorization.xacml.PolicyTarget;
+
+/**
+ * <p>
+ * Tests how the resources and actions of XACML policies are extracted by {@link PolicyTarget}.
+ * </p>
+ */
+public class PolicyTargetTestCase {
+
+    /**
+     * <p>
+     * Tests a target restricting resources and actions to literal values.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRestrictedTarget() throws Exception {
+        PolicyTarget target = parse("<Target><Resources>" + resource("string-equal", PolicyTarget.RESOURCE_ID, "/admin")
+                + resource("string-equal", PolicyTarget.RESOURCE_ID, "/manager") + "</Resources><Actions>"
+                + action("read") + "</Actions></Target>");
+
+        assertEquals(new HashSet<String>(Arrays.asList("/admin", "/manager")), target.getResourceIds());
+        assertEquals(new HashSet<String>(Arrays.asList("read")), target.getActions());
+    }
+
+    /**
+     * <p>
+     * Tests if policies without target or without resources apply to any resource.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUnrestrictedTarget() throws Exception {
+        PolicyTarget target = parse("");
+
+        assertNull(target.getResourceIds());
+        assertNull(target.getActions());
+
+        target = parse("<Target><Actions>" + action("write") + "</Actions></Target>");
+
+        assertNull(target.getResourceIds());
+        assertEquals(new HashSet<String>(Arrays.asList("write")), target.getActions());
+    }
+
+    /**
+     * <p>
+     * Tests if resources matched with other functions or attributes are considered unrestricted.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNonIndexableMatch() throws Exception {
+        PolicyTarget target = parse("<Target><Resources>" + resource("string-equal", PolicyTarget.RESOURCE_ID, "/admin")
+                + resource("regexp-string-match", PolicyTarget.RESOURCE_ID, "/admin/.*") + "</Resources></Target>");
+
+        assertNull(target.getResourceIds());
+
+        target = parse("<Target><Resources>" + resource("string-equal", "urn:custom:resource-owner", "admin")
+                + "</Resources></Target>");
+
+        assertNull(target.getResourceIds());
+    }
+
+    private PolicyTarget parse(String target) throws Exception {
+        String policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"test\" "
+                + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">" + target
+                + "<Rule RuleId=\"permit\" Effect=\"Permit\"/></Policy>";
+
+        return PolicyTarget.parse(new ByteArrayInputStream(policy.getBytes("UTF-8")));
+    }
+
+    private String resource(String function, String attributeId, String value) {
+        return "<Resource><ResourceMatch MatchId=\"urn:oasis:names:tc:xacml:1.0:function:" + function + "\">"
+                + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">" + value + "</AttributeValue>"
+                + "<ResourceAttributeDesignator AttributeId=\"" + attributeId
+                + "\" DataType=\"http://www.w3.org/2001/XMLSchema#string\"/></ResourceMatch></Resource>";
+    }
+
+    private String action(String value) {
+        return "<Action><ActionMatch MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+                + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">" + value + "</AttributeValue>"
+                + "<ActionAttributeDesignator AttributeId=\"" + PolicyTarget.ACTION_ID
+                + "\" DataType=\"http://www.w3.org/2001/XMLSchema#string\"/></ActionMatch></Action>";
+    }
+}
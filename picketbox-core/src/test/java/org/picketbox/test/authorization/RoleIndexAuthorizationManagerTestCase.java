@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authorization;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.picketbox.test.authorization.AuthorizationTestUtil.createRoles;
+import static org.picketbox.test.authorization.AuthorizationTestUtil.createUserContext;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.AuthorizationManager;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.RoleIndex;
+import org.picketbox.core.authorization.RoleSet;
+import org.picketbox.core.authorization.impl.RoleIndexAuthorizationManager;
+import org.picketbox.core.authorization.resource.AbstractPicketBoxResource;
+import org.picketbox.core.config.ConfigurationBuilder;
+
+/**
+ * <p>
+ * Tests the {@link RoleIndexAuthorizationManager}.
+ * </p>
+ */
+public class RoleIndexAuthorizationManagerTestCase {
+
+    private Resource resource = new AbstractPicketBoxResource() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    /**
+     * <p>
+     * Tests if role names are interned and if unknown roles are ignored.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRoleIndex() throws Exception {
+        RoleIndex index = new RoleIndex(Arrays.asList("manager", "developer", "manager"));
+
+        assertEquals(2, index.size());
+        assertEquals(0, index.getId("manager"));
+        assertEquals(1, index.getId("developer"));
+        assertEquals(-1, index.getId("guest"));
+        assertEquals("developer", index.getName(1));
+
+        RoleSet roleSet = index.createRoleSet(createRoles("developer", "guest"));
+
+        assertEquals(1, roleSet.size());
+        assertTrue(roleSet.contains(index.getId("developer")));
+        assertFalse(roleSet.contains(index.getId("manager")));
+        assertTrue(roleSet.containsAny(index.toBitSet(Arrays.asList("manager", "developer"))));
+        assertFalse(roleSet.containsAll(index.toBitSet(Arrays.asList("manager", "developer"))));
+    }
+
+    /**
+     * <p>
+     * Tests if users having any of the configured roles are authorized.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAuthorize() throws Exception {
+        RoleIndexAuthorizationManager authorizationManager = new RoleIndexAuthorizationManager(Arrays.asList("manager",
+                "developer"));
+
+        authorizationManager.start();
+
+        assertTrue(authorizationManager.authorize(this.resource, createUserContext("guest", "developer")));
+        assertFalse(authorizationManager.authorize(this.resource, createUserContext("guest")));
+        assertFalse(authorizationManager.authorize(this.resource, createUserContext()));
+    }
+
+    /**
+     * <p>
+     * Tests if the indexed roles of an user are computed again when its roles change.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRolesChanged() throws Exception {
+        RoleIndexAuthorizationManager authorizationManager = new RoleIndexAuthorizationManager(Arrays.asList("manager"));
+
+        authorizationManager.start();
+
+        UserContext userContext = createUserContext("guest");
+
+        assertFalse(authorizationManager.authorize(this.resource, userContext));
+        assertSame(userContext.getRoleSet(authorizationManager.getRoleIndex()),
+                userContext.getRoleSet(authorizationManager.getRoleIndex()));
+
+        userContext.setRoles(createRoles("manager"));
+
+        assertTrue(authorizationManager.authorize(this.resource, userContext));
+
+        authorizationManager.setRoleNames(Arrays.asList("developer"));
+
+        assertFalse(authorizationManager.authorize(this.resource, userContext));
+    }
+
+    /**
+     * <p>
+     * Tests if the manager must be started.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNotStarted() throws Exception {
+        RoleIndexAuthorizationManager authorizationManager = new RoleIndexAuthorizationManager(Arrays.asList("manager"));
+
+        try {
+            authorizationManager.authorize(this.resource, createUserContext("manager"));
+            fail("Not started managers must not authorize.");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if the manager is configured by the {@link ConfigurationBuilder}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConfiguration() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.authorization().roles("manager", "developer");
+
+        AuthorizationManager authorizationManager = builder.build().getAuthorization().getManagers().get(0);
+
+        assertTrue(authorizationManager instanceof RoleIndexAuthorizationManager);
+        assertEquals(Arrays.asList("manager", "developer"),
+                ((RoleIndexAuthorizationManager) authorizationManager).getRoleIndex().getNames());
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.authorization;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authorization.CacheableResource;
+import org.picketbox.core.authorization.Resource;
+import org.picketbox.core.authorization.impl.DecisionCachingAuthorizationManager;
+import org.picketbox.core.authorization.resource.AbstractPicketBoxResource;
+import org.picketbox.core.authorization.xacml.XACMLAuthorizationManager;
+import org.picketbox.core.authorization.xacml.XACMLResource;
+import org.picketbox.test.AuthenticatedUserContext;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.SimpleRole;
+
+/**
+ * <p>
+ * Tests the {@link XACMLAuthorizationManager}.
+ * </p>
+ */
+public class XACMLAuthorizationManagerTestCase {
+
+    private File policyDirectory;
+    private XACMLAuthorizationManager authorizationManager;
+
+    @Before
+    public void onSetup() throws Exception {
+        this.policyDirectory = File.createTempFile("picketbox-xacml", "");
+        this.policyDirectory.delete();
+        this.policyDirectory.mkdirs();
+
+        writePolicy("admin", "/admin", "read", "manager");
+        writePolicy("public", "/public", "read", "guest");
+
+        this.authorizationManager = new XACMLAuthorizationManager(this.policyDirectory);
+    }
+
+    @After
+    public void onFinish() throws Exception {
+        if (this.authorizationManager.started()) {
+            this.authorizationManager.stop();
+        }
+
+        for (File file : this.policyDirectory.listFiles()) {
+            file.delete();
+        }
+
+        this.policyDirectory.delete();
+    }
+
+    /**
+     * <p>
+     * Tests if requests are permitted only by the policies applying to their resource and action.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAuthorize() throws Exception {
+        this.authorizationManager.start();
+
+        assertEquals(2, this.authorizationManager.getPolicyCount());
+        assertTrue(this.authorizationManager.authorize(new PolicyResource("/admin", "read"), createUserContext("manager")));
+        assertFalse(this.authorizationManager.authorize(new PolicyResource("/admin", "read"), createUserContext("guest")));
+        assertFalse(this.authorizationManager.authorize(new PolicyResource("/admin", "write"), createUserContext("manager")));
+        assertTrue(this.authorizationManager.authorize(new PolicyResource("/public", "read"), createUserContext("guest")));
+        assertFalse(this.authorizationManager.authorize(new PolicyResource("/unknown", "read"), createUserContext("manager")));
+    }
+
+    /**
+     * <p>
+     * Tests if batches of resources get the same decisions as single requests.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAuthorizeAll() throws Exception {
+        this.authorizationManager.start();
+
+        List<Resource> resources = Arrays.<Resource> asList(new PolicyResource("/admin", "read"), new PolicyResource(
+                "/public", "read"), new PolicyResource("/admin", "write"));
+        BitSet managerDecisions = new BitSet();
+
+        managerDecisions.set(0);
+
+        BitSet guestDecisions = new BitSet();
+
+        guestDecisions.set(1);
+
+        assertEquals(managerDecisions, this.authorizationManager.authorizeAll(resources, createUserContext("manager")));
+        assertEquals(guestDecisions, this.authorizationManager.authorizeAll(resources, createUserContext("guest")));
+    }
+
+    /**
+     * <p>
+     * Tests if new policy files are loaded in background.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReload() throws Exception {
+        this.authorizationManager.setReloadInterval(50, TimeUnit.MILLISECONDS);
+        this.authorizationManager.start();
+
+        assertFalse(this.authorizationManager.authorize(new PolicyResource("/reports", "read"), createUserContext("manager")));
+
+        writePolicy("reports", "/reports", "read", "manager");
+
+        for (int i = 0; i < 100 && this.authorizationManager.getPolicyCount() < 3; i++) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(3, this.authorizationManager.getPolicyCount());
+        assertTrue(this.authorizationManager.authorize(new PolicyResource("/reports", "read"), createUserContext("manager")));
+    }
+
+    /**
+     * <p>
+     * Tests if the decisions cached in front of the manager are discarded when the policies are reloaded.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReloadInvalidatesDecisionCache() throws Exception {
+        DecisionCachingAuthorizationManager cachingManager = new DecisionCachingAuthorizationManager(
+                this.authorizationManager);
+
+        cachingManager.start();
+
+        cachingManager.authorize(new PolicyResource("/admin", "read"), createUserContext("manager"));
+
+        assertEquals(1, cachingManager.size());
+
+        this.authorizationManager.reload();
+
+        assertEquals(0, cachingManager.size());
+    }
+
+    private void writePolicy(String policyId, String resourceId, String action, String role) throws Exception {
+        String policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"" + policyId + "\" "
+                + "RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">"
+                + "<Target><Resources><Resource>"
+                + "<ResourceMatch MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+                + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">" + resourceId + "</AttributeValue>"
+                + "<ResourceAttributeDesignator AttributeId=\"urn:oasis:names:tc:xacml:1.0:resource:resource-id\" "
+                + "DataType=\"http://www.w3.org/2001/XMLSchema#string\"/></ResourceMatch></Resource></Resources>"
+                + "<Actions><Action><ActionMatch MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+                + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">" + action + "</AttributeValue>"
+                + "<ActionAttributeDesignator AttributeId=\"urn:oasis:names:tc:xacml:1.0:action:action-id\" "
+                + "DataType=\"http://www.w3.org/2001/XMLSchema#string\"/></ActionMatch></Action></Actions></Target>"
+                + "<Rule RuleId=\"permit\" Effect=\"Permit\"><Condition>"
+                + "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">"
+                + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">" + role + "</AttributeValue>"
+                + "<SubjectAttributeDesignator AttributeId=\"urn:oasis:names:tc:xacml:2.0:subject:role\" "
+                + "DataType=\"http://www.w3.org/2001/XMLSchema#string\"/></Apply></Condition></Rule>"
+                + "<Rule RuleId=\"deny\" Effect=\"Deny\"/></Policy>";
+        OutputStream output = new FileOutputStream(new File(this.policyDirectory, policyId + ".xml"));
+
+        try {
+            output.write(policy.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    private UserContext createUserContext(String roleName) {
+        UserContext userContext = new AuthenticatedUserContext("admin");
+        List<Role> roles = new ArrayList<Role>();
+
+        roles.add(new SimpleRole(roleName));
+
+        userContext.setRoles(roles);
+
+        return userContext;
+    }
+
+    private static class PolicyResource extends AbstractPicketBoxResource implements XACMLResource, CacheableResource {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String resourceId;
+        private final String action;
+
+        PolicyResource(String resourceId, String action) {
+            this.resourceId = resourceId;
+            this.action = action;
+        }
+
+        @Override
+        public String getResourceId() {
+            return this.resourceId;
+        }
+
+        @Override
+        public String getAction() {
+            return this.action;
+        }
+
+        @Override
+        public Object getCacheKey() {
+            return this.resourceId + " " + this.action;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.cache;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketbox.core.cache.BoundedCache;
+import org.picketbox.core.cache.EvictionPolicyType;
+
+/**
+ * <p>
+ * Tests the {@link BoundedCache}.
+ * </p>
+ */
+public class BoundedCacheTestCase {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(2);
+
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 50, TimeUnit.MILLISECONDS,
+                EvictionPolicyType.LRU);
+
+        cache.put("a", "1");
+        cache.put("b", "2", 1, TimeUnit.HOURS);
+
+        assertEquals("1", cache.get("a"));
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10);
+
+        cache.put("a", "1");
+        cache.get("a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertTrue(Math.abs(cache.getHitRate() - 0.75) < 0.0001);
+
+        assertEquals("1", cache.remove("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.authentication.event.UserAuthenticatedEvent;
+import org.picketbox.core.authentication.event.UserAuthenticationEventHandler;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.event.AsyncEventManager;
+import org.picketbox.core.event.BackpressurePolicy;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+import org.picketbox.core.event.SynchronousEventHandler;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests the {@link AsyncEventManager}.
+ * </p>
+ */
+public class AsyncEventManagerTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if slow handlers do not block the thread raising the events and if each handler receives its events in order.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOrderedAsynchronousDispatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<RecordingHandler> handlers = new ArrayList<RecordingHandler>();
+
+        for (int i = 0; i < 4; i++) {
+            handlers.add(new RecordingHandler(release));
+        }
+
+        AsyncEventManager eventManager = new AsyncEventManager(new ArrayList<PicketBoxEventHandler>(handlers), 2, 2000,
+                BackpressurePolicy.BLOCK, null);
+
+        eventManager.start();
+
+        for (int i = 0; i < 500; i++) {
+            eventManager.raiseEvent(new TestEvent(i));
+        }
+
+        // no handler could run yet, so all events are still queued
+        for (RecordingHandler handler : handlers) {
+            assertTrue(handler.values.isEmpty());
+        }
+
+        release.countDown();
+        eventManager.stop();
+
+        for (RecordingHandler handler : handlers) {
+            assertEquals(500, handler.values.size());
+
+            for (int i = 0; i < 500; i++) {
+                assertEquals(Integer.valueOf(i), handler.values.get(i));
+            }
+
+            assertNotSame(Thread.currentThread(), handler.thread);
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if handlers implementing {@link SynchronousEventHandler} are called in the thread raising the event.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSynchronousHandler() throws Exception {
+        SynchronousRecordingHandler handler = new SynchronousRecordingHandler();
+        AsyncEventManager eventManager = new AsyncEventManager(new ArrayList<PicketBoxEventHandler>());
+
+        eventManager.addHandler(handler);
+        eventManager.start();
+
+        try {
+            eventManager.raiseEvent(new TestEvent(1));
+
+            assertEquals(1, handler.values.size());
+            assertSame(Thread.currentThread(), handler.thread);
+        } finally {
+            eventManager.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if the oldest events are discarded when the queue is full.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingHandler handler = new RecordingHandler(release);
+        AsyncEventManager eventManager = new AsyncEventManager(new ArrayList<PicketBoxEventHandler>(), 1, 2,
+                BackpressurePolicy.DROP_OLDEST, null);
+
+        eventManager.addHandler(handler);
+        eventManager.start();
+
+        for (int i = 0; i < 10; i++) {
+            eventManager.raiseEvent(new TestEvent(i));
+        }
+
+        release.countDown();
+        eventManager.stop();
+
+        assertTrue(eventManager.getDroppedCount() > 0);
+        assertEquals(10, handler.values.size() + eventManager.getDroppedCount());
+
+        // the most recent events are kept
+        assertEquals(Integer.valueOf(9), handler.values.get(handler.values.size() - 1));
+    }
+
+    /**
+     * <p>
+     * Tests if events are dispatched in the thread raising them when the queue is full, without changing the order in which
+     * the handler receives them.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCallerRuns() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingHandler handler = new RecordingHandler(release);
+        AsyncEventManager eventManager = new AsyncEventManager(new ArrayList<PicketBoxEventHandler>(), 1, 2,
+                BackpressurePolicy.CALLER_RUNS, null);
+
+        eventManager.addHandler(handler);
+        eventManager.start();
+
+        // the worker blocks on the first event, so the queue fills up
+        eventManager.raiseEvent(new TestEvent(0));
+        handler.awaitFirstEvent();
+
+        release.countDown();
+
+        for (int i = 1; i < 1000; i++) {
+            eventManager.raiseEvent(new TestEvent(i));
+        }
+
+        eventManager.stop();
+
+        assertTrue(eventManager.getCallerRunsCount() > 0);
+        assertEquals(1000, handler.values.size());
+        assertFalse(handler.concurrentDispatch);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), handler.values.get(i));
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if events raised while the manager is stopping are not lost.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRaiseWhileStopping() throws Exception {
+        final RecordingHandler handler = new RecordingHandler(new CountDownLatch(0));
+        final AsyncEventManager eventManager = new AsyncEventManager(new ArrayList<PicketBoxEventHandler>(), 2, 4,
+                BackpressurePolicy.BLOCK, null);
+        final CountDownLatch raising = new CountDownLatch(4);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        eventManager.addHandler(handler);
+        eventManager.start();
+
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 2000; j++) {
+                        eventManager.raiseEvent(new TestEvent(j));
+
+                        if (j == 0) {
+                            raising.countDown();
+                        }
+                    }
+                }
+            };
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        // stops while all threads are still raising events
+        assertTrue(raising.await(10, TimeUnit.SECONDS));
+
+        eventManager.stop();
+
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+
+        assertEquals(8000, handler.values.size());
+    }
+
+    /**
+     * <p>
+     * Tests the asynchronous event manager when configured using the {@link ConfigurationBuilder}. Session handling must keep
+     * working, since the built-in session handler is synchronous.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConfiguration() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+        final CountDownLatch authenticated = new CountDownLatch(1);
+
+        builder.eventManager().asynchronous(2, 100, BackpressurePolicy.BLOCK).handler(new UserAuthenticationEventHandler() {
+
+            @Override
+            public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+                return UserAuthenticatedEvent.class;
+            }
+
+            @Override
+            public void onSuccessfulAuthentication(UserAuthenticatedEvent userAuthenticatedEvent) {
+                authenticated.countDown();
+            }
+
+            @Override
+            public void onUnSuccessfulAuthentication(UserAuthenticatedEvent userAuthenticatedEvent) {
+            }
+        });
+
+        builder.sessionManager().inMemorySessionStore();
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+
+        assertTrue(picketBoxManager.getEventManager() instanceof AsyncEventManager);
+
+        UserContext authenticatingUserContext = new UserContext();
+
+        authenticatingUserContext.setCredential(new UsernamePasswordCredential("admin", "admin"));
+
+        UserContext subject = picketBoxManager.authenticate(authenticatingUserContext);
+
+        assertTrue(subject.isAuthenticated());
+        assertTrue(authenticated.await(10, TimeUnit.SECONDS));
+
+        PicketBoxSession session = subject.getSession();
+
+        picketBoxManager.logout(subject);
+
+        assertEquals(null, picketBoxManager.getSessionManager().retrieve(session.getId()));
+
+        picketBoxManager.stop();
+
+        assertTrue(((AsyncEventManager) picketBoxManager.getEventManager()).stopped());
+    }
+
+    private static class TestEvent implements PicketBoxEvent<TestEventHandler> {
+
+        private final int value;
+
+        TestEvent(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public void dispatch(TestEventHandler handler) {
+            handler.onEvent(this);
+        }
+    }
+
+    private interface TestEventHandler extends PicketBoxEventHandler {
+
+        void onEvent(TestEvent event);
+    }
+
+    private static class RecordingHandler implements TestEventHandler {
+
+        private final CountDownLatch release;
+        private final CountDownLatch firstEvent = new CountDownLatch(1);
+        private final AtomicInteger dispatching = new AtomicInteger();
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile Thread thread;
+        volatile boolean concurrentDispatch;
+
+        RecordingHandler(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+            return TestEvent.class;
+        }
+
+        @Override
+        public void onEvent(TestEvent event) {
+            if (this.dispatching.incrementAndGet() > 1) {
+                this.concurrentDispatch = true;
+            }
+
+            this.firstEvent.countDown();
+
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            this.thread = Thread.currentThread();
+            this.values.add(event.value);
+            this.dispatching.decrementAndGet();
+        }
+
+        void awaitFirstEvent() throws InterruptedException {
+            this.firstEvent.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class SynchronousRecordingHandler extends RecordingHandler implements SynchronousEventHandler {
+
+        SynchronousRecordingHandler() {
+            super(new CountDownLatch(0));
+        }
+    }
+}
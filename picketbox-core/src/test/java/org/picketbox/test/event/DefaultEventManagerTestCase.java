@@ -0,0 +1,239 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.picketbox.core.event.DefaultEventManager;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+
+/**
+ * <p>
+ * Tests the handler registry of the {@link DefaultEventManager}.
+ * </p>
+ */
+public class DefaultEventManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if handlers registered for a superclass receive the events of subclasses, including anonymous ones, and if
+     * handlers registered for an interface do not.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEventTypeHierarchy() throws Exception {
+        DefaultEventManager eventManager = new DefaultEventManager(new ArrayList<PicketBoxEventHandler>());
+        CountingHandler baseHandler = new CountingHandler(BaseEvent.class);
+        CountingHandler interfaceHandler = new CountingHandler(AuditedEvent.class);
+        CountingHandler subclassHandler = new CountingHandler(SubclassEvent.class);
+
+        eventManager.addHandler(baseHandler);
+        eventManager.addHandler(interfaceHandler);
+        eventManager.addHandler(subclassHandler);
+
+        eventManager.raiseEvent(new BaseEvent());
+        eventManager.raiseEvent(new SubclassEvent());
+        eventManager.raiseEvent(new SubclassEvent() {
+        });
+
+        assertEquals(3, baseHandler.count.get());
+        assertEquals(0, interfaceHandler.count.get());
+        assertEquals(2, subclassHandler.count.get());
+    }
+
+    /**
+     * <p>
+     * Tests if events are not dispatched to handlers of another type registered for an interface the event implements.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInterfaceHandlersOfOtherTypesAreNotMatched() throws Exception {
+        DefaultEventManager eventManager = new DefaultEventManager(new ArrayList<PicketBoxEventHandler>());
+        CountingHandler handler = new CountingHandler(BaseEvent.class);
+
+        eventManager.addHandler(handler);
+        eventManager.addHandler(new PicketBoxEventHandler() {
+            @Override
+            public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+                return AuditedEvent.class;
+            }
+        });
+
+        eventManager.raiseEvent(new SubclassEvent());
+
+        assertEquals(1, handler.count.get());
+    }
+
+    /**
+     * <p>
+     * Tests if {@link DefaultEventManager#hasHandlers(Class)} considers the handlers of superclasses, and
+     * reflects added and removed handlers.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHasHandlers() throws Exception {
+        DefaultEventManager eventManager = new DefaultEventManager(new ArrayList<PicketBoxEventHandler>());
+        CountingHandler interfaceHandler = new CountingHandler(AuditedEvent.class);
+        CountingHandler baseHandler = new CountingHandler(BaseEvent.class);
+
+        assertFalse(eventManager.hasHandlers(BaseEvent.class));
+        assertFalse(eventManager.hasHandlers(SubclassEvent.class));
+
+        eventManager.addHandler(interfaceHandler);
+
+        assertFalse(eventManager.hasHandlers(SubclassEvent.class));
+
+        eventManager.addHandler(baseHandler);
+
+        assertTrue(eventManager.hasHandlers(BaseEvent.class));
+        assertTrue(eventManager.hasHandlers(SubclassEvent.class));
+
+        eventManager.removeHandler(baseHandler);
+
+        assertFalse(eventManager.hasHandlers(SubclassEvent.class));
+    }
+
+    /**
+     * <p>
+     * Tests if removed handlers stop receiving events, including for event classes already resolved.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRemoveHandler() throws Exception {
+        DefaultEventManager eventManager = new DefaultEventManager(new ArrayList<PicketBoxEventHandler>());
+        CountingHandler first = new CountingHandler(BaseEvent.class);
+        CountingHandler second = new CountingHandler(BaseEvent.class);
+
+        eventManager.addHandler(first);
+        eventManager.addHandler(second);
+
+        eventManager.raiseEvent(new SubclassEvent());
+
+        assertTrue(eventManager.removeHandler(first));
+        assertFalse(eventManager.removeHandler(first));
+
+        eventManager.raiseEvent(new SubclassEvent());
+
+        assertEquals(1, first.count.get());
+        assertEquals(2, second.count.get());
+
+        assertTrue(eventManager.removeHandler(second));
+
+        eventManager.raiseEvent(new SubclassEvent());
+
+        assertEquals(2, second.count.get());
+    }
+
+    /**
+     * <p>
+     * Tests if handlers can be added and removed while other threads are raising events.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        final DefaultEventManager eventManager = new DefaultEventManager(new ArrayList<PicketBoxEventHandler>());
+        final CountingHandler handler = new CountingHandler(BaseEvent.class);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(4);
+
+        eventManager.addHandler(handler);
+
+        for (int i = 0; i < 4; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10000; j++) {
+                            eventManager.raiseEvent(new SubclassEvent());
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            CountingHandler other = new CountingHandler(SubclassEvent.class);
+
+            eventManager.addHandler(other);
+            eventManager.removeHandler(other);
+        }
+
+        done.await();
+
+        assertNull(failure.get());
+        assertEquals(40000, handler.count.get());
+    }
+
+    private interface AuditedEvent extends PicketBoxEvent<CountingHandler> {
+    }
+
+    private static class BaseEvent implements PicketBoxEvent<CountingHandler> {
+
+        @Override
+        public void dispatch(CountingHandler handler) {
+            handler.count.incrementAndGet();
+        }
+    }
+
+    private static class SubclassEvent extends BaseEvent implements AuditedEvent {
+    }
+
+    private static class CountingHandler implements PicketBoxEventHandler {
+
+        private final Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> eventType;
+        final AtomicInteger count = new AtomicInteger();
+
+        CountingHandler(Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> eventType) {
+            this.eventType = eventType;
+        }
+
+        @Override
+        public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+            return this.eventType;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.identity;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.config.PicketBoxConfiguration;
+import org.picketbox.core.identity.impl.CachingUserContextPopulator;
+import org.picketbox.core.identity.impl.ConfiguredRolesContextPopulator;
+import org.picketbox.test.AuthenticatedUserContext;
+
+/**
+ * <p>
+ * Tests the {@link CachingUserContextPopulator}.
+ * </p>
+ */
+public class CachingUserContextPopulatorTestCase {
+
+    /**
+     * <p>
+     * Tests if the informations of a principal are loaded only once.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInformationsAreCached() throws Exception {
+        CountingPopulator delegate = new CountingPopulator();
+        CachingUserContextPopulator populator = new CachingUserContextPopulator(delegate);
+
+        UserContext firstUserContext = populator.getIdentity(createUserContext("admin"));
+        UserContext secondUserContext = populator.getIdentity(createUserContext("admin"));
+
+        assertEquals(1, delegate.count);
+        assertEquals("admin", secondUserContext.getUser().getId());
+        assertTrue(secondUserContext.hasRole("developer"));
+        assertNotSame(firstUserContext.getRoles(), secondUserContext.getRoles());
+
+        populator.getIdentity(createUserContext("guest"));
+
+        assertEquals(2, delegate.count);
+        assertEquals(2, populator.size());
+    }
+
+    /**
+     * <p>
+     * Tests if the informations are taken from the context returned by the populator, when it is not the given one.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPopulatorReturningNewContext() throws Exception {
+        CachingUserContextPopulator populator = new CachingUserContextPopulator(new CopyingPopulator());
+
+        UserContext firstUserContext = populator.getIdentity(createUserContext("admin"));
+        UserContext secondUserContext = populator.getIdentity(createUserContext("admin"));
+
+        assertEquals("admin", firstUserContext.getUser().getId());
+        assertTrue(firstUserContext.hasRole("developer"));
+        assertEquals("admin", secondUserContext.getUser().getId());
+        assertTrue(secondUserContext.hasRole("developer"));
+    }
+
+    /**
+     * <p>
+     * Tests if invalidated informations are loaded again.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidate() throws Exception {
+        CountingPopulator delegate = new CountingPopulator();
+        CachingUserContextPopulator populator = new CachingUserContextPopulator(delegate);
+
+        populator.getIdentity(createUserContext("admin"));
+        populator.getIdentity(createUserContext("guest"));
+
+        populator.invalidate("admin");
+
+        populator.getIdentity(createUserContext("admin"));
+        populator.getIdentity(createUserContext("guest"));
+
+        assertEquals(3, delegate.count);
+
+        populator.clear();
+
+        populator.getIdentity(createUserContext("guest"));
+
+        assertEquals(4, delegate.count);
+    }
+
+    /**
+     * <p>
+     * Tests if the informations used after the refresh ahead threshold are reloaded only once, while the cached ones are
+     * still returned.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRefreshAhead() throws Exception {
+        CountingPopulator delegate = new CountingPopulator();
+        CachingUserContextPopulator populator = new CachingUserContextPopulator(delegate, 10, 10, TimeUnit.SECONDS, 0.01f,
+                null);
+
+        populator.getIdentity(createUserContext("admin"));
+
+        Thread.sleep(200);
+
+        populator.getIdentity(createUserContext("admin"));
+
+        assertEquals(2, delegate.count);
+
+        populator.getIdentity(createUserContext("admin"));
+
+        assertEquals(2, delegate.count);
+    }
+
+    /**
+     * <p>
+     * Tests if expired informations are loaded again.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        CountingPopulator delegate = new CountingPopulator();
+        CachingUserContextPopulator populator = new CachingUserContextPopulator(delegate, 10, 50, TimeUnit.MILLISECONDS, 1,
+                null);
+
+        populator.getIdentity(createUserContext("admin"));
+
+        Thread.sleep(100);
+
+        populator.getIdentity(createUserContext("admin"));
+
+        assertEquals(2, delegate.count);
+    }
+
+    /**
+     * <p>
+     * Tests if the cache is enabled through the configuration.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConfiguration() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        assertFalse(builder.build().getIdentityManager().isUserPopulatorCached());
+
+        builder = new ConfigurationBuilder();
+
+        builder.identityManager().userPopulatorCache(100, 1, TimeUnit.MINUTES);
+
+        PicketBoxConfiguration configuration = builder.build();
+
+        assertTrue(configuration.getIdentityManager().isUserPopulatorCached());
+        assertEquals(100, configuration.getIdentityManager().getUserPopulatorCacheSize());
+        assertEquals(60000, configuration.getIdentityManager().getUserPopulatorCacheTimeToLive());
+    }
+
+    private UserContext createUserContext(String name) {
+        return new AuthenticatedUserContext(name);
+    }
+
+    private static class CountingPopulator extends ConfiguredRolesContextPopulator {
+
+        private int count;
+
+        CountingPopulator() {
+            super(Arrays.asList("developer"));
+        }
+
+        @Override
+        public UserContext getIdentity(UserContext authenticatedUserContext) {
+            this.count++;
+            return super.getIdentity(authenticatedUserContext);
+        }
+    }
+
+    private static class CopyingPopulator extends ConfiguredRolesContextPopulator {
+
+        CopyingPopulator() {
+            super(Arrays.asList("developer"));
+        }
+
+        @Override
+        public UserContext getIdentity(UserContext authenticatedUserContext) {
+            return super.getIdentity(new AuthenticatedUserContext(authenticatedUserContext.getPrincipal()));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.cache.EvictionPolicyType;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+import org.picketbox.core.session.BoundedSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.event.SessionEvent;
+import org.picketbox.core.session.event.SessionEventHandler;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests the {@link BoundedSessionStore}.
+ * </p>
+ */
+public class BoundedSessionStoreTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if the least recently used sessions are evicted and expired when the store is full.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLRUEviction() throws Exception {
+        BoundedSessionStore store = new BoundedSessionStore(3, EvictionPolicyType.LRU);
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().store(store);
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+        SessionManager sessionManager = picketBoxManager.getSessionManager();
+
+        ExpirationCounter expirationCounter = new ExpirationCounter();
+
+        picketBoxManager.getEventManager().addHandler(expirationCounter);
+
+        PicketBoxSession first = createSession(sessionManager);
+        PicketBoxSession second = createSession(sessionManager);
+        PicketBoxSession third = createSession(sessionManager);
+
+        // makes the first session the most recently used
+        assertNotNull(sessionManager.retrieve(first.getId()));
+
+        PicketBoxSession fourth = createSession(sessionManager);
+
+        assertTrue(first.isValid());
+        assertFalse(second.isValid());
+        assertTrue(third.isValid());
+        assertTrue(fourth.isValid());
+
+        long hits = store.getHitCount();
+        long misses = store.getMissCount();
+
+        assertNull(sessionManager.retrieve(second.getId()));
+        assertNotNull(sessionManager.retrieve(third.getId()));
+
+        assertEquals(3, store.size());
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(misses + 1, store.getMissCount());
+        assertEquals(hits + 1, store.getHitCount());
+        assertEquals(1, expirationCounter.expirations);
+    }
+
+    /**
+     * <p>
+     * Tests if frequently used sessions survive a flood of sessions that are never used again.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWTinyLFUKeepsPopularSessions() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().boundedSessionStore(100, EvictionPolicyType.W_TINY_LFU);
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+        SessionManager sessionManager = picketBoxManager.getSessionManager();
+
+        List<PicketBoxSession> popularSessions = new ArrayList<PicketBoxSession>();
+
+        for (int i = 0; i < 50; i++) {
+            popularSessions.add(createSession(sessionManager));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            for (PicketBoxSession session : popularSessions) {
+                sessionManager.retrieve(session.getId());
+            }
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            createSession(sessionManager);
+        }
+
+        for (PicketBoxSession session : popularSessions) {
+            assertTrue(session.isValid());
+            assertNotNull(sessionManager.retrieve(session.getId()));
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if sessions are evicted when the estimated size of the store exceeds the configured budget.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWeightEviction() throws Exception {
+        BoundedSessionStore store = new BoundedSessionStore(1000, 4096, EvictionPolicyType.LRU, null);
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().store(store);
+
+        SessionManager sessionManager = getPicketBoxManager(builder.build()).getSessionManager();
+
+        for (int i = 0; i < 10; i++) {
+            PicketBoxSession session = createSession(sessionManager);
+
+            session.setAttribute("data", new byte[1024]);
+        }
+
+        assertTrue(store.getWeight() <= 4096);
+        assertTrue(store.getEvictionCount() > 0);
+        assertTrue(store.size() < 10);
+    }
+
+    /**
+     * <p>
+     * Tests if the oldest sessions of a principal are expired when it exceeds the maximum number of concurrent sessions.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMaxSessionsPerPrincipal() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore().maxSessionsPerPrincipal(2);
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+
+        UserContext first = authenticate(picketBoxManager);
+        UserContext second = authenticate(picketBoxManager);
+
+        assertTrue(first.getSession().isValid());
+        assertTrue(second.getSession().isValid());
+
+        UserContext third = authenticate(picketBoxManager);
+
+        assertFalse(first.getSession().isValid());
+        assertTrue(second.getSession().isValid());
+        assertTrue(third.getSession().isValid());
+        assertNull(picketBoxManager.getSessionManager().retrieve(first.getSession().getId()));
+    }
+
+    private UserContext authenticate(PicketBoxManager picketBoxManager) throws Exception {
+        UserContext authenticatingUserContext = new UserContext();
+
+        authenticatingUserContext.setCredential(new UsernamePasswordCredential("admin", "admin"));
+
+        UserContext subject = picketBoxManager.authenticate(authenticatingUserContext);
+
+        assertTrue(subject.isAuthenticated());
+
+        return subject;
+    }
+
+    private PicketBoxSession createSession(SessionManager sessionManager) {
+        UserContext subject = new UserContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+        };
+
+        return sessionManager.create(subject);
+    }
+
+    private static class ExpirationCounter implements SessionEventHandler {
+
+        private int expirations;
+
+        @Override
+        public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+            return SessionEvent.class;
+        }
+
+        @Override
+        public void onCreate(SessionEvent sessionEvent) {
+        }
+
+        @Override
+        public void onSetAttribute(SessionEvent sessionEvent, String key, Object val) {
+        }
+
+        @Override
+        public void onGetAttribute(SessionEvent sessionEvent, String key) {
+        }
+
+        @Override
+        public void onInvalidate(SessionEvent sessionEvent) {
+        }
+
+        @Override
+        public void onExpiration(SessionEvent sessionEvent) {
+            this.expirations++;
+        }
+    }
+}
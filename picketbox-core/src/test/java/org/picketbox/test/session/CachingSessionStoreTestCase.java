@@ -0,0 +1,190 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.CachingSessionStore;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.JavaSessionSerializer;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionId;
+import org.picketbox.core.session.SessionManager;
+
+/**
+ * <p>
+ * Tests the {@link CachingSessionStore} in front of a fake remote store.
+ * </p>
+ */
+public class CachingSessionStoreTestCase {
+
+    @Test
+    public void testLoadsAreCached() throws Exception {
+        RemoteSessionStore remoteStore = new RemoteSessionStore();
+        CachingSessionStore store = new CachingSessionStore(remoteStore, 10, 1, TimeUnit.HOURS);
+
+        store.start();
+
+        try {
+            PicketBoxSession session = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+
+            remoteStore.store(session);
+
+            PicketBoxSession loaded = store.load(session.getId());
+
+            assertNotNull(loaded);
+            assertNotSame(session, loaded);
+
+            for (int i = 0; i < 10; i++) {
+                assertSame(loaded, store.load(session.getId()));
+            }
+
+            assertEquals(1, remoteStore.loads.get());
+            assertEquals(10, store.getHitCount());
+            assertEquals(1, store.getMissCount());
+            assertTrue(store.getHitRate() > 0.9);
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testStaleCopiesExpire() throws Exception {
+        RemoteSessionStore remoteStore = new RemoteSessionStore();
+        CachingSessionStore store = new CachingSessionStore(remoteStore, 10, 50, TimeUnit.MILLISECONDS);
+
+        store.start();
+
+        try {
+            PicketBoxSession session = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+
+            store.store(session);
+
+            assertSame(session, store.load(session.getId()));
+
+            // another node changes the session
+            PicketBoxSession otherNodeSession = remoteStore.load(session.getId());
+
+            otherNodeSession.setAttribute("a", "b");
+            remoteStore.update(otherNodeSession);
+
+            Thread.sleep(100);
+
+            assertEquals("b", store.load(session.getId()).getAttribute("a"));
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testEvictsLocalCopies() throws Exception {
+        RemoteSessionStore remoteStore = new RemoteSessionStore();
+        CachingSessionStore store = new CachingSessionStore(remoteStore, 2, 1, TimeUnit.HOURS);
+
+        store.start();
+
+        try {
+            for (int i = 0; i < 5; i++) {
+                store.store(new PicketBoxSession(new UserContext(), new DefaultSessionId()));
+            }
+
+            assertEquals(2, store.size());
+            assertEquals(3, store.getEvictionCount());
+            assertEquals(5, remoteStore.getSessions().size());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testInvalidationThroughSessionManager() throws Exception {
+        RemoteSessionStore remoteStore = new RemoteSessionStore();
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().store(remoteStore).localCache(10, 1, TimeUnit.HOURS);
+
+        PicketBoxManager picketBoxManager = new DefaultPicketBoxManager(builder.build());
+
+        picketBoxManager.start();
+
+        try {
+            SessionManager sessionManager = picketBoxManager.getSessionManager();
+            PicketBoxSession session = sessionManager.create(new UserContext());
+            int loads = remoteStore.loads.get();
+
+            assertSame(session, sessionManager.retrieve(session.getId()));
+            assertEquals(loads, remoteStore.loads.get());
+
+            session.invalidate();
+
+            assertNull(sessionManager.retrieve(session.getId()));
+            assertEquals(loads + 1, remoteStore.loads.get());
+        } finally {
+            picketBoxManager.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Simulates a remote store: every load returns a new copy of the stored session.
+     * </p>
+     */
+    private static class RemoteSessionStore extends InMemorySessionStore {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public PicketBoxSession load(SessionId<? extends Serializable> key) {
+            this.loads.incrementAndGet();
+
+            PicketBoxSession session = super.load(key);
+
+            if (session == null) {
+                return null;
+            }
+
+            try {
+                JavaSessionSerializer serializer = new JavaSessionSerializer();
+
+                return serializer.deserialize(serializer.serialize(session));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.session.CompactSessionSerializer;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.JavaSessionSerializer;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.test.AuthenticatedUserContext;
+import org.picketlink.idm.model.Role;
+import org.picketlink.idm.model.SimpleRole;
+
+/**
+ * <p>
+ * Tests the {@link CompactSessionSerializer}.
+ * </p>
+ */
+public class CompactSessionSerializerTestCase {
+
+    private final CompactSessionSerializer serializer = new CompactSessionSerializer();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        PicketBoxSession session = createSession();
+        Map<String, Object> map = new HashMap<String, Object>();
+        List<Object> list = new ArrayList<Object>();
+
+        map.put("key", "value");
+        list.add(1);
+        list.add("two");
+        list.add(null);
+
+        session.setAttribute("string", "value");
+        session.setAttribute("int", -42);
+        session.setAttribute("long", Long.MAX_VALUE);
+        session.setAttribute("boolean", true);
+        session.setAttribute("double", 3.5d);
+        session.setAttribute("float", 1.25f);
+        session.setAttribute("short", (short) -7);
+        session.setAttribute("byte", (byte) 8);
+        session.setAttribute("char", 'x');
+        session.setAttribute("bytes", new byte[] { 1, 2, 3 });
+        session.setAttribute("list", list);
+        session.setAttribute("map", map);
+        session.setAttribute("date", new Date(1234567890L));
+        session.setAttribute("custom", new CustomAttribute("custom"));
+
+        PicketBoxSession restored = this.serializer.deserialize(this.serializer.serialize(session));
+
+        assertEquals(session.getId(), restored.getId());
+        assertEquals(session.getCreationTime(), restored.getCreationTime());
+        assertEquals(session.getLastAccessedTime(), restored.getLastAccessedTime());
+        assertTrue(restored.isValid());
+
+        UserContext userContext = restored.getUserContext();
+
+        assertNotNull(userContext);
+        assertTrue(userContext.isAuthenticated());
+        assertEquals("admin", userContext.getPrincipal().getName());
+        assertTrue(userContext.hasRole("manager"));
+        assertTrue(userContext.hasRole("developer"));
+        assertEquals(2, userContext.getRoles().size());
+
+        Map<String, Object> attributes = restored.getAttributes();
+
+        assertEquals("value", attributes.get("string"));
+        assertEquals(-42, attributes.get("int"));
+        assertEquals(Long.MAX_VALUE, attributes.get("long"));
+        assertEquals(Boolean.TRUE, attributes.get("boolean"));
+        assertEquals(3.5d, attributes.get("double"));
+        assertEquals(1.25f, attributes.get("float"));
+        assertEquals((short) -7, attributes.get("short"));
+        assertEquals((byte) 8, attributes.get("byte"));
+        assertEquals('x', attributes.get("char"));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, (byte[]) attributes.get("bytes")));
+        assertEquals(list, attributes.get("list"));
+        assertEquals(map, attributes.get("map"));
+        assertEquals(new Date(1234567890L), attributes.get("date"));
+        assertEquals(new CustomAttribute("custom"), attributes.get("custom"));
+    }
+
+    @Test
+    public void testInvalidSession() throws Exception {
+        PicketBoxSession session = createSession();
+
+        session.invalidate();
+
+        assertFalse(this.serializer.deserialize(this.serializer.serialize(session)).isValid());
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception {
+        PicketBoxSession session = createSession();
+
+        session.setAttribute("lastPage", "/app/page/1");
+        session.setAttribute("counter", 10);
+
+        int compactSize = this.serializer.serialize(session).length;
+        int javaSize = new JavaSessionSerializer().serialize(session).length;
+
+        assertTrue("Compact size " + compactSize + " should be smaller than " + javaSize, compactSize * 4 < javaSize);
+    }
+
+    @Test
+    public void testReadsJavaSerialization() throws Exception {
+        PicketBoxSession session = createSession();
+
+        session.setAttribute("string", "value");
+
+        PicketBoxSession restored = this.serializer.deserialize(new JavaSessionSerializer().serialize(session));
+
+        assertEquals(session.getId(), restored.getId());
+        assertEquals("value", restored.getAttribute("string"));
+    }
+
+    @Test
+    public void testRejectsNewerVersion() throws Exception {
+        byte[] data = this.serializer.serialize(createSession());
+
+        data[2] = (byte) (CompactSessionSerializer.VERSION + 1);
+
+        try {
+            this.serializer.deserialize(data);
+            fail("Newer versions should be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRejectsTruncatedData() throws Exception {
+        PicketBoxSession session = createSession();
+
+        session.setAttribute("string", "value");
+
+        byte[] data = this.serializer.serialize(session);
+
+        try {
+            this.serializer.deserialize(Arrays.copyOf(data, data.length - 3));
+            fail("Truncated data should be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    static PicketBoxSession createSession() {
+        UserContext userContext = new AuthenticatedUserContext("admin");
+        List<Role> roles = new ArrayList<Role>();
+
+        roles.add(new SimpleRole("manager"));
+        roles.add(new SimpleRole("developer"));
+
+        userContext.setRoles(roles);
+
+        PicketBoxSession session = new PicketBoxSession(userContext, new DefaultSessionId());
+
+        userContext.setSession(session);
+
+        return session;
+    }
+
+    private static class CustomAttribute implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        CustomAttribute(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CustomAttribute && this.value.equals(((CustomAttribute) obj).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.value.hashCode();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+
+/**
+ * <p>
+ * Stress tests the {@link InMemorySessionStore} with many threads creating, retrieving and expiring sessions.
+ * </p>
+ */
+public class ConcurrentSessionStoreTestCase {
+
+    private static final int THREADS = 16;
+    private static final int SESSIONS_PER_THREAD = 2000;
+
+    private InMemorySessionStore store;
+    private PicketBoxManager picketBoxManager;
+    private SessionManager sessionManager;
+
+    @Before
+    public void onSetup() {
+        this.store = new InMemorySessionStore(THREADS * SESSIONS_PER_THREAD, THREADS);
+
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder
+            .sessionManager()
+                .store(this.store)
+                .idleTimeout(50, TimeUnit.MILLISECONDS)
+                .touchGranularity(0, TimeUnit.MILLISECONDS)
+                .expirationTickDuration(5, TimeUnit.MILLISECONDS)
+                .expirationWorkerThreads(4);
+
+        this.picketBoxManager = new DefaultPicketBoxManager(builder.build());
+        this.picketBoxManager.start();
+
+        this.sessionManager = this.picketBoxManager.getSessionManager();
+    }
+
+    @After
+    public void onFinish() {
+        this.picketBoxManager.stop();
+    }
+
+    /**
+     * <p>
+     * Tests if the store stays consistent while many threads create, retrieve, update and expire sessions, and while the
+     * expiration threads remove idle sessions.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentCreateRetrieveExpire() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    startLatch.await();
+
+                    int expired = 0;
+
+                    for (int j = 0; j < SESSIONS_PER_THREAD; j++) {
+                        PicketBoxSession session = sessionManager.create(createUserContext());
+
+                        PicketBoxSession retrieved = sessionManager.retrieve(session.getId());
+
+                        if (retrieved != null && retrieved.isValid()) {
+                            try {
+                                retrieved.setAttribute("counter", j);
+                            } catch (Exception e) {
+                                // the session may be expired concurrently
+                            }
+                        }
+
+                        if (j % 3 == 0 && session.isValid()) {
+                            try {
+                                session.expire();
+                                expired++;
+                                assertNull(sessionManager.retrieve(session.getId()));
+                            } catch (Exception e) {
+                                // the session may be expired concurrently
+                            }
+                        }
+
+                        // iterating while other threads change the store must be safe
+                        if (j % 500 == 0) {
+                            for (PicketBoxSession stored : store.getSessions()) {
+                                assertNotNull(stored.getId());
+                            }
+                        }
+                    }
+
+                    return expired;
+                }
+            }));
+        }
+
+        startLatch.countDown();
+
+        for (Future<Integer> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        long start = System.currentTimeMillis();
+
+        while (!this.store.getSessions().isEmpty() && System.currentTimeMillis() - start < 10000) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(0, this.store.getSessions().size());
+    }
+
+    /**
+     * <p>
+     * Tests if a session removed by another thread is not stored again by an update.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateDoesNotResurrectRemovedSession() throws Exception {
+        PicketBoxSession session = this.sessionManager.create(createUserContext());
+
+        this.store.remove(session.getId());
+        this.store.update(session);
+
+        assertNull(this.store.load(session.getId()));
+        assertFalse(this.store.getSessions().contains(session));
+    }
+
+    private UserContext createUserContext() {
+        return new UserContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+        };
+    }
+}
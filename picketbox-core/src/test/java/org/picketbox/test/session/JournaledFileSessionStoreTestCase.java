@@ -0,0 +1,362 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.config.PicketBoxConfiguration;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.JournalSyncPolicy;
+import org.picketbox.core.session.JournaledFileSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.SessionStore;
+
+/**
+ * <p>
+ * Tests the {@link JournaledFileSessionStore}.
+ * </p>
+ */
+public class JournaledFileSessionStoreTestCase {
+
+    private File directory;
+
+    @Before
+    public void onSetup() throws Exception {
+        this.directory = File.createTempFile("pbox-sessions", "");
+        this.directory.delete();
+    }
+
+    @After
+    public void onFinish() {
+        File[] files = this.directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        this.directory.delete();
+    }
+
+    /**
+     * <p>
+     * Tests if sessions stored, updated and removed before a stop are properly recovered.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRecovery() throws Exception {
+        PicketBoxManager picketBoxManager = createPicketBoxManager(JournalSyncPolicy.ALWAYS);
+        SessionManager sessionManager = picketBoxManager.getSessionManager();
+
+        PicketBoxSession kept = sessionManager.create(new UserContext());
+        PicketBoxSession removed = sessionManager.create(new UserContext());
+
+        kept.setAttribute("name", "value");
+        removed.invalidate();
+
+        picketBoxManager.stop();
+
+        JournaledFileSessionStore store = new JournaledFileSessionStore(this.directory.getPath());
+
+        store.start();
+
+        try {
+            PicketBoxSession recovered = store.load(kept.getId());
+
+            assertNotNull(recovered);
+            assertEquals("value", recovered.getAttributes().get("name"));
+            assertNull(store.load(removed.getId()));
+        } finally {
+            store.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if sessions are recovered from the journal when the store is not properly stopped, and if an incomplete record at
+     * the end of the journal is discarded.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRecoveryAfterCrash() throws Exception {
+        JournaledFileSessionStore store = new JournaledFileSessionStore(this.directory.getPath(), JournalSyncPolicy.ALWAYS);
+
+        store.start();
+
+        PicketBoxSession session = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+
+        store.store(session);
+
+        // simulates a torn write at the end of the journal
+        File journal = null;
+
+        for (File file : this.directory.listFiles()) {
+            if (file.getName().endsWith(".journal")) {
+                journal = file;
+            }
+        }
+
+        assertNotNull(journal);
+
+        FileOutputStream output = new FileOutputStream(journal, true);
+
+        output.write(new byte[] { 1, 0, 0, 1, 0, 42 });
+        output.close();
+
+        JournaledFileSessionStore recoveredStore = new JournaledFileSessionStore(this.directory.getPath());
+
+        recoveredStore.start();
+
+        try {
+            assertNotNull(recoveredStore.load(session.getId()));
+        } finally {
+            recoveredStore.stop();
+            store.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if calls waiting for records that could not be written fail, and if the sessions kept in memory are written
+     * to a snapshot afterwards.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteFailure() throws Exception {
+        JournaledFileSessionStore store = new JournaledFileSessionStore(this.directory.getPath(), JournalSyncPolicy.ALWAYS,
+                10, JournaledFileSessionStore.DEFAULT_COMPACTION_THRESHOLD);
+
+        store.start();
+
+        PicketBoxSession failedSession = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+        PicketBoxSession nextSession = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+
+        try {
+            // simulates an I/O error on the next write
+            Field journalChannel = JournaledFileSessionStore.class.getDeclaredField("journalChannel");
+
+            journalChannel.setAccessible(true);
+            ((FileChannel) journalChannel.get(store)).close();
+
+            try {
+                store.store(failedSession);
+                fail("The record was not written.");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            // acknowledged by the snapshot written after the failure
+            store.store(nextSession);
+        } finally {
+            store.stop();
+        }
+
+        JournaledFileSessionStore recoveredStore = new JournaledFileSessionStore(this.directory.getPath());
+
+        recoveredStore.start();
+
+        try {
+            assertNotNull(recoveredStore.load(failedSession.getId()));
+            assertNotNull(recoveredStore.load(nextSession.getId()));
+        } finally {
+            recoveredStore.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if sessions that can not be serialized are neither published nor marked as clean.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSerializationFailure() throws Exception {
+        JournaledFileSessionStore store = new JournaledFileSessionStore(this.directory.getPath());
+
+        store.start();
+
+        try {
+            PicketBoxSession rejected = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+
+            rejected.setAttribute("value", new Object());
+
+            try {
+                store.store(rejected);
+                fail("The session can not be serialized.");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            assertNull(store.load(rejected.getId()));
+            assertEquals(0, store.count());
+            assertTrue(rejected.isDirty());
+
+            PicketBoxSession stored = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+
+            store.store(stored);
+            stored.setAttribute("value", new Object());
+
+            try {
+                store.update(stored);
+                fail("The attribute can not be serialized.");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            assertTrue(stored.isDirty());
+        } finally {
+            store.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if sessions recovered when the session manager starts are expired after the idle timeout.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRecoveredSessionExpiration() throws Exception {
+        PicketBoxManager picketBoxManager = createPicketBoxManager(JournalSyncPolicy.ALWAYS);
+        PicketBoxSession session = picketBoxManager.getSessionManager().create(new UserContext());
+
+        picketBoxManager.stop();
+
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder
+            .sessionManager()
+                .fileSessionStore(this.directory.getPath(), JournalSyncPolicy.ALWAYS)
+                .idleTimeout(200, TimeUnit.MILLISECONDS)
+                .expirationTickDuration(10, TimeUnit.MILLISECONDS);
+
+        PicketBoxConfiguration configuration = builder.build();
+        SessionStore store = configuration.getSessionManager().getStore();
+        PicketBoxManager restartedManager = new DefaultPicketBoxManager(configuration);
+
+        restartedManager.start();
+
+        try {
+            // loading from the store does not touch the session
+            long deadline = System.currentTimeMillis() + 10000;
+
+            while (store.load(session.getId()) != null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertNull(store.load(session.getId()));
+            assertNull(restartedManager.getSessionManager().retrieve(session.getId()));
+        } finally {
+            restartedManager.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if the compaction writes a snapshot and discards the older files.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompaction() throws Exception {
+        JournaledFileSessionStore store = new JournaledFileSessionStore(this.directory.getPath(), JournalSyncPolicy.INTERVAL);
+
+        store.start();
+
+        PicketBoxSession session = null;
+
+        for (int i = 0; i < 100; i++) {
+            session = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+            store.store(session);
+        }
+
+        store.compact();
+
+        int snapshots = 0;
+        int journals = 0;
+
+        for (File file : this.directory.listFiles()) {
+            if (file.getName().endsWith(".snapshot")) {
+                snapshots++;
+            } else if (file.getName().endsWith(".journal")) {
+                journals++;
+            }
+        }
+
+        assertEquals(1, snapshots);
+        assertEquals(1, journals);
+
+        store.stop();
+
+        JournaledFileSessionStore recoveredStore = new JournaledFileSessionStore(this.directory.getPath());
+
+        recoveredStore.start();
+
+        try {
+            assertNotNull(recoveredStore.load(session.getId()));
+            assertTrue(recoveredStore.getSessions().size() == 100);
+        } finally {
+            recoveredStore.stop();
+        }
+    }
+
+    private PicketBoxManager createPicketBoxManager(JournalSyncPolicy syncPolicy) {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().fileSessionStore(this.directory.getPath(), syncPolicy);
+
+        PicketBoxManager picketBoxManager = new DefaultPicketBoxManager(builder.build());
+
+        picketBoxManager.start();
+
+        return picketBoxManager;
+    }
+}
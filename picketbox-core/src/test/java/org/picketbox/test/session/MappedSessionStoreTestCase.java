@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.MappedSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+
+/**
+ * <p>
+ * Tests the {@link MappedSessionStore}.
+ * </p>
+ */
+public class MappedSessionStoreTestCase {
+
+    private File file;
+
+    @Before
+    public void onSetup() throws Exception {
+        this.file = File.createTempFile("pbox-sessions", ".dat");
+        this.file.delete();
+    }
+
+    @After
+    public void onFinish() {
+        this.file.delete();
+    }
+
+    /**
+     * <p>
+     * Tests if sessions are properly stored, updated and removed, and if the slots of removed sessions are reused.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStoreUpdateRemove() throws Exception {
+        MappedSessionStore store = new MappedSessionStore(this.file.getPath(), 16, 256);
+
+        store.start();
+
+        try {
+            PicketBoxSession session = createSession();
+
+            session.setAttribute("name", "value");
+
+            store.store(session);
+
+            PicketBoxSession loaded = store.load(session.getId());
+
+            assertNotNull(loaded);
+            assertEquals("value", loaded.getAttributes().get("name"));
+
+            session.setAttribute("name", "other value");
+            session.setAttribute("large", new byte[2048]);
+
+            store.update(session);
+
+            loaded = store.load(session.getId());
+
+            assertEquals("other value", loaded.getAttributes().get("name"));
+            assertEquals(2048, ((byte[]) loaded.getAttributes().get("large")).length);
+
+            int freeSlots = store.getFreeSlotCount();
+
+            store.remove(session.getId());
+
+            assertNull(store.load(session.getId()));
+            assertEquals(0, store.size());
+            assertTrue(store.getFreeSlotCount() > freeSlots);
+            assertEquals(store.getSlotCount(), store.getFreeSlotCount());
+        } finally {
+            store.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if the file grows when there are no free slots and if sessions survive a restart.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGrowAndRestart() throws Exception {
+        MappedSessionStore store = new MappedSessionStore(this.file.getPath(), 16, 256);
+        List<PicketBoxSession> sessions = new ArrayList<PicketBoxSession>();
+
+        store.start();
+
+        for (int i = 0; i < 1000; i++) {
+            PicketBoxSession session = createSession();
+
+            session.setAttribute("index", i);
+
+            store.store(session);
+            sessions.add(session);
+        }
+
+        for (int i = 0; i < sessions.size(); i += 2) {
+            store.remove(sessions.get(i).getId());
+        }
+
+        assertTrue(store.getSlotCount() >= 1000);
+        assertEquals(500, store.size());
+
+        store.stop();
+
+        MappedSessionStore restartedStore = new MappedSessionStore(this.file.getPath(), 16, 256);
+
+        restartedStore.start();
+
+        try {
+            assertEquals(500, restartedStore.size());
+
+            for (int i = 0; i < sessions.size(); i++) {
+                PicketBoxSession loaded = restartedStore.load(sessions.get(i).getId());
+
+                if (i % 2 == 0) {
+                    assertNull(loaded);
+                } else {
+                    assertNotNull(loaded);
+                    assertEquals(i, loaded.getAttributes().get("index"));
+                }
+            }
+        } finally {
+            restartedStore.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests the store when used by the session manager.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWithSessionManager() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().mappedSessionStore(this.file.getPath());
+
+        PicketBoxManager picketBoxManager = new DefaultPicketBoxManager(builder.build());
+
+        picketBoxManager.start();
+
+        try {
+            SessionManager sessionManager = picketBoxManager.getSessionManager();
+            PicketBoxSession session = sessionManager.create(new UserContext());
+
+            session.setAttribute("name", "value");
+
+            PicketBoxSession retrieved = sessionManager.retrieve(session.getId());
+
+            assertEquals("value", retrieved.getAttribute("name"));
+
+            session.invalidate();
+
+            assertNull(sessionManager.retrieve(session.getId()));
+        } finally {
+            picketBoxManager.stop();
+        }
+    }
+
+    private PicketBoxSession createSession() {
+        return new PicketBoxSession(new UserContext(), new DefaultSessionId());
+    }
+}
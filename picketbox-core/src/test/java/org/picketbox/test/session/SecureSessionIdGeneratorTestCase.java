@@ -0,0 +1,200 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.CompactSessionSerializer;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SecureSessionId;
+import org.picketbox.core.session.SecureSessionIdGenerator;
+
+/**
+ * <p>
+ * Tests the {@link SecureSessionIdGenerator} and the {@link SecureSessionId}.
+ * </p>
+ */
+public class SecureSessionIdGeneratorTestCase {
+
+    @Test
+    public void testUniqueAcrossThreads() throws Exception {
+        final SecureSessionIdGenerator generator = new SecureSessionIdGenerator();
+        final Set<SecureSessionId> ids = Collections.newSetFromMap(new ConcurrentHashMap<SecureSessionId, Boolean>());
+        final int threads = 4;
+        final int idsPerThread = 25000;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids.add(generator.generate());
+                    }
+
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        done.await();
+
+        assertEquals(threads * idsPerThread, ids.size());
+    }
+
+    @Test
+    public void testStringRepresentation() throws Exception {
+        SecureSessionIdGenerator generator = new SecureSessionIdGenerator();
+
+        for (int i = 0; i < 1000; i++) {
+            SecureSessionId id = generator.generate();
+            String value = id.toString();
+
+            assertEquals(16, id.length());
+            assertEquals(22, value.length());
+            assertTrue(value, value.matches("[A-Za-z0-9_-]+"));
+
+            SecureSessionId parsed = generator.parse(value);
+
+            assertEquals(id, parsed);
+            assertEquals(id.hashCode(), parsed.hashCode());
+            assertEquals(value, parsed.toString());
+        }
+    }
+
+    @Test
+    public void testEqualityOnBytes() throws Exception {
+        byte[] bytes = new byte[16];
+
+        Arrays.fill(bytes, (byte) 7);
+
+        SecureSessionId id = new SecureSessionId(bytes);
+
+        bytes[0] = 8;
+
+        assertFalse(id.equals(new SecureSessionId(bytes)));
+
+        bytes[0] = 7;
+
+        assertEquals(id, new SecureSessionId(bytes));
+        assertTrue(id == id.getId());
+    }
+
+    @Test
+    public void testRejectsInvalidStrings() throws Exception {
+        String[] invalidValues = { "", "abc+def", "a", "abcd=" };
+
+        for (String value : invalidValues) {
+            try {
+                SecureSessionId.fromString(value);
+                fail("Invalid value accepted: " + value);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsNonCanonicalStrings() throws Exception {
+        assertEquals(new SecureSessionId(new byte[] { 1 }), SecureSessionId.fromString("AQ"));
+
+        String value = new SecureSessionIdGenerator().generate().toString();
+        String base = value.substring(0, value.length() - 1);
+        char last = value.charAt(value.length() - 1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+        // the last character of a 128 bit identifier carries 4 unused bits
+        for (int i = 1; i < 4; i++) {
+            String other = base + alphabet.charAt(alphabet.indexOf(last) ^ i);
+
+            try {
+                SecureSessionId.fromString(other);
+                fail("Non canonical value accepted: " + other);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        for (String other : new String[] { "AR", "AAB" }) {
+            try {
+                SecureSessionId.fromString(other);
+                fail("Non canonical value accepted: " + other);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsShortIds() throws Exception {
+        try {
+            new SecureSessionIdGenerator(8, SecureSessionIdGenerator.DEFAULT_ALGORITHM);
+            fail("Identifiers with less than 128 bits should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        CompactSessionSerializer serializer = new CompactSessionSerializer();
+        PicketBoxSession session = new PicketBoxSession(new UserContext(), new SecureSessionIdGenerator().generate());
+
+        assertEquals(session.getId(), serializer.deserialize(serializer.serialize(session)).getId());
+    }
+
+    @Test
+    public void testSessionManagerUsesGenerator() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore();
+
+        PicketBoxManager picketBoxManager = new DefaultPicketBoxManager(builder.build());
+
+        picketBoxManager.start();
+
+        try {
+            PicketBoxSession session = picketBoxManager.getSessionManager().create(new UserContext());
+
+            assertTrue(session.getId() instanceof SecureSessionId);
+            assertEquals(session, picketBoxManager.getSessionManager().retrieve(
+                    SecureSessionId.fromString(session.getId().toString())));
+        } finally {
+            picketBoxManager.stop();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.MappedSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.PrincipalSessionIndex;
+import org.picketbox.core.session.SecureSessionIdGenerator;
+import org.picketbox.core.session.SessionFilter;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.SessionStore;
+import org.picketbox.core.session.WriteBehindSessionStore;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+import org.picketbox.test.AuthenticatedUserContext;
+
+/**
+ * <p>
+ * Tests the bulk operations of the {@link SessionManager} and the principal index kept by the {@link SessionStore}
+ * implementations.
+ * </p>
+ */
+public class SessionAdministrationTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    private final SecureSessionIdGenerator idGenerator = new SecureSessionIdGenerator();
+
+    /**
+     * <p>
+     * Tests if all sessions of a principal are found and invalidated.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidateAllForPrincipal() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore();
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+        SessionManager sessionManager = picketBoxManager.getSessionManager();
+
+        List<UserContext> userContexts = new ArrayList<UserContext>();
+
+        for (int i = 0; i < 3; i++) {
+            userContexts.add(authenticate(picketBoxManager));
+        }
+
+        sessionManager.create(createUserContext("john"));
+
+        assertEquals(4, sessionManager.count());
+        assertEquals(3, sessionManager.findByPrincipal("admin").size());
+        assertEquals(1, sessionManager.findByPrincipal("john").size());
+        assertTrue(sessionManager.findByPrincipal("nobody").isEmpty());
+
+        assertEquals(3, sessionManager.invalidateAllFor("admin"));
+
+        for (UserContext userContext : userContexts) {
+            assertFalse(userContext.getSession().isValid());
+            assertNull(sessionManager.retrieve(userContext.getSession().getId()));
+        }
+
+        assertEquals(1, sessionManager.count());
+        assertTrue(sessionManager.findByPrincipal("admin").isEmpty());
+        assertEquals(0, sessionManager.invalidateAllFor("admin"));
+    }
+
+    /**
+     * <p>
+     * Tests if only the sessions accepted by the filter are returned.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIterate() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore();
+
+        PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+        SessionManager sessionManager = picketBoxManager.getSessionManager();
+
+        for (int i = 0; i < 10; i++) {
+            sessionManager.create(createUserContext(i % 2 == 0 ? "admin" : "john"));
+        }
+
+        Iterator<PicketBoxSession> iterator = sessionManager.iterate(new SessionFilter() {
+            @Override
+            public boolean accept(PicketBoxSession session) {
+                return "admin".equals(PrincipalSessionIndex.getPrincipalName(session));
+            }
+        });
+
+        int count = 0;
+
+        while (iterator.hasNext()) {
+            assertEquals("admin", PrincipalSessionIndex.getPrincipalName(iterator.next()));
+            count++;
+        }
+
+        assertEquals(5, count);
+
+        count = 0;
+
+        for (iterator = sessionManager.iterate(null); iterator.hasNext(); iterator.next()) {
+            count++;
+        }
+
+        assertEquals(10, count);
+    }
+
+    /**
+     * <p>
+     * Tests if the principal index follows removals and is rebuilt when a persistent store is restarted.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMappedStoreIndex() throws Exception {
+        File file = File.createTempFile("pbox-sessions", ".dat");
+
+        file.delete();
+
+        try {
+            MappedSessionStore store = new MappedSessionStore(file.getPath(), 16, 256);
+
+            store.start();
+
+            List<PicketBoxSession> sessions = new ArrayList<PicketBoxSession>();
+
+            for (int i = 0; i < 10; i++) {
+                PicketBoxSession session = new PicketBoxSession(createUserContext(i < 6 ? "admin" : "john"),
+                        this.idGenerator.generate());
+
+                store.store(session);
+                sessions.add(session);
+            }
+
+            store.remove(sessions.get(0).getId());
+
+            assertEquals(5, store.findByPrincipal("admin").size());
+            assertEquals(4, store.findByPrincipal("john").size());
+
+            store.stop();
+
+            MappedSessionStore restartedStore = new MappedSessionStore(file.getPath(), 16, 256);
+
+            restartedStore.start();
+
+            try {
+                assertEquals(9, restartedStore.count());
+                assertEquals(5, restartedStore.findByPrincipal("admin").size());
+                assertEquals(4, restartedStore.findByPrincipal("john").size());
+
+                int count = 0;
+
+                for (Iterator<PicketBoxSession> iterator = restartedStore.iterator(); iterator.hasNext(); iterator.next()) {
+                    count++;
+                }
+
+                assertEquals(9, count);
+            } finally {
+                restartedStore.stop();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if sessions not yet written by a {@link WriteBehindSessionStore} are found by principal.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteBehindIndex() throws Exception {
+        WriteBehindSessionStore store = new WriteBehindSessionStore(new InMemorySessionStore(), 1000, 1, TimeUnit.HOURS,
+                1000);
+
+        store.start();
+
+        try {
+            PicketBoxSession flushed = new PicketBoxSession(createUserContext("admin"),
+                    this.idGenerator.generate());
+
+            store.store(flushed);
+            store.flush();
+
+            PicketBoxSession pending = new PicketBoxSession(createUserContext("admin"),
+                    this.idGenerator.generate());
+
+            store.store(pending);
+
+            assertEquals(1, store.getPendingCount());
+            assertEquals(2, store.findByPrincipal("admin").size());
+
+            store.remove(flushed.getId());
+
+            assertEquals(1, store.findByPrincipal("admin").size());
+            assertEquals(1, store.count());
+            assertEquals(0, store.getPendingCount());
+        } finally {
+            store.stop();
+        }
+    }
+
+    private UserContext authenticate(PicketBoxManager picketBoxManager) throws Exception {
+        UserContext authenticatingUserContext = new UserContext();
+
+        authenticatingUserContext.setCredential(new UsernamePasswordCredential("admin", "admin"));
+
+        UserContext subject = picketBoxManager.authenticate(authenticatingUserContext);
+
+        assertTrue(subject.isAuthenticated());
+
+        return subject;
+    }
+
+    private UserContext createUserContext(String principalName) {
+        return new AuthenticatedUserContext(principalName);
+    }
+}
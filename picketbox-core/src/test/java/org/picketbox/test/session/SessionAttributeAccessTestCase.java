@@ -0,0 +1,325 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.JournaledFileSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionId;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.SessionStore;
+import org.picketbox.core.session.event.SessionEvent;
+import org.picketbox.core.session.event.SessionEventHandler;
+
+/**
+ * <p>
+ * Tests the local attribute access and the dirty tracking of {@link PicketBoxSession}.
+ * </p>
+ */
+public class SessionAttributeAccessTestCase {
+
+    private File directory;
+    private PicketBoxManager picketBoxManager;
+
+    @Before
+    public void onSetup() throws Exception {
+        this.directory = File.createTempFile("pbox-journal", "");
+        this.directory.delete();
+    }
+
+    @After
+    public void onFinish() throws Exception {
+        if (this.picketBoxManager != null && this.picketBoxManager.started()) {
+            this.picketBoxManager.stop();
+        }
+
+        File[] files = this.directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        this.directory.delete();
+    }
+
+    @Test
+    public void testGetAttributeDoesNotAccessStore() throws Exception {
+        CountingSessionStore store = new CountingSessionStore();
+        GetAttributeEventHandler handler = new GetAttributeEventHandler();
+        SessionManager sessionManager = createSessionManager(store, handler, false);
+
+        PicketBoxSession session = sessionManager.create(new UserContext());
+
+        session.setAttribute("a", "b");
+
+        int loads = store.loads.get();
+        int updates = store.updates.get();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("b", session.getAttribute("a"));
+        }
+
+        assertEquals(loads, store.loads.get());
+        assertEquals(updates, store.updates.get());
+
+        // handlers are notified even when attributes are not refreshed from the store
+        assertEquals(10, handler.calls.get());
+    }
+
+    @Test
+    public void testCleanSessionIsNotUpdated() throws Exception {
+        CountingSessionStore store = new CountingSessionStore();
+        SessionManager sessionManager = createSessionManager(store, null, false);
+
+        PicketBoxSession session = sessionManager.create(new UserContext());
+
+        assertFalse(session.isDirty());
+
+        session.setAttribute("a", "b");
+
+        assertEquals(1, store.updates.get());
+        assertFalse(session.isDirty());
+
+        sessionManager.update(session);
+
+        assertEquals(1, store.updates.get());
+
+        session.removeAttribute("a");
+
+        assertEquals(2, store.updates.get());
+        assertFalse(session.isDirty());
+
+        sessionManager.update(session);
+
+        assertEquals(2, store.updates.get());
+    }
+
+    @Test
+    public void testDrainDirtyAttributes() throws Exception {
+        PicketBoxSession session = new PicketBoxSession(new UserContext(), new DefaultSessionId());
+
+        session.setAttribute("a", "1");
+        session.setAttribute("b", "2");
+        session.removeAttribute("c");
+
+        assertEquals(3, session.drainDirtyAttributes().size());
+        assertFalse(session.isDirty());
+        assertTrue(session.drainDirtyAttributes().isEmpty());
+    }
+
+    @Test
+    public void testJournalWritesChangedAttributes() throws Exception {
+        JournaledFileSessionStore store = new JournaledFileSessionStore(this.directory.getPath());
+        SessionManager sessionManager = createSessionManager(store, null, false);
+
+        PicketBoxSession session = sessionManager.create(new UserContext());
+
+        session.setAttribute("a", "1");
+        session.setAttribute("b", "2");
+        session.setAttribute("a", "3");
+        session.removeAttribute("b");
+        sessionManager.update(session);
+
+        this.picketBoxManager.stop();
+
+        JournaledFileSessionStore recoveredStore = new JournaledFileSessionStore(this.directory.getPath());
+
+        recoveredStore.start();
+
+        try {
+            PicketBoxSession recovered = recoveredStore.load(session.getId());
+
+            assertNotNull(recovered);
+            assertEquals("3", recovered.getAttribute("a"));
+            assertNull(recovered.getAttribute("b"));
+        } finally {
+            recoveredStore.stop();
+        }
+    }
+
+    @Test
+    public void testRefreshAttributesFromStore() throws Exception {
+        CopyingSessionStore store = new CopyingSessionStore();
+        GetAttributeEventHandler handler = new GetAttributeEventHandler();
+        SessionManager sessionManager = createSessionManager(store, handler, true);
+
+        PicketBoxSession session = sessionManager.create(new UserContext());
+
+        session.setAttribute("a", "1");
+
+        // another node changes the stored session
+        PicketBoxSession otherNodeSession = sessionManager.retrieve(session.getId());
+
+        otherNodeSession.setAttribute("a", "2");
+
+        int updates = store.updates.get();
+
+        assertEquals("2", session.getAttribute("a"));
+        assertTrue(handler.calls.get() > 0);
+
+        // refreshing an attribute never writes the session back
+        assertEquals(updates, store.updates.get());
+
+        // local changes not yet written are kept
+        store.updatesEnabled = false;
+
+        session.setAttribute("a", "3");
+
+        assertEquals("3", session.getAttribute("a"));
+    }
+
+    private SessionManager createSessionManager(SessionStore store, SessionEventHandler handler,
+            boolean refreshAttributesFromStore) {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().store(store);
+
+        if (refreshAttributesFromStore) {
+            builder.sessionManager().refreshAttributesFromStore();
+        }
+
+        if (handler != null) {
+            builder.eventManager().handler(handler);
+        }
+
+        this.picketBoxManager = new DefaultPicketBoxManager(builder.build());
+        this.picketBoxManager.start();
+
+        return this.picketBoxManager.getSessionManager();
+    }
+
+    private static class CountingSessionStore extends InMemorySessionStore {
+
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger updates = new AtomicInteger();
+
+        @Override
+        public PicketBoxSession load(SessionId<? extends Serializable> key) {
+            this.loads.incrementAndGet();
+            return super.load(key);
+        }
+
+        @Override
+        public void update(PicketBoxSession session) {
+            this.updates.incrementAndGet();
+            super.update(session);
+        }
+    }
+
+    /**
+     * <p>
+     * Simulates a store shared by different nodes, where each load returns a different copy of the session.
+     * </p>
+     */
+    private static class CopyingSessionStore extends InMemorySessionStore {
+
+        private final AtomicInteger updates = new AtomicInteger();
+        private volatile boolean updatesEnabled = true;
+
+        @Override
+        public PicketBoxSession load(SessionId<? extends Serializable> key) {
+            PicketBoxSession session = super.load(key);
+
+            if (session == null) {
+                return null;
+            }
+
+            try {
+                PicketBoxSession copy = new PicketBoxSession(session.getUserContext(), session.getId());
+
+                for (Entry<String, Object> attribute : session.getAttributes().entrySet()) {
+                    copy.setAttribute(attribute.getKey(), attribute.getValue());
+                }
+
+                copy.drainDirtyAttributes();
+
+                return copy;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void update(PicketBoxSession session) {
+            this.updates.incrementAndGet();
+
+            if (this.updatesEnabled) {
+                super.update(session);
+            }
+        }
+    }
+
+    private static class GetAttributeEventHandler implements SessionEventHandler {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+            return SessionEvent.class;
+        }
+
+        @Override
+        public void onCreate(SessionEvent sessionEvent) {
+        }
+
+        @Override
+        public void onSetAttribute(SessionEvent sessionEvent, String key, Object val) {
+        }
+
+        @Override
+        public void onGetAttribute(SessionEvent sessionEvent, String key) {
+            this.calls.incrementAndGet();
+        }
+
+        @Override
+        public void onInvalidate(SessionEvent sessionEvent) {
+        }
+
+        @Override
+        public void onExpiration(SessionEvent sessionEvent) {
+        }
+    }
+}
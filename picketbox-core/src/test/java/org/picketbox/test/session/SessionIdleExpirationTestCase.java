@@ -0,0 +1,281 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+import org.picketbox.core.session.MappedSessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.event.SessionEvent;
+import org.picketbox.core.session.event.SessionEventHandlerAdapter;
+import org.picketbox.core.session.event.SessionExpiredEvent;
+
+/**
+ * <p>
+ * Tests the idle and absolute expiration of sessions.
+ * </p>
+ */
+public class SessionIdleExpirationTestCase {
+
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * <p>
+     * Tests if accessed sessions are kept alive and idle sessions are expired.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIdleSessionExpiration() throws Exception {
+        ExpirationHandler expirations = new ExpirationHandler();
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder
+            .sessionManager()
+                .inMemorySessionStore()
+                .idleTimeout(300, TimeUnit.MILLISECONDS)
+                .touchGranularity(0, TimeUnit.MILLISECONDS)
+                .expirationTickDuration(10, TimeUnit.MILLISECONDS);
+
+        builder.eventManager().handler(expirations);
+
+        PicketBoxManager picketBoxManager = createPicketBoxManager(builder);
+
+        try {
+            SessionManager sessionManager = picketBoxManager.getSessionManager();
+
+            PicketBoxSession activeSession = createSession(sessionManager);
+            PicketBoxSession idleSession = createSession(sessionManager);
+
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            PicketBoxSession expired = null;
+
+            // keeps the active session alive until the idle one expires
+            for (int i = 0; expired == null && System.currentTimeMillis() < deadline; i++) {
+                activeSession.setAttribute("counter", i);
+                expired = expirations.sessions.poll(20, TimeUnit.MILLISECONDS);
+            }
+
+            assertSame(idleSession, expired);
+            assertFalse(idleSession.isValid());
+            assertTrue(activeSession.isValid());
+
+            assertSame(activeSession, expirations.sessions.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertFalse(activeSession.isValid());
+        } finally {
+            picketBoxManager.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if sessions accessed through the copies returned by stores like the {@link MappedSessionStore} are kept alive,
+     * and if their last accessed time is written back to the store.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIdleExpirationWithCopyingStore() throws Exception {
+        ExpirationHandler expirations = new ExpirationHandler();
+        File file = File.createTempFile("pbox-sessions", ".dat");
+
+        file.delete();
+
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder
+            .sessionManager()
+                .mappedSessionStore(file.getPath())
+                .idleTimeout(300, TimeUnit.MILLISECONDS)
+                .touchGranularity(0, TimeUnit.MILLISECONDS)
+                .expirationTickDuration(10, TimeUnit.MILLISECONDS);
+
+        builder.eventManager().handler(expirations);
+
+        PicketBoxManager picketBoxManager = createPicketBoxManager(builder);
+
+        try {
+            SessionManager sessionManager = picketBoxManager.getSessionManager();
+            PicketBoxSession session = sessionManager.create(new UserContext());
+
+            session.setAttribute("name", "value");
+
+            // keeps the session alive through the copies for three times its idle timeout
+            while (System.currentTimeMillis() - session.getCreationTime() < 900) {
+                assertNull(expirations.sessions.poll(20, TimeUnit.MILLISECONDS));
+
+                PicketBoxSession copy = sessionManager.retrieve(session.getId());
+
+                assertNotNull(copy);
+                assertEquals("value", copy.getAttribute("name"));
+            }
+
+            PicketBoxSession stored = sessionManager.retrieve(session.getId());
+
+            assertNotNull(stored);
+            assertTrue(stored.getLastAccessedTime() - stored.getCreationTime() >= 900);
+
+            PicketBoxSession expired = expirations.sessions.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+
+            assertNotNull(expired);
+            assertEquals(session.getId(), expired.getId());
+            assertNull(sessionManager.retrieve(session.getId()));
+        } finally {
+            picketBoxManager.stop();
+            file.delete();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if accesses inside the granularity window do not move the last accessed time.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTouchCoalescing() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder
+            .sessionManager()
+                .inMemorySessionStore()
+                .touchGranularity(1, TimeUnit.HOURS);
+
+        PicketBoxManager picketBoxManager = createPicketBoxManager(builder);
+
+        try {
+            PicketBoxSession session = createSession(picketBoxManager.getSessionManager());
+
+            long lastAccessedTime = session.getLastAccessedTime();
+
+            Thread.sleep(20);
+
+            session.setAttribute("test", "test");
+            session.getAttribute("test");
+
+            assertEquals(lastAccessedTime, session.getLastAccessedTime());
+        } finally {
+            picketBoxManager.stop();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if sessions are expired after the absolute timeout even if they are being accessed.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAbsoluteExpiration() throws Exception {
+        ExpirationHandler expirations = new ExpirationHandler();
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder
+            .sessionManager()
+                .inMemorySessionStore()
+                .idleTimeout(1, TimeUnit.MINUTES)
+                .absoluteTimeout(200, TimeUnit.MILLISECONDS)
+                .touchGranularity(0, TimeUnit.MILLISECONDS)
+                .expirationTickDuration(10, TimeUnit.MILLISECONDS);
+
+        builder.eventManager().handler(expirations);
+
+        PicketBoxManager picketBoxManager = createPicketBoxManager(builder);
+
+        try {
+            PicketBoxSession session = createSession(picketBoxManager.getSessionManager());
+
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            PicketBoxSession expired = null;
+
+            while (expired == null && System.currentTimeMillis() < deadline) {
+                session.setAttribute("test", "test");
+                expired = expirations.sessions.poll(20, TimeUnit.MILLISECONDS);
+            }
+
+            assertSame(session, expired);
+            assertFalse(session.isValid());
+        } finally {
+            picketBoxManager.stop();
+        }
+    }
+
+    private PicketBoxManager createPicketBoxManager(ConfigurationBuilder builder) {
+        PicketBoxManager picketBoxManager = new DefaultPicketBoxManager(builder.build());
+
+        picketBoxManager.start();
+
+        return picketBoxManager;
+    }
+
+    private PicketBoxSession createSession(SessionManager sessionManager) {
+        UserContext subject = new UserContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isAuthenticated() {
+                return true;
+            }
+        };
+
+        return sessionManager.create(subject);
+    }
+
+    private static class ExpirationHandler extends SessionEventHandlerAdapter {
+
+        final BlockingQueue<PicketBoxSession> sessions = new LinkedBlockingQueue<PicketBoxSession>();
+
+        @Override
+        public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+            return SessionExpiredEvent.class;
+        }
+
+        @Override
+        public void onExpiration(SessionEvent sessionEvent) {
+            this.sessions.add(sessionEvent.getSession());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketbox.core.AbstractPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.authentication.credential.UsernamePasswordCredential;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.identity.impl.ConfiguredRolesContextPopulator;
+import org.picketbox.core.session.MappedSessionStore;
+import org.picketbox.core.session.SessionId;
+import org.picketbox.test.AbstractDefaultPicketBoxManagerTestCase;
+
+/**
+ * <p>
+ * Tests how users are restored from their sessions.
+ * </p>
+ */
+public class SessionRestoreTestCase extends AbstractDefaultPicketBoxManagerTestCase {
+
+    /**
+     * <p>
+     * Tests if users validated within the revalidation interval are restored from the session without being populated
+     * again.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRestoreWithinRevalidationInterval() throws Exception {
+        CountingPopulator populator = new CountingPopulator();
+        PicketBoxManager picketBoxManager = createPicketBoxManager(populator, 1, TimeUnit.MINUTES);
+
+        UserContext authenticatedUserContext = authenticate(picketBoxManager);
+
+        UserContext restoredUserContext = picketBoxManager.authenticate(new UserContext(authenticatedUserContext.getSession()
+                .getId()));
+
+        assertTrue(restoredUserContext.isAuthenticated());
+        assertEquals("admin", restoredUserContext.getPrincipal().getName());
+        assertEquals("admin", restoredUserContext.getUser().getId());
+        assertTrue(restoredUserContext.hasRole("developer"));
+        assertEquals(authenticatedUserContext.getSession().getId(), restoredUserContext.getSession().getId());
+        assertEquals(1, populator.count);
+
+        // removing the validation time forces the user to be authenticated again
+        restoredUserContext.getSession().removeAttribute(AbstractPicketBoxManager.VALIDATION_TIME_ATTRIBUTE);
+
+        assertTrue(picketBoxManager.authenticate(new UserContext(authenticatedUserContext.getSession().getId()))
+                .isAuthenticated());
+        assertEquals(2, populator.count);
+    }
+
+    /**
+     * <p>
+     * Tests if removing the validation time forces the user to be authenticated again when the store returns copies of the
+     * sessions, like the {@link MappedSessionStore}.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRemoveValidationTimeWithCopyingStore() throws Exception {
+        File file = File.createTempFile("pbox-sessions", ".dat");
+
+        file.delete();
+
+        try {
+            CountingPopulator populator = new CountingPopulator();
+            ConfigurationBuilder builder = new ConfigurationBuilder();
+
+            builder.identityManager().userPopulator(populator);
+            builder.sessionManager().mappedSessionStore(file.getPath()).revalidationInterval(1, TimeUnit.MINUTES);
+
+            PicketBoxManager picketBoxManager = getPicketBoxManager(builder.build());
+
+            try {
+                UserContext authenticatedUserContext = authenticate(picketBoxManager);
+                SessionId<? extends Serializable> sessionId = authenticatedUserContext.getSession().getId();
+
+                picketBoxManager.getSessionManager().retrieve(sessionId)
+                        .removeAttribute(AbstractPicketBoxManager.VALIDATION_TIME_ATTRIBUTE);
+
+                assertTrue(picketBoxManager.authenticate(new UserContext(sessionId)).isAuthenticated());
+                assertEquals(2, populator.count);
+            } finally {
+                picketBoxManager.stop();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests if users are authenticated again after the revalidation interval.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRevalidationAfterInterval() throws Exception {
+        CountingPopulator populator = new CountingPopulator();
+        PicketBoxManager picketBoxManager = createPicketBoxManager(populator, 50, TimeUnit.MILLISECONDS);
+
+        UserContext authenticatedUserContext = authenticate(picketBoxManager);
+
+        Thread.sleep(100);
+
+        UserContext restoredUserContext = picketBoxManager.authenticate(new UserContext(authenticatedUserContext.getSession()
+                .getId()));
+
+        assertTrue(restoredUserContext.isAuthenticated());
+        assertEquals(2, populator.count);
+
+        restoredUserContext = picketBoxManager.authenticate(new UserContext(authenticatedUserContext.getSession().getId()));
+
+        assertTrue(restoredUserContext.hasRole("developer"));
+        assertEquals(2, populator.count);
+    }
+
+    /**
+     * <p>
+     * Tests if users are always authenticated again when no revalidation interval is configured.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRestoreWithoutRevalidationInterval() throws Exception {
+        CountingPopulator populator = new CountingPopulator();
+        PicketBoxManager picketBoxManager = createPicketBoxManager(populator, 0, TimeUnit.MILLISECONDS);
+
+        UserContext authenticatedUserContext = authenticate(picketBoxManager);
+
+        picketBoxManager.authenticate(new UserContext(authenticatedUserContext.getSession().getId()));
+        picketBoxManager.authenticate(new UserContext(authenticatedUserContext.getSession().getId()));
+
+        assertEquals(3, populator.count);
+    }
+
+    private PicketBoxManager createPicketBoxManager(CountingPopulator populator, long revalidationInterval, TimeUnit unit) {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.identityManager().userPopulator(populator);
+        builder.sessionManager().inMemorySessionStore().revalidationInterval(revalidationInterval, unit);
+
+        return getPicketBoxManager(builder.build());
+    }
+
+    private UserContext authenticate(PicketBoxManager picketBoxManager) throws Exception {
+        UserContext authenticatingUserContext = new UserContext();
+
+        authenticatingUserContext.setCredential(new UsernamePasswordCredential("admin", "admin"));
+
+        UserContext authenticatedUserContext = picketBoxManager.authenticate(authenticatingUserContext);
+
+        assertTrue(authenticatedUserContext.isAuthenticated());
+
+        return authenticatedUserContext;
+    }
+
+    private static class CountingPopulator extends ConfiguredRolesContextPopulator {
+
+        private int count;
+
+        CountingPopulator() {
+            super(Arrays.asList("developer"));
+        }
+
+        @Override
+        public UserContext getIdentity(UserContext authenticatedUserContext) {
+            this.count++;
+            return super.getIdentity(authenticatedUserContext);
+        }
+    }
+}
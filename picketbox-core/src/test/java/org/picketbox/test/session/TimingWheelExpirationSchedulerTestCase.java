@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketbox.core.session.SessionExpirationScheduler.Expiration;
+import org.picketbox.core.session.TimingWheelExpirationScheduler;
+
+/**
+ * <p>
+ * Tests the {@link TimingWheelExpirationScheduler}.
+ * </p>
+ */
+public class TimingWheelExpirationSchedulerTestCase {
+
+    private TimingWheelExpirationScheduler scheduler;
+
+    @Before
+    public void onSetup() {
+        this.scheduler = new TimingWheelExpirationScheduler(10, TimeUnit.MILLISECONDS, 8, 2);
+        this.scheduler.start();
+    }
+
+    @After
+    public void onFinish() {
+        this.scheduler.stop();
+    }
+
+    /**
+     * <p>
+     * Tests if scheduled tasks are executed, including the ones with a delay longer than a full turn of the wheel.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testScheduledTasksAreExecuted() throws Exception {
+        int taskCount = 1000;
+        final CountDownLatch latch = new CountDownLatch(taskCount);
+
+        for (int i = 0; i < taskCount; i++) {
+            this.scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            }, i % 200, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * <p>
+     * Tests if tasks are not executed before their delay elapses.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTaskIsNotExecutedBeforeDelay() throws Exception {
+        final long start = System.nanoTime();
+        final AtomicInteger elapsed = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        this.scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                elapsed.set((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                latch.countDown();
+            }
+        }, 150, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(elapsed.get() >= 150);
+    }
+
+    /**
+     * <p>
+     * Tests if cancelled tasks are never executed.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCancelledTasksAreNotExecuted() throws Exception {
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                executions.incrementAndGet();
+            }
+        };
+
+        Expiration[] expirations = new Expiration[100];
+
+        for (int i = 0; i < expirations.length; i++) {
+            expirations[i] = this.scheduler.schedule(task, 50, TimeUnit.MILLISECONDS);
+        }
+
+        for (Expiration expiration : expirations) {
+            assertTrue(expiration.cancel());
+            assertTrue(expiration.isCancelled());
+            assertFalse(expiration.cancel());
+        }
+
+        this.scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executions.get());
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.event.PicketBoxEvent;
+import org.picketbox.core.event.PicketBoxEventHandler;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.event.SessionAttributeGetEvent;
+import org.picketbox.core.session.event.SessionAttributeRemovedEvent;
+import org.picketbox.core.session.event.SessionAttributeSetEvent;
+import org.picketbox.core.session.event.SessionEvent;
+import org.picketbox.core.session.event.SessionEventHandlerAdapter;
+
+/**
+ * <p>
+ * Tests the handlers subscribed to a single session callback using the typed {@link SessionEvent} subclasses.
+ * </p>
+ */
+public class TypedSessionEventsTestCase {
+
+    /**
+     * <p>
+     * Tests if handlers registered for a typed event only receive the events of its callback.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHandlerReceivesOnlyItsCallback() throws Exception {
+        RecordingHandler handler = new RecordingHandler(SessionAttributeSetEvent.class);
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore().eventManager().handler(handler);
+
+        PicketBoxSession session = createSession(builder);
+
+        session.setAttribute("a", "b");
+        session.getAttribute("a");
+        session.invalidate();
+
+        assertEquals(1, handler.events.size());
+
+        SessionAttributeSetEvent event = (SessionAttributeSetEvent) handler.events.get(0);
+
+        assertSame(session, event.getSession());
+        assertEquals("a", event.getKey());
+        assertEquals("b", event.getValue());
+    }
+
+    /**
+     * <p>
+     * Tests if removals are only reported to removal handlers, and never as attributes set to null.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRemovalIsNotReportedAsSet() throws Exception {
+        RecordingHandler setHandler = new RecordingHandler(SessionAttributeSetEvent.class);
+        RecordingHandler removalHandler = new RecordingHandler(SessionAttributeRemovedEvent.class);
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore().eventManager().handler(setHandler).handler(removalHandler);
+
+        PicketBoxSession session = createSession(builder);
+
+        session.setAttribute("a", "b");
+        session.removeAttribute("a");
+
+        assertEquals(1, setHandler.events.size());
+        assertEquals("b", ((SessionAttributeSetEvent) setHandler.events.get(0)).getValue());
+
+        assertEquals(1, removalHandler.events.size());
+        assertEquals("a", ((SessionAttributeRemovedEvent) removalHandler.events.get(0)).getKey());
+    }
+
+    /**
+     * <p>
+     * Tests if repeated reads of the same attribute reuse the same event instance.
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAttributeReadEventsAreReused() throws Exception {
+        RecordingHandler handler = new RecordingHandler(SessionAttributeGetEvent.class);
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore().refreshAttributesFromStore().eventManager().handler(handler);
+
+        PicketBoxSession session = createSession(builder);
+
+        session.setAttribute("a", "1");
+        session.setAttribute("b", "2");
+
+        session.getAttribute("a");
+        session.getAttribute("a");
+        session.getAttribute("b");
+
+        assertEquals(3, handler.events.size());
+        assertSame(handler.events.get(0), handler.events.get(1));
+        assertNotSame(handler.events.get(1), handler.events.get(2));
+        assertEquals("b", ((SessionAttributeGetEvent) handler.events.get(2)).getKey());
+        assertTrue(handler.events.get(0) instanceof SessionAttributeGetEvent);
+    }
+
+    private PicketBoxSession createSession(ConfigurationBuilder builder) {
+        PicketBoxManager picketBoxManager = new DefaultPicketBoxManager(builder.build());
+
+        picketBoxManager.start();
+
+        return picketBoxManager.getSessionManager().create(new UserContext());
+    }
+
+    private static class RecordingHandler extends SessionEventHandlerAdapter {
+
+        private final Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> eventType;
+        final List<SessionEvent> events = new ArrayList<SessionEvent>();
+
+        RecordingHandler(Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> eventType) {
+            this.eventType = eventType;
+        }
+
+        @Override
+        public Class<? extends PicketBoxEvent<? extends PicketBoxEventHandler>> getEventType() {
+            return this.eventType;
+        }
+
+        @Override
+        public void onCreate(SessionEvent sessionEvent) {
+            this.events.add(sessionEvent);
+        }
+
+        @Override
+        public void onSetAttribute(SessionEvent sessionEvent, String key, Object val) {
+            this.events.add(sessionEvent);
+        }
+
+        @Override
+        public void onGetAttribute(SessionEvent sessionEvent, String key) {
+            this.events.add(sessionEvent);
+        }
+
+        @Override
+        public void onRemoveAttribute(SessionEvent sessionEvent, String key) {
+            this.events.add(sessionEvent);
+        }
+
+        @Override
+        public void onInvalidate(SessionEvent sessionEvent) {
+            this.events.add(sessionEvent);
+        }
+
+        @Override
+        public void onExpiration(SessionEvent sessionEvent) {
+            this.events.add(sessionEvent);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketbox.test.session;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+import org.picketbox.core.DefaultPicketBoxManager;
+import org.picketbox.core.PicketBoxManager;
+import org.picketbox.core.UserContext;
+import org.picketbox.core.config.ConfigurationBuilder;
+import org.picketbox.core.session.DefaultSessionId;
+import org.picketbox.core.session.InMemorySessionStore;
+import org.picketbox.core.session.PicketBoxSession;
+import org.picketbox.core.session.SessionManager;
+import org.picketbox.core.session.WriteBehindSessionStore;
+
+/**
+ * <p>
+ * Tests the {@link WriteBehindSessionStore}.
+ * </p>
+ */
+public class WriteBehindSessionStoreTestCase {
+
+    private WriteBehindSessionStore store;
+
+    @After
+    public void onFinish() {
+        if (this.store != null && this.store.started()) {
+            this.store.stop();
+        }
+    }
+
+    @Test
+    public void testCoalescesWrites() throws Exception {
+        CountingSessionStore delegate = new CountingSessionStore();
+
+        this.store = new WriteBehindSessionStore(delegate, 100, 1, TimeUnit.HOURS, 1000);
+        this.store.start();
+
+        PicketBoxSession session = createSession();
+
+        this.store.store(session);
+
+        for (int i = 0; i < 10; i++) {
+            this.store.update(session);
+        }
+
+        assertEquals(1, this.store.getPendingCount());
+        assertEquals(10, this.store.getCoalescedCount());
+
+        this.store.flush();
+
+        assertEquals(1, delegate.stores.get());
+        assertEquals(0, delegate.updates.get());
+        assertEquals(0, this.store.getPendingCount());
+        assertSame(session, delegate.load(session.getId()));
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        CountingSessionStore delegate = new CountingSessionStore();
+
+        this.store = new WriteBehindSessionStore(delegate, 100, 1, TimeUnit.HOURS, 1000);
+        this.store.start();
+
+        PicketBoxSession session = createSession();
+
+        this.store.store(session);
+
+        assertNull(delegate.load(session.getId()));
+        assertSame(session, this.store.load(session.getId()));
+
+        this.store.flush();
+        this.store.remove(session.getId());
+
+        assertNotNull(delegate.load(session.getId()));
+        assertNull(this.store.load(session.getId()));
+
+        // updates of a removed session are ignored
+        this.store.update(session);
+
+        assertNull(this.store.load(session.getId()));
+
+        this.store.flush();
+
+        assertNull(delegate.load(session.getId()));
+    }
+
+    @Test
+    public void testFlushWhenBatchSizeIsReached() throws Exception {
+        CountingSessionStore delegate = new CountingSessionStore();
+
+        this.store = new WriteBehindSessionStore(delegate, 10, 1, TimeUnit.HOURS, 1000);
+        this.store.start();
+
+        for (int i = 0; i < 10; i++) {
+            this.store.store(createSession());
+        }
+
+        assertTrue(delegate.stores.await(10));
+    }
+
+    @Test
+    public void testFlushWhenIntervalElapses() throws Exception {
+        CountingSessionStore delegate = new CountingSessionStore();
+
+        this.store = new WriteBehindSessionStore(delegate, 100, 100, TimeUnit.MILLISECONDS, 1000);
+        this.store.start();
+
+        this.store.store(createSession());
+
+        assertTrue(delegate.stores.await(1));
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        CountingSessionStore delegate = new CountingSessionStore() {
+            @Override
+            public void store(PicketBoxSession session) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                super.store(session);
+            }
+        };
+
+        this.store = new WriteBehindSessionStore(delegate, 5, 10, TimeUnit.MILLISECONDS, 10);
+        this.store.start();
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 30; i++) {
+                    store.store(createSession());
+                }
+
+                done.countDown();
+            }
+        });
+
+        writer.start();
+
+        assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+        assertTrue(this.store.getPendingCount() <= 10);
+
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(delegate.stores.await(30));
+    }
+
+    @Test
+    public void testStopFlushesPendingWrites() throws Exception {
+        CountingSessionStore delegate = new CountingSessionStore();
+
+        this.store = new WriteBehindSessionStore(delegate, 100, 1, TimeUnit.HOURS, 1000);
+        this.store.start();
+
+        for (int i = 0; i < 3; i++) {
+            this.store.store(createSession());
+        }
+
+        this.store.stop();
+
+        assertEquals(3, delegate.stores.get());
+        assertEquals(0, this.store.getPendingCount());
+    }
+
+    @Test
+    public void testFailedWritesAreRetried() throws Exception {
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        CountingSessionStore delegate = new CountingSessionStore() {
+            @Override
+            public void store(PicketBoxSession session) {
+                if (failing.get()) {
+                    throw new IllegalStateException("Store unavailable.");
+                }
+
+                super.store(session);
+            }
+        };
+
+        this.store = new WriteBehindSessionStore(delegate, 100, 10, TimeUnit.MILLISECONDS, 1000);
+        this.store.start();
+
+        PicketBoxSession session = createSession();
+
+        this.store.store(session);
+
+        try {
+            this.store.flush();
+            fail("Flush should report the failed write.");
+        } catch (IllegalStateException e) {
+        }
+
+        assertEquals(1, this.store.getPendingCount());
+        assertSame(session, this.store.load(session.getId()));
+        assertNull(delegate.load(session.getId()));
+
+        try {
+            this.store.stop();
+            fail("Stop should report the failed write.");
+        } catch (IllegalStateException e) {
+        }
+
+        assertTrue(this.store.started());
+        assertEquals(1, this.store.getPendingCount());
+
+        failing.set(false);
+
+        this.store.stop();
+
+        assertEquals(0, this.store.getPendingCount());
+        assertEquals(1, delegate.stores.get());
+    }
+
+    @Test
+    public void testFlusherRetriesFailedWrites() throws Exception {
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        final Counter attempts = new Counter();
+        CountingSessionStore delegate = new CountingSessionStore() {
+            @Override
+            public void store(PicketBoxSession session) {
+                attempts.increment();
+
+                if (failing.get()) {
+                    throw new IllegalStateException("Store unavailable.");
+                }
+
+                super.store(session);
+            }
+        };
+
+        this.store = new WriteBehindSessionStore(delegate, 100, 10, TimeUnit.MILLISECONDS, 1000);
+        this.store.start();
+
+        PicketBoxSession session = createSession();
+
+        this.store.store(session);
+
+        // the background thread keeps retrying while the delegate fails
+        assertTrue(attempts.await(2));
+        assertEquals(0, delegate.stores.get());
+        assertSame(session, this.store.load(session.getId()));
+
+        failing.set(false);
+
+        assertTrue(delegate.stores.await(1));
+        assertSame(session, delegate.load(session.getId()));
+    }
+
+    @Test
+    public void testSessionManagerWithWriteBehind() throws Exception {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+
+        builder.sessionManager().inMemorySessionStore().writeBehind();
+
+        PicketBoxManager picketBoxManager = new DefaultPicketBoxManager(builder.build());
+
+        picketBoxManager.start();
+
+        try {
+            SessionManager sessionManager = picketBoxManager.getSessionManager();
+            PicketBoxSession session = sessionManager.create(new UserContext());
+
+            session.setAttribute("a", "b");
+
+            PicketBoxSession retrieved = sessionManager.retrieve(session.getId());
+
+            assertNotNull(retrieved);
+            assertEquals("b", retrieved.getAttribute("a"));
+        } finally {
+            picketBoxManager.stop();
+        }
+    }
+
+    private static PicketBoxSession createSession() {
+        return new PicketBoxSession(new UserContext(), new DefaultSessionId());
+    }
+
+    private static class CountingSessionStore extends InMemorySessionStore {
+
+        private final Counter stores = new Counter();
+        private final Counter updates = new Counter();
+
+        @Override
+        public void store(PicketBoxSession session) {
+            super.store(session);
+            this.stores.increment();
+        }
+
+        @Override
+        public void update(PicketBoxSession session) {
+            super.update(session);
+            this.updates.increment();
+        }
+    }
+
+    /**
+     * <p>
+     * Counts the calls made by the background thread and lets the test wait for them without polling.
+     * </p>
+     */
+    private static class Counter {
+
+        private int count;
+
+        synchronized void increment() {
+            this.count++;
+            notifyAll();
+        }
+
+        synchronized int get() {
+            return this.count;
+        }
+
+        synchronized boolean await(int expected) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+            while (this.count < expected) {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+
+            return true;
+        }
+    }
+}